@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import sun.java2d.pipe.RenderingEngine;
+
+/**
+ * Antialiased image and graphics rendering the shapes of one workload
+ */
+final class Canvas {
+
+    private final BufferedImage image;
+    private final Graphics2D g2d;
+    private final Shape[] shapes;
+
+    Canvas(final Workload workload, final int size) {
+        checkEngine();
+
+        this.image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        this.g2d = image.createGraphics();
+        this.shapes = workload.createShapes(size);
+
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setBackground(Color.WHITE);
+        g2d.clearRect(0, 0, size, size);
+        g2d.setColor(new Color(32, 64, 128, 160));
+        g2d.setTransform(workload.getTransform(size));
+    }
+
+    Graphics2D getGraphics() {
+        return g2d;
+    }
+
+    void fill() {
+        final Graphics2D g = g2d;
+        for (Shape s : shapes) {
+            g.fill(s);
+        }
+    }
+
+    void draw() {
+        final Graphics2D g = g2d;
+        for (Shape s : shapes) {
+            g.draw(s);
+        }
+    }
+
+    void dispose() {
+        g2d.dispose();
+    }
+
+    private static void checkEngine() {
+        final String engine = RenderingEngine.getInstance().getClass().getName();
+        if (!engine.startsWith("org.marlin.")) {
+            throw new IllegalStateException("Marlin is not the rendering engine ("
+                + engine + "): run the benchmarks with org.marlin.bench.Main");
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.bench;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark launcher: runs the JMH benchmarks for every settings profile
+ * and thread count, with allocation profiling (GC profiler).
+ *
+ * Pipeline benchmarks (org.marlin.bench) run in forked JVMs using Marlin as
+ * the rendering engine (boot class path); stage benchmarks (org.marlin.pisces)
+ * load the renderer classes from the class path to reach its internals.
+ *
+ * System properties:
+ * - bench.profiles: settings profiles (default, noCulling, noRLE, bandTiles,
+ *   pipeline, subpixel4, slim; "all" for all of them), default: default
+ * - bench.threads: thread counts (comma separated), default: 1
+ * - bench.gc: true to enable allocation profiling, default: true
+ * - bench.marlin: marlin jars for the boot class path (path separated),
+ *   default: lib/marlin.jar and lib/marlin-sun-java2d.jar next to this jar
+ *
+ * Other arguments are JMH options (benchmark regexp, -f, -wi, -i ...).
+ */
+public final class Main {
+
+    // settings profiles (MarlinProperties):
+    private static final String[][] PROFILES = new String[][]{
+        {"default"},
+        {"noCulling", "-Dsun.java2d.renderer.useClipCulling=false"},
+        {"noRLE", "-Dsun.java2d.renderer.useRLE=false"},
+        {"bandTiles", "-Dsun.java2d.renderer.tileWidthMode=band"},
+        {"pipeline", "-Dsun.java2d.renderer.pipelineThreads=2"},
+        {"subpixel4", "-Dsun.java2d.renderer.subPixel_log2_X=2",
+                      "-Dsun.java2d.renderer.subPixel_log2_Y=2"},
+        {"slim", "-Dsun.java2d.renderer.useSlimContext=true"}
+    };
+
+    private static final String PIPELINE_BENCHMARKS = "org\\.marlin\\.bench\\.";
+    private static final String STAGE_BENCHMARKS = "org\\.marlin\\.pisces\\.";
+
+    private Main() {
+        // no instances
+    }
+
+    public static void main(final String[] args)
+        throws CommandLineOptionException, RunnerException
+    {
+        final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+
+        final String[] bootArgs = new String[]{
+            "-Xbootclasspath/p:" + getMarlinPath(),
+            "-Dsun.java2d.renderer=org.marlin.pisces.PiscesRenderingEngine"
+        };
+        final boolean gc = Boolean.parseBoolean(
+                               System.getProperty("bench.gc", "true"));
+
+        final List<Integer> threads = new ArrayList<Integer>();
+        if (cmdOptions.getThreads().hasValue()) {
+            threads.add(cmdOptions.getThreads().get());
+        } else {
+            for (String t : System.getProperty("bench.threads", "1").split(",")) {
+                threads.add(Integer.valueOf(t.trim()));
+            }
+        }
+
+        for (String[] profile : getProfiles()) {
+            final String[] settings = Arrays.copyOfRange(profile, 1, profile.length);
+
+            for (int t : threads) {
+                // pipeline benchmarks (Marlin engine):
+                run(cmdOptions, profile[0], "pipeline", t, gc, STAGE_BENCHMARKS,
+                    bootArgs, settings);
+                // stage benchmarks:
+                run(cmdOptions, profile[0], "stage", t, gc, PIPELINE_BENCHMARKS,
+                    new String[0], settings);
+            }
+        }
+    }
+
+    private static void run(final CommandLineOptions cmdOptions,
+                            final String profile, final String pass,
+                            final int threads, final boolean gc,
+                            final String exclude, final String[] prepend,
+                            final String[] settings)
+        throws RunnerException
+    {
+        final ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(cmdOptions)
+                .exclude(exclude)
+                .threads(threads)
+                .jvmArgsPrepend(concat(prepend, "-Djava.awt.headless=true"))
+                .jvmArgsAppend(settings);
+
+        if (gc) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        if (!cmdOptions.getResult().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON)
+                   .result("jmh-" + pass + "-" + profile + "-t" + threads + ".json");
+        }
+        System.out.println("Running " + pass + " benchmarks [profile: " + profile
+                           + " " + Arrays.toString(settings) + " threads: "
+                           + threads + "]");
+        try {
+            new Runner(builder.build()).run();
+        } catch (NoBenchmarksException nbe) {
+            System.out.println("No " + pass + " benchmark matches.");
+        }
+    }
+
+    private static List<String[]> getProfiles() {
+        final String names = System.getProperty("bench.profiles", "default");
+        final List<String[]> profiles = new ArrayList<String[]>();
+
+        if ("all".equals(names)) {
+            profiles.addAll(Arrays.asList(PROFILES));
+            return profiles;
+        }
+        for (String name : names.split(",")) {
+            String[] match = null;
+            for (String[] profile : PROFILES) {
+                if (profile[0].equals(name.trim())) {
+                    match = profile;
+                    break;
+                }
+            }
+            if (match == null) {
+                throw new IllegalArgumentException("Unknown profile: " + name);
+            }
+            profiles.add(match);
+        }
+        return profiles;
+    }
+
+    private static String getMarlinPath() {
+        final String path = System.getProperty("bench.marlin");
+        if (path != null) {
+            return path;
+        }
+        final File dir;
+        try {
+            dir = new File(Main.class.getProtectionDomain().getCodeSource()
+                               .getLocation().toURI()).getParentFile();
+        } catch (URISyntaxException use) {
+            throw new IllegalStateException("Unable to locate the marlin jars", use);
+        }
+        final File lib = new File(dir, "lib");
+        return new File(lib, "marlin.jar").getAbsolutePath() + File.pathSeparator
+               + new File(lib, "marlin-sun-java2d.jar").getAbsolutePath();
+    }
+
+    private static String[] concat(final String[] args, final String arg) {
+        final String[] all = Arrays.copyOf(args, args.length + 1);
+        all[args.length] = arg;
+        return all;
+    }
+}
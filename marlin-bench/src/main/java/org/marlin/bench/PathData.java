@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.bench;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+import sun.awt.geom.PathConsumer2D;
+
+/**
+ * Path segments (flattened into arrays) fed directly to a pipeline stage
+ * (PathConsumer2D) without path iterator overhead
+ */
+public final class PathData {
+
+    private final byte[] types;
+    private final float[] coords;
+    private final int numTypes;
+
+    /**
+     * Create the path data of the given shape
+     * @param s shape (device space)
+     */
+    public PathData(final Shape s) {
+        byte[] t = new byte[64];
+        float[] c = new float[128];
+        int nt = 0, nc = 0;
+        final float[] seg = new float[6];
+
+        for (final PathIterator pi = s.getPathIterator(null); !pi.isDone();
+             pi.next())
+        {
+            final int type = pi.currentSegment(seg);
+            if (nt == t.length) {
+                t = Arrays.copyOf(t, nt << 1);
+            }
+            if (nc + 6 > c.length) {
+                c = Arrays.copyOf(c, c.length << 1);
+            }
+            t[nt++] = (byte) type;
+            final int n = numCoords(type);
+            System.arraycopy(seg, 0, c, nc, n);
+            nc += n;
+        }
+        this.types = t;
+        this.coords = c;
+        this.numTypes = nt;
+    }
+
+    /**
+     * Create the path data of the given shapes
+     * @param shapes shapes (device space)
+     * @return path data array
+     */
+    public static PathData[] of(final Shape[] shapes) {
+        final PathData[] paths = new PathData[shapes.length];
+        for (int i = 0; i < shapes.length; i++) {
+            paths[i] = new PathData(shapes[i]);
+        }
+        return paths;
+    }
+
+    private static int numCoords(final int type) {
+        switch (type) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                return 2;
+            case PathIterator.SEG_QUADTO:
+                return 4;
+            case PathIterator.SEG_CUBICTO:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Send all segments then pathDone() to the given consumer
+     * @param out path consumer
+     */
+    public void feed(final PathConsumer2D out) {
+        final byte[] _types = types;
+        final float[] c = coords;
+
+        for (int i = 0, j = 0, n = numTypes; i < n; i++) {
+            switch (_types[i]) {
+                case PathIterator.SEG_MOVETO:
+                    out.moveTo(c[j], c[j + 1]);
+                    j += 2;
+                    break;
+                case PathIterator.SEG_LINETO:
+                    out.lineTo(c[j], c[j + 1]);
+                    j += 2;
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    out.quadTo(c[j], c[j + 1], c[j + 2], c[j + 3]);
+                    j += 4;
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    out.curveTo(c[j], c[j + 1], c[j + 2], c[j + 3],
+                                c[j + 4], c[j + 5]);
+                    j += 6;
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    out.closePath();
+                    break;
+                default:
+            }
+        }
+        out.pathDone();
+    }
+
+    /**
+     * Path consumer summing the received end points (stage output) so the
+     * stage computations can not be eliminated
+     */
+    public static final class Sink implements PathConsumer2D {
+
+        private int count = 0;
+        private double sum = 0.0;
+
+        public double getResult() {
+            return count + sum;
+        }
+
+        @Override
+        public void moveTo(final float x0, final float y0) {
+            count++;
+            sum += x0 + y0;
+        }
+
+        @Override
+        public void lineTo(final float x1, final float y1) {
+            count++;
+            sum += x1 + y1;
+        }
+
+        @Override
+        public void quadTo(final float x1, final float y1,
+                           final float x2, final float y2)
+        {
+            count++;
+            sum += x2 + y2;
+        }
+
+        @Override
+        public void curveTo(final float x1, final float y1,
+                            final float x2, final float y2,
+                            final float x3, final float y3)
+        {
+            count++;
+            sum += x3 + y3;
+        }
+
+        @Override
+        public void closePath() {
+            count++;
+        }
+
+        @Override
+        public void pathDone() {
+            // nothing to do
+        }
+
+        @Override
+        public long getNativeConsumer() {
+            throw new InternalError("Not using a native peer");
+        }
+    }
+}
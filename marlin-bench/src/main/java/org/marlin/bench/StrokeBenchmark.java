@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.bench;
+
+import java.awt.BasicStroke;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stroke benchmark: Graphics2D.draw(Shape) through the whole pipeline
+ * (Stroker, Dasher, Marlin, compositing) into an image per thread
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeBenchmark {
+
+    /** stroke styles */
+    public enum Style {
+        THIN(new BasicStroke(1f)),
+        WIDE(new BasicStroke(8f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)),
+        DASHED(new BasicStroke(2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+                               10f, new float[]{10f, 5f, 2f, 5f}, 0f));
+
+        final BasicStroke stroke;
+
+        Style(final BasicStroke stroke) {
+            this.stroke = stroke;
+        }
+    }
+
+    @Param({"POLYLINES", "POLYGONS", "GLYPHS", "MARKERS", "HUGE", "PARALLELOGRAMS"})
+    public Workload workload;
+
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    @Param({"THIN", "WIDE", "DASHED"})
+    public Style style;
+
+    private Canvas canvas;
+
+    @Setup
+    public void setup() {
+        canvas = new Canvas(workload, size);
+        canvas.getGraphics().setStroke(style.stroke);
+    }
+
+    @TearDown
+    public void tearDown() {
+        canvas.dispose();
+    }
+
+    @Benchmark
+    public void draw() {
+        canvas.draw();
+    }
+}
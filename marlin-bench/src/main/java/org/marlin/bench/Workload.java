@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.bench;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Canonical rendering workloads: shapes (image coordinates) sized for a
+ * square image of the given size (pixels). Shapes are generated with a
+ * fixed seed so every run (and every Marlin build) renders the same ones.
+ */
+public enum Workload {
+
+    /** GIS-like polylines (random walks) */
+    POLYLINES {
+        @Override
+        public Shape[] createShapes(final int size) {
+            final Random rnd = new Random(size);
+            final Shape[] shapes = new Shape[40];
+            final double step = size / 50.0;
+
+            for (int i = 0; i < shapes.length; i++) {
+                final Path2D.Float p = new Path2D.Float();
+                double x = rnd.nextDouble() * size;
+                double y = rnd.nextDouble() * size;
+                p.moveTo(x, y);
+                for (int j = 0; j < 250; j++) {
+                    x += rnd.nextGaussian() * step;
+                    y += rnd.nextGaussian() * step;
+                    p.lineTo(x, y);
+                }
+                shapes[i] = p;
+            }
+            return shapes;
+        }
+    },
+    /** GIS-like polygons (star-shaped, many vertices) */
+    POLYGONS {
+        @Override
+        public Shape[] createShapes(final int size) {
+            final Random rnd = new Random(size);
+            final Shape[] shapes = new Shape[40];
+
+            for (int i = 0; i < shapes.length; i++) {
+                shapes[i] = star(rnd, rnd.nextDouble() * size,
+                                 rnd.nextDouble() * size,
+                                 size * (0.05 + 0.2 * rnd.nextDouble()), 150);
+            }
+            return shapes;
+        }
+    },
+    /** curve-heavy glyph outlines (text lines) */
+    GLYPHS {
+        @Override
+        public Shape[] createShapes(final int size) {
+            final float fontSize = Math.max(4f, size / 16f);
+            final Font font = new Font(Font.SERIF, Font.PLAIN, 1)
+                                .deriveFont(fontSize);
+            final FontRenderContext frc = new FontRenderContext(null, true, true);
+            final GlyphVector gv = font.createGlyphVector(frc,
+                "The quick brown fox jumps over the lazy dog 0123456789");
+
+            final ArrayList<Shape> shapes = new ArrayList<Shape>();
+            for (float y = fontSize; y < size; y += 1.2f * fontSize) {
+                for (int i = 0, n = gv.getNumGlyphs(); i < n; i++) {
+                    final Shape glyph = gv.getGlyphOutline(i, 0f, y);
+                    if (glyph.getBounds2D().getMinX() < size) {
+                        shapes.add(glyph);
+                    }
+                }
+            }
+            return shapes.toArray(new Shape[shapes.size()]);
+        }
+    },
+    /** tiny markers (many small circles) */
+    MARKERS {
+        @Override
+        public Shape[] createShapes(final int size) {
+            final Random rnd = new Random(size);
+            final Shape[] shapes = new Shape[Math.min(20000, size * size / 64)];
+
+            for (int i = 0; i < shapes.length; i++) {
+                final double d = 3.0 + 3.0 * rnd.nextDouble();
+                shapes[i] = new Ellipse2D.Double(rnd.nextDouble() * size,
+                                                 rnd.nextDouble() * size, d, d);
+            }
+            return shapes;
+        }
+    },
+    /** huge shapes (mostly outside the image) */
+    HUGE {
+        @Override
+        public Shape[] createShapes(final int size) {
+            final Random rnd = new Random(size);
+            final Path2D.Float zigzag = new Path2D.Float();
+            zigzag.moveTo(-20.0 * size, 0.0);
+            for (int i = -19; i <= 20; i++) {
+                zigzag.lineTo(i * size, ((i & 1) == 0) ? 0.0 : size);
+            }
+            return new Shape[]{
+                new Ellipse2D.Double(-4.5 * size, -9.5 * size,
+                                     10.0 * size, 10.0 * size),
+                star(rnd, size / 2.0, size / 2.0, 50.0 * size, 64),
+                zigzag
+            };
+        }
+    },
+    /** parallelograms (rectangles under a rotation) */
+    PARALLELOGRAMS {
+        @Override
+        public Shape[] createShapes(final int size) {
+            final Random rnd = new Random(size);
+            final Shape[] shapes = new Shape[500];
+            final double max = Math.max(2.0, size / 8.0);
+
+            for (int i = 0; i < shapes.length; i++) {
+                shapes[i] = new Rectangle2D.Double(rnd.nextDouble() * size,
+                    rnd.nextDouble() * size, 2.0 + rnd.nextDouble() * max,
+                    2.0 + rnd.nextDouble() * max);
+            }
+            return shapes;
+        }
+
+        @Override
+        public AffineTransform getTransform(final int size) {
+            return AffineTransform.getRotateInstance(Math.PI / 7.0,
+                                                     size / 2.0, size / 2.0);
+        }
+    };
+
+    /**
+     * Create the shapes of this workload
+     * @param size image size (pixels)
+     * @return shapes in user space
+     */
+    public abstract Shape[] createShapes(final int size);
+
+    /**
+     * Return the graphics transform of this workload
+     * @param size image size (pixels)
+     * @return transform (user space to image)
+     */
+    public AffineTransform getTransform(final int size) {
+        return new AffineTransform();
+    }
+
+    /**
+     * Return the shapes of this workload transformed into image space
+     * (stage benchmarks)
+     * @param size image size (pixels)
+     * @return shapes in image space
+     */
+    public Shape[] createDeviceShapes(final int size) {
+        final Shape[] shapes = createShapes(size);
+        final AffineTransform at = getTransform(size);
+
+        if (!at.isIdentity()) {
+            for (int i = 0; i < shapes.length; i++) {
+                shapes[i] = at.createTransformedShape(shapes[i]);
+            }
+        }
+        return shapes;
+    }
+
+    static Shape star(final Random rnd, final double cx, final double cy,
+                      final double radius, final int n)
+    {
+        final Path2D.Float p = new Path2D.Float();
+        for (int i = 0; i < n; i++) {
+            final double a = (2.0 * Math.PI * i) / n;
+            final double r = radius * (0.5 + 0.5 * rnd.nextDouble());
+            final double x = cx + r * Math.cos(a);
+            final double y = cy + r * Math.sin(a);
+            if (i == 0) {
+                p.moveTo(x, y);
+            } else {
+                p.lineTo(x, y);
+            }
+        }
+        p.closePath();
+        return p;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.marlin.bench.PathData;
+import org.marlin.bench.Workload;
+
+/**
+ * Stage benchmark: Dasher only (dash splitting of lines and curves) sending
+ * its output to a sink
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DasherBenchmark {
+
+    @Param({"POLYLINES", "POLYGONS", "GLYPHS", "HUGE"})
+    public Workload workload;
+
+    @Param({"64", "2048"})
+    public int size;
+
+    @Param({"2.0", "20.0"})
+    public float dashLength;
+
+    private RendererContext rdrCtx;
+    private PathData[] paths;
+    private float[] dashes;
+
+    @Setup
+    public void setup() {
+        rdrCtx = RendererContext.createContext(false);
+        paths = PathData.of(workload.createDeviceShapes(size));
+        dashes = new float[]{dashLength, dashLength / 2f};
+    }
+
+    @Benchmark
+    public double dash() {
+        final PathData.Sink sink = new PathData.Sink();
+
+        for (PathData path : paths) {
+            path.feed(rdrCtx.dasher.init(sink, dashes, dashes.length, 0f,
+                                         false));
+        }
+        return sink.getResult();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stage benchmark: MarlinCache.copyAARow() (coverage accumulation, alpha
+ * mapping, RLE encoding) for one tile line of the given width
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarlinCacheBenchmark implements MarlinConst {
+
+    /** coverage row patterns */
+    public enum Pattern {
+        /** solid span with antialiased edges (long constant runs) */
+        SPAN,
+        /** many thin edges (short runs) */
+        EDGES
+    }
+
+    @Param({"64", "512", "2048"})
+    public int width;
+
+    @Param({"SPAN", "EDGES"})
+    public Pattern pattern;
+
+    private MarlinCache cache;
+    // coverage deltas (copyAARow clears the alpha row):
+    private int[] template;
+    private int[] alphaRow;
+
+    @Setup
+    public void setup() {
+        cache = RendererContext.createContext(false).cache;
+        cache.init(0, 0, width, TILE_SIZE);
+
+        template = new int[width + 2];
+        alphaRow = new int[width + 2];
+
+        if (pattern == Pattern.SPAN) {
+            // partial coverage at both ends:
+            template[0] = MAX_AA_ALPHA / 2;
+            template[1] = MAX_AA_ALPHA - MAX_AA_ALPHA / 2;
+            template[width - 1] = -(MAX_AA_ALPHA / 2);
+            template[width] = -(MAX_AA_ALPHA - MAX_AA_ALPHA / 2);
+        } else {
+            final Random rnd = new Random(width);
+            for (int x = 0; x + 1 < width; x += 2) {
+                final int a = rnd.nextInt(MAX_AA_ALPHA + 1);
+                template[x] += a;
+                template[x + 1] -= a;
+            }
+        }
+    }
+
+    @Benchmark
+    public int copyAARow() {
+        final MarlinCache _cache = cache;
+        final int[] _template = template;
+        final int[] _alphaRow = alphaRow;
+        final int w = width;
+
+        _cache.resetTileLine(0);
+
+        for (int y = 0; y < TILE_SIZE; y++) {
+            System.arraycopy(_template, 0, _alphaRow, 0, w + 1);
+            _cache.copyAARow(_alphaRow, y, 0, w + 1);
+        }
+        return _cache.rowAAChunkPos;
+    }
+}
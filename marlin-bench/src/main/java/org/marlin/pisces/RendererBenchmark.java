@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import java.awt.geom.PathIterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.marlin.bench.PathData;
+import org.marlin.bench.Workload;
+
+/**
+ * Stage benchmark: Renderer only (edges, then _endRendering() for every tile
+ * line filling the MarlinCache rows), without stroking nor compositing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RendererBenchmark implements MarlinConst {
+
+    @Param({"POLYGONS", "GLYPHS", "MARKERS", "HUGE", "PARALLELOGRAMS"})
+    public Workload workload;
+
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    private RendererContext rdrCtx;
+    private PathData[] paths;
+
+    @Setup
+    public void setup() {
+        rdrCtx = RendererContext.createContext(false);
+        paths = PathData.of(workload.createDeviceShapes(size));
+    }
+
+    @Benchmark
+    public int endRendering() {
+        final Renderer rdr = rdrCtx.renderer;
+        final MarlinCache cache = rdrCtx.cache;
+        int rows = 0;
+
+        for (PathData path : paths) {
+            rdr.init(0, 0, size, size, PathIterator.WIND_NON_ZERO);
+            path.feed(rdr);
+
+            if (rdr.endRendering()) {
+                // next tile lines (see MarlinTileGenerator.nextTile):
+                for (int y = cache.bboxY0 + TILE_SIZE; y < cache.bboxY1;
+                     y += TILE_SIZE)
+                {
+                    rdr.endRendering(y);
+                }
+                rows += cache.bboxY1 - cache.bboxY0;
+            }
+            cache.dispose();
+            rdr.dispose();
+        }
+        return rows;
+    }
+}
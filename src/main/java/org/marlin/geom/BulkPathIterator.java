@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2006, 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.geom;
+
+import java.awt.geom.PathIterator;
+
+/**
+ * Optional {@link PathIterator} extension delivering whole blocks of path
+ * segments at once (segment types and packed float coordinates) in order to
+ * avoid the per-segment {@code currentSegment()} and {@code next()} calls.
+ * <p>
+ * Coordinates are packed: each segment only uses the number of coordinates
+ * required by its type (2 for SEG_MOVETO / SEG_LINETO, 4 for SEG_QUADTO,
+ * 6 for SEG_CUBICTO and 0 for SEG_CLOSE). Any transform given when the
+ * iterator was created is already applied.
+ */
+public interface BulkPathIterator extends PathIterator {
+
+    /**
+     * Copies the next block of segments starting at the current position
+     * and advances this iterator after the last copied segment.
+     *
+     * @param types array receiving the segment types
+     * @param coords array receiving the packed coordinates; its length
+     *               must be at least {@code 6 * maxSegments}
+     * @param maxSegments maximum number of segments to copy
+     *                    (at most {@code types.length})
+     * @return number of copied segments or 0 if the iteration is done
+     */
+    int nextSegments(byte[] types, float[] coords, int maxSegments);
+}
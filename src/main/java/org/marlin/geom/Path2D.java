@@ -106,6 +106,13 @@ public abstract class Path2D implements Shape, Cloneable {
     transient int numCoords;
     transient int windingRule;
 
+    // number of coordinates already accumulated in the cached bounds
+    // (0 means the cached bounds must be computed again)
+    transient int boundsCoords;
+    // number of segment types covered by the subpath index
+    // (0 means the index must be built again)
+    transient int indexTypes;
+
     static final int INIT_SIZE = 20;
     static final int EXPAND_MAX = 500;
     static final int EXPAND_MAX_COORDS = EXPAND_MAX * 2;
@@ -150,6 +157,15 @@ public abstract class Path2D implements Shape, Cloneable {
     abstract int rectCrossings(double rxmin, double rymin,
                                double rxmax, double rymax);
 
+    /**
+     * Invalidates the cached bounds and the subpath index after
+     * the existing coordinates were modified in place.
+     */
+    final void invalidateBounds() {
+        boundsCoords = 0;
+        indexTypes = 0;
+    }
+
     static byte[] expandPointTypes(byte[] oldPointTypes, int needed) {
         final int oldSize = oldPointTypes.length;
         final int newSizeMin = oldSize + needed;
@@ -195,6 +211,17 @@ public abstract class Path2D implements Shape, Cloneable {
     public static class Float extends Path2D implements Serializable {
         transient float[] floatCoords;
 
+        // cached bounds of floatCoords[0 - boundsCoords[
+        transient float bx1, by1, bx2, by2;
+
+        // subpath index: (typeIdx, pointIdx) pairs of every subpath start
+        // followed by one end marker (numTypes, numCoords)
+        transient int[] subpathStarts;
+        // subpath index: (x1, y1, x2, y2) bounds of every subpath
+        transient float[] subpathBounds;
+        // number of indexed subpaths
+        transient int numSubpaths;
+
         /**
          * Constructs a new empty single precision {@code Path2D} object
          * with a default winding rule of {@link #WIND_NON_ZERO}.
@@ -382,6 +409,7 @@ public abstract class Path2D implements Shape, Cloneable {
             if (numTypes > 0 && pointTypes[numTypes - 1] == SEG_MOVETO) {
                 floatCoords[numCoords-2] = (float) x;
                 floatCoords[numCoords-1] = (float) y;
+                invalidateBounds();
             } else {
                 needRoom(false, 2);
                 pointTypes[numTypes++] = SEG_MOVETO;
@@ -407,6 +435,7 @@ public abstract class Path2D implements Shape, Cloneable {
             if (numTypes > 0 && pointTypes[numTypes - 1] == SEG_MOVETO) {
                 floatCoords[numCoords-2] = x;
                 floatCoords[numCoords-1] = y;
+                invalidateBounds();
             } else {
                 needRoom(false, 2);
                 pointTypes[numTypes++] = SEG_MOVETO;
@@ -775,6 +804,7 @@ public abstract class Path2D implements Shape, Cloneable {
          */
         public final void transform(AffineTransform at) {
             at.transform(floatCoords, 0, floatCoords, 0, numCoords / 2);
+            invalidateBounds();
         }
 
         /**
@@ -783,22 +813,156 @@ public abstract class Path2D implements Shape, Cloneable {
          */
         public final synchronized Rectangle2D getBounds2D() {
             float x1, y1, x2, y2;
-            int i = numCoords;
-            if (i > 0) {
-                y1 = y2 = floatCoords[--i];
-                x1 = x2 = floatCoords[--i];
-                while (i > 0) {
-                    float y = floatCoords[--i];
-                    float x = floatCoords[--i];
+            if (numCoords > 0) {
+                updateBounds();
+                x1 = bx1; y1 = by1;
+                x2 = bx2; y2 = by2;
+            } else {
+                x1 = y1 = x2 = y2 = 0.0f;
+            }
+            return new Rectangle2D.Float(x1, y1, x2 - x1, y2 - y1);
+        }
+
+        /**
+         * Stores the bounds of this path into the given array as
+         * {@code [x1, y1, x2, y2]} without allocating any object.
+         * <p>
+         * Bounds are cached and only the coordinates appended since the
+         * previous call are scanned.
+         *
+         * @param bbox array of at least 4 floats
+         * @return false if this path is empty (bbox is left unchanged)
+         */
+        public final synchronized boolean getBounds(final float[] bbox) {
+            if (numCoords == 0) {
+                return false;
+            }
+            updateBounds();
+            bbox[0] = bx1;
+            bbox[1] = by1;
+            bbox[2] = bx2;
+            bbox[3] = by2;
+            return true;
+        }
+
+        private void updateBounds() {
+            int i = boundsCoords;
+            final int n = numCoords;
+            if (i == n) {
+                return;
+            }
+            final float[] coords = floatCoords;
+            float x1, y1, x2, y2;
+            if (i == 0) {
+                x1 = x2 = coords[i++];
+                y1 = y2 = coords[i++];
+            } else {
+                x1 = bx1; y1 = by1;
+                x2 = bx2; y2 = by2;
+            }
+            while (i < n) {
+                float x = coords[i++];
+                float y = coords[i++];
+                if (x < x1) x1 = x;
+                if (y < y1) y1 = y;
+                if (x > x2) x2 = x;
+                if (y > y2) y2 = y;
+            }
+            bx1 = x1; by1 = y1;
+            bx2 = x2; by2 = y2;
+            boundsCoords = n;
+        }
+
+        private void updateSubpathIndex() {
+            final int nt = numTypes;
+            if ((nt != 0) && (indexTypes == nt)) {
+                return;
+            }
+            final byte[] types = pointTypes;
+            final float[] coords = floatCoords;
+
+            int[] starts = subpathStarts;
+            float[] bounds = subpathBounds;
+            if (starts == null) {
+                starts = new int[INIT_SIZE];
+                bounds = new float[INIT_SIZE * 2];
+            }
+            int ns = 0, ci = 0;
+            float x1 = 0f, y1 = 0f, x2 = 0f, y2 = 0f;
+
+            for (int ti = 0; ti < nt; ti++) {
+                final byte type = types[ti];
+                if (type == SEG_MOVETO) {
+                    if (ns != 0) {
+                        final int b = (ns - 1) << 2;
+                        bounds[b    ] = x1; bounds[b + 1] = y1;
+                        bounds[b + 2] = x2; bounds[b + 3] = y2;
+                    }
+                    // keep room for the end marker:
+                    if (((ns + 2) << 1) > starts.length) {
+                        starts = Arrays.copyOf(starts, starts.length << 1);
+                        bounds = Arrays.copyOf(bounds, bounds.length << 1);
+                    }
+                    starts[(ns << 1)    ] = ti;
+                    starts[(ns << 1) + 1] = ci;
+                    ns++;
+                    x1 = x2 = coords[ci];
+                    y1 = y2 = coords[ci + 1];
+                }
+                for (final int end = ci + Iterator.curvecoords[type];
+                        ci < end; ci += 2)
+                {
+                    float x = coords[ci];
+                    float y = coords[ci + 1];
                     if (x < x1) x1 = x;
                     if (y < y1) y1 = y;
                     if (x > x2) x2 = x;
                     if (y > y2) y2 = y;
                 }
-            } else {
-                x1 = y1 = x2 = y2 = 0.0f;
             }
-            return new Rectangle2D.Float(x1, y1, x2 - x1, y2 - y1);
+            if (ns != 0) {
+                final int b = (ns - 1) << 2;
+                bounds[b    ] = x1; bounds[b + 1] = y1;
+                bounds[b + 2] = x2; bounds[b + 3] = y2;
+            }
+            // end marker:
+            starts[(ns << 1)    ] = nt;
+            starts[(ns << 1) + 1] = ci;
+
+            subpathStarts = starts;
+            subpathBounds = bounds;
+            numSubpaths = ns;
+            indexTypes = nt;
+        }
+
+        /**
+         * Returns an iterator object that iterates along the boundary of
+         * this path but skips the subpaths whose bounds do not intersect
+         * the given rectangle expressed in user space (before applying
+         * the optional transform).
+         * <p>
+         * Skipping whole subpaths does not change the filled area inside
+         * the given rectangle as a (closed) subpath does not contribute
+         * to the winding count of points outside of its bounds.
+         * However, this iterator must not be used to stroke the path.
+         * <p>
+         * The subpath index (one bounding box per subpath) is built lazily
+         * and reused until this path is modified.
+         *
+         * @param at an optional {@code AffineTransform} (may be null)
+         * @param x1 the minimum X coordinate of the rectangle
+         * @param y1 the minimum Y coordinate of the rectangle
+         * @param x2 the maximum X coordinate of the rectangle
+         * @param y2 the maximum Y coordinate of the rectangle
+         * @return a new {@code PathIterator}
+         */
+        public final synchronized PathIterator getCulledPathIterator(
+                                                  AffineTransform at,
+                                                  float x1, float y1,
+                                                  float x2, float y2)
+        {
+            updateSubpathIndex();
+            return new CulledIterator(this, at, x1, y1, x2, y2);
         }
 
         /**
@@ -1023,6 +1187,19 @@ public abstract class Path2D implements Shape, Cloneable {
                 }
                 return type;
             }
+
+            public int nextSegments(byte[] types, float[] coords,
+                                    int maxSegments)
+            {
+                final int n = nextTypes(types, maxSegments, path.numTypes);
+                if (n != 0) {
+                    final int nc = countCoords(types, n);
+                    System.arraycopy(floatCoords, pointIdx, coords, 0, nc);
+                    typeIdx  += n;
+                    pointIdx += nc;
+                }
+                return n;
+            }
         }
 
         static class TxIterator extends Path2D.Iterator {
@@ -1054,6 +1231,129 @@ public abstract class Path2D implements Shape, Cloneable {
                 }
                 return type;
             }
+
+            public int nextSegments(byte[] types, float[] coords,
+                                    int maxSegments)
+            {
+                final int n = nextTypes(types, maxSegments, path.numTypes);
+                if (n != 0) {
+                    final int nc = countCoords(types, n);
+                    affine.transform(floatCoords, pointIdx,
+                                     coords, 0, nc / 2);
+                    typeIdx  += n;
+                    pointIdx += nc;
+                }
+                return n;
+            }
+        }
+
+        static final class CulledIterator extends Path2D.Iterator {
+            final float[] floatCoords;
+            final AffineTransform affine;
+            final int[] starts;
+            final float[] bounds;
+            final int numSubpaths;
+            final float cx1, cy1, cx2, cy2;
+            // next subpath to test
+            int nextSubpath;
+
+            CulledIterator(Path2D.Float p2df, AffineTransform at,
+                           float x1, float y1, float x2, float y2)
+            {
+                super(p2df);
+                this.floatCoords = p2df.floatCoords;
+                this.affine = at;
+                this.starts = p2df.subpathStarts;
+                this.bounds = p2df.subpathBounds;
+                this.numSubpaths = p2df.numSubpaths;
+                this.cx1 = x1;
+                this.cy1 = y1;
+                this.cx2 = x2;
+                this.cy2 = y2;
+                skipSubpaths();
+            }
+
+            @Override
+            public boolean isDone() {
+                return (typeIdx >= starts[numSubpaths << 1]);
+            }
+
+            @Override
+            public void next() {
+                super.next();
+                skipSubpaths();
+            }
+
+            private void skipSubpaths() {
+                int n = nextSubpath;
+                while ((n < numSubpaths) && (typeIdx == starts[n << 1])) {
+                    final int b = n << 2;
+                    n++;
+                    // NaN bounds are never culled:
+                    if (!(bounds[b] > cx2 || bounds[b + 2] < cx1
+                          || bounds[b + 1] > cy2 || bounds[b + 3] < cy1))
+                    {
+                        break;
+                    }
+                    // jump to the next subpath (or the end marker):
+                    typeIdx  = starts[(n << 1)    ];
+                    pointIdx = starts[(n << 1) + 1];
+                }
+                nextSubpath = n;
+            }
+
+            public int currentSegment(float[] coords) {
+                int type = path.pointTypes[typeIdx];
+                int numCoords = curvecoords[type];
+                if (numCoords > 0) {
+                    if (affine == null) {
+                        System.arraycopy(floatCoords, pointIdx,
+                                         coords, 0, numCoords);
+                    } else {
+                        affine.transform(floatCoords, pointIdx,
+                                         coords, 0, numCoords / 2);
+                    }
+                }
+                return type;
+            }
+
+            public int currentSegment(double[] coords) {
+                int type = path.pointTypes[typeIdx];
+                int numCoords = curvecoords[type];
+                if (numCoords > 0) {
+                    if (affine == null) {
+                        for (int i = 0; i < numCoords; i++) {
+                            coords[i] = floatCoords[pointIdx + i];
+                        }
+                    } else {
+                        affine.transform(floatCoords, pointIdx,
+                                         coords, 0, numCoords / 2);
+                    }
+                }
+                return type;
+            }
+
+            public int nextSegments(byte[] types, float[] coords,
+                                    int maxSegments)
+            {
+                // stop at the next subpath to test:
+                final int n = nextTypes(types, maxSegments,
+                                        starts[nextSubpath << 1]);
+                if (n != 0) {
+                    final int nc = countCoords(types, n);
+                    if (affine == null) {
+                        System.arraycopy(floatCoords, pointIdx,
+                                         coords, 0, nc);
+                    } else {
+                        affine.transform(floatCoords, pointIdx,
+                                         coords, 0, nc / 2);
+                    }
+                    typeIdx  += n;
+                    pointIdx += nc;
+                    skipSubpaths();
+                }
+                return n;
+            }
         }
 
     }
@@ -1067,6 +1367,9 @@ public abstract class Path2D implements Shape, Cloneable {
     public static class Double extends Path2D implements Serializable {
         transient double[] doubleCoords;
 
+        // cached bounds of doubleCoords[0 - boundsCoords[
+        transient double bx1, by1, bx2, by2;
+
         /**
          * Constructs a new empty double precision {@code Path2D} object
          * with a default winding rule of {@link #WIND_NON_ZERO}.
@@ -1254,6 +1557,7 @@ public abstract class Path2D implements Shape, Cloneable {
             if (numTypes > 0 && pointTypes[numTypes - 1] == SEG_MOVETO) {
                 doubleCoords[numCoords-2] = x;
                 doubleCoords[numCoords-1] = y;
+                invalidateBounds();
             } else {
                 needRoom(false, 2);
                 pointTypes[numTypes++] = SEG_MOVETO;
@@ -1537,6 +1841,7 @@ public abstract class Path2D implements Shape, Cloneable {
          */
         public final void transform(AffineTransform at) {
             at.transform(doubleCoords, 0, doubleCoords, 0, numCoords / 2);
+            invalidateBounds();
         }
 
         /**
@@ -1545,24 +1850,44 @@ public abstract class Path2D implements Shape, Cloneable {
          */
         public final synchronized Rectangle2D getBounds2D() {
             double x1, y1, x2, y2;
-            int i = numCoords;
-            if (i > 0) {
-                y1 = y2 = doubleCoords[--i];
-                x1 = x2 = doubleCoords[--i];
-                while (i > 0) {
-                    double y = doubleCoords[--i];
-                    double x = doubleCoords[--i];
-                    if (x < x1) x1 = x;
-                    if (y < y1) y1 = y;
-                    if (x > x2) x2 = x;
-                    if (y > y2) y2 = y;
-                }
+            if (numCoords > 0) {
+                updateBounds();
+                x1 = bx1; y1 = by1;
+                x2 = bx2; y2 = by2;
             } else {
                 x1 = y1 = x2 = y2 = 0.0;
             }
             return new Rectangle2D.Double(x1, y1, x2 - x1, y2 - y1);
         }
 
+        private void updateBounds() {
+            int i = boundsCoords;
+            final int n = numCoords;
+            if (i == n) {
+                return;
+            }
+            final double[] coords = doubleCoords;
+            double x1, y1, x2, y2;
+            if (i == 0) {
+                x1 = x2 = coords[i++];
+                y1 = y2 = coords[i++];
+            } else {
+                x1 = bx1; y1 = by1;
+                x2 = bx2; y2 = by2;
+            }
+            while (i < n) {
+                double x = coords[i++];
+                double y = coords[i++];
+                if (x < x1) x1 = x;
+                if (y < y1) y1 = y;
+                if (x > x2) x2 = x;
+                if (y > y2) y2 = y;
+            }
+            bx1 = x1; by1 = y1;
+            bx2 = x2; by2 = y2;
+            boundsCoords = n;
+        }
+
         /**
          * {@inheritDoc}
          * <p>
@@ -1782,6 +2107,23 @@ public abstract class Path2D implements Shape, Cloneable {
                 }
                 return type;
             }
+
+            public int nextSegments(byte[] types, float[] coords,
+                                    int maxSegments)
+            {
+                final int n = nextTypes(types, maxSegments, path.numTypes);
+                if (n != 0) {
+                    final int nc = countCoords(types, n);
+                    final double[] _coords = doubleCoords;
+                    final int off = pointIdx;
+                    for (int i = 0; i < nc; i++) {
+                        coords[i] = (float) _coords[off + i];
+                    }
+                    typeIdx  += n;
+                    pointIdx += nc;
+                }
+                return n;
+            }
         }
 
         static class TxIterator extends Path2D.Iterator {
@@ -1813,6 +2155,20 @@ public abstract class Path2D implements Shape, Cloneable {
                 }
                 return type;
             }
+
+            public int nextSegments(byte[] types, float[] coords,
+                                    int maxSegments)
+            {
+                final int n = nextTypes(types, maxSegments, path.numTypes);
+                if (n != 0) {
+                    final int nc = countCoords(types, n);
+                    affine.transform(doubleCoords, pointIdx,
+                                     coords, 0, nc / 2);
+                    typeIdx  += n;
+                    pointIdx += nc;
+                }
+                return n;
+            }
         }
     }
 
@@ -2018,6 +2374,7 @@ public abstract class Path2D implements Shape, Cloneable {
      */
     public final synchronized void reset() {
         numTypes = numCoords = 0;
+        invalidateBounds();
     }
 
     /**
@@ -2685,7 +3042,7 @@ public abstract class Path2D implements Shape, Cloneable {
         }
     }
 
-    static abstract class Iterator implements PathIterator {
+    static abstract class Iterator implements BulkPathIterator {
         int typeIdx;
         int pointIdx;
         Path2D path;
@@ -2696,6 +3053,29 @@ public abstract class Path2D implements Shape, Cloneable {
             this.path = path;
         }
 
+        /**
+         * Copies the types of the next block of segments (before endType)
+         * @return number of copied segment types
+         */
+        final int nextTypes(final byte[] types, final int maxSegments,
+                            final int endType)
+        {
+            final int n = Math.min(maxSegments, endType - typeIdx);
+            if (n <= 0) {
+                return 0;
+            }
+            System.arraycopy(path.pointTypes, typeIdx, types, 0, n);
+            return n;
+        }
+
+        static int countCoords(final byte[] types, final int n) {
+            int nc = 0;
+            for (int i = 0; i < n; i++) {
+                nc += curvecoords[types[i]];
+            }
+            return nc;
+        }
+
         public int getWindingRule() {
             return path.getWindingRule();
         }
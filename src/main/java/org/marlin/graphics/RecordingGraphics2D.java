@@ -0,0 +1,1155 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.graphics;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RectangularShape;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.marlin.geom.Path2D;
+import org.marlin.pisces.MarlinLease;
+import org.marlin.pisces.MarlinRenderingEngine;
+import sun.java2d.SunGraphics2D;
+import sun.java2d.pipe.RenderingEngine;
+
+/**
+ * This Graphics2D records drawing commands (shapes, text, images) with the
+ * graphics state in effect (transform, clip, paint, stroke, composite, font,
+ * hints) so they can be replayed later into any Graphics2D.
+ *
+ * The band replay splits a target image into horizontal bands rendered in
+ * parallel: each worker replays the whole command list (in order) into its
+ * own band clip and leases its own RendererContext, so large images (print
+ * maps) scale with the number of cores. Shapes outside a band are culled
+ * early by the renderer. With Marlin, bands give the same pixels as a single
+ * rendering pass (the device clip does not change coverage values).
+ *
+ * Recorded shapes and text are copied; images, paints, strokes and glyph
+ * vectors are referenced and must not be modified until the replay is done.
+ * Image observers are ignored on replay (images must be loaded).
+ * copyArea() is not supported as it reads pixels of other bands.
+ *
+ * Note: recording is not thread-safe (like any Graphics) but a recorded
+ * list may be replayed by several threads concurrently.
+ */
+public final class RecordingGraphics2D extends Graphics2D {
+
+    // drawing commands:
+    private static final int DRAW = 0;
+    private static final int FILL = 1;
+    private static final int DRAW_LINE = 2;
+    private static final int DRAW_RECT = 3;
+    private static final int FILL_RECT = 4;
+    private static final int CLEAR_RECT = 5;
+    private static final int DRAW_ROUND_RECT = 6;
+    private static final int FILL_ROUND_RECT = 7;
+    private static final int DRAW_OVAL = 8;
+    private static final int FILL_OVAL = 9;
+    private static final int DRAW_ARC = 10;
+    private static final int FILL_ARC = 11;
+    private static final int DRAW_POLYLINE = 12;
+    private static final int DRAW_POLYGON = 13;
+    private static final int FILL_POLYGON = 14;
+    private static final int DRAW_STRING = 15;
+    private static final int DRAW_TEXT = 16;
+    private static final int DRAW_GLYPHS = 17;
+    private static final int DRAW_IMAGE = 18;
+    private static final int DRAW_IMAGE_SCALED = 19;
+    private static final int DRAW_IMAGE_AREA = 20;
+    private static final int DRAW_IMAGE_XFORM = 21;
+    private static final int DRAW_IMAGE_OP = 22;
+    private static final int DRAW_RENDERED = 23;
+    private static final int DRAW_RENDERABLE = 24;
+
+    // max number of bands (and worker threads) by default:
+    private static final int MAX_BANDS
+        = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    // shared worker threads (created lazily):
+    private static ThreadPoolExecutor executor = null;
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+
+            executor = new ThreadPoolExecutor(MAX_BANDS, MAX_BANDS,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return AccessController.doPrivileged(
+                            new PrivilegedAction<Thread>() {
+                                @Override
+                                public Thread run() {
+                                    final Thread t = new Thread(r,
+                                        "MarlinReplay-" + count.incrementAndGet());
+                                    t.setDaemon(true);
+                                    // avoid class loader leaks:
+                                    t.setContextClassLoader(null);
+                                    return t;
+                                }
+                            });
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    // recorded commands (shared with the graphics created by create())
+    private final ArrayList<Command> commands;
+    // current state (copied on write once referenced by a command)
+    private State state;
+    private boolean stateShared;
+    // graphics used for font metrics (lazily created)
+    private Graphics2D scratch = null;
+
+    /**
+     * Create an empty recording (no clip, identity transform) with the
+     * defaults of BufferedImage.createGraphics()
+     */
+    public RecordingGraphics2D() {
+        this(new ArrayList<Command>(), new State());
+    }
+
+    private RecordingGraphics2D(final ArrayList<Command> commands,
+                                final State state)
+    {
+        this.commands = commands;
+        this.state = state;
+        this.stateShared = true;
+    }
+
+    /**
+     * Return the number of recorded commands
+     * @return number of recorded commands
+     */
+    public int getCommandCount() {
+        return commands.size();
+    }
+
+    /**
+     * Replay the recorded commands into the given graphics: its transform
+     * and clip are the origin and bounds of the recording. The given
+     * graphics state is left unchanged.
+     * @param g graphics to render into
+     */
+    public void replay(final Graphics2D g) {
+        final Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            replayInto(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Replay the recorded commands into the given image using one band per
+     * available processor (see {@link #replay(BufferedImage, int)})
+     * @param image image to render into
+     */
+    public void replay(final BufferedImage image) {
+        replay(image, MAX_BANDS);
+    }
+
+    /**
+     * Replay the recorded commands into the given image split into
+     * horizontal bands rendered in parallel: every band replays all
+     * commands in order, clipped to its rows. The caller thread renders the
+     * first band and waits for the other ones.
+     * @param image image to render into
+     * @param bands number of bands
+     */
+    public void replay(final BufferedImage image, final int bands) {
+        final int height = image.getHeight();
+        final int n = Math.max(1, Math.min(bands, height));
+
+        if (n == 1) {
+            new Band(image, 0, height).run();
+            return;
+        }
+        final ThreadPoolExecutor workers = getExecutor();
+        final ArrayList<Future<?>> tasks = new ArrayList<Future<?>>(n - 1);
+
+        for (int i = 1; i < n; i++) {
+            tasks.add(workers.submit(new Band(image,
+                (int) ((long) height * i / n),
+                (int) ((long) height * (i + 1) / n))));
+        }
+        Throwable error = null;
+        try {
+            new Band(image, 0, height / n).run();
+        } catch (RuntimeException re) {
+            error = re;
+        } catch (Error e) {
+            error = e;
+        }
+        // always wait for all bands (no pixel written after returning):
+        boolean interrupted = false;
+        for (Future<?> task : tasks) {
+            for (;;) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    if (error == null) {
+                        error = ee.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+    }
+
+    private void replayInto(final Graphics2D g) {
+        // transform and device clip of the target:
+        final AffineTransform base = g.getTransform();
+        Shape baseClip = g.getClip();
+        if (baseClip != null && !base.isIdentity()) {
+            baseClip = base.createTransformedShape(baseClip);
+        }
+        final AffineTransform identity = new AffineTransform();
+        final AffineTransform at = new AffineTransform();
+
+        State applied = null;
+
+        for (int i = 0, len = commands.size(); i < len; i++) {
+            final Command c = commands.get(i);
+
+            if (c.state != applied) {
+                applied = c.state;
+                applied.apply(g, base, baseClip, identity, at);
+            }
+            c.replay(g);
+        }
+    }
+
+    /**
+     * Band task: replay all commands into the band [y0; y1[ of the image
+     */
+    private final class Band implements Runnable {
+
+        private final BufferedImage image;
+        private final int y0, y1;
+
+        Band(final BufferedImage image, final int y0, final int y1) {
+            this.image = image;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        public void run() {
+            final Graphics2D g = image.createGraphics();
+            // each worker uses its own renderer context:
+            try (MarlinLease lease = (RenderingEngine.getInstance()
+                    instanceof MarlinRenderingEngine)
+                    ? MarlinRenderingEngine.lease(true) : null)
+            {
+                if (g instanceof SunGraphics2D) {
+                    // device clip: shape clips give the same spans as
+                    // without bands (no area intersection):
+                    ((SunGraphics2D) g).setDevClip(0, y0, image.getWidth(),
+                                                   y1 - y0);
+                } else {
+                    g.setClip(0, y0, image.getWidth(), y1 - y0);
+                }
+                replayInto(g);
+            } finally {
+                g.dispose();
+            }
+        }
+    }
+
+    private State edit() {
+        if (stateShared) {
+            state = state.copy();
+            stateShared = false;
+        }
+        return state;
+    }
+
+    private void add(final Command c) {
+        stateShared = true;
+        commands.add(c);
+    }
+
+    private void add(final int op, final Object obj, final Object arg,
+                     final int... args)
+    {
+        add(new Command(op, state, obj, arg, args, 0f, 0f));
+    }
+
+    private void addText(final int op, final Object obj,
+                         final float x, final float y)
+    {
+        add(new Command(op, state, obj, null, null, x, y));
+    }
+
+    private Graphics2D scratch() {
+        if (scratch == null) {
+            scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)
+                        .createGraphics();
+        }
+        scratch.setRenderingHints(state.hints);
+        scratch.setTransform(state.transform);
+        return scratch;
+    }
+
+    /**
+     * Copy the given shape (callers may reuse mutable shapes): rectangles
+     * and lines keep their type (fast paths), other shapes are copied into
+     * a Marlin path (cached bounds, clip culling)
+     */
+    private static Shape copy(final Shape s) {
+        if (s instanceof RectangularShape) {
+            return (Shape) ((RectangularShape) s).clone();
+        }
+        if (s instanceof Line2D) {
+            return (Shape) ((Line2D) s).clone();
+        }
+        if (s instanceof Path2D) {
+            return (Shape) ((Path2D) s).clone();
+        }
+        if (s instanceof Area) {
+            return (Shape) ((Area) s).clone();
+        }
+        if (s instanceof Polygon) {
+            final Polygon p = (Polygon) s;
+            return new Polygon(p.xpoints, p.ypoints, p.npoints);
+        }
+        if (s instanceof java.awt.geom.Path2D.Double) {
+            return new Path2D.Double(s);
+        }
+        return new Path2D.Float(s);
+    }
+
+    // --- Graphics2D ---
+
+    @Override
+    public Graphics create() {
+        stateShared = true;
+        return new RecordingGraphics2D(commands, state);
+    }
+
+    @Override
+    public void dispose() {
+        if (scratch != null) {
+            scratch.dispose();
+            scratch = null;
+        }
+    }
+
+    @Override
+    public void draw(final Shape s) {
+        add(DRAW, copy(s), null);
+    }
+
+    @Override
+    public void fill(final Shape s) {
+        add(FILL, copy(s), null);
+    }
+
+    @Override
+    public void drawLine(final int x1, final int y1, final int x2, final int y2) {
+        add(DRAW_LINE, null, null, x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawRect(final int x, final int y, final int w, final int h) {
+        add(DRAW_RECT, null, null, x, y, w, h);
+    }
+
+    @Override
+    public void fillRect(final int x, final int y, final int w, final int h) {
+        add(FILL_RECT, null, null, x, y, w, h);
+    }
+
+    @Override
+    public void clearRect(final int x, final int y, final int w, final int h) {
+        add(CLEAR_RECT, null, null, x, y, w, h);
+    }
+
+    @Override
+    public void drawRoundRect(final int x, final int y, final int w, final int h,
+                              final int arcW, final int arcH)
+    {
+        add(DRAW_ROUND_RECT, null, null, x, y, w, h, arcW, arcH);
+    }
+
+    @Override
+    public void fillRoundRect(final int x, final int y, final int w, final int h,
+                              final int arcW, final int arcH)
+    {
+        add(FILL_ROUND_RECT, null, null, x, y, w, h, arcW, arcH);
+    }
+
+    @Override
+    public void drawOval(final int x, final int y, final int w, final int h) {
+        add(DRAW_OVAL, null, null, x, y, w, h);
+    }
+
+    @Override
+    public void fillOval(final int x, final int y, final int w, final int h) {
+        add(FILL_OVAL, null, null, x, y, w, h);
+    }
+
+    @Override
+    public void drawArc(final int x, final int y, final int w, final int h,
+                        final int start, final int extent)
+    {
+        add(DRAW_ARC, null, null, x, y, w, h, start, extent);
+    }
+
+    @Override
+    public void fillArc(final int x, final int y, final int w, final int h,
+                        final int start, final int extent)
+    {
+        add(FILL_ARC, null, null, x, y, w, h, start, extent);
+    }
+
+    @Override
+    public void drawPolyline(final int[] xPoints, final int[] yPoints,
+                             final int nPoints)
+    {
+        add(DRAW_POLYLINE, copyOf(xPoints, nPoints), copyOf(yPoints, nPoints),
+            nPoints);
+    }
+
+    @Override
+    public void drawPolygon(final int[] xPoints, final int[] yPoints,
+                            final int nPoints)
+    {
+        add(DRAW_POLYGON, copyOf(xPoints, nPoints), copyOf(yPoints, nPoints),
+            nPoints);
+    }
+
+    @Override
+    public void fillPolygon(final int[] xPoints, final int[] yPoints,
+                            final int nPoints)
+    {
+        add(FILL_POLYGON, copyOf(xPoints, nPoints), copyOf(yPoints, nPoints),
+            nPoints);
+    }
+
+    private static int[] copyOf(final int[] a, final int n) {
+        // fails like the graphics pipeline if n exceeds the array length:
+        final int[] copy = new int[Math.max(0, n)];
+        System.arraycopy(a, 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    @Override
+    public void drawString(final String str, final int x, final int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(final String str, final float x, final float y) {
+        if (str == null) {
+            throw new NullPointerException("String is null");
+        }
+        addText(DRAW_STRING, str, x, y);
+    }
+
+    @Override
+    public void drawString(final AttributedCharacterIterator iterator,
+                           final int x, final int y)
+    {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(final AttributedCharacterIterator iterator,
+                           final float x, final float y)
+    {
+        if (iterator == null) {
+            throw new NullPointerException("AttributedCharacterIterator is null");
+        }
+        addText(DRAW_TEXT, new AttributedString(iterator), x, y);
+    }
+
+    @Override
+    public void drawGlyphVector(final GlyphVector gv, final float x, final float y) {
+        addText(DRAW_GLYPHS, gv, x, y);
+    }
+
+    @Override
+    public boolean drawImage(final Image img, final int x, final int y,
+                             final ImageObserver observer)
+    {
+        return drawImage(img, x, y, null, observer);
+    }
+
+    @Override
+    public boolean drawImage(final Image img, final int x, final int y,
+                             final Color bgcolor, final ImageObserver observer)
+    {
+        if (img != null) {
+            add(DRAW_IMAGE, img, bgcolor, x, y);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean drawImage(final Image img, final int x, final int y,
+                             final int width, final int height,
+                             final ImageObserver observer)
+    {
+        return drawImage(img, x, y, width, height, null, observer);
+    }
+
+    @Override
+    public boolean drawImage(final Image img, final int x, final int y,
+                             final int width, final int height,
+                             final Color bgcolor, final ImageObserver observer)
+    {
+        if (img != null) {
+            add(DRAW_IMAGE_SCALED, img, bgcolor, x, y, width, height);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean drawImage(final Image img,
+                             final int dx1, final int dy1,
+                             final int dx2, final int dy2,
+                             final int sx1, final int sy1,
+                             final int sx2, final int sy2,
+                             final ImageObserver observer)
+    {
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null,
+                         observer);
+    }
+
+    @Override
+    public boolean drawImage(final Image img,
+                             final int dx1, final int dy1,
+                             final int dx2, final int dy2,
+                             final int sx1, final int sy1,
+                             final int sx2, final int sy2,
+                             final Color bgcolor, final ImageObserver observer)
+    {
+        if (img != null) {
+            add(DRAW_IMAGE_AREA, img, bgcolor,
+                dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean drawImage(final Image img, final AffineTransform xform,
+                             final ImageObserver obs)
+    {
+        if (img != null) {
+            add(DRAW_IMAGE_XFORM, img,
+                (xform != null) ? new AffineTransform(xform) : null);
+        }
+        return true;
+    }
+
+    @Override
+    public void drawImage(final BufferedImage img, final BufferedImageOp op,
+                          final int x, final int y)
+    {
+        if (img != null) {
+            add(DRAW_IMAGE_OP, img, op, x, y);
+        }
+    }
+
+    @Override
+    public void drawRenderedImage(final RenderedImage img,
+                                  final AffineTransform xform)
+    {
+        if (img != null) {
+            add(DRAW_RENDERED, img,
+                (xform != null) ? new AffineTransform(xform) : null);
+        }
+    }
+
+    @Override
+    public void drawRenderableImage(final RenderableImage img,
+                                    final AffineTransform xform)
+    {
+        if (img != null) {
+            add(DRAW_RENDERABLE, img,
+                (xform != null) ? new AffineTransform(xform) : null);
+        }
+    }
+
+    @Override
+    public void copyArea(final int x, final int y, final int width,
+                         final int height, final int dx, final int dy)
+    {
+        throw new UnsupportedOperationException(
+            "copyArea() can not be recorded");
+    }
+
+    @Override
+    public boolean hit(final Rectangle rect, Shape s, final boolean onStroke) {
+        if (onStroke) {
+            s = state.stroke.createStrokedShape(s);
+        }
+        return state.transform.createTransformedShape(s).intersects(rect);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return scratch().getDeviceConfiguration();
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(final Font f) {
+        return scratch().getFontMetrics(f);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        final AffineTransform tx = new AffineTransform(state.transform);
+        tx.setTransform(tx.getScaleX(), tx.getShearY(),
+                        tx.getShearX(), tx.getScaleY(), 0.0, 0.0);
+
+        Object aaHint = state.hints.get(RenderingHints.KEY_TEXT_ANTIALIASING);
+        if (aaHint == null) {
+            aaHint = RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT;
+        }
+        Object fmHint = state.hints.get(RenderingHints.KEY_FRACTIONALMETRICS);
+        if (fmHint == null) {
+            fmHint = RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT;
+        }
+        return new FontRenderContext(tx, aaHint, fmHint);
+    }
+
+    // --- state ---
+
+    @Override
+    public Color getColor() {
+        return state.color;
+    }
+
+    @Override
+    public void setColor(final Color c) {
+        if (c != null) {
+            final State s = edit();
+            s.color = c;
+            s.paint = c;
+        }
+    }
+
+    @Override
+    public Paint getPaint() {
+        return state.paint;
+    }
+
+    @Override
+    public void setPaint(final Paint paint) {
+        if (paint instanceof Color) {
+            setColor((Color) paint);
+        } else if (paint != null) {
+            edit().paint = paint;
+        }
+    }
+
+    @Override
+    public void setPaintMode() {
+        final State s = edit();
+        s.composite = AlphaComposite.SrcOver;
+        s.xorColor = null;
+    }
+
+    @Override
+    public void setXORMode(final Color c) {
+        if (c == null) {
+            throw new IllegalArgumentException("null XORColor");
+        }
+        edit().xorColor = c;
+    }
+
+    @Override
+    public Composite getComposite() {
+        return state.composite;
+    }
+
+    @Override
+    public void setComposite(final Composite comp) {
+        if (comp == null) {
+            throw new IllegalArgumentException("null Composite");
+        }
+        final State s = edit();
+        s.composite = comp;
+        s.xorColor = null;
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return state.stroke;
+    }
+
+    @Override
+    public void setStroke(final Stroke s) {
+        if (s == null) {
+            throw new IllegalArgumentException("null Stroke");
+        }
+        edit().stroke = s;
+    }
+
+    @Override
+    public Font getFont() {
+        return state.font;
+    }
+
+    @Override
+    public void setFont(final Font font) {
+        if (font != null) {
+            edit().font = font;
+        }
+    }
+
+    @Override
+    public Color getBackground() {
+        return state.background;
+    }
+
+    @Override
+    public void setBackground(final Color color) {
+        edit().background = color;
+    }
+
+    @Override
+    public Object getRenderingHint(final RenderingHints.Key hintKey) {
+        return state.hints.get(hintKey);
+    }
+
+    @Override
+    public void setRenderingHint(final RenderingHints.Key hintKey,
+                                 final Object hintValue)
+    {
+        final State s = edit();
+        s.hints = (RenderingHints) s.hints.clone();
+        s.hints.put(hintKey, hintValue);
+    }
+
+    @Override
+    public void setRenderingHints(final Map<?, ?> hints) {
+        final RenderingHints rh = new RenderingHints(null);
+        rh.putAll(hints);
+        edit().hints = rh;
+    }
+
+    @Override
+    public void addRenderingHints(final Map<?, ?> hints) {
+        final State s = edit();
+        s.hints = (RenderingHints) s.hints.clone();
+        s.hints.putAll(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return (RenderingHints) state.hints.clone();
+    }
+
+    // transform (the state transform is never modified once shared):
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(state.transform);
+    }
+
+    @Override
+    public void setTransform(final AffineTransform tx) {
+        edit().transform = new AffineTransform(tx);
+    }
+
+    @Override
+    public void transform(final AffineTransform tx) {
+        final AffineTransform at = new AffineTransform(state.transform);
+        at.concatenate(tx);
+        edit().transform = at;
+    }
+
+    @Override
+    public void translate(final int x, final int y) {
+        translate((double) x, (double) y);
+    }
+
+    @Override
+    public void translate(final double tx, final double ty) {
+        final AffineTransform at = new AffineTransform(state.transform);
+        at.translate(tx, ty);
+        edit().transform = at;
+    }
+
+    @Override
+    public void rotate(final double theta) {
+        final AffineTransform at = new AffineTransform(state.transform);
+        at.rotate(theta);
+        edit().transform = at;
+    }
+
+    @Override
+    public void rotate(final double theta, final double x, final double y) {
+        final AffineTransform at = new AffineTransform(state.transform);
+        at.rotate(theta, x, y);
+        edit().transform = at;
+    }
+
+    @Override
+    public void scale(final double sx, final double sy) {
+        final AffineTransform at = new AffineTransform(state.transform);
+        at.scale(sx, sy);
+        edit().transform = at;
+    }
+
+    @Override
+    public void shear(final double shx, final double shy) {
+        final AffineTransform at = new AffineTransform(state.transform);
+        at.shear(shx, shy);
+        edit().transform = at;
+    }
+
+    // clip (stored in device space like SunGraphics2D):
+
+    @Override
+    public Shape getClip() {
+        final Shape clip = state.clip;
+        if (clip == null) {
+            return null;
+        }
+        try {
+            return state.transform.createInverse().createTransformedShape(clip);
+        } catch (NoninvertibleTransformException nte) {
+            return null;
+        }
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        final Shape clip = getClip();
+        return (clip != null) ? clip.getBounds() : null;
+    }
+
+    @Override
+    public void setClip(final Shape clip) {
+        edit().clip = (clip != null) ? toDevice(clip) : null;
+    }
+
+    @Override
+    public void setClip(final int x, final int y, final int width, final int height) {
+        setClip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clipRect(final int x, final int y, final int width, final int height) {
+        clip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clip(final Shape s) {
+        if (s == null) {
+            setClip(null);
+            return;
+        }
+        final Shape clip = toDevice(s);
+        final Shape prev = state.clip;
+
+        if (prev == null) {
+            edit().clip = clip;
+        } else if (prev instanceof Rectangle2D && clip instanceof Rectangle2D) {
+            edit().clip = ((Rectangle2D) prev).createIntersection(
+                              (Rectangle2D) clip);
+        } else {
+            final Area area = new Area(prev);
+            area.intersect(new Area(clip));
+            edit().clip = area;
+        }
+    }
+
+    private Shape toDevice(final Shape s) {
+        final AffineTransform at = state.transform;
+        final int type = at.getType();
+
+        if (type == AffineTransform.TYPE_IDENTITY) {
+            return copy(s);
+        }
+        if (s instanceof Rectangle2D && (type & ~(AffineTransform.TYPE_TRANSLATION
+                | AffineTransform.TYPE_MASK_SCALE)) == 0)
+        {
+            // keep rectangles (fast clip):
+            final Rectangle2D r = (Rectangle2D) s;
+            final double x1 = at.getScaleX() * r.getMinX() + at.getTranslateX();
+            final double y1 = at.getScaleY() * r.getMinY() + at.getTranslateY();
+            final double x2 = at.getScaleX() * r.getMaxX() + at.getTranslateX();
+            final double y2 = at.getScaleY() * r.getMaxY() + at.getTranslateY();
+            final Rectangle2D.Double d = new Rectangle2D.Double();
+            d.setFrameFromDiagonal(x1, y1, x2, y2);
+            return d;
+        }
+        return at.createTransformedShape(s);
+    }
+
+    /**
+     * Graphics state snapshot (not modified once referenced by a command)
+     */
+    private static final class State {
+
+        AffineTransform transform;
+        // device space clip or null
+        Shape clip;
+        Color color;
+        Paint paint;
+        Color background;
+        // XOR mode color or null (paint mode)
+        Color xorColor;
+        Composite composite;
+        Stroke stroke;
+        Font font;
+        RenderingHints hints;
+
+        State() {
+            transform = new AffineTransform();
+            clip = null;
+            color = Color.WHITE;
+            paint = color;
+            background = Color.BLACK;
+            xorColor = null;
+            composite = AlphaComposite.SrcOver;
+            stroke = new BasicStroke();
+            font = new Font(Font.DIALOG, Font.PLAIN, 12);
+            hints = new RenderingHints(null);
+        }
+
+        State(final State s) {
+            // immutable references (copied on write):
+            transform = s.transform;
+            clip = s.clip;
+            color = s.color;
+            paint = s.paint;
+            background = s.background;
+            xorColor = s.xorColor;
+            composite = s.composite;
+            stroke = s.stroke;
+            font = s.font;
+            hints = s.hints;
+        }
+
+        State copy() {
+            return new State(this);
+        }
+
+        void apply(final Graphics2D g, final AffineTransform base,
+                   final Shape baseClip, final AffineTransform identity,
+                   final AffineTransform at)
+        {
+            // clip in the target device space:
+            g.setTransform(identity);
+            g.setClip(baseClip);
+            if (clip != null) {
+                g.clip(base.isIdentity() ? clip : base.createTransformedShape(clip));
+            }
+            at.setTransform(base);
+            at.concatenate(transform);
+            g.setTransform(at);
+
+            g.setRenderingHints(hints);
+            g.setBackground(background);
+            g.setFont(font);
+            g.setStroke(stroke);
+            g.setColor(color);
+            if (paint != color) {
+                g.setPaint(paint);
+            }
+            if (xorColor != null) {
+                g.setXORMode(xorColor);
+            } else {
+                g.setComposite(composite);
+            }
+        }
+    }
+
+    /**
+     * Recorded drawing command
+     */
+    private static final class Command {
+
+        final int op;
+        final State state;
+        // shape, text or image
+        final Object obj;
+        // background color, transform, image op or y points
+        final Object arg;
+        final int[] args;
+        final float x, y;
+
+        Command(final int op, final State state, final Object obj,
+                final Object arg, final int[] args, final float x, final float y)
+        {
+            this.op = op;
+            this.state = state;
+            this.obj = obj;
+            this.arg = arg;
+            this.args = args;
+            this.x = x;
+            this.y = y;
+        }
+
+        void replay(final Graphics2D g) {
+            final int[] a = args;
+
+            switch (op) {
+                case DRAW:
+                    g.draw((Shape) obj);
+                    break;
+                case FILL:
+                    g.fill((Shape) obj);
+                    break;
+                case DRAW_LINE:
+                    g.drawLine(a[0], a[1], a[2], a[3]);
+                    break;
+                case DRAW_RECT:
+                    g.drawRect(a[0], a[1], a[2], a[3]);
+                    break;
+                case FILL_RECT:
+                    g.fillRect(a[0], a[1], a[2], a[3]);
+                    break;
+                case CLEAR_RECT:
+                    g.clearRect(a[0], a[1], a[2], a[3]);
+                    break;
+                case DRAW_ROUND_RECT:
+                    g.drawRoundRect(a[0], a[1], a[2], a[3], a[4], a[5]);
+                    break;
+                case FILL_ROUND_RECT:
+                    g.fillRoundRect(a[0], a[1], a[2], a[3], a[4], a[5]);
+                    break;
+                case DRAW_OVAL:
+                    g.drawOval(a[0], a[1], a[2], a[3]);
+                    break;
+                case FILL_OVAL:
+                    g.fillOval(a[0], a[1], a[2], a[3]);
+                    break;
+                case DRAW_ARC:
+                    g.drawArc(a[0], a[1], a[2], a[3], a[4], a[5]);
+                    break;
+                case FILL_ARC:
+                    g.fillArc(a[0], a[1], a[2], a[3], a[4], a[5]);
+                    break;
+                case DRAW_POLYLINE:
+                    g.drawPolyline((int[]) obj, (int[]) arg, a[0]);
+                    break;
+                case DRAW_POLYGON:
+                    g.drawPolygon((int[]) obj, (int[]) arg, a[0]);
+                    break;
+                case FILL_POLYGON:
+                    g.fillPolygon((int[]) obj, (int[]) arg, a[0]);
+                    break;
+                case DRAW_STRING:
+                    g.drawString((String) obj, x, y);
+                    break;
+                case DRAW_TEXT:
+                    g.drawString(((AttributedString) obj).getIterator(), x, y);
+                    break;
+                case DRAW_GLYPHS:
+                    g.drawGlyphVector((GlyphVector) obj, x, y);
+                    break;
+                case DRAW_IMAGE:
+                    g.drawImage((Image) obj, a[0], a[1], (Color) arg, null);
+                    break;
+                case DRAW_IMAGE_SCALED:
+                    g.drawImage((Image) obj, a[0], a[1], a[2], a[3],
+                                (Color) arg, null);
+                    break;
+                case DRAW_IMAGE_AREA:
+                    g.drawImage((Image) obj, a[0], a[1], a[2], a[3],
+                                a[4], a[5], a[6], a[7], (Color) arg, null);
+                    break;
+                case DRAW_IMAGE_XFORM:
+                    g.drawImage((Image) obj, (AffineTransform) arg, null);
+                    break;
+                case DRAW_IMAGE_OP:
+                    g.drawImage((BufferedImage) obj, (BufferedImageOp) arg,
+                                a[0], a[1]);
+                    break;
+                case DRAW_RENDERED:
+                    g.drawRenderedImage((RenderedImage) obj,
+                                        (AffineTransform) arg);
+                    break;
+                case DRAW_RENDERABLE:
+                    g.drawRenderableImage((RenderableImage) obj,
+                                          (AffineTransform) arg);
+                    break;
+                default:
+            }
+        }
+    }
+}
@@ -24,28 +24,59 @@
  */
 package org.marlin.pisces;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import org.marlin.pisces.stats.StripedCounter;
+import static org.marlin.pisces.MarlinUtils.logException;
 import static org.marlin.pisces.MarlinUtils.logInfo;
 
 public final class ArrayCache implements MarlinConst {
 
-    final static int BUCKETS = 4;
-    final static int MIN_ARRAY_SIZE = 4096;
+    final static int BUCKETS = MarlinProperties.getArrayCacheBuckets();
+    final static int MIN_ARRAY_SIZE = MarlinProperties.getArrayCacheMinSize();
     final static int MAX_ARRAY_SIZE;
     final static int MASK_CLR_1 = ~1;
     // threshold to grow arrays only by (3/2) instead of 2
     final static int THRESHOLD_ARRAY_SIZE;
     final static int[] ARRAY_SIZES = new int[BUCKETS];
     // dirty byte array sizes
-    final static int MIN_DIRTY_BYTE_ARRAY_SIZE = 32 * 2048; // 32px x 2048px
+    final static int MIN_DIRTY_BYTE_ARRAY_SIZE
+        = MarlinProperties.getArrayCacheMinDirtyByteSize();
     final static int MAX_DIRTY_BYTE_ARRAY_SIZE;
     final static int[] DIRTY_BYTE_ARRAY_SIZES = new int[BUCKETS];
+    // shared array pools (all threads) or null if disabled
+    final static SharedArrayPool<int[]>[] SHARED_INT_ARRAYS;
+    final static SharedArrayPool<int[]>[] SHARED_DIRTY_INT_ARRAYS;
+    final static SharedArrayPool<float[]>[] SHARED_DIRTY_FLOAT_ARRAYS;
+    final static SharedArrayPool<byte[]>[] SHARED_DIRTY_BYTE_ARRAYS;
+    // max number of shared oversize arrays
+    private final static int OVERSIZE_CAPACITY = 16;
+    // shared oversize arrays (LRU) or null if disabled
+    final static OversizeArrayPool OVERSIZE_ARRAYS;
+    // footprint of shared arrays (bytes) bounded by ARRAY_CACHE_BUDGET
+    private final static AtomicLong sharedBytes = new AtomicLong();
+    // incremented when caches are trimmed to discard per-context caches
+    static volatile int trimEpoch = 0;
+    // true once the idle trimmer thread is started
+    private static volatile boolean trimmerStarted = false;
+    // last time (ms) a renderer context released its arrays
+    private static volatile long lastAccess = System.currentTimeMillis();
     // stats
-    private static int resizeInt = 0;
-    private static int resizeDirtyInt = 0;
-    private static int resizeDirtyFloat = 0;
-    private static int resizeDirtyByte = 0;
-    private static int oversize = 0;
+    private static final StripedCounter resizeInt = new StripedCounter();
+    private static final StripedCounter resizeDirtyInt = new StripedCounter();
+    private static final StripedCounter resizeDirtyFloat = new StripedCounter();
+    private static final StripedCounter resizeDirtyByte = new StripedCounter();
+    private static final StripedCounter oversize = new StripedCounter();
+    private static final StripedCounter trims = new StripedCounter();
 
     static {
         // initialize buckets for int/float arrays
@@ -58,7 +89,7 @@ public final class ArrayCache implements MarlinConst {
                 logInfo("arraySize[" + i + "]: " + arraySize);
             }
         }
-        MAX_ARRAY_SIZE = arraySize >> 2;
+        MAX_ARRAY_SIZE = ARRAY_SIZES[BUCKETS - 1];
 
         /* initialize buckets for dirty byte arrays
          (large AA chunk = 32 x 2048 pixels) */
@@ -71,11 +102,39 @@ public final class ArrayCache implements MarlinConst {
                 logInfo("dirty arraySize[" + i + "]: " + arraySize);
             }
         }
-        MAX_DIRTY_BYTE_ARRAY_SIZE = arraySize >> 1;
+        MAX_DIRTY_BYTE_ARRAY_SIZE = DIRTY_BYTE_ARRAY_SIZES[BUCKETS - 1];
 
         // threshold to grow arrays only by (3/2) instead of 2
         THRESHOLD_ARRAY_SIZE = Math.max(2 * 1024 * 1024, MAX_ARRAY_SIZE);
 
+        if (USE_SHARED_ARRAY_CACHE) {
+            SHARED_INT_ARRAYS = newSharedPools("int", ARRAY_SIZES, 4);
+            SHARED_DIRTY_INT_ARRAYS = newSharedPools("dirty int",
+                                                     ARRAY_SIZES, 4);
+            SHARED_DIRTY_FLOAT_ARRAYS = newSharedPools("dirty float",
+                                                       ARRAY_SIZES, 4);
+            SHARED_DIRTY_BYTE_ARRAYS = newSharedPools("dirty byte",
+                                                      DIRTY_BYTE_ARRAY_SIZES, 1);
+            OVERSIZE_ARRAYS = new OversizeArrayPool(OVERSIZE_CAPACITY);
+
+            // the idle trimmer is started once shared arrays are pooled:
+            if (ARRAY_CACHE_HEAP_THRESHOLD > 0.0) {
+                AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                    @Override
+                    public Object run() {
+                        registerHeapThreshold();
+                        return null;
+                    }
+                });
+            }
+        } else {
+            SHARED_INT_ARRAYS = null;
+            SHARED_DIRTY_INT_ARRAYS = null;
+            SHARED_DIRTY_FLOAT_ARRAYS = null;
+            SHARED_DIRTY_BYTE_ARRAYS = null;
+            OVERSIZE_ARRAYS = null;
+        }
+
         if (DO_STATS || DO_MONITORS) {
             logInfo("ArrayCache.BUCKETS        = " + BUCKETS);
             logInfo("ArrayCache.MIN_ARRAY_SIZE = " + MIN_ARRAY_SIZE);
@@ -90,6 +149,17 @@ public final class ArrayCache implements MarlinConst {
                     + Arrays.toString(DIRTY_BYTE_ARRAY_SIZES));
             logInfo("ArrayCache.THRESHOLD_ARRAY_SIZE = "
                     + THRESHOLD_ARRAY_SIZE);
+            logInfo("ArrayCache.USE_SHARED_ARRAY_CACHE = "
+                    + USE_SHARED_ARRAY_CACHE);
+            logInfo("ArrayCache.ARRAY_CACHE_LOCAL_SIZE = "
+                    + ARRAY_CACHE_LOCAL_SIZE);
+            logInfo("ArrayCache.ARRAY_CACHE_SHARED_SIZE = "
+                    + ARRAY_CACHE_SHARED_SIZE);
+            logInfo("ArrayCache.ARRAY_CACHE_BUDGET = " + ARRAY_CACHE_BUDGET);
+            logInfo("ArrayCache.ARRAY_CACHE_IDLE_TIME = "
+                    + ARRAY_CACHE_IDLE_TIME);
+            logInfo("ArrayCache.ARRAY_CACHE_HEAP_THRESHOLD = "
+                    + ARRAY_CACHE_HEAP_THRESHOLD);
         }
     }
 
@@ -97,35 +167,295 @@ public final class ArrayCache implements MarlinConst {
         // Utility class
     }
 
-    static synchronized void incResizeInt() {
-        resizeInt++;
+    @SuppressWarnings("unchecked")
+    private static <A> SharedArrayPool<A>[] newSharedPools(final String name,
+                                                            final int[] sizes,
+                                                            final int elementBytes)
+    {
+        final SharedArrayPool<A>[] pools = new SharedArrayPool[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            pools[i] = new SharedArrayPool<A>(name, sizes[i], elementBytes,
+                                              ARRAY_CACHE_SHARED_SIZE);
+        }
+        return pools;
     }
 
-    static synchronized void incResizeDirtyInt() {
-        resizeDirtyInt++;
+    private static synchronized void startIdleTrimmer() {
+        if (trimmerStarted) {
+            return;
+        }
+        trimmerStarted = true;
+
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            @Override
+            public Object run() {
+                newIdleTrimmer().start();
+                return null;
+            }
+        });
     }
 
-    static synchronized void incResizeDirtyFloat() {
-        resizeDirtyFloat++;
+    private static Thread newIdleTrimmer() {
+        final Thread t = new Thread("MarlinArrayCacheTrimmer") {
+            @Override
+            public void run() {
+                long lastTrim = 0L;
+                for (;;) {
+                    try {
+                        Thread.sleep(Math.max(1000L, ARRAY_CACHE_IDLE_TIME >> 1));
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    final long last = lastAccess;
+                    // trim once per idle period:
+                    if (last != lastTrim && System.currentTimeMillis() - last
+                                            >= ARRAY_CACHE_IDLE_TIME)
+                    {
+                        lastTrim = last;
+                        trim("idle");
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        // avoid class loader leaks:
+        t.setContextClassLoader(null);
+        return t;
     }
 
-    static synchronized void incResizeDirtyByte() {
-        resizeDirtyByte++;
+    private static void registerHeapThreshold() {
+        try {
+            boolean enabled = false;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                // do not override thresholds set by the application:
+                if (pool.getType() == MemoryType.HEAP
+                        && pool.isUsageThresholdSupported()
+                        && pool.getUsageThreshold() == 0L)
+                {
+                    final long max = pool.getUsage().getMax();
+                    if (max > 0L) {
+                        pool.setUsageThreshold(
+                            (long) (max * ARRAY_CACHE_HEAP_THRESHOLD));
+                        enabled = true;
+                    }
+                }
+            }
+            if (enabled) {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+                    .addNotificationListener(new NotificationListener() {
+                        @Override
+                        public void handleNotification(final Notification n,
+                                                       final Object handback)
+                        {
+                            if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED
+                                    .equals(n.getType()))
+                            {
+                                trim("heap threshold");
+                            }
+                        }
+                    }, null, null);
+            }
+        } catch (RuntimeException re) {
+            logException("ArrayCache: unable to register heap threshold", re);
+        }
+    }
+
+    /**
+     * Drop all shared arrays and make renderer contexts discard their own
+     * array caches (on their next use)
+     * @param reason trim reason (debugging purposes)
+     */
+    static void trim(final String reason) {
+        if (USE_SHARED_ARRAY_CACHE) {
+            clear(SHARED_INT_ARRAYS);
+            clear(SHARED_DIRTY_INT_ARRAYS);
+            clear(SHARED_DIRTY_FLOAT_ARRAYS);
+            clear(SHARED_DIRTY_BYTE_ARRAYS);
+            OVERSIZE_ARRAYS.clear();
+        }
+        trimEpoch++;
+
+        if (DO_STATS) {
+            incTrims();
+            logInfo("ArrayCache: trimmed (" + reason + ")");
+        }
     }
 
-    static synchronized void incOversize() {
-        oversize++;
+    private static void clear(final SharedArrayPool<?>[] pools) {
+        for (SharedArrayPool<?> pool : pools) {
+            pool.clear();
+        }
+    }
+
+    /**
+     * Record renderer activity (idle trimming)
+     */
+    static void touch() {
+        final long now = System.currentTimeMillis();
+        // avoid writing the shared field on every call:
+        if (now - lastAccess > 1000L) {
+            lastAccess = now;
+        }
+    }
+
+    /**
+     * Reserve the given footprint in the shared memory budget, evicting
+     * least recently used oversize arrays if needed
+     * @param bytes array footprint
+     * @return false if the budget is exhausted
+     */
+    static boolean reserveShared(final long bytes) {
+        if (tryReserveShared(bytes)) {
+            return true;
+        }
+        OVERSIZE_ARRAYS.evict(bytes);
+        return tryReserveShared(bytes);
+    }
+
+    private static boolean tryReserveShared(final long bytes) {
+        for (;;) {
+            final long cur = sharedBytes.get();
+            final long next = cur + bytes;
+            if (next > ARRAY_CACHE_BUDGET) {
+                return false;
+            }
+            if (sharedBytes.compareAndSet(cur, next)) {
+                if (ARRAY_CACHE_IDLE_TIME > 0 && !trimmerStarted) {
+                    startIdleTrimmer();
+                }
+                return true;
+            }
+        }
+    }
+
+    static void releaseShared(final long bytes) {
+        sharedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Return an oversize array from the shared pool
+     * @param kind array kind (see OversizeArrayPool)
+     * @param length needed length
+     * @return array or null if none is available (or disabled)
+     */
+    static Object getOversize(final int kind, final int length) {
+        return (OVERSIZE_ARRAYS != null) ? OVERSIZE_ARRAYS.get(kind, length)
+                                         : null;
+    }
+
+    /**
+     * Return an oversize array into the shared pool (if enabled)
+     * @param kind array kind (see OversizeArrayPool)
+     * @param array array to store
+     * @param length array length
+     * @param elementBytes size of one array element in bytes
+     */
+    static void putOversize(final int kind, final Object array,
+                            final int length, final int elementBytes)
+    {
+        if (OVERSIZE_ARRAYS != null) {
+            OVERSIZE_ARRAYS.put(kind, array, length,
+                                ((long) length) * elementBytes);
+        }
+    }
+
+    /**
+     * Return the oversize array length to allocate (even to be reused
+     * by clean int arrays)
+     * @param length needed length
+     * @return array length
+     */
+    static int getOversizeLength(final int length) {
+        return (length + 1) & MASK_CLR_1;
+    }
+
+    /**
+     * Return the shared array pool for the given bucket
+     * @param pools shared array pools (may be null)
+     * @param bucket bucket index
+     * @return shared array pool or null if disabled
+     */
+    static <A> SharedArrayPool<A> getSharedPool(final SharedArrayPool<A>[] pools,
+                                                final int bucket)
+    {
+        return (pools != null) ? pools[bucket] : null;
+    }
+
+    static void incResizeInt() {
+        resizeInt.increment();
+    }
+
+    static void incResizeDirtyInt() {
+        resizeDirtyInt.increment();
+    }
+
+    static void incResizeDirtyFloat() {
+        resizeDirtyFloat.increment();
+    }
+
+    static void incResizeDirtyByte() {
+        resizeDirtyByte.increment();
+    }
+
+    static void incOversize() {
+        oversize.increment();
+    }
+
+    static void incTrims() {
+        trims.increment();
+    }
+
+    static long getResizeCount() {
+        return resizeInt.sum() + resizeDirtyInt.sum() + resizeDirtyFloat.sum()
+               + resizeDirtyByte.sum();
+    }
+
+    static long getOversizeCount() {
+        return oversize.sum();
+    }
+
+    static long getTrimCount() {
+        return trims.sum();
+    }
+
+    static long getSharedFootprint() {
+        return sharedBytes.get();
+    }
+
+    static void resetStats() {
+        resizeInt.reset();
+        resizeDirtyInt.reset();
+        resizeDirtyFloat.reset();
+        resizeDirtyByte.reset();
+        oversize.reset();
+        trims.reset();
     }
 
     static void dumpStats() {
-        if (resizeInt != 0 || resizeDirtyInt != 0 || resizeDirtyFloat != 0
-                || resizeDirtyByte != 0 || oversize != 0) {
+        if (resizeInt.sum() != 0L || resizeDirtyInt.sum() != 0L
+                || resizeDirtyFloat.sum() != 0L || resizeDirtyByte.sum() != 0L
+                || oversize.sum() != 0L) {
             logInfo("ArrayCache: int resize: " + resizeInt
                     + " - dirty int resize: " + resizeDirtyInt
                     + " - dirty float resize: " + resizeDirtyFloat
                     + " - dirty byte resize: " + resizeDirtyByte
                     + " - oversize: " + oversize);
         }
+        if (USE_SHARED_ARRAY_CACHE) {
+            dumpStats(SHARED_INT_ARRAYS);
+            dumpStats(SHARED_DIRTY_INT_ARRAYS);
+            dumpStats(SHARED_DIRTY_FLOAT_ARRAYS);
+            dumpStats(SHARED_DIRTY_BYTE_ARRAYS);
+            OVERSIZE_ARRAYS.dumpStats();
+            logInfo("ArrayCache: shared footprint: " + sharedBytes.get()
+                    + " / " + ARRAY_CACHE_BUDGET + " bytes - trims: " + trims);
+        }
+    }
+
+    private static void dumpStats(final SharedArrayPool<?>[] pools) {
+        for (SharedArrayPool<?> pool : pools) {
+            pool.dumpStats();
+        }
     }
 
     // small methods used a lot (to be inlined / optimized by hotspot)
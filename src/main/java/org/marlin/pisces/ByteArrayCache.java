@@ -33,21 +33,32 @@ final class ByteArrayCache implements MarlinConst {
 
     private final int arraySize;
     private final ArrayDeque<byte[]> byteArrays;
+    // shared tier (all threads) or null
+    private final SharedArrayPool<byte[]> shared;
     // stats
     private int getOp = 0;
     private int createOp = 0;
     private int returnOp = 0;
+    private int sharedGetOp = 0;
+    private int sharedPutOp = 0;
+
+    long getFootprint() {
+        return (long) byteArrays.size() * arraySize;
+    }
 
     void dumpStats() {
         if (getOp > 0) {
             logInfo("ByteArrayCache[" + arraySize + "]: get: " + getOp
                     + " created: " + createOp + " - returned: " + returnOp
+                    + " - shared get: " + sharedGetOp
+                    + " put: " + sharedPutOp
                     + " :: cache size: " + byteArrays.size());
         }
     }
 
-    ByteArrayCache(final int arraySize) {
+    ByteArrayCache(final int arraySize, final SharedArrayPool<byte[]> shared) {
         this.arraySize = arraySize;
+        this.shared = shared;
         // small but enough: almost 1 cache line
         this.byteArrays = new ArrayDeque<byte[]>(6);
     }
@@ -58,10 +69,20 @@ final class ByteArrayCache implements MarlinConst {
         }
 
         // use cache:
-        final byte[] array = byteArrays.pollLast();
+        byte[] array = byteArrays.pollLast();
         if (array != null) {
             return array;
         }
+        // borrow from the shared tier:
+        if (shared != null) {
+            array = shared.poll();
+            if (array != null) {
+                if (DO_STATS) {
+                    sharedGetOp++;
+                }
+                return array;
+            }
+        }
 
         if (DO_STATS) {
             createOp++;
@@ -87,7 +108,7 @@ final class ByteArrayCache implements MarlinConst {
         }
 
         // fill cache:
-        byteArrays.addLast(array);
+        addLast(array);
     }
 
     void putArray(final byte[] array, final int length,
@@ -105,6 +126,20 @@ final class ByteArrayCache implements MarlinConst {
         fill(array, fromIndex, toIndex, BYTE_0);
 
         // fill cache:
+        addLast(array);
+    }
+
+    private void addLast(final byte[] array) {
+        if (shared != null && byteArrays.size() >= ARRAY_CACHE_LOCAL_SIZE) {
+            // local tier is full: give it to other threads
+            if (shared.offer(array)) {
+                if (DO_STATS) {
+                    sharedPutOp++;
+                }
+                return;
+            }
+            // shared tier is full: keep it (as before the shared tier)
+        }
         byteArrays.addLast(array);
     }
 
@@ -91,6 +91,15 @@ final class Dasher implements sun.awt.geom.PathConsumer2D, MarlinConst {
         curCurvepts = new float[8 * 2];
     }
 
+    /**
+     * Return the footprint of initial arrays (in bytes)
+     * @return footprint in bytes
+     */
+    long getFootprint() {
+        return 4L * (dashes_initial.length + firstSegmentsBuffer_initial.length
+                     + curCurvepts.length);
+    }
+
     /**
      * Initialize the <code>Dasher</code>.
      *
@@ -217,7 +226,7 @@ final class Dasher implements sun.awt.geom.PathConsumer2D, MarlinConst {
                 float[] buf = firstSegmentsBuffer;
                 if (segIdx + len  > buf.length) {
                     if (DO_STATS) {
-                        RendererContext.stats.stat_array_dasher_firstSegmentsBuffer
+                        rdrCtx.stats.stat_array_dasher_firstSegmentsBuffer
                             .add(segIdx + len);
                     }
                     firstSegmentsBuffer = buf
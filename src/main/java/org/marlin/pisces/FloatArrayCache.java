@@ -33,21 +33,32 @@ final class FloatArrayCache implements MarlinConst {
 
     private final int arraySize;
     private final ArrayDeque<float[]> floatArrays;
+    // shared tier (all threads) or null
+    private final SharedArrayPool<float[]> shared;
     // stats
     private int getOp = 0;
     private int createOp = 0;
     private int returnOp = 0;
+    private int sharedGetOp = 0;
+    private int sharedPutOp = 0;
+
+    long getFootprint() {
+        return 4L * floatArrays.size() * arraySize;
+    }
 
     void dumpStats() {
         if (getOp > 0) {
             logInfo("FloatArrayCache[" + arraySize + "]: get: " + getOp
                     + " created: " + createOp + " - returned: " + returnOp
+                    + " - shared get: " + sharedGetOp
+                    + " put: " + sharedPutOp
                     + " :: cache size: " + floatArrays.size());
         }
     }
 
-    FloatArrayCache(final int arraySize) {
+    FloatArrayCache(final int arraySize, final SharedArrayPool<float[]> shared) {
         this.arraySize = arraySize;
+        this.shared = shared;
         // small but enough: almost 1 cache line
         this.floatArrays = new ArrayDeque<float[]>(6);
     }
@@ -57,12 +68,21 @@ final class FloatArrayCache implements MarlinConst {
             getOp++;
         }
 
-        // use cache
-        final float[] array = floatArrays.pollLast();
-
+        // use cache:
+        float[] array = floatArrays.pollLast();
         if (array != null) {
             return array;
         }
+        // borrow from the shared tier:
+        if (shared != null) {
+            array = shared.poll();
+            if (array != null) {
+                if (DO_STATS) {
+                    sharedGetOp++;
+                }
+                return array;
+            }
+        }
 
         if (DO_STATS) {
             createOp++;
@@ -88,7 +108,7 @@ final class FloatArrayCache implements MarlinConst {
         }
 
         // fill cache:
-        floatArrays.addLast(array);
+        addLast(array);
     }
 
     void putArray(final float[] array, final int length,
@@ -106,6 +126,20 @@ final class FloatArrayCache implements MarlinConst {
         fill(array, fromIndex, toIndex, 0f);
 
         // fill cache:
+        addLast(array);
+    }
+
+    private void addLast(final float[] array) {
+        if (shared != null && floatArrays.size() >= ARRAY_CACHE_LOCAL_SIZE) {
+            // local tier is full: give it to other threads
+            if (shared.offer(array)) {
+                if (DO_STATS) {
+                    sharedPutOp++;
+                }
+                return;
+            }
+            // shared tier is full: keep it (as before the shared tier)
+        }
         floatArrays.addLast(array);
     }
 
@@ -33,21 +33,32 @@ final class IntArrayCache implements MarlinConst {
 
     private final int arraySize;
     private final ArrayDeque<int[]> intArrays;
+    // shared tier (all threads) or null
+    private final SharedArrayPool<int[]> shared;
     // stats
     private int getOp = 0;
     private int createOp = 0;
     private int returnOp = 0;
+    private int sharedGetOp = 0;
+    private int sharedPutOp = 0;
+
+    long getFootprint() {
+        return 4L * intArrays.size() * arraySize;
+    }
 
     void dumpStats() {
         if (getOp > 0) {
             logInfo("IntArrayCache[" + arraySize + "]: get: " + getOp
                     + " created: " + createOp + " - returned: " + returnOp
+                    + " - shared get: " + sharedGetOp
+                    + " put: " + sharedPutOp
                     + " :: cache size: " + intArrays.size());
         }
     }
 
-    IntArrayCache(final int arraySize) {
+    IntArrayCache(final int arraySize, final SharedArrayPool<int[]> shared) {
         this.arraySize = arraySize;
+        this.shared = shared;
         // small but enough: almost 1 cache line
         this.intArrays = new ArrayDeque<int[]>(6);
     }
@@ -58,10 +69,20 @@ final class IntArrayCache implements MarlinConst {
         }
 
         // use cache:
-        final int[] array = intArrays.pollLast();
+        int[] array = intArrays.pollLast();
         if (array != null) {
             return array;
         }
+        // borrow from the shared tier:
+        if (shared != null) {
+            array = shared.poll();
+            if (array != null) {
+                if (DO_STATS) {
+                    sharedGetOp++;
+                }
+                return array;
+            }
+        }
 
         if (DO_STATS) {
             createOp++;
@@ -87,7 +108,7 @@ final class IntArrayCache implements MarlinConst {
         }
 
         // fill cache:
-        intArrays.addLast(array);
+        addLast(array);
     }
 
     void putArray(final int[] array, final int length,
@@ -105,6 +126,20 @@ final class IntArrayCache implements MarlinConst {
         fill(array, fromIndex, toIndex, 0);
 
         // fill cache:
+        addLast(array);
+    }
+
+    private void addLast(final int[] array) {
+        if (shared != null && intArrays.size() >= ARRAY_CACHE_LOCAL_SIZE) {
+            // local tier is full: give it to other threads
+            if (shared.offer(array)) {
+                if (DO_STATS) {
+                    sharedPutOp++;
+                }
+                return;
+            }
+            // shared tier is full: keep it (as before the shared tier)
+        }
         intArrays.addLast(array);
     }
 
@@ -38,6 +38,11 @@ public final class MarlinCache implements MarlinConst {
     // 2048 (pixelSize) alpha values (width) x 32 rows (tile) = 64K
     static final int INITIAL_CHUNK_ARRAY = TILE_SIZE * INITIAL_PIXEL_DIM;
 
+    // minimum row length to use run-length encoding
+    static final int RLE_MIN_WIDTH = 64;
+    // minimum average run length to use run-length encoding
+    static final int RLE_MIN_RUN = 16;
+
     // The alpha map used by this object (taken out of our map cache) to convert
     // pixel coverage counts gotten from MarlinCache (which are in the range
     // [0, maxalpha]) into alpha values, which are in [0,256).
@@ -59,6 +64,16 @@ public final class MarlinCache implements MarlinConst {
     // current position in rowAAChunk array
     int rowAAChunkPos;
 
+    // RLE rows: index of the current run in rowAARLE[] or -1 (raw row)
+    final int[] rowAARLEIndex = new int[TILE_SIZE];
+    // RLE rows: first pixel of the current run
+    final int[] rowAARLEx = new int[TILE_SIZE];
+    // 1D dirty array containing runs (packed) as (length << 8 | alpha byte)
+    // for RLE rows (long constant runs like filled interiors)
+    int[] rowAARLE;
+    // current position in rowAARLE array
+    int rowAARLEPos;
+
     // touchedTile[i] is the sum of all the alphas in the tile with
     // x=j*TILE_SIZE+bboxX0.
     private int[] touchedTile;
@@ -68,23 +83,39 @@ public final class MarlinCache implements MarlinConst {
 
     // large cached rowAAChunk (dirty)
     // +1 to avoid recycling in widenDirtyIntArray()
-    final byte[] rowAAChunk_initial = new byte[INITIAL_CHUNK_ARRAY + 1]; // 64K
+    final byte[] rowAAChunk_initial; // 64K (8K if slim)
     // large cached touchedTile (dirty)
     final int[] touchedTile_initial = new int[INITIAL_ARRAY]; // 1 tile line
+    // large cached rowAARLE (dirty)
+    // +1 to avoid recycling in widenDirtyIntArray()
+    final int[] rowAARLE_initial = new int[INITIAL_ARRAY + 1];
 
     int tileMin, tileMax;
 
     MarlinCache(final RendererContext rdrCtx) {
         this.rdrCtx = rdrCtx;
 
+        rowAAChunk_initial = new byte[((rdrCtx.slim) ? TILE_SIZE * INITIAL_ARRAY
+                                       : INITIAL_CHUNK_ARRAY) + 1];
+
         rowAAChunk  = rowAAChunk_initial;
         touchedTile = touchedTile_initial;
+        rowAARLE    = rowAARLE_initial;
 
         // tile used marks:
         tileMin = Integer.MAX_VALUE;
         tileMax = Integer.MIN_VALUE;
     }
 
+    /**
+     * Return the footprint of initial arrays (in bytes)
+     * @return footprint in bytes
+     */
+    long getFootprint() {
+        return rowAAChunk_initial.length + 4L * touchedTile_initial.length
+               + 4L * rowAARLE_initial.length + 20L * TILE_SIZE;
+    }
+
     void init(int minx, int miny, int maxx, int maxy) {
         // assert maxy >= miny && maxx >= minx;
         bboxX0 = minx;
@@ -97,7 +128,7 @@ public final class MarlinCache implements MarlinConst {
 
         if (nxTiles > INITIAL_ARRAY) {
             if (DO_STATS) {
-                RendererContext.stats.stat_array_marlincache_touchedTile
+                rdrCtx.stats.stat_array_marlincache_touchedTile
                     .add(nxTiles);
             }
             touchedTile = rdrCtx.getIntArray(nxTiles);
@@ -121,6 +152,10 @@ public final class MarlinCache implements MarlinConst {
             rdrCtx.putIntArray(touchedTile, 0, 0); // already zero filled
             touchedTile = touchedTile_initial;
         }
+        if (rowAARLE != rowAARLE_initial) {
+            rdrCtx.putDirtyIntArray(rowAARLE);
+            rowAARLE = rowAARLE_initial;
+        }
     }
 
     void resetTileLine(final int pminY) {
@@ -129,14 +164,15 @@ public final class MarlinCache implements MarlinConst {
 
         // reset current pos
         if (DO_STATS) {
-            RendererContext.stats.stat_cache_rowAAChunk.add(rowAAChunkPos);
+            rdrCtx.stats.stat_cache_rowAAChunk.add(rowAAChunkPos);
         }
         rowAAChunkPos = 0;
+        rowAARLEPos = 0;
 
         // Reset touchedTile:
         if (tileMin != Integer.MAX_VALUE) {
             if (DO_STATS) {
-                RendererContext.stats.stat_cache_tiles.add(tileMax - tileMin);
+                rdrCtx.stats.stat_cache_tiles.add(tileMax - tileMin);
             }
             // clean only dirty touchedTile:
             if (tileMax == 1) {
@@ -177,7 +213,7 @@ public final class MarlinCache implements MarlinConst {
                    final int px0, final int px1)
     {
         if (DO_MONITORS) {
-            RendererContext.stats.mon_rdr_copyAARow.start();
+            rdrCtx.stats.mon_rdr_copyAARow.start();
         }
 
         // skip useless pixels above boundary
@@ -205,14 +241,14 @@ public final class MarlinCache implements MarlinConst {
         // ensure rowAAChunk capacity:
         if (_rowAAChunk.length < pos + len) {
             if (DO_STATS) {
-                RendererContext.stats.stat_array_marlincache_rowAAChunk
+                rdrCtx.stats.stat_array_marlincache_rowAAChunk
                     .add(pos + len);
             }
             rowAAChunk = _rowAAChunk
                 = rdrCtx.widenDirtyByteArray(_rowAAChunk, pos, pos + len);
         }
         if (DO_STATS) {
-            RendererContext.stats.stat_cache_rowAA.add(len);
+            rdrCtx.stats.stat_cache_rowAA.add(len);
         }
 
         // rowAA contains only alpha values for range[x0; x1[
@@ -227,8 +263,11 @@ public final class MarlinCache implements MarlinConst {
         // fix offset in rowAAChunk:
         final int off = pos - from;
 
+        // number of value changes (runs):
+        int runs = 0;
+
         // compute alpha sum into rowAA:
-        for (int x = from, val = 0; x < to; x++) {
+        for (int x = from, val = 0, prev = -1; x < to; x++) {
             // alphaRow is in [0; MAX_COVERAGE]
             val += alphaRow[x]; // [from; to[
 
@@ -253,10 +292,21 @@ public final class MarlinCache implements MarlinConst {
                 // update touchedTile
                 touchedLine[x >> _TILE_SIZE_LG] += val;
             }
+            if (USE_RLE && val != prev) {
+                prev = val;
+                runs++;
+            }
         }
 
-        // update current position:
-        rowAAChunkPos = pos + len;
+        if (USE_RLE && len >= RLE_MIN_WIDTH && runs * RLE_MIN_RUN <= len) {
+            // long constant runs: encode the row and reuse its raw bytes
+            encodeAARow(row, px0, pos, len, runs);
+        } else {
+            rowAARLEIndex[row] = -1;
+
+            // update current position:
+            rowAAChunkPos = pos + len;
+        }
 
         // update tile used marks:
         int tx = from >> _TILE_SIZE_LG; // inclusive
@@ -277,8 +327,56 @@ public final class MarlinCache implements MarlinConst {
         IntArrayCache.fill(alphaRow, from, px1 - bboxX0, 0);
 
         if (DO_MONITORS) {
-            RendererContext.stats.mon_rdr_copyAARow.stop();
+            rdrCtx.stats.mon_rdr_copyAARow.stop();
+        }
+    }
+
+    /**
+     * Encode the given raw row (rowAAChunk) as runs into rowAARLE
+     * @param row row index in the tile line
+     * @param px0 first pixel inclusive x0
+     * @param pos row position in rowAAChunk
+     * @param len row length
+     * @param runs maximum number of runs
+     */
+    private void encodeAARow(final int row, final int px0,
+                             final int pos, final int len, final int runs)
+    {
+        int r = rowAARLEPos;
+
+        int[] _rowAARLE = rowAARLE;
+        // ensure rowAARLE capacity:
+        if (_rowAARLE.length < r + runs) {
+            if (DO_STATS) {
+                rdrCtx.stats.stat_array_marlincache_rowAARLE.add(r + runs);
+            }
+            rowAARLE = _rowAARLE
+                = rdrCtx.widenDirtyIntArray(_rowAARLE, r, r + runs);
+        }
+        rowAARLEIndex[row] = r;
+        rowAARLEx[row] = px0;
+
+        final byte[] _rowAAChunk = rowAAChunk;
+        final int end = pos + len;
+
+        byte cur = _rowAAChunk[pos];
+        int start = pos;
+
+        for (int i = pos + 1; i < end; i++) {
+            final byte val = _rowAAChunk[i];
+            if (val != cur) {
+                _rowAARLE[r++] = ((i - start) << 8) | (cur & 0xFF);
+                cur = val;
+                start = i;
+            }
+        }
+        _rowAARLE[r++] = ((end - start) << 8) | (cur & 0xFF);
+
+        if (DO_STATS) {
+            rdrCtx.stats.stat_cache_rowAARLE.add(r - rowAARLEPos);
         }
+        rowAARLEPos = r;
+        // rowAAChunk position is left unchanged (raw bytes are reused)
     }
 
     int alphaSumInTile(final int x) {
@@ -41,8 +41,25 @@ interface MarlinConst {
     static final boolean DO_STATS = MarlinProperties.isDoStats();
     // do monitors
     static final boolean DO_MONITORS = MarlinProperties.isDoMonitors();
+    // monitor sampling period (1 call or shape in N)
+    static final int MONITOR_SAMPLING = MarlinProperties.getMonitorSampling();
+    // sample whole shapes instead of monitor calls
+    static final boolean MONITOR_SAMPLE_SHAPES
+        = MarlinProperties.isMonitorSampleShapes();
     // do checks
     static final boolean DO_CHECKS = MarlinProperties.isDoChecks();
+    // number of slowest shapes recorded (0 means disabled)
+    static final int SLOW_SHAPES = MarlinProperties.getSlowShapes();
+    // record slowest shapes
+    static final boolean RECORD_SLOW_SHAPES = (SLOW_SHAPES != 0);
+    // directory where slowest shapes are saved at shutdown (or null)
+    static final String SLOW_SHAPES_DIR = MarlinProperties.getSlowShapesDir();
+    // file where rendered shapes are captured (or null)
+    static final String CAPTURE_FILE = MarlinProperties.getCaptureFile();
+    // capture rendered shapes
+    static final boolean DO_CAPTURE = (CAPTURE_FILE != null);
+    // maximum size of the capture file (MB)
+    static final int CAPTURE_MAX_SIZE = MarlinProperties.getCaptureMaxSize();
 
     // do AA range checks: disable when algorithm / code is stable
     static final boolean DO_AA_RANGE_CHECK = false;
@@ -65,6 +82,33 @@ interface MarlinConst {
 
     // flag to use line simplifier
     static final boolean USE_SIMPLIFIER = MarlinProperties.isUseSimplifier();
+    // use RLE coverage rows in MarlinCache
+    static final boolean USE_RLE = MarlinProperties.isUseRLE();
+
+    // flag to reject shapes (and skip subpaths) outside the clip
+    static final boolean USE_CLIP_CULLING = MarlinProperties.isUseClipCulling();
+
+    // flag to create slim renderer contexts (small initial arrays)
+    static final boolean USE_SLIM_CONTEXT = MarlinProperties.isUseSlimContext();
+
+    // flag to use the shared array cache (second tier for all threads)
+    static final boolean USE_SHARED_ARRAY_CACHE
+        = MarlinProperties.isUseSharedArrayCache();
+    // arrays kept per context and per bucket (shared array cache enabled)
+    static final int ARRAY_CACHE_LOCAL_SIZE
+        = MarlinProperties.getArrayCacheLocalSize();
+    // arrays kept per bucket in the shared array cache
+    static final int ARRAY_CACHE_SHARED_SIZE
+        = MarlinProperties.getArrayCacheSharedSize();
+    // memory budget of the shared array cache (bytes)
+    static final long ARRAY_CACHE_BUDGET
+        = MarlinProperties.getArrayCacheBudget() * 1024L * 1024L;
+    // idle time before trimming array caches (ms, 0 means disabled)
+    static final int ARRAY_CACHE_IDLE_TIME
+        = MarlinProperties.getArrayCacheIdleTime();
+    // heap usage ratio to trim array caches (0 means disabled)
+    static final double ARRAY_CACHE_HEAP_THRESHOLD
+        = MarlinProperties.getArrayCacheHeapThreshold();
 
     // flag to enable logs related bounds checks
     static final boolean DO_LOG_BOUNDS = false;
@@ -82,6 +126,8 @@ interface MarlinConst {
     static final int INITIAL_LARGE_ARRAY  = 8192;
     static final int INITIAL_ARRAY_16K    = 16384;
     static final int INITIAL_ARRAY_32K    = 32768;
+    // segments per block (bulk path iteration)
+    static final int BLOCK_SEGMENTS       = 256;
     // alpha row dimension
     static final int INITIAL_AA_ARRAY     = INITIAL_PIXEL_DIM;
 
@@ -110,4 +156,14 @@ interface MarlinConst {
 
     public static final int TILE_SIZE_LG = MarlinProperties.getTileSize_Log2();
     public static final int TILE_SIZE = 1 << TILE_SIZE_LG; // 32 by default
+
+    // maximum number of pipelining helper threads (0 means disabled)
+    static final int PIPELINE_THREADS = MarlinProperties.getPipelineThreads();
+
+    // tile width modes:
+    static final int TILE_WIDTH_FIXED = 0;
+    static final int TILE_WIDTH_BAND = 1;
+    static final int TILE_WIDTH_ADAPTIVE = 2;
+    // tile width mode (fixed by default)
+    static final int TILE_WIDTH_MODE = MarlinProperties.getTileWidthMode();
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lease of one RendererContext bound to the current thread for a batch of
+ * rendering operations:
+ * <pre>
+ * try (MarlinLease lease = MarlinRenderingEngine.lease()) {
+ *     g2d.draw(...);
+ *     g2d.fill(...);
+ * }
+ * </pre>
+ *
+ * While the lease is open, every operation performed by the owner thread
+ * uses the leased context and the pipeline state attached to it (tiles,
+ * composite contexts) instead of looking it up again. Leases are registered
+ * in a small slot table keyed by thread (no ThreadLocal), overflowing into a
+ * map when the slot table is crowded, so they also suit request-scoped or
+ * virtual-thread servers: the context is returned to the engine when the
+ * lease is closed.
+ *
+ * Note: a lease must be closed by its owner thread.
+ */
+public final class MarlinLease implements AutoCloseable {
+
+    // registry size (power of 2)
+    private static final int REGISTRY_SIZE = 256;
+    private static final int REGISTRY_MASK = REGISTRY_SIZE - 1;
+    // max probes to find a slot
+    private static final int MAX_PROBES = 8;
+    // leases bound to their owner thread
+    private static final AtomicReferenceArray<MarlinLease> registry
+        = new AtomicReferenceArray<MarlinLease>(REGISTRY_SIZE);
+    // leases bound when their probed slots are taken
+    private static final ConcurrentHashMap<Thread, MarlinLease> overflow
+        = new ConcurrentHashMap<Thread, MarlinLease>();
+    // slot of leases bound in the overflow map
+    private static final int OVERFLOW_SLOT = -2;
+    // number of bound leases (fast path when none)
+    private static final AtomicInteger boundLeases = new AtomicInteger();
+    // number of leases in the overflow map (fast path when none)
+    private static final AtomicInteger overflowLeases = new AtomicInteger();
+    // total number of leases bound in the overflow map
+    private static final AtomicLong overflowBinds = new AtomicLong();
+
+    // owner thread
+    private final Thread owner;
+    // leased context (null once closed)
+    private RendererContext rdrCtx;
+    // registry slot, OVERFLOW_SLOT or -1 if unbound
+    private int slot = -1;
+    // true if the leased context is used by a rendering operation
+    boolean inUse = false;
+
+    MarlinLease(final RendererContext rdrCtx) {
+        this.owner = Thread.currentThread();
+        this.rdrCtx = rdrCtx;
+        rdrCtx.lease = this;
+        bind();
+    }
+
+    private static int probe(final Thread thread) {
+        // spread thread ids (fibonacci hashing):
+        return ((int) thread.getId() * 0x9E3779B9) >>> 16;
+    }
+
+    private void bind() {
+        // only one lease bound per thread (nested leases are unbound):
+        if (current() != null) {
+            return;
+        }
+        final int start = probe(owner);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final int idx = (start + i) & REGISTRY_MASK;
+            if (registry.get(idx) == null
+                    && registry.compareAndSet(idx, null, this))
+            {
+                slot = idx;
+                boundLeases.incrementAndGet();
+                return;
+            }
+        }
+        // probed slots taken: bind it in the overflow map
+        overflow.put(owner, this);
+        slot = OVERFLOW_SLOT;
+        overflowLeases.incrementAndGet();
+        overflowBinds.incrementAndGet();
+        boundLeases.incrementAndGet();
+    }
+
+    /**
+     * Return the lease bound to the current thread
+     * @return lease or null if none
+     */
+    public static MarlinLease current() {
+        if (boundLeases.get() == 0) {
+            return null;
+        }
+        final Thread thread = Thread.currentThread();
+        final int start = probe(thread);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final MarlinLease lease = registry.get((start + i) & REGISTRY_MASK);
+            if (lease != null && lease.owner == thread) {
+                return lease;
+            }
+        }
+        return (overflowLeases.get() != 0) ? overflow.get(thread) : null;
+    }
+
+    /**
+     * Return the number of leases bound to their thread
+     * @return number of bound leases
+     */
+    static int getBoundCount() {
+        return boundLeases.get();
+    }
+
+    /**
+     * Return the total number of leases bound in the overflow map (slot
+     * table crowded)
+     * @return number of overflow binds
+     */
+    static long getOverflowCount() {
+        return overflowBinds.get();
+    }
+
+    /**
+     * Claim the leased context of the current thread for one rendering
+     * operation
+     * @return leased context or null if none (or already in use)
+     */
+    static RendererContext claimContext() {
+        final MarlinLease lease = current();
+        if (lease != null && !lease.inUse) {
+            lease.inUse = true;
+            return lease.rdrCtx;
+        }
+        return null;
+    }
+
+    /**
+     * Return true if this lease is still open
+     * @return true if open
+     */
+    public boolean isOpen() {
+        return rdrCtx != null;
+    }
+
+    /**
+     * Return the memory footprint of the leased context: initial arrays and
+     * arrays kept in its own array caches
+     * @return footprint in bytes or 0 if closed
+     */
+    public long getFootprint() {
+        return (rdrCtx != null) ? rdrCtx.getFootprint() : 0L;
+    }
+
+    /**
+     * Return the pipeline state attached to the leased context
+     * @param key attachment key
+     * @return attached value or null
+     */
+    public Object getAttachment(final Object key) {
+        return (rdrCtx != null) ? rdrCtx.getAttachment(key) : null;
+    }
+
+    /**
+     * Attach pipeline state to the leased context: it is kept with the
+     * context and reused by later leases
+     * @param key attachment key
+     * @param value value to attach
+     */
+    public void setAttachment(final Object key, final Object value) {
+        if (rdrCtx != null) {
+            rdrCtx.setAttachment(key, value);
+        }
+    }
+
+    /**
+     * Unbind this lease and return the leased context to the engine
+     */
+    @Override
+    public void close() {
+        final RendererContext ctx = rdrCtx;
+        if (ctx == null) {
+            return;
+        }
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("lease not owned by the current thread");
+        }
+        rdrCtx = null;
+        if (slot == OVERFLOW_SLOT) {
+            overflow.remove(owner);
+            overflowLeases.decrementAndGet();
+            slot = -1;
+            boundLeases.decrementAndGet();
+        } else if (slot != -1) {
+            registry.set(slot, null);
+            slot = -1;
+            boundLeases.decrementAndGet();
+        }
+        ctx.lease = null;
+        // a pending operation returns the context itself:
+        if (!inUse) {
+            MarlinRenderingEngine.releaseRendererContext(ctx);
+        }
+    }
+}
@@ -41,6 +41,20 @@ public final class MarlinProperties {
         return getBoolean("sun.java2d.renderer.useThreadLocal", "false");
     }
 
+    /**
+     * Return the maximum number of pooled renderer contexts when ThreadLocal
+     * is disabled (rounded up to a power of 2)
+     *
+     * @return 1 < pool size < 1024 (2 x available processors by default)
+     */
+    public static int getContextPoolSize() {
+        final int size = getInteger("sun.java2d.renderer.contextPoolSize",
+                Math.min(2 * Runtime.getRuntime().availableProcessors(), 1024),
+                1, 1024);
+        return (Integer.bitCount(size) == 1) ? size
+               : (Integer.highestOneBit(size) << 1);
+    }
+
     /**
      * Return the initial pixel size used to define initial arrays
      * (tile AA chunk, alpha line, buckets)
@@ -81,12 +95,210 @@ public final class MarlinProperties {
         return getInteger("sun.java2d.renderer.tileSize_log2", 5, 3, 8);
     }
 
+    /**
+     * Return the tile width mode:
+     * "fixed" (square tiles), "band" (tiles span the shape width) or
+     * "adaptive" (about 4 tiles per tile line)
+     *
+     * @return MarlinConst.TILE_WIDTH_* constant ("fixed" by default)
+     */
+    public static int getTileWidthMode() {
+        final String mode = AccessController.doPrivileged(
+            new GetPropertyAction("sun.java2d.renderer.tileWidthMode", "fixed"));
+        switch (mode) {
+            case "band":
+                return MarlinConst.TILE_WIDTH_BAND;
+            case "adaptive":
+                return MarlinConst.TILE_WIDTH_ADAPTIVE;
+            default:
+                logInfo("Invalid value for sun.java2d.renderer.tileWidthMode = "
+                        + mode + "; expected fixed, band or adaptive !");
+            case "fixed":
+                return MarlinConst.TILE_WIDTH_FIXED;
+        }
+    }
+
     // optimisation parameters
 
+    /**
+     * Return true to store coverage rows with long constant runs as
+     * run-length encoded rows in MarlinCache
+     *
+     * @return true if RLE rows are enabled (true by default)
+     */
+    public static boolean isUseRLE() {
+        return getBoolean("sun.java2d.renderer.useRLE", "true");
+    }
+
     public static boolean isUseSimplifier() {
         return getBoolean("sun.java2d.renderer.useSimplifier", "false");
     }
 
+    public static boolean isUseClipCulling() {
+        return getBoolean("sun.java2d.renderer.useClipCulling", "true");
+    }
+
+    /**
+     * Return the number of array cache buckets
+     *
+     * @return 1 < buckets < 8 (4 by default)
+     */
+    public static int getArrayCacheBuckets() {
+        return getInteger("sun.java2d.renderer.arrayCacheBuckets", 4, 1, 8);
+    }
+
+    /**
+     * Return the smallest int / float array cache bucket size
+     * (next buckets are 4 times larger)
+     *
+     * @return 256 < min size < 65536 (4096 by default)
+     */
+    public static int getArrayCacheMinSize() {
+        return getInteger("sun.java2d.renderer.arrayCacheMinSize",
+                          4096, 256, 64 * 1024);
+    }
+
+    /**
+     * Return the smallest dirty byte array cache bucket size
+     * (next buckets are 2 times larger)
+     *
+     * @return 1024 < min size < 4M (64K by default ie 32 x 2048 pixels)
+     */
+    public static int getArrayCacheMinDirtyByteSize() {
+        return getInteger("sun.java2d.renderer.arrayCacheMinDirtyByteSize",
+                          32 * 2048, 1024, 4 * 1024 * 1024);
+    }
+
+    /**
+     * Return true to create slim renderer contexts: small initial arrays
+     * (larger arrays are taken from the array caches when needed)
+     *
+     * @return true if slim contexts are enabled (false by default)
+     */
+    public static boolean isUseSlimContext() {
+        return getBoolean("sun.java2d.renderer.useSlimContext", "false");
+    }
+
+    public static boolean isUseSharedArrayCache() {
+        return getBoolean("sun.java2d.renderer.useSharedArrayCache", "true");
+    }
+
+    /**
+     * Return the number of arrays kept per context and per bucket before
+     * returning them to the shared array cache (arrays are kept anyway when
+     * the shared array cache is full)
+     *
+     * @return 0 <= local size < 16 (2 by default)
+     */
+    public static int getArrayCacheLocalSize() {
+        return getInteger("sun.java2d.renderer.arrayCacheLocalSize", 2, 0, 16);
+    }
+
+    /**
+     * Return the number of arrays kept per bucket in the shared array cache
+     * (rounded up to a power of 2)
+     *
+     * @return 1 < shared size < 64 (4 by default)
+     */
+    public static int getArrayCacheSharedSize() {
+        final int size = getInteger("sun.java2d.renderer.arrayCacheSharedSize",
+                                    4, 1, 64);
+        return (Integer.bitCount(size) == 1) ? size
+               : (Integer.highestOneBit(size) << 1);
+    }
+
+    /**
+     * Return the memory budget (in megabytes) of the shared array cache
+     * (shared buckets and oversize arrays)
+     *
+     * @return 1 < budget < 4096 (32 by default)
+     */
+    public static int getArrayCacheBudget() {
+        return getInteger("sun.java2d.renderer.arrayCacheBudget", 32, 1, 4096);
+    }
+
+    /**
+     * Return the idle time (in milliseconds) after which array caches are
+     * trimmed (the trimmer thread starts once the shared array cache holds
+     * arrays)
+     *
+     * @return 0 (disabled) < idle time < 3600000 (60000 by default)
+     */
+    public static int getArrayCacheIdleTime() {
+        return getInteger("sun.java2d.renderer.arrayCacheIdleTime",
+                          60000, 0, 3600 * 1000);
+    }
+
+    /**
+     * Return the heap usage ratio (of old generation pools) above which
+     * array caches are trimmed
+     *
+     * @return 0.0 (disabled) < threshold < 1.0 (disabled by default)
+     */
+    public static double getArrayCacheHeapThreshold() {
+        return getDouble("sun.java2d.renderer.arrayCacheHeapThreshold",
+                         0.0, 0.0, 1.0);
+    }
+
+    /**
+     * Return true to register the renderer MBean (JMX)
+     *
+     * @return true if the MBean is registered (false by default)
+     */
+    public static boolean isUseJMX() {
+        return getBoolean("sun.java2d.renderer.useJMX", "false");
+    }
+
+    /**
+     * Return the maximum number of helper threads rendering the next tile
+     * lines of large shapes while the caller composites (pipelining)
+     *
+     * @return 0 (disabled) < threads < 256 (disabled by default)
+     */
+    public static int getPipelineThreads() {
+        return getInteger("sun.java2d.renderer.pipelineThreads", 0, 0, 256);
+    }
+
+    /**
+     * Return the number of slowest shapes recorded (top N)
+     *
+     * @return 0 (disabled) < count < 1024 (disabled by default)
+     */
+    public static int getSlowShapes() {
+        return getInteger("sun.java2d.renderer.slowShapes", 0, 0, 1024);
+    }
+
+    /**
+     * Return the directory where the slowest shapes are saved at shutdown
+     * or through JMX (MarlinRendererMXBean.saveSlowShapes)
+     *
+     * @return directory or null (not saved by default)
+     */
+    public static String getSlowShapesDir() {
+        return AccessController.doPrivileged(
+                   new GetPropertyAction("sun.java2d.renderer.slowShapesDir"));
+    }
+
+    /**
+     * Return the file where rendered shapes are captured (binary log)
+     *
+     * @return file or null (capture disabled by default)
+     */
+    public static String getCaptureFile() {
+        return AccessController.doPrivileged(
+                   new GetPropertyAction("sun.java2d.renderer.captureFile"));
+    }
+
+    /**
+     * Return the maximum size of the capture file (MB): capture stops
+     * once reached
+     *
+     * @return 1 < size < 65536 (1024 by default)
+     */
+    public static int getCaptureMaxSize() {
+        return getInteger("sun.java2d.renderer.captureMaxSize", 1024, 1, 65536);
+    }
+
     // debugging parameters
 
     public static boolean isDoStats() {
@@ -101,6 +313,31 @@ public final class MarlinProperties {
         return getBoolean("sun.java2d.renderer.doChecks", "false");
     }
 
+    /**
+     * Return the monitor sampling period: only 1 call (or shape) in N is
+     * timed and totals are extrapolated (rounded up to a power of 2).
+     * Timed calls are chosen at random intervals (N on average) so periodic
+     * call patterns do not bias the extrapolated totals
+     *
+     * @return 1 (every call timed) < period < 65536 (1 by default)
+     */
+    public static int getMonitorSampling() {
+        final int period = getInteger("sun.java2d.renderer.monitorSampling",
+                                      1, 1, 65536);
+        return (Integer.bitCount(period) == 1) ? period
+               : (Integer.highestOneBit(period) << 1);
+    }
+
+    /**
+     * Return true to sample whole shapes (all monitors of 1 shape in N)
+     * instead of individual monitor calls
+     *
+     * @return true if shapes are sampled (false by default)
+     */
+    public static boolean isMonitorSampleShapes() {
+        return getBoolean("sun.java2d.renderer.monitorSampleShapes", "false");
+    }
+
     // logging parameters
 
     public static boolean isUseLogger() {
@@ -121,6 +358,27 @@ public final class MarlinProperties {
         return getDouble("sun.java2d.renderer.gamma", 1.0, 0.5, 4.0);
     }
 
+    /**
+     * Return the color space used by BlendComposite to mix colors:
+     * "gamma" (gamma corrected RGB), "lab" (CIE Lab) or "lch" (CIE LCH)
+     *
+     * @return blend color space ("gamma" by default)
+     */
+    public static String getBlendColorSpace() {
+        final String cs = AccessController.doPrivileged(
+            new GetPropertyAction("sun.java2d.renderer.blendColorSpace", "gamma"));
+        switch (cs) {
+            case "gamma":
+            case "lab":
+            case "lch":
+                return cs;
+            default:
+                logInfo("Invalid value for sun.java2d.renderer.blendColorSpace = "
+                        + cs + "; expected gamma, lab or lch !");
+                return "gamma";
+        }
+    }
+
     // system property utilities
     static boolean getBoolean(final String key, final String def) {
         return Boolean.valueOf(AccessController.doPrivileged(
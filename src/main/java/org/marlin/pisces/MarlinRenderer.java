@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.marlin.pisces;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import static org.marlin.pisces.MarlinUtils.logException;
+import org.marlin.pisces.stats.Monitor;
+import org.marlin.pisces.stats.StatLong;
+
+/**
+ * Marlin renderer MBean (see MarlinRendererMXBean)
+ */
+final class MarlinRenderer implements MarlinRendererMXBean, MarlinConst {
+
+    static final String OBJECT_NAME = "org.marlin.pisces:type=MarlinRenderer";
+
+    private MarlinRenderer() {
+        super();
+    }
+
+    /**
+     * Register the renderer MBean into the platform MBean server
+     */
+    static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new MarlinRenderer(), new ObjectName(OBJECT_NAME));
+        } catch (JMException | RuntimeException e) {
+            logException("MarlinRenderer: unable to register MBean", e);
+        }
+    }
+
+    @Override
+    public Map<String, String> getSettings() {
+        final Map<String, String> map = new LinkedHashMap<String, String>();
+        map.put("sun.java2d.renderer.useThreadLocal",
+                String.valueOf(MarlinProperties.isUseThreadLocal()));
+        map.put("sun.java2d.renderer.contextPoolSize",
+                String.valueOf(MarlinProperties.getContextPoolSize()));
+        map.put("sun.java2d.renderer.useSlimContext",
+                String.valueOf(USE_SLIM_CONTEXT));
+        map.put("sun.java2d.renderer.pixelsize",
+                String.valueOf(INITIAL_PIXEL_DIM));
+        map.put("sun.java2d.renderer.subPixel_log2_X",
+                String.valueOf(SUBPIXEL_LG_POSITIONS_X));
+        map.put("sun.java2d.renderer.subPixel_log2_Y",
+                String.valueOf(SUBPIXEL_LG_POSITIONS_Y));
+        map.put("sun.java2d.renderer.tileSize_log2",
+                String.valueOf(TILE_SIZE_LG));
+        map.put("sun.java2d.renderer.tileWidthMode",
+                MarlinTileGenerator.getTileWidthModeName());
+        map.put("sun.java2d.renderer.useSimplifier",
+                String.valueOf(USE_SIMPLIFIER));
+        map.put("sun.java2d.renderer.useClipCulling",
+                String.valueOf(USE_CLIP_CULLING));
+        map.put("sun.java2d.renderer.useRLE", String.valueOf(USE_RLE));
+        map.put("sun.java2d.renderer.pipelineThreads",
+                String.valueOf(PIPELINE_THREADS));
+        map.put("sun.java2d.renderer.useSharedArrayCache",
+                String.valueOf(USE_SHARED_ARRAY_CACHE));
+        map.put("sun.java2d.renderer.arrayCacheBuckets",
+                String.valueOf(ArrayCache.BUCKETS));
+        map.put("sun.java2d.renderer.arrayCacheLocalSize",
+                String.valueOf(ARRAY_CACHE_LOCAL_SIZE));
+        map.put("sun.java2d.renderer.arrayCacheSharedSize",
+                String.valueOf(ARRAY_CACHE_SHARED_SIZE));
+        map.put("sun.java2d.renderer.arrayCacheBudget",
+                String.valueOf(ARRAY_CACHE_BUDGET));
+        map.put("sun.java2d.renderer.arrayCacheIdleTime",
+                String.valueOf(ARRAY_CACHE_IDLE_TIME));
+        map.put("sun.java2d.renderer.arrayCacheHeapThreshold",
+                String.valueOf(ARRAY_CACHE_HEAP_THRESHOLD));
+        map.put("sun.java2d.renderer.doStats", String.valueOf(DO_STATS));
+        map.put("sun.java2d.renderer.doMonitors", String.valueOf(DO_MONITORS));
+        map.put("sun.java2d.renderer.monitorSampling",
+                String.valueOf(MONITOR_SAMPLING));
+        map.put("sun.java2d.renderer.monitorSampleShapes",
+                String.valueOf(MONITOR_SAMPLE_SHAPES));
+        map.put("sun.java2d.renderer.doChecks", String.valueOf(DO_CHECKS));
+        map.put("sun.java2d.renderer.slowShapes", String.valueOf(SLOW_SHAPES));
+        map.put("sun.java2d.renderer.slowShapesDir",
+                String.valueOf(SLOW_SHAPES_DIR));
+        map.put("sun.java2d.renderer.captureFile",
+                String.valueOf(CAPTURE_FILE));
+        map.put("sun.java2d.renderer.captureMaxSize",
+                String.valueOf(CAPTURE_MAX_SIZE));
+        map.put("sun.java2d.renderer.useJMX", "true");
+        map.put("sun.java2d.renderer.gamma",
+                String.valueOf(MarlinProperties.getGamma()));
+        map.put("sun.java2d.renderer.blendColorSpace",
+                MarlinProperties.getBlendColorSpace());
+        return map;
+    }
+
+    @Override
+    public int getCreatedContextCount() {
+        return RendererContext.getCreatedCount();
+    }
+
+    @Override
+    public int getLiveContextCount() {
+        return RendererContext.getLiveCount();
+    }
+
+    @Override
+    public int getPooledContextCount() {
+        final RendererContextPool pool = MarlinRenderingEngine.rdrCtxPool;
+        return (pool != null) ? pool.size() : 0;
+    }
+
+    @Override
+    public int getLeasedContextCount() {
+        return MarlinLease.getBoundCount();
+    }
+
+    @Override
+    public Map<String, Long> getContextPoolCounters() {
+        final Map<String, Long> map = new LinkedHashMap<String, Long>();
+        final RendererContextPool pool = MarlinRenderingEngine.rdrCtxPool;
+        if (pool != null) {
+            map.put("hits", pool.getHitCount());
+            map.put("misses", pool.getMissCount());
+            map.put("contended", pool.getContendedCount());
+            map.put("discarded", pool.getDiscardCount());
+        }
+        map.put("leaseOverflows", MarlinLease.getOverflowCount());
+        return map;
+    }
+
+    @Override
+    public long getArrayCacheFootprint() {
+        return ArrayCache.getSharedFootprint();
+    }
+
+    @Override
+    public long getArrayCacheBudget() {
+        return ARRAY_CACHE_BUDGET;
+    }
+
+    @Override
+    public Map<String, Integer> getArrayCacheOccupancy() {
+        final Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+        if (USE_SHARED_ARRAY_CACHE) {
+            addOccupancy(map, ArrayCache.SHARED_INT_ARRAYS);
+            addOccupancy(map, ArrayCache.SHARED_DIRTY_INT_ARRAYS);
+            addOccupancy(map, ArrayCache.SHARED_DIRTY_FLOAT_ARRAYS);
+            addOccupancy(map, ArrayCache.SHARED_DIRTY_BYTE_ARRAYS);
+        }
+        return map;
+    }
+
+    private static void addOccupancy(final Map<String, Integer> map,
+                                     final SharedArrayPool<?>[] pools)
+    {
+        for (SharedArrayPool<?> pool : pools) {
+            map.put(pool.getName(), pool.size());
+        }
+    }
+
+    @Override
+    public long getArrayResizeCount() {
+        return ArrayCache.getResizeCount();
+    }
+
+    @Override
+    public long getArrayOversizeCount() {
+        return ArrayCache.getOversizeCount();
+    }
+
+    @Override
+    public long getArrayCacheTrimCount() {
+        return ArrayCache.getTrimCount();
+    }
+
+    @Override
+    public String[] getStatistics() {
+        final ArrayList<String> list = new ArrayList<String>();
+        for (StatLong stat : RendererStats.snapshot()) {
+            if (!(stat instanceof Monitor) && stat.count != 0L) {
+                list.add(stat.toString());
+            }
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    @Override
+    public Map<String, Long> getMonitorTimings() {
+        final Map<String, Long> map = new LinkedHashMap<String, Long>();
+        for (StatLong stat : RendererStats.snapshot()) {
+            if (stat instanceof Monitor) {
+                map.put(stat.name, ((Monitor) stat).getEstimatedSum());
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getMonitorCounts() {
+        final Map<String, Long> map = new LinkedHashMap<String, Long>();
+        for (StatLong stat : RendererStats.snapshot()) {
+            if (stat instanceof Monitor) {
+                map.put(stat.name, ((Monitor) stat).calls);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String[] getSlowShapes() {
+        return SlowShapeRecorder.getSlowShapes();
+    }
+
+    @Override
+    public int saveSlowShapes() {
+        if (SLOW_SHAPES_DIR == null) {
+            return 0;
+        }
+        return SlowShapeRecorder.save(SLOW_SHAPES_DIR);
+    }
+
+    @Override
+    public void resetCounters() {
+        RendererStats.reset();
+        ArrayCache.resetStats();
+        SlowShapeRecorder.reset();
+
+        final RendererContextPool pool = MarlinRenderingEngine.rdrCtxPool;
+        if (pool != null) {
+            pool.resetStats();
+        }
+    }
+
+    @Override
+    public void trimCaches() {
+        ArrayCache.trim("jmx");
+    }
+}
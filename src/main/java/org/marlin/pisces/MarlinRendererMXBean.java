@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.marlin.pisces;
+
+import java.util.Map;
+
+/**
+ * Management interface of the Marlin renderer registered as
+ * "org.marlin.pisces:type=MarlinRenderer" if the system property
+ * sun.java2d.renderer.useJMX is true.
+ *
+ * Statistics and monitor timings are only available if doStats /
+ * doMonitors are enabled.
+ */
+public interface MarlinRendererMXBean {
+
+    /**
+     * @return effective renderer settings (property name to value)
+     */
+    Map<String, String> getSettings();
+
+    /**
+     * @return number of created renderer contexts
+     */
+    int getCreatedContextCount();
+
+    /**
+     * @return number of live renderer contexts (created and not yet
+     * collected)
+     */
+    int getLiveContextCount();
+
+    /**
+     * @return number of renderer contexts in the pool (ThreadLocal disabled)
+     */
+    int getPooledContextCount();
+
+    /**
+     * @return number of leased renderer contexts bound to their thread
+     */
+    int getLeasedContextCount();
+
+    /**
+     * @return renderer context pool hits / misses / contended accesses /
+     * discarded contexts (statistics enabled) and leases bound in the
+     * overflow map of the lease registry
+     */
+    Map<String, Long> getContextPoolCounters();
+
+    /**
+     * @return memory used by the shared array cache (bytes)
+     */
+    long getArrayCacheFootprint();
+
+    /**
+     * @return memory budget of the shared array cache (bytes)
+     */
+    long getArrayCacheBudget();
+
+    /**
+     * @return number of arrays kept per shared array cache bucket
+     */
+    Map<String, Integer> getArrayCacheOccupancy();
+
+    /**
+     * @return number of array resizes (widening)
+     */
+    long getArrayResizeCount();
+
+    /**
+     * @return number of oversize arrays (larger than cache buckets)
+     */
+    long getArrayOversizeCount();
+
+    /**
+     * @return number of array cache trims
+     */
+    long getArrayCacheTrimCount();
+
+    /**
+     * @return aggregated statistics (statistics enabled)
+     */
+    String[] getStatistics();
+
+    /**
+     * @return total time (ns) per monitor, extrapolated if monitors are
+     * sampled (monitors enabled)
+     */
+    Map<String, Long> getMonitorTimings();
+
+    /**
+     * @return number of calls per monitor (monitors enabled)
+     */
+    Map<String, Long> getMonitorCounts();
+
+    /**
+     * @return descriptions of the slowest shapes (slowest first) if
+     * sun.java2d.renderer.slowShapes is set
+     */
+    String[] getSlowShapes();
+
+    /**
+     * Save the slowest shapes as text files into the directory given by
+     * sun.java2d.renderer.slowShapesDir (no other directory can be written)
+     *
+     * @return number of saved shapes (0 if the directory is not set)
+     */
+    int saveSlowShapes();
+
+    /**
+     * Reset all counters, statistics, monitors and slowest shapes
+     * (approximate while rendering: concurrent updates may be lost)
+     */
+    void resetCounters();
+
+    /**
+     * Drop the arrays kept in array caches
+     */
+    void trimCaches();
+}
@@ -27,10 +27,12 @@ package org.marlin.pisces;
 import java.awt.BasicStroke;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.PathIterator;
 import java.lang.ref.Reference;
 import java.security.AccessController;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.security.PrivilegedAction;
+import org.marlin.geom.BulkPathIterator;
 import org.marlin.geom.Path2D;
 import static org.marlin.pisces.MarlinUtils.logInfo;
 import sun.awt.geom.PathConsumer2D;
@@ -49,6 +51,8 @@ public class MarlinRenderingEngine extends RenderingEngine
 
     private static final float MIN_PEN_SIZE = 1f / NORM_SUBPIXELS;
 
+    private static final double SQRT_2 = Math.sqrt(2.0);
+
     /**
      * Public constructor
      */
@@ -158,6 +162,9 @@ public class MarlinRenderingEngine extends RenderingEngine
 
         final RendererContext rdrCtx = getRendererContext();
         try {
+            if (DO_CAPTURE) {
+                rdrCtx.capture.strokeTo(src, at, bs, thin, normalize, antialias);
+            }
             strokeTo(rdrCtx, src, at, bs, thin, norm, antialias, consumer);
         } finally {
             // recycle the RendererContext instance
@@ -338,7 +345,7 @@ public class MarlinRenderingEngine extends RenderingEngine
                         newDashes = rdrCtx.dasher.dashes_initial;
                     } else {
                         if (DO_STATS) {
-                            RendererContext.stats.stat_array_dasher_firstSegmentsBuffer
+                            rdrCtx.stats.stat_array_dasher_firstSegmentsBuffer
                                 .add(dashLen);
                         }
                         newDashes = rdrCtx.getDirtyFloatArray(dashLen);
@@ -454,9 +461,11 @@ public class MarlinRenderingEngine extends RenderingEngine
         }
     }
 
-    static abstract class NormalizingPathIterator implements PathIterator {
+    static abstract class NormalizingPathIterator implements BulkPathIterator {
 
         private PathIterator src;
+        // bulk source or null
+        private BulkPathIterator bulkSrc;
 
         // the adjustment applied to the current position.
         private float curx_adjust, cury_adjust;
@@ -464,13 +473,18 @@ public class MarlinRenderingEngine extends RenderingEngine
         private float movx_adjust, movy_adjust;
 
         private final float[] tmp;
+        // renderer context statistics
+        private final RendererStats stats;
 
-        NormalizingPathIterator(final float[] tmp) {
+        NormalizingPathIterator(final float[] tmp, final RendererStats stats) {
             this.tmp = tmp;
+            this.stats = stats;
         }
 
         final NormalizingPathIterator init(final PathIterator src) {
             this.src = src;
+            this.bulkSrc = (src instanceof BulkPathIterator)
+                           ? (BulkPathIterator) src : null;
             return this; // fluent API
         }
 
@@ -481,36 +495,85 @@ public class MarlinRenderingEngine extends RenderingEngine
         final void dispose() {
             // free source PathIterator:
             this.src = null;
+            this.bulkSrc = null;
         }
 
         @Override
         public final int currentSegment(final float[] coords) {
             if (DO_MONITORS) {
-                RendererContext.stats.mon_npi_currentSegment.start();
+                stats.mon_npi_currentSegment.start();
             }
-            int lastCoord;
             final int type = src.currentSegment(coords);
 
+            normSegment(type, coords, 0);
+
+            if (DO_MONITORS) {
+                stats.mon_npi_currentSegment.stop();
+            }
+            return type;
+        }
+
+        @Override
+        public final int nextSegments(final byte[] types, final float[] coords,
+                                      final int maxSegments)
+        {
+            int n = 0;
+            if (bulkSrc != null) {
+                n = bulkSrc.nextSegments(types, coords, maxSegments);
+            } else {
+                // fill the block from the regular source iterator:
+                final float[] _tmp = tmp; // dirty
+                for (int off = 0; n < maxSegments && !src.isDone(); src.next()) {
+                    final int type = src.currentSegment(_tmp);
+                    final int len = CURVE_COORDS[type];
+                    System.arraycopy(_tmp, 0, coords, off, len);
+                    off += len;
+                    types[n++] = (byte) type;
+                }
+            }
+            if (n == 0) {
+                // Dispose this instance:
+                dispose();
+                return 0;
+            }
+            if (DO_MONITORS) {
+                stats.mon_npi_currentSegment.start();
+            }
+            for (int i = 0, off = 0; i < n; i++) {
+                final int type = types[i];
+                normSegment(type, coords, off);
+                off += CURVE_COORDS[type];
+            }
+            if (DO_MONITORS) {
+                stats.mon_npi_currentSegment.stop();
+            }
+            return n;
+        }
+
+        /**
+         * Normalizes in place the segment given at coords[off]
+         */
+        private void normSegment(final int type, final float[] coords,
+                                 final int off)
+        {
+            int lastCoord;
+
             switch(type) {
                 case PathIterator.SEG_MOVETO:
                 case PathIterator.SEG_LINETO:
-                    lastCoord = 0;
+                    lastCoord = off;
                     break;
                 case PathIterator.SEG_QUADTO:
-                    lastCoord = 2;
+                    lastCoord = off + 2;
                     break;
                 case PathIterator.SEG_CUBICTO:
-                    lastCoord = 4;
+                    lastCoord = off + 4;
                     break;
                 case PathIterator.SEG_CLOSE:
                     // we don't want to deal with this case later. We just exit now
                     curx_adjust = movx_adjust;
                     cury_adjust = movy_adjust;
-
-                    if (DO_MONITORS) {
-                        RendererContext.stats.mon_npi_currentSegment.stop();
-                    }
-                    return type;
+                    return;
                 default:
                     throw new InternalError("Unrecognized curve type");
             }
@@ -539,14 +602,14 @@ public class MarlinRenderingEngine extends RenderingEngine
                 case PathIterator.SEG_LINETO:
                     break;
                 case PathIterator.SEG_QUADTO:
-                    coords[0] += (curx_adjust + x_adjust) / 2f;
-                    coords[1] += (cury_adjust + y_adjust) / 2f;
+                    coords[off    ] += (curx_adjust + x_adjust) / 2f;
+                    coords[off + 1] += (cury_adjust + y_adjust) / 2f;
                     break;
                 case PathIterator.SEG_CUBICTO:
-                    coords[0] += curx_adjust;
-                    coords[1] += cury_adjust;
-                    coords[2] += x_adjust;
-                    coords[3] += y_adjust;
+                    coords[off    ] += curx_adjust;
+                    coords[off + 1] += cury_adjust;
+                    coords[off + 2] += x_adjust;
+                    coords[off + 3] += y_adjust;
                     break;
                 case PathIterator.SEG_CLOSE:
                     throw new InternalError("This should be handled earlier.");
@@ -554,11 +617,6 @@ public class MarlinRenderingEngine extends RenderingEngine
             }
             curx_adjust = x_adjust;
             cury_adjust = y_adjust;
-
-            if (DO_MONITORS) {
-                RendererContext.stats.mon_npi_currentSegment.stop();
-            }
-            return type;
         }
 
         abstract float normCoord(final float coord);
@@ -596,8 +654,8 @@ public class MarlinRenderingEngine extends RenderingEngine
         static final class NearestPixelCenter
                                 extends NormalizingPathIterator
         {
-            NearestPixelCenter(final float[] tmp) {
-                super(tmp);
+            NearestPixelCenter(final float[] tmp, final RendererStats stats) {
+                super(tmp, stats);
             }
 
             @Override
@@ -610,8 +668,8 @@ public class MarlinRenderingEngine extends RenderingEngine
         static final class NearestPixelQuarter
                                 extends NormalizingPathIterator
         {
-            NearestPixelQuarter(final float[] tmp) {
-                super(tmp);
+            NearestPixelQuarter(final float[] tmp, final RendererStats stats) {
+                super(tmp, stats);
             }
 
             @Override
@@ -622,9 +680,16 @@ public class MarlinRenderingEngine extends RenderingEngine
         }
     }
 
+    // number of coordinates per segment type
+    static final int[] CURVE_COORDS = {2, 2, 4, 6, 0};
+
     private static void pathTo(final RendererContext rdrCtx, final PathIterator pi,
                                final PathConsumer2D pc2d)
     {
+        if (pi instanceof BulkPathIterator) {
+            bulkPathTo(rdrCtx, (BulkPathIterator) pi, pc2d);
+            return;
+        }
         // mark context as DIRTY:
         rdrCtx.dirty = true;
 
@@ -659,6 +724,51 @@ public class MarlinRenderingEngine extends RenderingEngine
         rdrCtx.dirty = false;
     }
 
+    private static void bulkPathTo(final RendererContext rdrCtx,
+                                   final BulkPathIterator pi,
+                                   final PathConsumer2D pc2d)
+    {
+        // mark context as DIRTY:
+        rdrCtx.dirty = true;
+
+        final byte[] types = rdrCtx.blockTypes;
+        final float[] coords = rdrCtx.blockCoords;
+
+        for (int n; (n = pi.nextSegments(types, coords, BLOCK_SEGMENTS)) != 0; ) {
+            for (int i = 0, off = 0; i < n; i++) {
+                switch (types[i]) {
+                    case PathIterator.SEG_MOVETO:
+                        pc2d.moveTo(coords[off], coords[off + 1]);
+                        off += 2;
+                        continue;
+                    case PathIterator.SEG_LINETO:
+                        pc2d.lineTo(coords[off], coords[off + 1]);
+                        off += 2;
+                        continue;
+                    case PathIterator.SEG_QUADTO:
+                        pc2d.quadTo(coords[off    ], coords[off + 1],
+                                    coords[off + 2], coords[off + 3]);
+                        off += 4;
+                        continue;
+                    case PathIterator.SEG_CUBICTO:
+                        pc2d.curveTo(coords[off    ], coords[off + 1],
+                                     coords[off + 2], coords[off + 3],
+                                     coords[off + 4], coords[off + 5]);
+                        off += 6;
+                        continue;
+                    case PathIterator.SEG_CLOSE:
+                        pc2d.closePath();
+                        continue;
+                    default:
+                }
+            }
+        }
+        pc2d.pathDone();
+
+        // mark context as CLEAN:
+        rdrCtx.dirty = false;
+    }
+
     /**
      * Construct an antialiased tile generator for the given shape with
      * the given rendering attributes and store the bounds of the tile
@@ -720,16 +830,36 @@ public class MarlinRenderingEngine extends RenderingEngine
 
         final RendererContext rdrCtx = getRendererContext();
         try {
+            if (DO_CAPTURE) {
+                rdrCtx.capture.shape(s, at, clip, bs, thin, normalize);
+            }
             // Test if at is identity:
             final AffineTransform _at = (at != null && !at.isIdentity()) ? at
                                         : null;
 
             final NormMode norm = (normalize) ? NormMode.ON_WITH_AA : NormMode.OFF;
 
+            final Path2D.Float p2d = (USE_CLIP_CULLING && s instanceof Path2D.Float)
+                                     ? (Path2D.Float) s : null;
+
+            if (p2d != null && isOutsideClip(rdrCtx, p2d, _at, bs, clip)) {
+                if (DO_STATS) {
+                    rdrCtx.stats.stat_pre_culled_shapes.add(1);
+                }
+                // nothing to render (recycled by finally):
+                return null;
+            }
+
+            if (RECORD_SLOW_SHAPES) {
+                // ended by Renderer.dispose():
+                rdrCtx.slowShapes.start(s, _at, bs, clip);
+            }
+
             if (bs == null) {
                 // fill shape:
                 final PathIterator pi = getNormalizingPathIterator(rdrCtx, norm,
-                                            s.getPathIterator(_at));
+                        (p2d != null) ? getCulledPathIterator(rdrCtx, p2d, _at, clip)
+                                      : s.getPathIterator(_at));
 
                 r = rdrCtx.renderer.init(clip.getLoX(), clip.getLoY(),
                                          clip.getWidth(), clip.getHeight(),
@@ -753,9 +883,12 @@ public class MarlinRenderingEngine extends RenderingEngine
                 r = null;
             }
         } finally {
-            if (r != null) {
-                // dispose renderer:
-                r.dispose();
+            if (ptg == null) {
+                // nothing to render or failure (capture, path...):
+                if (r != null) {
+                    // dispose renderer:
+                    r.dispose();
+                }
                 // recycle the RendererContext instance
                 MarlinRenderingEngine.returnRendererContext(rdrCtx);
             }
@@ -765,6 +898,97 @@ public class MarlinRenderingEngine extends RenderingEngine
         return ptg;
     }
 
+    /**
+     * Returns true if the given path bounds (enlarged by the stroke extent
+     * if any) transformed into device space can not intersect the clip.
+     * A 1 pixel margin covers normalization and subpixel sampling.
+     */
+    private static boolean isOutsideClip(final RendererContext rdrCtx,
+                                         final Path2D.Float p2d,
+                                         final AffineTransform at,
+                                         final BasicStroke bs,
+                                         final Region clip)
+    {
+        final float[] bbox = rdrCtx.float6;
+        if (!p2d.getBounds(bbox)) {
+            // empty path: let the renderer handle it
+            return false;
+        }
+        double x1 = bbox[0], y1 = bbox[1], x2 = bbox[2], y2 = bbox[3];
+
+        if (bs != null) {
+            // stroke extent: half line width enlarged by miter or square caps
+            double margin = 0.5 * bs.getLineWidth();
+            if (bs.getLineJoin() == BasicStroke.JOIN_MITER) {
+                margin *= Math.max(bs.getMiterLimit(), SQRT_2);
+            } else {
+                margin *= SQRT_2;
+            }
+            x1 -= margin;
+            y1 -= margin;
+            x2 += margin;
+            y2 += margin;
+        }
+        if (at != null) {
+            final double[] pts = rdrCtx.double8;
+            pts[0] = x1; pts[1] = y1;
+            pts[2] = x2; pts[3] = y1;
+            pts[4] = x2; pts[5] = y2;
+            pts[6] = x1; pts[7] = y2;
+            at.transform(pts, 0, pts, 0, 4);
+
+            x1 = x2 = pts[0];
+            y1 = y2 = pts[1];
+            for (int i = 2; i < 8; i += 2) {
+                x1 = Math.min(x1, pts[i]);
+                x2 = Math.max(x2, pts[i]);
+                y1 = Math.min(y1, pts[i + 1]);
+                y2 = Math.max(y2, pts[i + 1]);
+            }
+        }
+        // NaN bounds are never rejected:
+        return (x1 > clip.getHiX() + 1 || x2 < clip.getLoX() - 1
+                || y1 > clip.getHiY() + 1 || y2 < clip.getLoY() - 1);
+    }
+
+    /**
+     * Returns a path iterator skipping the subpaths that can not intersect
+     * the clip (fill only); the device clip (enlarged by 1 pixel) is
+     * converted back into user space to test the subpath bounds.
+     */
+    private static PathIterator getCulledPathIterator(final RendererContext rdrCtx,
+                                                      final Path2D.Float p2d,
+                                                      final AffineTransform at,
+                                                      final Region clip)
+    {
+        double x1 = clip.getLoX() - 1, y1 = clip.getLoY() - 1;
+        double x2 = clip.getHiX() + 1, y2 = clip.getHiY() + 1;
+
+        if (at != null) {
+            final double[] pts = rdrCtx.double8;
+            pts[0] = x1; pts[1] = y1;
+            pts[2] = x2; pts[3] = y1;
+            pts[4] = x2; pts[5] = y2;
+            pts[6] = x1; pts[7] = y2;
+            try {
+                at.inverseTransform(pts, 0, pts, 0, 4);
+            } catch (NoninvertibleTransformException nte) {
+                // degenerated transform: no culling
+                return p2d.getPathIterator(at);
+            }
+            x1 = x2 = pts[0];
+            y1 = y2 = pts[1];
+            for (int i = 2; i < 8; i += 2) {
+                x1 = Math.min(x1, pts[i]);
+                x2 = Math.max(x2, pts[i]);
+                y1 = Math.min(y1, pts[i + 1]);
+                y2 = Math.max(y2, pts[i + 1]);
+            }
+        }
+        return p2d.getCulledPathIterator(at, (float) x1, (float) y1,
+                                             (float) x2, (float) y2);
+    }
+
     @Override
     public final AATileGenerator getAATileGenerator(double x, double y,
                                                     double dx1, double dy1,
@@ -773,34 +997,39 @@ public class MarlinRenderingEngine extends RenderingEngine
                                                     Region clip,
                                                     int[] bbox)
     {
-        // REMIND: Deal with large coordinates!
-        double ldx1, ldy1, ldx2, ldy2;
-        boolean innerpgram = (lw1 > 0.0 && lw2 > 0.0);
-
-        if (innerpgram) {
-            ldx1 = dx1 * lw1;
-            ldy1 = dy1 * lw1;
-            ldx2 = dx2 * lw2;
-            ldy2 = dy2 * lw2;
-            x -= (ldx1 + ldx2) / 2.0;
-            y -= (ldy1 + ldy2) / 2.0;
-            dx1 += ldx1;
-            dy1 += ldy1;
-            dx2 += ldx2;
-            dy2 += ldy2;
-            if (lw1 > 1.0 && lw2 > 1.0) {
-                // Inner parallelogram was entirely consumed by stroke...
-                innerpgram = false;
-            }
-        } else {
-            ldx1 = ldy1 = ldx2 = ldy2 = 0.0;
-        }
-
         MarlinTileGenerator ptg = null;
         Renderer r = null;
 
         final RendererContext rdrCtx = getRendererContext();
         try {
+            if (DO_CAPTURE) {
+                rdrCtx.capture.parallelogram(x, y, dx1, dy1, dx2, dy2, lw1, lw2,
+                                             clip);
+            }
+
+            // REMIND: Deal with large coordinates!
+            double ldx1, ldy1, ldx2, ldy2;
+            boolean innerpgram = (lw1 > 0.0 && lw2 > 0.0);
+
+            if (innerpgram) {
+                ldx1 = dx1 * lw1;
+                ldy1 = dy1 * lw1;
+                ldx2 = dx2 * lw2;
+                ldy2 = dy2 * lw2;
+                x -= (ldx1 + ldx2) / 2.0;
+                y -= (ldy1 + ldy2) / 2.0;
+                dx1 += ldx1;
+                dy1 += ldy1;
+                dx2 += ldx2;
+                dy2 += ldy2;
+                if (lw1 > 1.0 && lw2 > 1.0) {
+                    // Inner parallelogram was entirely consumed by stroke...
+                    innerpgram = false;
+                }
+            } else {
+                ldx1 = ldy1 = ldx2 = ldy2 = 0.0;
+            }
+
             r = rdrCtx.renderer.init(clip.getLoX(), clip.getLoY(),
                                          clip.getWidth(), clip.getHeight(),
                                          Renderer.WIND_EVEN_ODD);
@@ -834,9 +1063,12 @@ public class MarlinRenderingEngine extends RenderingEngine
                 r = null;
             }
         } finally {
-            if (r != null) {
-                // dispose renderer:
-                r.dispose();
+            if (ptg == null) {
+                // nothing to render or failure (capture, path...):
+                if (r != null) {
+                    // dispose renderer:
+                    r.dispose();
+                }
                 // recycle the RendererContext instance
                 MarlinRenderingEngine.returnRendererContext(rdrCtx);
             }
@@ -871,7 +1103,7 @@ public class MarlinRenderingEngine extends RenderingEngine
     }
 
     // --- RendererContext handling ---
-    // use ThreadLocal or ConcurrentLinkedQueue to get one RendererContext
+    // use ThreadLocal or RendererContextPool to get one RendererContext
     private static final boolean USE_THREAD_LOCAL;
 
     // hard reference
@@ -881,22 +1113,23 @@ public class MarlinRenderingEngine extends RenderingEngine
     // weak reference
     final static int REF_WEAK = 2;
 
-    // reference type stored in either TL or CLQ
+    // reference type stored in either TL or pool
     static final int REF_TYPE;
 
     // Per-thread RendererContext
     private static final ThreadLocal<Object> rdrCtxThreadLocal;
-    // RendererContext queue when ThreadLocal is disabled
-    private static final ConcurrentLinkedQueue<Object> rdrCtxQueue;
+    // RendererContext pool when ThreadLocal is disabled
+    static final RendererContextPool rdrCtxPool;
 
-    // Static initializer to use TL or CLQ mode
+    // Static initializer to use TL or pool mode
     static {
-        // CLQ mode by default:
+        // pool mode by default:
         USE_THREAD_LOCAL = MarlinProperties.isUseThreadLocal();
         rdrCtxThreadLocal = (USE_THREAD_LOCAL) ? new ThreadLocal<Object>()
                                              : null;
-        rdrCtxQueue = (!USE_THREAD_LOCAL) ? new ConcurrentLinkedQueue<Object>()
-                                        : null;
+        rdrCtxPool = (!USE_THREAD_LOCAL)
+                     ? new RendererContextPool(MarlinProperties.getContextPoolSize())
+                     : null;
 
         // Soft reference by default:
         String refType = AccessController.doPrivileged(
@@ -914,6 +1147,18 @@ public class MarlinRenderingEngine extends RenderingEngine
                 REF_TYPE = REF_HARD;
                 break;
         }
+
+        // optional management interface:
+        if (MarlinProperties.isUseJMX()) {
+            AccessController.doPrivileged(
+                new PrivilegedAction<Void>() {
+                    @Override
+                    public Void run() {
+                        MarlinRenderer.register();
+                        return null;
+                    }
+                });
+        }
     }
 
     private static boolean settingsLogged = false;
@@ -951,6 +1196,10 @@ public class MarlinRenderingEngine extends RenderingEngine
                 + USE_THREAD_LOCAL);
         logInfo("sun.java2d.renderer.useRef           = "
                 + refType);
+        logInfo("sun.java2d.renderer.contextPoolSize  = "
+                + MarlinProperties.getContextPoolSize());
+        logInfo("sun.java2d.renderer.useSlimContext   = "
+                + MarlinConst.USE_SLIM_CONTEXT);
 
         logInfo("sun.java2d.renderer.pixelsize        = "
                 + MarlinConst.INITIAL_PIXEL_DIM);
@@ -960,18 +1209,58 @@ public class MarlinRenderingEngine extends RenderingEngine
                 + MarlinConst.SUBPIXEL_LG_POSITIONS_Y);
         logInfo("sun.java2d.renderer.tileSize_log2    = "
                 + MarlinConst.TILE_SIZE_LG);
+        logInfo("sun.java2d.renderer.tileWidthMode    = "
+                + MarlinTileGenerator.getTileWidthModeName());
 
         // optimisation parameters
         logInfo("sun.java2d.renderer.useSimplifier    = "
                 + MarlinConst.USE_SIMPLIFIER);
+        logInfo("sun.java2d.renderer.useClipCulling   = "
+                + MarlinConst.USE_CLIP_CULLING);
+        logInfo("sun.java2d.renderer.useRLE           = "
+                + MarlinConst.USE_RLE);
+        logInfo("sun.java2d.renderer.pipelineThreads  = "
+                + MarlinConst.PIPELINE_THREADS);
+        logInfo("sun.java2d.renderer.useSharedArrayCache = "
+                + MarlinConst.USE_SHARED_ARRAY_CACHE);
+        logInfo("sun.java2d.renderer.arrayCacheLocalSize  = "
+                + MarlinConst.ARRAY_CACHE_LOCAL_SIZE);
+        logInfo("sun.java2d.renderer.arrayCacheSharedSize = "
+                + MarlinConst.ARRAY_CACHE_SHARED_SIZE);
+        logInfo("sun.java2d.renderer.arrayCacheBuckets    = "
+                + MarlinProperties.getArrayCacheBuckets());
+        logInfo("sun.java2d.renderer.arrayCacheMinSize    = "
+                + MarlinProperties.getArrayCacheMinSize());
+        logInfo("sun.java2d.renderer.arrayCacheMinDirtyByteSize = "
+                + MarlinProperties.getArrayCacheMinDirtyByteSize());
+        logInfo("sun.java2d.renderer.arrayCacheBudget     = "
+                + MarlinProperties.getArrayCacheBudget());
+        logInfo("sun.java2d.renderer.arrayCacheIdleTime   = "
+                + MarlinConst.ARRAY_CACHE_IDLE_TIME);
+        logInfo("sun.java2d.renderer.arrayCacheHeapThreshold = "
+                + MarlinConst.ARRAY_CACHE_HEAP_THRESHOLD);
 
         // debugging parameters
         logInfo("sun.java2d.renderer.doStats          = "
                 + MarlinConst.DO_STATS);
         logInfo("sun.java2d.renderer.doMonitors       = "
                 + MarlinConst.DO_MONITORS);
+        logInfo("sun.java2d.renderer.monitorSampling  = "
+                + MarlinConst.MONITOR_SAMPLING);
+        logInfo("sun.java2d.renderer.monitorSampleShapes = "
+                + MarlinConst.MONITOR_SAMPLE_SHAPES);
         logInfo("sun.java2d.renderer.doChecks         = "
                 + MarlinConst.DO_CHECKS);
+        logInfo("sun.java2d.renderer.slowShapes       = "
+                + MarlinConst.SLOW_SHAPES);
+        logInfo("sun.java2d.renderer.slowShapesDir    = "
+                + MarlinConst.SLOW_SHAPES_DIR);
+        logInfo("sun.java2d.renderer.captureFile      = "
+                + MarlinConst.CAPTURE_FILE);
+        logInfo("sun.java2d.renderer.captureMaxSize   = "
+                + MarlinConst.CAPTURE_MAX_SIZE);
+        logInfo("sun.java2d.renderer.useJMX           = "
+                + MarlinProperties.isUseJMX());
 
         // logging parameters
         logInfo("sun.java2d.renderer.useLogger        = "
@@ -990,36 +1279,82 @@ public class MarlinRenderingEngine extends RenderingEngine
 
         logInfo("sun.java2d.renderer.gamma            = "
                 + MarlinProperties.getGamma());
+        logInfo("sun.java2d.renderer.blendColorSpace  = "
+                + MarlinProperties.getBlendColorSpace());
 
         logInfo("=========================================================="
                 + "=====================");
     }
 
+    /**
+     * Lease one RendererContext bound to the current thread until the
+     * returned lease is closed: all rendering operations of this thread
+     * then reuse the same context and its attached pipeline state.
+     *
+     * @return MarlinLease instance (to close)
+     */
+    public static MarlinLease lease() {
+        return lease(false);
+    }
+
+    /**
+     * Lease one RendererContext bound to the current thread until the
+     * returned lease is closed (see {@link #lease()}).
+     *
+     * @param presized true to get a context with full-size initial arrays
+     * (heavy rendering) even if slim contexts are enabled
+     * @return MarlinLease instance (to close)
+     */
+    public static MarlinLease lease(final boolean presized) {
+        return new MarlinLease(acquireRendererContext(presized));
+    }
+
     /**
      * Get the RendererContext instance dedicated to the current thread
      * @return RendererContext instance
      */
-    @SuppressWarnings({"unchecked"})
     static RendererContext getRendererContext() {
+        // use the context leased by the current thread if any:
+        RendererContext rdrCtx = MarlinLease.claimContext();
+        if (rdrCtx == null) {
+            rdrCtx = acquireRendererContext(false);
+        }
+        if (DO_MONITORS) {
+            if (MONITOR_SAMPLE_SHAPES) {
+                // new shape: decide whether its monitors are timed
+                rdrCtx.stats.monitorGate.next();
+            }
+            rdrCtx.stats.mon_pre_getAATileGenerator.start();
+        }
+        return rdrCtx;
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static RendererContext acquireRendererContext(final boolean presized) {
         RendererContext rdrCtx = null;
         final Object ref = (USE_THREAD_LOCAL) ? rdrCtxThreadLocal.get()
-                           : rdrCtxQueue.poll();
+                           : rdrCtxPool.poll();
         if (ref != null) {
             // resolve reference:
             rdrCtx = (REF_TYPE == REF_HARD) ? ((RendererContext) ref)
                      : ((Reference<RendererContext>) ref).get();
+
+            if (presized && rdrCtx != null && rdrCtx.slim) {
+                // replace the slim context:
+                if (USE_THREAD_LOCAL || !rdrCtxPool.offer(ref)) {
+                    discardRendererContext(rdrCtx);
+                }
+                rdrCtx = null;
+            }
         }
         // create a new RendererContext if none is available
         if (rdrCtx == null) {
-            rdrCtx = RendererContext.createContext();
+            rdrCtx = RendererContext.createContext(USE_SLIM_CONTEXT && !presized);
             if (USE_THREAD_LOCAL) {
                 // update thread local reference:
                 rdrCtxThreadLocal.set(rdrCtx.reference);
             }
         }
-        if (DO_MONITORS) {
-            RendererContext.stats.mon_pre_getAATileGenerator.start();
-        }
         return rdrCtx;
     }
 
@@ -1031,10 +1366,38 @@ public class MarlinRenderingEngine extends RenderingEngine
         rdrCtx.dispose();
 
         if (DO_MONITORS) {
-            RendererContext.stats.mon_pre_getAATileGenerator.stop();
+            rdrCtx.stats.mon_pre_getAATileGenerator.stop();
+        }
+        final MarlinLease lease = rdrCtx.lease;
+        if (lease != null) {
+            // keep the context leased:
+            lease.inUse = false;
+        } else {
+            releaseRendererContext(rdrCtx);
         }
+    }
+
+    /**
+     * Return the given (clean) RendererContext instance for reuse
+     * @param rdrCtx RendererContext instance
+     */
+    static void releaseRendererContext(final RendererContext rdrCtx) {
         if (!USE_THREAD_LOCAL) {
-            rdrCtxQueue.offer(rdrCtx.reference);
+            // discarded if the pool is full:
+            if (!rdrCtxPool.offer(rdrCtx.reference)) {
+                discardRendererContext(rdrCtx);
+            }
+        }
+    }
+
+    /**
+     * Flush the pending state of a RendererContext left to the GC
+     * @param rdrCtx RendererContext instance
+     */
+    private static void discardRendererContext(final RendererContext rdrCtx) {
+        if (DO_CAPTURE) {
+            // do not wait for the context to be collected:
+            rdrCtx.capture.flush();
         }
     }
 }
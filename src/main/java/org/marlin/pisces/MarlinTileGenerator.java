@@ -24,29 +24,80 @@
  */
 package org.marlin.pisces;
 
-import sun.java2d.pipe.AATileGenerator;
+import java.util.Arrays;
 
-final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
+final class MarlinTileGenerator implements TileRunGenerator, MarlinConst {
 
-    private final static int MAX_TILE_ALPHA_SUM = TILE_SIZE * TILE_SIZE
-                                                      * MAX_AA_ALPHA;
+    // maximum tile width in band / adaptive modes (alpha tile size)
+    private final static int MAX_TILE_WIDTH = Math.max(4096, TILE_SIZE);
+    // number of tiles per tile line in adaptive mode
+    private final static int ADAPTIVE_TILES = 4;
 
     private final Renderer rdr;
-    private final MarlinCache cache;
+    // cache of the current tile line (alternates if pipelined)
+    private MarlinCache cache;
+    // true if the next tile lines are rendered by a helper thread
+    private boolean pipelined = false;
     private int x, y;
+    // tile width (multiple of TILE_SIZE) of the current shape
+    private int tileWidth = TILE_SIZE;
+    // alpha sum of 1 fully covered pixel column in the current tile line
+    private int colAlphaMax;
+    // typical alpha of the current tile (see getTypicalAlpha)
+    private int alpha = 0x80;
+    // renderer context statistics
+    private final RendererStats rdrStats;
 
     MarlinTileGenerator(Renderer r) {
         this.rdr = r;
         this.cache = r.cache;
+        this.rdrStats = r.rdrCtx.stats;
     }
 
     MarlinTileGenerator init() {
         this.x = cache.bboxX0;
         this.y = cache.bboxY0;
 
+        if (TILE_WIDTH_MODE != TILE_WIDTH_FIXED) {
+            this.tileWidth = computeTileWidth(cache.bboxX1 - cache.bboxX0);
+        }
+        this.colAlphaMax = getColumnAlphaMax(y);
+
+        final TilePipeline pipeline = rdr.rdrCtx.pipeline;
+        if (pipeline != null) {
+            this.pipelined = pipeline.start();
+        }
         return this; // fluent API
     }
 
+    static String getTileWidthModeName() {
+        switch (TILE_WIDTH_MODE) {
+            case TILE_WIDTH_BAND:
+                return "band";
+            case TILE_WIDTH_ADAPTIVE:
+                return "adaptive";
+            default:
+                return "fixed";
+        }
+    }
+
+    /**
+     * Return the tile width adapted to the given shape width:
+     * one tile per tile line (band) or about ADAPTIVE_TILES (adaptive)
+     * rounded up to TILE_SIZE multiple
+     */
+    private static int computeTileWidth(int width) {
+        if (TILE_WIDTH_MODE == TILE_WIDTH_ADAPTIVE) {
+            width = (width + ADAPTIVE_TILES - 1) / ADAPTIVE_TILES;
+        }
+        width = ((width + TILE_SIZE - 1) >> TILE_SIZE_LG) << TILE_SIZE_LG;
+
+        if (width <= TILE_SIZE) {
+            return TILE_SIZE;
+        }
+        return (width > MAX_TILE_WIDTH) ? MAX_TILE_WIDTH : width;
+    }
+
     /**
      * Disposes this tile generator:
      * clean up before reusing this instance
@@ -55,7 +106,13 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
     public void dispose() {
         if (DO_MONITORS) {
             // called from AAShapePipe.renderTiles() (render tiles end):
-            RendererContext.stats.mon_pipe_renderTiles.stop();
+            rdrStats.mon_pipe_renderTiles.stop();
+        }
+        if (pipelined) {
+            // wait for the helper thread:
+            rdr.rdrCtx.pipeline.finish();
+            pipelined = false;
+            cache = rdr.cache;
         }
         // dispose cache:
         cache.dispose();
@@ -80,9 +137,9 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
     public int getTileWidth() {
         if (DO_MONITORS) {
             // called from AAShapePipe.renderTiles() (render tiles start):
-            RendererContext.stats.mon_pipe_renderTiles.start();
+            rdrStats.mon_pipe_renderTiles.start();
         }
-        return TILE_SIZE;
+        return tileWidth;
     }
 
     /**
@@ -94,6 +151,14 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
         return TILE_SIZE;
     }
 
+    /**
+     * Return the alpha sum of 1 fully covered pixel column in the tile line
+     * starting at y (clipped by the bbox)
+     */
+    private int getColumnAlphaMax(final int y) {
+        return Math.min(TILE_SIZE, cache.bboxY1 - y) * MAX_AA_ALPHA;
+    }
+
     /**
      * Gets the typical alpha value that will characterize the current
      * tile.
@@ -106,28 +171,81 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
      */
     @Override
     public int getTypicalAlpha() {
-        int al = cache.alphaSumInTile(x);
-        // Note: if we have a filled rectangle that doesn't end on a tile
-        // border, we could still return 0xff, even though al!=maxTileAlphaSum
-        // This is because if we return 0xff, our users will fill a rectangle
-        // starting at x,y that has width = Math.min(TILE_SIZE, bboxX1-x),
-        // and height min(TILE_SIZE,bboxY1-y), which is what should happen.
-        // However, to support this, we would have to use 2 Math.min's
-        // and 2 multiplications per tile, instead of just 2 multiplications
-        // to compute maxTileAlphaSum. The savings offered would probably
-        // not be worth it, considering how rare this case is.
-        // Note: I have not tested this, so in the future if it is determined
-        // that it is worth it, it should be implemented. Perhaps this method's
-        // interface should be changed to take arguments the width and height
-        // of the current tile. This would eliminate the 2 Math.min calls that
-        // would be needed here, since our caller needs to compute these 2
-        // values anyway.
-        final int alpha = (al == 0x00 ? 0x00
-                              : (al == MAX_TILE_ALPHA_SUM ? 0xff : 0x80));
+        final int a = getTileAlpha(x);
+        this.alpha = a;
         if (DO_STATS) {
-            RendererContext.stats.hist_tile_generator_alpha.add(alpha);
+            rdrStats.hist_tile_generator_alpha.add(a);
         }
-        return alpha;
+        return a;
+    }
+
+    /**
+     * Return the exact typical alpha value of the tile starting at tx
+     * in the current tile line: tiles clipped by the bbox edges are compared
+     * with their own maximum alpha sum.
+     *
+     * @param tx tile x
+     * @return 0x00 or 0xff if all its square tiles have no or full coverage,
+     * 0x80 otherwise
+     */
+    private int getTileAlpha(final int tx) {
+        final int x1 = Math.min(tx + tileWidth, cache.bboxX1);
+
+        // first square tile:
+        int tx1 = Math.min(tx + TILE_SIZE, x1);
+        int al = cache.alphaSumInTile(tx);
+
+        final int a;
+        if (al == 0x00) {
+            a = 0x00;
+        } else if (al == (tx1 - tx) * colAlphaMax) {
+            a = 0xff;
+        } else {
+            return 0x80;
+        }
+        // other square tiles (wide tile):
+        for (int sx = tx1; sx < x1; sx = tx1) {
+            tx1 = Math.min(sx + TILE_SIZE, x1);
+            al = cache.alphaSumInTile(sx);
+
+            if (al != ((a == 0x00) ? 0x00 : (tx1 - sx) * colAlphaMax)) {
+                return 0x80;
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Returns the number of consecutive tiles having the same typical alpha
+     * 0x00 or 0xff as the current tile (see TileRunGenerator)
+     * @return run length in tiles (1 at least)
+     */
+    @Override
+    public int getTileRunLength() {
+        final int a = this.alpha;
+        int n = 1;
+        if (a != 0x80) {
+            final int x1 = cache.bboxX1;
+            for (int tx = x + tileWidth; tx < x1; tx += tileWidth, n++) {
+                if (getTileAlpha(tx) != a) {
+                    break;
+                }
+            }
+        }
+        if (DO_STATS) {
+            rdrStats.hist_tile_generator_runs.add(n);
+        }
+        return n;
+    }
+
+    /**
+     * Skips the given number of tiles (run) and moves on to the next tile.
+     * @param n number of tiles (given by getTileRunLength())
+     */
+    @Override
+    public void nextTiles(final int n) {
+        x += (n - 1) * tileWidth;
+        nextTile();
     }
 
     /**
@@ -137,14 +255,20 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
      */
     @Override
     public void nextTile() {
-        if ((x += TILE_SIZE) >= cache.bboxX1) {
+        if ((x += tileWidth) >= cache.bboxX1) {
             x = cache.bboxX0;
             y += TILE_SIZE;
 
             if (y < cache.bboxY1) {
                 // compute for the tile line
                 // [ y; max(y + TILE_SIZE, bboxY1) ]
-                this.rdr.endRendering(y);
+                if (pipelined) {
+                    // composite while the helper thread renders:
+                    this.cache = rdr.rdrCtx.pipeline.nextLine();
+                } else {
+                    this.rdr.endRendering(y);
+                }
+                this.colAlphaMax = getColumnAlphaMax(y);
             }
         }
     }
@@ -159,7 +283,7 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
                          final int rowstride)
     {
         if (DO_MONITORS) {
-            RendererContext.stats.mon_ptg_getAlpha.start();
+            rdrStats.mon_ptg_getAlpha.start();
         }
 
         // local vars for performance:
@@ -167,9 +291,12 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
         final int[] rowAAx0 = cache.rowAAx0;
         final int[] rowAAx1 = cache.rowAAx1;
         final byte[] rowAAChunk = cache.rowAAChunk;
+        final int[] rowAARLEIndex = cache.rowAARLEIndex;
+        final int[] rowAARLEx = cache.rowAARLEx;
+        final int[] rowAARLE = cache.rowAARLE;
 
         int x0 = this.x;
-        int x1 = x0 + TILE_SIZE;
+        int x1 = x0 + tileWidth;
         int y0 = this.y;
         int y1 = y0 + TILE_SIZE;
         if (x1 > cache.bboxX1) {
@@ -220,16 +347,59 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
 
                     // now: cx >= x0 but cx < aax0 (x1 < aax0)
 
-                    // get row index:
-                    final int pos = rowAAChunkIndex[cy];
+                    final int end = Math.min(aax1, x1);
+
+                    // get run index (RLE row):
+                    int ri = (USE_RLE) ? rowAARLEIndex[cy] : -1;
 
-                    // Copy AA data (sum alpha data):
-                    final int off = pos - aax0;
+                    if (ri >= 0) {
+                        // skip runs before cx (left to right tiles):
+                        int rx = rowAARLEx[cy];
+                        int run = rowAARLE[ri];
+                        int rx1 = rx + (run >>> 8);
 
-                    // note: System.arrayCopy is slower than copy loop
-                    for (int end = Math.min(aax1, x1); cx < end; cx++, idx++) {
-                        // cx inside tile[x0; x1[ :
-                        tile[idx] = rowAAChunk[cx + off];
+                        while (rx1 <= cx) {
+                            rx = rx1;
+                            run = rowAARLE[++ri];
+                            rx1 = rx + (run >>> 8);
+                        }
+                        // Expand runs:
+                        for (;;) {
+                            final int e = (rx1 < end) ? rx1 : end;
+                            final int n = e - cx;
+                            final byte val = (byte) run;
+
+                            if (n > 8) {
+                                Arrays.fill(tile, idx, idx + n, val);
+                                idx += n;
+                            } else {
+                                for (final int last = idx + n; idx < last; idx++) {
+                                    tile[idx] = val;
+                                }
+                            }
+                            cx = e;
+                            if (cx >= end) {
+                                break;
+                            }
+                            rx = rx1;
+                            run = rowAARLE[++ri];
+                            rx1 = rx + (run >>> 8);
+                        }
+                        // update row cursor:
+                        rowAARLEIndex[cy] = ri;
+                        rowAARLEx[cy] = rx;
+                    } else {
+                        // get row index:
+                        final int pos = rowAAChunkIndex[cy];
+
+                        // Copy AA data (sum alpha data):
+                        final int off = pos - aax0;
+
+                        // note: System.arrayCopy is slower than copy loop
+                        for (; cx < end; cx++, idx++) {
+                            // cx inside tile[x0; x1[ :
+                            tile[idx] = rowAAChunk[cx + off];
+                        }
                     }
                 }
             }
@@ -252,7 +422,7 @@ final class MarlinTileGenerator implements AATileGenerator, MarlinConst {
         nextTile();
 
         if (DO_MONITORS) {
-            RendererContext.stats.mon_ptg_getAlpha.stop();
+            rdrStats.mon_ptg_getAlpha.stop();
         }
     }
 
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import static org.marlin.pisces.MarlinUtils.logInfo;
+
+/**
+ * Pool of oversize arrays (larger than the largest cache bucket) shared by
+ * all threads and accounted in the shared array cache budget.
+ *
+ * Arrays are evicted in least-recently-used order when the budget is
+ * exhausted. Oversize requests are rare and large so a simple lock is
+ * enough here.
+ */
+final class OversizeArrayPool implements MarlinConst {
+
+    // array kinds:
+    static final int KIND_INT = 0; // zero-filled
+    static final int KIND_DIRTY_INT = 1;
+    static final int KIND_DIRTY_FLOAT = 2;
+    static final int KIND_DIRTY_BYTE = 3;
+
+    private static final String[] KIND_NAMES = new String[]{
+        "int", "dirty int", "dirty float", "dirty byte"
+    };
+
+    private final Object[] arrays;
+    private final int[] kinds;
+    private final int[] lengths;
+    private final long[] footprints;
+    // last use (logical clock) for LRU eviction
+    private final long[] stamps;
+    private int count = 0;
+    private long clock = 0L;
+    // stats
+    private int getOp = 0;
+    private int hitOp = 0;
+    private int putOp = 0;
+    private int evictOp = 0;
+    private int dropOp = 0;
+
+    OversizeArrayPool(final int capacity) {
+        arrays = new Object[capacity];
+        kinds = new int[capacity];
+        lengths = new int[capacity];
+        footprints = new long[capacity];
+        stamps = new long[capacity];
+    }
+
+    synchronized void dumpStats() {
+        if (getOp > 0 || putOp > 0) {
+            long bytes = 0L;
+            for (int i = 0; i < count; i++) {
+                bytes += footprints[i];
+            }
+            logInfo("OversizeArrayPool: get: " + getOp + " hits: " + hitOp
+                    + " - put: " + putOp + " evicted: " + evictOp
+                    + " dropped: " + dropOp + " :: pool size: " + count
+                    + " (" + bytes + " bytes)");
+            for (int i = 0; i < count; i++) {
+                logInfo("OversizeArrayPool[" + KIND_NAMES[kinds[i]] + " "
+                        + lengths[i] + "]");
+            }
+        }
+    }
+
+    /**
+     * Borrow the smallest pooled array of the given kind having at least
+     * the given length (but not more than twice to avoid wasting memory)
+     * @param kind array kind
+     * @param length needed length
+     * @return array or null if none is available
+     */
+    synchronized Object get(final int kind, final int length) {
+        if (DO_STATS) {
+            getOp++;
+        }
+        final long maxLength = 2L * length;
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] == kind && lengths[i] >= length
+                    && lengths[i] <= maxLength
+                    && (best == -1 || lengths[i] < lengths[best]))
+            {
+                best = i;
+            }
+        }
+        if (best == -1) {
+            return null;
+        }
+        if (DO_STATS) {
+            hitOp++;
+        }
+        final Object array = arrays[best];
+        ArrayCache.releaseShared(footprints[best]);
+        removeAt(best);
+        return array;
+    }
+
+    /**
+     * Return an oversize array into this pool
+     * @param kind array kind
+     * @param array array to store
+     * @param length array length
+     * @param footprint array size in bytes
+     */
+    synchronized void put(final int kind, final Object array,
+                          final int length, final long footprint)
+    {
+        if (DO_STATS) {
+            putOp++;
+        }
+        // never let one array flush the whole shared cache:
+        if (footprint <= (ARRAY_CACHE_BUDGET >> 2)) {
+            if (count == arrays.length) {
+                evictLRU();
+            }
+            // may evict other arrays (reentrant):
+            if (ArrayCache.reserveShared(footprint)) {
+                arrays[count] = array;
+                kinds[count] = kind;
+                lengths[count] = length;
+                footprints[count] = footprint;
+                stamps[count] = ++clock;
+                count++;
+                return;
+            }
+        }
+        if (DO_STATS) {
+            dropOp++;
+        }
+    }
+
+    /**
+     * Evict least recently used arrays to free at least the given footprint
+     * @param footprint bytes to free
+     */
+    synchronized void evict(final long footprint) {
+        for (long freed = 0L; freed < footprint && count != 0; ) {
+            freed += evictLRU();
+        }
+    }
+
+    /**
+     * Drop all pooled arrays
+     */
+    synchronized void clear() {
+        while (count != 0) {
+            ArrayCache.releaseShared(footprints[count - 1]);
+            removeAt(count - 1);
+        }
+    }
+
+    private long evictLRU() {
+        int lru = 0;
+        for (int i = 1; i < count; i++) {
+            if (stamps[i] < stamps[lru]) {
+                lru = i;
+            }
+        }
+        final long footprint = footprints[lru];
+        ArrayCache.releaseShared(footprint);
+        removeAt(lru);
+        if (DO_STATS) {
+            evictOp++;
+        }
+        return footprint;
+    }
+
+    private void removeAt(final int i) {
+        final int last = --count;
+        arrays[i] = arrays[last];
+        kinds[i] = kinds[last];
+        lengths[i] = lengths[last];
+        footprints[i] = footprints[last];
+        stamps[i] = stamps[last];
+        arrays[last] = null;
+    }
+}
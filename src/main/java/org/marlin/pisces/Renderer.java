@@ -132,13 +132,14 @@ final class Renderer implements PathConsumer2D, MarlinConst {
     private int activeEdgeMaxUsed;
 
     // per-thread initial arrays (large enough to satisfy most usages) (1024)
-    private final int[] crossings_initial = new int[INITIAL_SMALL_ARRAY]; // 4K
+    // or 256 (slim context)
+    private final int[] crossings_initial; // 4K
     // +1 to avoid recycling in Helpers.widenArray()
-    private final int[] edgePtrs_initial  = new int[INITIAL_SMALL_ARRAY + 1]; // 4K
+    private final int[] edgePtrs_initial; // 4K
     // merge sort initial arrays (large enough to satisfy most usages) (1024)
-    private final int[] aux_crossings_initial = new int[INITIAL_SMALL_ARRAY]; // 4K
+    private final int[] aux_crossings_initial; // 4K
     // +1 to avoid recycling in Helpers.widenArray()
-    private final int[] aux_edgePtrs_initial  = new int[INITIAL_SMALL_ARRAY + 1]; // 4K
+    private final int[] aux_edgePtrs_initial; // 4K
 
 //////////////////////////////////////////////////////////////////////////////
 //  EDGE LIST
@@ -155,9 +156,9 @@ final class Renderer implements PathConsumer2D, MarlinConst {
     /** edges (dirty) */
     private int[] edges;
 
-    /* LBO: very large initial edges array = 96K */
+    /* LBO: very large initial edges array = 96K (6K if slim) */
     // +1 to avoid recycling in Helpers.widenArray()
-    private final int[] edges_initial  = new int[INITIAL_EDGES_CAPACITY + 1]; // 96K
+    private final int[] edges_initial; // 96K
 
     private int[] edgeBuckets;
     private int[] edgeBucketCounts; // 2*newedges + (1 if pruning needed)
@@ -166,10 +167,10 @@ final class Renderer implements PathConsumer2D, MarlinConst {
     private int buckets_maxY;
 
     // +1 to avoid recycling in Helpers.widenArray()
-    private final int[] edgeBuckets_initial
-        = new int[INITIAL_BUCKET_ARRAY + 1]; // 64K
-    private final int[] edgeBucketCounts_initial
-        = new int[INITIAL_BUCKET_ARRAY + 1]; // 64K
+    private final int[] edgeBuckets_initial; // 64K (8K if slim)
+    private final int[] edgeBucketCounts_initial; // 64K (8K if slim)
+    // max bucket length fitting in initial arrays
+    private final int edgeBucketsLength_initial;
 
     // Flattens using adaptive forward differencing. This only carries out
     // one iteration of the AFD loop. All it does is update AFD variables (i.e.
@@ -191,7 +192,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
             count <<= 1;
             if (DO_STATS) {
-                RendererContext.stats.stat_rdr_quadBreak_dec.add(count);
+                rdrCtx.stats.stat_rdr_quadBreak_dec.add(count);
             }
         }
 
@@ -223,7 +224,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
         addLine(x0, y0, x2, y2);
 
         if (DO_STATS) {
-            RendererContext.stats.stat_rdr_quadBreak.add(nL + 1);
+            rdrCtx.stats.stat_rdr_quadBreak.add(nL + 1);
         }
     }
 
@@ -270,7 +271,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
                 count <<= 1;
                 if (DO_STATS) {
-                    RendererContext.stats.stat_rdr_curveBreak_dec.add(count);
+                    rdrCtx.stats.stat_rdr_curveBreak_dec.add(count);
                 }
             }
 
@@ -290,7 +291,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
                 count >>= 1;
                 if (DO_STATS) {
-                    RendererContext.stats.stat_rdr_curveBreak_inc.add(count);
+                    rdrCtx.stats.stat_rdr_curveBreak_inc.add(count);
                 }
             }
             if (--count > 0) {
@@ -312,16 +313,16 @@ final class Renderer implements PathConsumer2D, MarlinConst {
             y0 = y1;
         }
         if (DO_STATS) {
-            RendererContext.stats.stat_rdr_curveBreak.add(nL);
+            rdrCtx.stats.stat_rdr_curveBreak.add(nL);
         }
     }
 
     private void addLine(float x1, float y1, float x2, float y2) {
         if (DO_MONITORS) {
-            RendererContext.stats.mon_rdr_addLine.start();
+            rdrCtx.stats.mon_rdr_addLine.start();
         }
         if (DO_STATS) {
-            RendererContext.stats.stat_rdr_addLine.add(1);
+            rdrCtx.stats.stat_rdr_addLine.add(1);
         }
         int or = 1; // orientation of the line. 1 if y increases, 0 otherwise.
         if (y2 < y1) {
@@ -352,10 +353,10 @@ final class Renderer implements PathConsumer2D, MarlinConst {
            out of y range [boundsMinY; boundsMaxY] */
         if (firstCrossing >= lastCrossing) {
             if (DO_MONITORS) {
-                RendererContext.stats.mon_rdr_addLine.stop();
+                rdrCtx.stats.mon_rdr_addLine.stop();
             }
             if (DO_STATS) {
-                RendererContext.stats.stat_rdr_addLine_skip.add(1);
+                rdrCtx.stats.stat_rdr_addLine_skip.add(1);
             }
             return;
         }
@@ -401,7 +402,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
             // double size:
             final int edgeNewSize = _edges.length << 1;
             if (DO_STATS) {
-                RendererContext.stats.stat_rdr_edges_resizes.add(edgeNewSize);
+                rdrCtx.stats.stat_rdr_edges_resizes.add(edgeNewSize);
             }
             edges = _edges = rdrCtx.widenDirtyIntArray(_edges, ptr, edgeNewSize);
         }
@@ -467,7 +468,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
         edgesPos += _SIZEOF_EDGE;
 
         if (DO_MONITORS) {
-            RendererContext.stats.mon_rdr_addLine.stop();
+            rdrCtx.stats.mon_rdr_addLine.stop();
         }
     }
 
@@ -475,7 +476,8 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 //////////////////////////////////////////////////////////////////////////////
 
     // Cache to store RLE-encoded coverage mask of the current primitive
-    final MarlinCache cache;
+    // (alternates with the second cache if pipelined, see TilePipeline)
+    MarlinCache cache;
 
     // Bounds of the drawing region, at subpixel precision.
     private int boundsMinX, boundsMinY, boundsMaxX, boundsMaxY;
@@ -499,6 +501,24 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
         this.curve = rdrCtx.curve;
 
+        // slim contexts use small initial arrays (256 edges, 256px):
+        final int arraySize = (rdrCtx.slim) ? INITIAL_ARRAY : INITIAL_SMALL_ARRAY;
+        crossings_initial = new int[arraySize];
+        edgePtrs_initial  = new int[arraySize + 1];
+        aux_crossings_initial = new int[arraySize];
+        aux_edgePtrs_initial  = new int[arraySize + 1];
+
+        edges_initial = new int[((rdrCtx.slim) ? INITIAL_ARRAY * SIZEOF_EDGE
+                                 : INITIAL_EDGES_CAPACITY) + 1];
+
+        edgeBucketsLength_initial = (rdrCtx.slim)
+            ? INITIAL_ARRAY * SUBPIXEL_POSITIONS_Y : INITIAL_BUCKET_ARRAY;
+        edgeBuckets_initial      = new int[edgeBucketsLength_initial + 1];
+        edgeBucketCounts_initial = new int[edgeBucketsLength_initial + 1];
+
+        alphaLine_initial = new int[(rdrCtx.slim) ? INITIAL_ARRAY
+                                    : INITIAL_AA_ARRAY];
+
         edges = edges_initial;
         edgeBuckets = edgeBuckets_initial;
         edgeBucketCounts = edgeBucketCounts_initial;
@@ -541,11 +561,11 @@ final class Renderer implements PathConsumer2D, MarlinConst {
         // +1 for edgeBucketCounts
         final int edgeBucketsLength = (boundsMaxY - boundsMinY) + 1;
 
-        if (edgeBucketsLength > INITIAL_BUCKET_ARRAY) {
+        if (edgeBucketsLength > edgeBucketsLength_initial) {
             if (DO_STATS) {
-                RendererContext.stats.stat_array_renderer_edgeBuckets
+                rdrCtx.stats.stat_array_renderer_edgeBuckets
                     .add(edgeBucketsLength);
-                RendererContext.stats.stat_array_renderer_edgeBucketCounts
+                rdrCtx.stats.stat_array_renderer_edgeBucketCounts
                     .add(edgeBucketsLength);
             }
             edgeBuckets = rdrCtx.getIntArray(edgeBucketsLength);
@@ -565,14 +585,33 @@ final class Renderer implements PathConsumer2D, MarlinConst {
         return this; // fluent API
     }
 
+    /**
+     * Return the footprint of initial arrays (in bytes)
+     * @return footprint in bytes
+     */
+    long getFootprint() {
+        return 4L * (crossings_initial.length + edgePtrs_initial.length
+                     + aux_crossings_initial.length + aux_edgePtrs_initial.length
+                     + edges_initial.length + edgeBuckets_initial.length
+                     + edgeBucketCounts_initial.length + alphaLine_initial.length);
+    }
+
     /**
      * Disposes this renderer and recycle it clean up before reusing this instance
      */
     void dispose() {
+        if (RECORD_SLOW_SHAPES) {
+            // edge bounds are given in subpixels:
+            rdrCtx.slowShapes.end(edgesPos / SIZEOF_EDGE, activeEdgeMaxUsed,
+                (int) Math.floor(edgeMinX / SUBPIXEL_POSITIONS_X),
+                (int) Math.floor(edgeMinY / SUBPIXEL_POSITIONS_Y),
+                (int) Math.ceil(edgeMaxX / SUBPIXEL_POSITIONS_X),
+                (int) Math.ceil(edgeMaxY / SUBPIXEL_POSITIONS_Y));
+        }
         if (DO_STATS) {
-            RendererContext.stats.stat_rdr_activeEdges.add(activeEdgeMaxUsed);
-            RendererContext.stats.stat_rdr_edges.add(edgesPos);
-            RendererContext.stats.stat_rdr_edges_count
+            rdrCtx.stats.stat_rdr_activeEdges.add(activeEdgeMaxUsed);
+            rdrCtx.stats.stat_rdr_edges.add(edgesPos);
+            rdrCtx.stats.stat_rdr_edges_count
                 .add(edges.length / SIZEOF_EDGE);
         }
         if (DO_CLEAN_DIRTY) {
@@ -635,7 +674,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
             edges = edges_initial;
         }
         if (DO_MONITORS) {
-            RendererContext.stats.mon_rdr_endRendering.stop();
+            rdrCtx.stats.mon_rdr_endRendering.stop();
         }
     }
 
@@ -708,8 +747,8 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
     // clean alpha array (zero filled)
     private int[] alphaLine;
-    // 2048 (pixelsize) pixel large
-    private final int[] alphaLine_initial = new int[INITIAL_AA_ARRAY]; // 8K
+    // 2048 (pixelsize) pixel large (256 if slim)
+    private final int[] alphaLine_initial; // 8K
 
     private void _endRendering(final int ymin, final int ymax) {
         if (DISABLE_RENDER) {
@@ -797,7 +836,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
             // bucketCount indicates new edge / edge end:
             if (bucketcount != 0) {
                 if (DO_STATS) {
-                    RendererContext.stats.stat_rdr_activeEdges_updates
+                    rdrCtx.stats.stat_rdr_activeEdges_updates
                         .add(numCrossings);
                 }
 
@@ -827,10 +866,10 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
                 if (ptrLen != 0) {
                     if (DO_STATS) {
-                        RendererContext.stats.stat_rdr_activeEdges_adds
+                        rdrCtx.stats.stat_rdr_activeEdges_adds
                             .add(ptrLen);
                         if (ptrLen > 10) {
-                            RendererContext.stats.stat_rdr_activeEdges_adds_high
+                            rdrCtx.stats.stat_rdr_activeEdges_adds_high
                                 .add(ptrLen);
                         }
                     }
@@ -838,7 +877,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
                     if (edgePtrsLen < ptrEnd) {
                         if (DO_STATS) {
-                            RendererContext.stats.stat_array_renderer_edgePtrs
+                            rdrCtx.stats.stat_array_renderer_edgePtrs
                                 .add(ptrEnd);
                         }
                         this.edgePtrs = _edgePtrs
@@ -853,7 +892,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
                         // use ArrayCache.getNewSize() to use the same growing
                         // factor than widenDirtyIntArray():
                         if (DO_STATS) {
-                            RendererContext.stats.stat_array_renderer_aux_edgePtrs
+                            rdrCtx.stats.stat_array_renderer_aux_edgePtrs
                                 .add(ptrEnd);
                         }
                         this.aux_edgePtrs = _aux_edgePtrs
@@ -880,7 +919,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
                             rdrCtx.putDirtyIntArray(_crossings);
                         }
                         if (DO_STATS) {
-                            RendererContext.stats.stat_array_renderer_crossings
+                            rdrCtx.stats.stat_array_renderer_crossings
                                 .add(numCrossings);
                         }
                         this.crossings = _crossings
@@ -891,7 +930,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
                             rdrCtx.putDirtyIntArray(_aux_crossings);
                         }
                         if (DO_STATS) {
-                            RendererContext.stats.stat_array_renderer_aux_crossings
+                            rdrCtx.stats.stat_array_renderer_aux_crossings
                                 .add(numCrossings);
                         }
                         this.aux_crossings = _aux_crossings
@@ -899,7 +938,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
                         crossingsLen = _crossings.length;
                     }
-                    if (DO_STATS) {
+                    if (DO_STATS || RECORD_SLOW_SHAPES) {
                         // update max used mark
                         if (numCrossings > _arrayMaxUsed) {
                             _arrayMaxUsed = numCrossings;
@@ -916,9 +955,9 @@ final class Renderer implements PathConsumer2D, MarlinConst {
                  */
                 if ((ptrLen < 10) || (numCrossings < 40)) {
                     if (DO_STATS) {
-                        RendererContext.stats.hist_rdr_crossings
+                        rdrCtx.stats.hist_rdr_crossings
                             .add(numCrossings);
-                        RendererContext.stats.hist_rdr_crossings_adds
+                        rdrCtx.stats.hist_rdr_crossings_adds
                             .add(ptrLen);
                     }
 
@@ -958,14 +997,14 @@ final class Renderer implements PathConsumer2D, MarlinConst {
                         _edges[ecur + _OFF_ERROR]     = (err & _ERR_STEP_MAX);
 
                         if (DO_STATS) {
-                            RendererContext.stats.stat_rdr_crossings_updates
+                            rdrCtx.stats.stat_rdr_crossings_updates
                                 .add(numCrossings);
                         }
 
                         // insertion sort of crossings:
                         if (cross < lastCross) {
                             if (DO_STATS) {
-                                RendererContext.stats.stat_rdr_crossings_sorts
+                                rdrCtx.stats.stat_rdr_crossings_sorts
                                     .add(i);
                             }
 
@@ -973,7 +1012,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
                                in crossings if arrays are large enough */
                             if (useBinarySearch && (i >= prevNumCrossings)) {
                                 if (DO_STATS) {
-                                    RendererContext.stats.
+                                    rdrCtx.stats.
                                         stat_rdr_crossings_bsearch.add(i);
                                 }
                                 low = 0;
@@ -1017,13 +1056,13 @@ final class Renderer implements PathConsumer2D, MarlinConst {
                     }
                 } else {
                     if (DO_STATS) {
-                        RendererContext.stats.stat_rdr_crossings_msorts
+                        rdrCtx.stats.stat_rdr_crossings_msorts
                             .add(numCrossings);
-                        RendererContext.stats.hist_rdr_crossings_ratio
+                        rdrCtx.stats.hist_rdr_crossings_ratio
                             .add((1000 * ptrLen) / numCrossings);
-                        RendererContext.stats.hist_rdr_crossings_msorts
+                        rdrCtx.stats.hist_rdr_crossings_msorts
                             .add(numCrossings);
-                        RendererContext.stats.hist_rdr_crossings_msorts_adds
+                        rdrCtx.stats.hist_rdr_crossings_msorts_adds
                             .add(ptrLen);
                     }
 
@@ -1060,7 +1099,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
                         _edges[ecur + _OFF_ERROR]     = (err & _ERR_STEP_MAX);
 
                         if (DO_STATS) {
-                            RendererContext.stats.stat_rdr_crossings_updates
+                            rdrCtx.stats.stat_rdr_crossings_updates
                                 .add(numCrossings);
                         }
 
@@ -1071,7 +1110,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
 
                         } else if (cross < lastCross) {
                             if (DO_STATS) {
-                                RendererContext.stats.stat_rdr_crossings_sorts
+                                rdrCtx.stats.stat_rdr_crossings_sorts
                                     .add(i);
                             }
 
@@ -1270,7 +1309,7 @@ final class Renderer implements PathConsumer2D, MarlinConst {
         // update member:
         edgeCount = numCrossings;
 
-        if (DO_STATS) {
+        if (DO_STATS || RECORD_SLOW_SHAPES) {
             // update max used mark
             activeEdgeMaxUsed = _arrayMaxUsed;
         }
@@ -1353,16 +1392,16 @@ final class Renderer implements PathConsumer2D, MarlinConst {
         final int width = (pmaxX - pminX) + 2;
 
         // Useful when processing tile line by tile line
-        if (width > INITIAL_AA_ARRAY) {
+        if (width > alphaLine_initial.length) {
             if (DO_STATS) {
-                RendererContext.stats.stat_array_renderer_alphaline
+                rdrCtx.stats.stat_array_renderer_alphaline
                     .add(width);
             }
             alphaLine = rdrCtx.getIntArray(width);
         }
 
         if (DO_MONITORS) {
-            RendererContext.stats.mon_rdr_endRendering.start();
+            rdrCtx.stats.mon_rdr_endRendering.start();
         }
 
         // process first tile line:
@@ -1386,14 +1425,14 @@ final class Renderer implements PathConsumer2D, MarlinConst {
             cache.resetTileLine(pminY);
 
             if (DO_MONITORS) {
-                RendererContext.stats.mon_rdr_endRendering_Y.start();
+                rdrCtx.stats.mon_rdr_endRendering_Y.start();
             }
 
             // Process only one tile line:
             _endRendering(fixed_spminY, spmaxY);
 
             if (DO_MONITORS) {
-                RendererContext.stats.mon_rdr_endRendering_Y.stop();
+                rdrCtx.stats.mon_rdr_endRendering_Y.stop();
             }
         }
     }
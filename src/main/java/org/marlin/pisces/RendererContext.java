@@ -24,8 +24,13 @@
  */
 package org.marlin.pisces;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.marlin.geom.Path2D;
 import static org.marlin.pisces.ArrayCache.*;
@@ -41,29 +46,65 @@ final class RendererContext implements MarlinConst {
     private static final String className = RendererContext.class.getName();
     // RendererContext creation counter
     private static final AtomicInteger contextCount = new AtomicInteger(1);
-    // RendererContext statistics
-    static final RendererStats stats = (DO_STATS || DO_MONITORS)
-                                       ? RendererStats.getInstance(): null;
+    // live RendererContext tracking (weak references cleared by the GC)
+    private static final Set<WeakReference<RendererContext>> liveContexts
+        = Collections.newSetFromMap(
+            new ConcurrentHashMap<WeakReference<RendererContext>, Boolean>());
+    private static final ReferenceQueue<RendererContext> liveQueue
+        = new ReferenceQueue<RendererContext>();
 
     private static final boolean USE_CACHE_HARD_REF = DO_STATS
         || (MarlinRenderingEngine.REF_TYPE == MarlinRenderingEngine.REF_WEAK);
 
+    /**
+     * Return the number of created renderer contexts
+     *
+     * @return number of created contexts
+     */
+    static int getCreatedCount() {
+        return contextCount.get() - 1;
+    }
+
+    /**
+     * Return the number of live renderer contexts (not yet collected)
+     *
+     * @return number of live contexts
+     */
+    static int getLiveCount() {
+        pruneLiveContexts();
+        return liveContexts.size();
+    }
+
+    private static void pruneLiveContexts() {
+        for (Object ref; (ref = liveQueue.poll()) != null; ) {
+            liveContexts.remove(ref);
+        }
+    }
+
     /**
      * Create a new renderer context
      *
+     * @param slim true to create a slim context (small initial arrays)
      * @return new RendererContext instance
      */
-    static RendererContext createContext() {
-        final RendererContext newCtx = new RendererContext("ctx"
-                    + Integer.toString(contextCount.getAndIncrement()));
-        if (RendererContext.stats != null) {
-            RendererContext.stats.allContexts.add(newCtx);
-        }
-        return newCtx;
+    static RendererContext createContext(final boolean slim) {
+        final RendererContext rdrCtx = new RendererContext("ctx"
+                    + Integer.toString(contextCount.getAndIncrement()), slim);
+        pruneLiveContexts();
+        liveContexts.add(new WeakReference<RendererContext>(rdrCtx, liveQueue));
+        return rdrCtx;
     }
 
     // context name (debugging purposes)
     final String name;
+    // true if initial arrays are small (slim context)
+    final boolean slim;
+    // statistics of this context (aggregated by RendererStats) or null
+    final RendererStats stats;
+    // slow shape recorder of this context or null
+    final SlowShapeRecorder slowShapes;
+    // shape capture of this context or null
+    final ShapeCapture capture;
     /*
      * Reference to this instance (hard, soft or weak).
      * @see MarlinRenderingEngine#REF_TYPE
@@ -71,12 +112,21 @@ final class RendererContext implements MarlinConst {
     final Object reference;
     // dirty flag indicating an exception occured during pipeline in pathTo()
     boolean dirty = false;
+    // lease holding this context (null if not leased)
+    MarlinLease lease = null;
+    // attached pipeline state (key / value pairs) or null
+    private Object[] attachments = null;
     // dynamic array caches kept using weak reference (low memory footprint)
     WeakReference<ArrayCachesHolder> refArrayCaches = null;
     // hard reference to array caches (for statistics)
     ArrayCachesHolder hardRefArrayCaches = null;
     // shared data
     final float[] float6 = new float[6];
+    // shared points (clip culling)
+    final double[] double8 = new double[8];
+    // shared segment block (BulkPathIterator)
+    final byte[] blockTypes = new byte[BLOCK_SEGMENTS];
+    final float[] blockCoords = new float[BLOCK_SEGMENTS * 6];
     // shared curve (dirty) (Renderer / Stroker)
     final Curve curve = new Curve();
     // MarlinRenderingEngine NormalizingPathIterator NearestPixelCenter:
@@ -94,22 +144,32 @@ final class RendererContext implements MarlinConst {
     final Dasher dasher;
     final MarlinTileGenerator ptg;
     final MarlinCache cache;
+    // pipelined rasterization (second cache) or null
+    final TilePipeline pipeline;
 
     /**
      * Constructor
      *
      * @param name
+     * @param slim true to use small initial arrays
      */
-    RendererContext(final String name) {
+    RendererContext(final String name, final boolean slim) {
         if (LOG_CREATE_CONTEXT) {
-            MarlinUtils.logInfo("new RendererContext = " + name);
+            MarlinUtils.logInfo("new RendererContext = " + name
+                                + ((slim) ? " (slim)" : ""));
         }
 
         this.name = name;
+        this.slim = slim;
+        this.stats = (DO_STATS || DO_MONITORS)
+                     ? RendererStats.createInstance(this) : null;
+        this.slowShapes = (RECORD_SLOW_SHAPES) ? new SlowShapeRecorder()
+                          : null;
+        this.capture = (DO_CAPTURE) ? new ShapeCapture(this) : null;
 
         // NormalizingPathIterator instances:
-        nPCPathIterator = new NormalizingPathIterator.NearestPixelCenter(float6);
-        nPQPathIterator  = new NormalizingPathIterator.NearestPixelQuarter(float6);
+        nPCPathIterator = new NormalizingPathIterator.NearestPixelCenter(float6, stats);
+        nPQPathIterator  = new NormalizingPathIterator.NearestPixelQuarter(float6, stats);
 
         // MarlinRenderingEngine.TransformingPathConsumer2D
         transformerPC2D = new TransformingPathConsumer2D();
@@ -118,6 +178,7 @@ final class RendererContext implements MarlinConst {
         cache = new MarlinCache(this);
         renderer = new Renderer(this); // needs MarlinCache from rdrCtx.cache
         ptg = new MarlinTileGenerator(renderer);
+        pipeline = (PIPELINE_THREADS != 0) ? new TilePipeline(this) : null;
 
         stroker = new Stroker(this);
         dasher = new Dasher(this);
@@ -145,6 +206,14 @@ final class RendererContext implements MarlinConst {
         // reset hard reference to array caches if needed:
         if (!USE_CACHE_HARD_REF) {
             hardRefArrayCaches = null;
+        } else if (hardRefArrayCaches != null
+                && hardRefArrayCaches.epoch != trimEpoch) {
+            // array caches trimmed meanwhile:
+            hardRefArrayCaches = null;
+            refArrayCaches = null;
+        }
+        if (USE_SHARED_ARRAY_CACHE && ARRAY_CACHE_IDLE_TIME > 0) {
+            touch();
         }
         // if context is maked as DIRTY:
         if (dirty) {
@@ -164,6 +233,63 @@ final class RendererContext implements MarlinConst {
         }
     }
 
+    /**
+     * Return the memory footprint of this context: initial arrays and
+     * arrays kept in its array caches (in bytes)
+     * @return footprint in bytes
+     */
+    long getFootprint() {
+        long bytes = renderer.getFootprint() + cache.getFootprint()
+                     + stroker.getFootprint() + dasher.getFootprint()
+                     + blockTypes.length + 4L * blockCoords.length;
+        if (pipeline != null) {
+            bytes += pipeline.getFootprint();
+        }
+        final ArrayCachesHolder holder = (refArrayCaches != null)
+                                         ? refArrayCaches.get() : null;
+        if (holder != null) {
+            for (int i = 0; i < BUCKETS; i++) {
+                bytes += holder.intArrayCaches[i].getFootprint()
+                         + holder.dirtyIntArrayCaches[i].getFootprint()
+                         + holder.dirtyFloatArrayCaches[i].getFootprint()
+                         + holder.dirtyByteArrayCaches[i].getFootprint();
+            }
+        }
+        return bytes;
+    }
+
+    Object getAttachment(final Object key) {
+        final Object[] _attachments = attachments;
+        if (_attachments != null) {
+            for (int i = 0; i < _attachments.length; i += 2) {
+                if (_attachments[i] == key) {
+                    return _attachments[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    void setAttachment(final Object key, final Object value) {
+        Object[] _attachments = attachments;
+        int i = 0;
+        if (_attachments != null) {
+            for (; i < _attachments.length; i += 2) {
+                if (_attachments[i] == key || _attachments[i] == null) {
+                    break;
+                }
+            }
+            if (i == _attachments.length) {
+                attachments = _attachments
+                    = Arrays.copyOf(_attachments, i << 1);
+            }
+        } else {
+            attachments = _attachments = new Object[8];
+        }
+        _attachments[i] = key;
+        _attachments[i + 1] = value;
+    }
+
     // Array caches
     ArrayCachesHolder getArrayCachesHolder() {
         // Use hard reference first (cached resolved weak reference):
@@ -173,6 +299,10 @@ final class RendererContext implements MarlinConst {
             holder = (refArrayCaches != null)
                      ? refArrayCaches.get()
                      : null;
+            // discard array caches trimmed meanwhile:
+            if (holder != null && holder.epoch != trimEpoch) {
+                holder = null;
+            }
             // create a new ArrayCachesHolder if none is available
             if (holder == null) {
                 if (LOG_CREATE_CONTEXT) {
@@ -205,15 +335,22 @@ final class RendererContext implements MarlinConst {
             return getDirtyByteArrayCache(length).getArray();
         }
 
-        if (DO_STATS) {
-            incOversize();
-        }
+        incOversize();
 
         if (DO_LOG_OVER_SIZE) {
             logInfo("getDirtyByteArray[oversize]: length=\t" + length
                     + "\tfrom=\t" + getCallerInfo(className));
         }
 
+        if (USE_SHARED_ARRAY_CACHE) {
+            final byte[] array = (byte[]) getOversize(
+                    OversizeArrayPool.KIND_DIRTY_BYTE, length);
+            if (array != null) {
+                return array;
+            }
+            // even length to be reused:
+            return new byte[getOversizeLength(length)];
+        }
         return new byte[length];
     }
 
@@ -221,8 +358,12 @@ final class RendererContext implements MarlinConst {
         final int length = array.length;
         // odd sized array are non-cached arrays (initial arrays)
         // ensure to never store initial arrays in cache:
-        if (((length & 0x1) == 0) && (length <= MAX_DIRTY_BYTE_ARRAY_SIZE)) {
-            getDirtyByteArrayCache(length).putDirtyArray(array, length);
+        if ((length & 0x1) == 0) {
+            if (length <= MAX_DIRTY_BYTE_ARRAY_SIZE) {
+                getDirtyByteArrayCache(length).putDirtyArray(array, length);
+            } else if (USE_SHARED_ARRAY_CACHE) {
+                putOversize(OversizeArrayPool.KIND_DIRTY_BYTE, array, length, 1);
+            }
         }
     }
 
@@ -233,9 +374,7 @@ final class RendererContext implements MarlinConst {
         if (DO_CHECKS && length >= needSize) {
             return in;
         }
-        if (DO_STATS) {
-            incResizeDirtyByte();
-        }
+        incResizeDirtyByte();
 
         // maybe change bucket:
         // ensure getNewSize() > newSize:
@@ -266,15 +405,22 @@ final class RendererContext implements MarlinConst {
             return getIntArrayCache(length).getArray();
         }
 
-        if (DO_STATS) {
-            incOversize();
-        }
+        incOversize();
 
         if (DO_LOG_OVER_SIZE) {
             logInfo("getIntArray[oversize]: length=\t" + length + "\tfrom=\t"
                     + getCallerInfo(className));
         }
 
+        if (USE_SHARED_ARRAY_CACHE) {
+            final int[] array = (int[]) getOversize(
+                    OversizeArrayPool.KIND_INT, length);
+            if (array != null) {
+                return array;
+            }
+            // even length to be reused:
+            return new int[getOversizeLength(length)];
+        }
         return new int[length];
     }
 
@@ -286,9 +432,7 @@ final class RendererContext implements MarlinConst {
         if (DO_CHECKS && length >= needSize) {
             return in;
         }
-        if (DO_STATS) {
-            incResizeInt();
-        }
+        incResizeInt();
 
         // maybe change bucket:
         // ensure getNewSize() > newSize:
@@ -313,8 +457,14 @@ final class RendererContext implements MarlinConst {
         final int length = array.length;
         // odd sized array are non-cached arrays (initial arrays)
         // ensure to never store initial arrays in cache:
-        if (((length & 0x1) == 0) && (length <= MAX_ARRAY_SIZE)) {
-            getIntArrayCache(length).putArray(array, length, fromIndex, toIndex);
+        if ((length & 0x1) == 0) {
+            if (length <= MAX_ARRAY_SIZE) {
+                getIntArrayCache(length).putArray(array, length, fromIndex, toIndex);
+            } else if (USE_SHARED_ARRAY_CACHE) {
+                // clean-up array of dirty part[fromIndex; toIndex[
+                Arrays.fill(array, fromIndex, toIndex, 0);
+                putOversize(OversizeArrayPool.KIND_INT, array, length, 4);
+            }
         }
     }
 
@@ -329,15 +479,22 @@ final class RendererContext implements MarlinConst {
             return getDirtyIntArrayCache(length).getArray();
         }
 
-        if (DO_STATS) {
-            incOversize();
-        }
+        incOversize();
 
         if (DO_LOG_OVER_SIZE) {
             logInfo("getDirtyIntArray[oversize]: length=\t" + length
                     + "\tfrom=\t" + getCallerInfo(className));
         }
 
+        if (USE_SHARED_ARRAY_CACHE) {
+            final int[] array = (int[]) getOversize(
+                    OversizeArrayPool.KIND_DIRTY_INT, length);
+            if (array != null) {
+                return array;
+            }
+            // even length to be reused:
+            return new int[getOversizeLength(length)];
+        }
         return new int[length];
     }
 
@@ -348,9 +505,7 @@ final class RendererContext implements MarlinConst {
         if (DO_CHECKS && length >= needSize) {
             return in;
         }
-        if (DO_STATS) {
-            incResizeDirtyInt();
-        }
+        incResizeDirtyInt();
 
         // maybe change bucket:
         // ensure getNewSize() > newSize:
@@ -374,8 +529,12 @@ final class RendererContext implements MarlinConst {
         final int length = array.length;
         // odd sized array are non-cached arrays (initial arrays)
         // ensure to never store initial arrays in cache:
-        if (((length & 0x1) == 0) && (length <= MAX_ARRAY_SIZE)) {
-            getDirtyIntArrayCache(length).putDirtyArray(array, length);
+        if ((length & 0x1) == 0) {
+            if (length <= MAX_ARRAY_SIZE) {
+                getDirtyIntArrayCache(length).putDirtyArray(array, length);
+            } else if (USE_SHARED_ARRAY_CACHE) {
+                putOversize(OversizeArrayPool.KIND_DIRTY_INT, array, length, 4);
+            }
         }
     }
 
@@ -390,15 +549,22 @@ final class RendererContext implements MarlinConst {
             return getDirtyFloatArrayCache(length).getArray();
         }
 
-        if (DO_STATS) {
-            incOversize();
-        }
+        incOversize();
 
         if (DO_LOG_OVER_SIZE) {
             logInfo("getDirtyFloatArray[oversize]: length=\t" + length
                     + "\tfrom=\t" + getCallerInfo(className));
         }
 
+        if (USE_SHARED_ARRAY_CACHE) {
+            final float[] array = (float[]) getOversize(
+                    OversizeArrayPool.KIND_DIRTY_FLOAT, length);
+            if (array != null) {
+                return array;
+            }
+            // even length to be reused:
+            return new float[getOversizeLength(length)];
+        }
         return new float[length];
     }
 
@@ -409,9 +575,7 @@ final class RendererContext implements MarlinConst {
         if (DO_CHECKS && length >= needSize) {
             return in;
         }
-        if (DO_STATS) {
-            incResizeDirtyFloat();
-        }
+        incResizeDirtyFloat();
 
         // maybe change bucket:
         // ensure getNewSize() > newSize:
@@ -435,8 +599,12 @@ final class RendererContext implements MarlinConst {
         final int length = array.length;
         // odd sized array are non-cached arrays (initial arrays)
         // ensure to never store initial arrays in cache:
-        if (((length & 0x1) == 0) && (length <= MAX_ARRAY_SIZE)) {
-            getDirtyFloatArrayCache(length).putDirtyArray(array, length);
+        if ((length & 0x1) == 0) {
+            if (length <= MAX_ARRAY_SIZE) {
+                getDirtyFloatArrayCache(length).putDirtyArray(array, length);
+            } else if (USE_SHARED_ARRAY_CACHE) {
+                putOversize(OversizeArrayPool.KIND_DIRTY_FLOAT, array, length, 4);
+            }
         }
     }
 
@@ -448,6 +616,8 @@ final class RendererContext implements MarlinConst {
         final IntArrayCache[] dirtyIntArrayCaches;
         final FloatArrayCache[] dirtyFloatArrayCaches;
         final ByteArrayCache[] dirtyByteArrayCaches;
+        // trim epoch when created
+        final int epoch = trimEpoch;
 
         ArrayCachesHolder() {
             intArrayCaches = new IntArrayCache[BUCKETS];
@@ -456,11 +626,15 @@ final class RendererContext implements MarlinConst {
             dirtyByteArrayCaches = new ByteArrayCache[BUCKETS];
 
             for (int i = 0; i < BUCKETS; i++) {
-                intArrayCaches[i] = new IntArrayCache(ARRAY_SIZES[i]);
+                intArrayCaches[i] = new IntArrayCache(ARRAY_SIZES[i],
+                        getSharedPool(SHARED_INT_ARRAYS, i));
                 // dirty array caches:
-                dirtyIntArrayCaches[i] = new IntArrayCache(ARRAY_SIZES[i]);
-                dirtyFloatArrayCaches[i] = new FloatArrayCache(ARRAY_SIZES[i]);
-                dirtyByteArrayCaches[i] = new ByteArrayCache(DIRTY_BYTE_ARRAY_SIZES[i]);
+                dirtyIntArrayCaches[i] = new IntArrayCache(ARRAY_SIZES[i],
+                        getSharedPool(SHARED_DIRTY_INT_ARRAYS, i));
+                dirtyFloatArrayCaches[i] = new FloatArrayCache(ARRAY_SIZES[i],
+                        getSharedPool(SHARED_DIRTY_FLOAT_ARRAYS, i));
+                dirtyByteArrayCaches[i] = new ByteArrayCache(DIRTY_BYTE_ARRAY_SIZES[i],
+                        getSharedPool(SHARED_DIRTY_BYTE_ARRAYS, i));
             }
         }
     }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import static org.marlin.pisces.MarlinUtils.logInfo;
+
+/**
+ * Bounded and allocation-free pool of RendererContext references
+ * (used when ThreadLocal is disabled).
+ *
+ * References (hard, soft or weak) are stored in striped slots: each thread
+ * starts probing at its own slot (hashed thread id) then claims or fills
+ * slots with compare-and-set operations. Slots are spaced by one cache line
+ * to avoid false sharing. When all slots are used, returned contexts are
+ * discarded (left to the GC).
+ */
+final class RendererContextPool implements MarlinConst {
+
+    // slot spacing (16 references ~ 64 bytes):
+    private static final int STRIDE_SHIFT = 4;
+
+    private final AtomicReferenceArray<Object> slots;
+    // number of slots - 1 (power of 2)
+    private final int mask;
+    // stats (shared by all threads)
+    private final AtomicLong hitOp = new AtomicLong();
+    private final AtomicLong missOp = new AtomicLong();
+    private final AtomicLong contendedOp = new AtomicLong();
+    private final AtomicLong discardOp = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of pooled contexts (power of 2)
+     */
+    RendererContextPool(final int capacity) {
+        this.slots = new AtomicReferenceArray<Object>(capacity << STRIDE_SHIFT);
+        this.mask = capacity - 1;
+    }
+
+    private int probe() {
+        // spread thread ids (fibonacci hashing):
+        return ((int) Thread.currentThread().getId() * 0x9E3779B9) >>> 16;
+    }
+
+    /**
+     * Claim a RendererContext reference from this pool
+     * @return reference or null if the pool is empty
+     */
+    Object poll() {
+        final AtomicReferenceArray<Object> _slots = slots;
+        final int start = probe();
+        for (int i = 0; i <= mask; i++) {
+            final int idx = ((start + i) & mask) << STRIDE_SHIFT;
+            final Object ref = _slots.get(idx);
+            if (ref != null) {
+                if (_slots.compareAndSet(idx, ref, null)) {
+                    if (DO_STATS) {
+                        hitOp.incrementAndGet();
+                    }
+                    return ref;
+                }
+                if (DO_STATS) {
+                    contendedOp.incrementAndGet();
+                }
+            }
+        }
+        if (DO_STATS) {
+            missOp.incrementAndGet();
+        }
+        return null;
+    }
+
+    /**
+     * Release a RendererContext reference into this pool
+     * @param ref reference to store
+     * @return false if the pool is full (context discarded)
+     */
+    boolean offer(final Object ref) {
+        final AtomicReferenceArray<Object> _slots = slots;
+        final int start = probe();
+        for (int i = 0; i <= mask; i++) {
+            final int idx = ((start + i) & mask) << STRIDE_SHIFT;
+            if (_slots.get(idx) == null) {
+                if (_slots.compareAndSet(idx, null, ref)) {
+                    return true;
+                }
+                if (DO_STATS) {
+                    contendedOp.incrementAndGet();
+                }
+            }
+        }
+        if (DO_STATS) {
+            discardOp.incrementAndGet();
+        }
+        return false;
+    }
+
+    long getHitCount() {
+        return hitOp.get();
+    }
+
+    long getMissCount() {
+        return missOp.get();
+    }
+
+    long getContendedCount() {
+        return contendedOp.get();
+    }
+
+    long getDiscardCount() {
+        return discardOp.get();
+    }
+
+    void resetStats() {
+        hitOp.set(0L);
+        missOp.set(0L);
+        contendedOp.set(0L);
+        discardOp.set(0L);
+    }
+
+    int size() {
+        int n = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (slots.get(i << STRIDE_SHIFT) != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    void dumpStats() {
+        logInfo("RendererContextPool: hits: " + hitOp.get()
+                + " - misses: " + missOp.get()
+                + " - contended: " + contendedOp.get()
+                + " - discarded: " + discardOp.get()
+                + " :: pool size: " + size() + " / " + (mask + 1));
+    }
+}
@@ -24,46 +24,170 @@
  */
 package org.marlin.pisces;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import static org.marlin.pisces.MarlinUtils.logInfo;
 import org.marlin.pisces.stats.Histogram;
 import org.marlin.pisces.stats.Monitor;
 import org.marlin.pisces.stats.StatLong;
 
 /**
- * This class gathers global rendering statistics for debugging purposes only
+ * This class gathers rendering statistics for debugging / monitoring
+ * purposes: each renderer context updates its own instance (no contention)
+ * and all instances are aggregated on read.
  */
 public final class RendererStats implements MarlinConst {
 
-    // singleton
-    private static volatile RendererStats singleton = null;
+    /* RendererContext collection as weak references: the statistics of
+       collected contexts are merged into the retired statistics */
+    private static final Set<ContextRef> allContexts
+        = Collections.newSetFromMap(new ConcurrentHashMap<ContextRef, Boolean>());
+    private static final ReferenceQueue<RendererContext> refQueue
+        = new ReferenceQueue<RendererContext>();
+    // statistics of collected renderer contexts
+    private static final RendererStats retired = new RendererStats();
 
-    static RendererStats getInstance() {
-        if (singleton == null) {
-            singleton = new RendererStats();
+    static {
+        if (DO_STATS || DO_MONITORS) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    dump();
+                }
+            });
+
+            if (USE_DUMP_THREAD) {
+                final Timer statTimer = new Timer("RendererStats", true);
+                statTimer.scheduleAtFixedRate(new TimerTask() {
+                    @Override
+                    public void run() {
+                        dump();
+                    }
+                }, STAT_DUMP, STAT_DUMP);
+            }
+        }
+    }
+
+    /**
+     * Create the statistics of a new renderer context
+     *
+     * @param rdrCtx renderer context
+     * @return new RendererStats instance
+     */
+    static RendererStats createInstance(final RendererContext rdrCtx) {
+        pruneContexts();
+        final RendererStats stats = new RendererStats();
+        allContexts.add(new ContextRef(rdrCtx, stats));
+        return stats;
+    }
+
+    /**
+     * Merge the statistics of collected renderer contexts into the retired
+     * statistics and forget them
+     */
+    private static void pruneContexts() {
+        ContextRef ref = (ContextRef) refQueue.poll();
+        if (ref != null) {
+            synchronized (retired) {
+                for (; ref != null; ref = (ContextRef) refQueue.poll()) {
+                    if (allContexts.remove(ref)) {
+                        retired.mergeAll(ref.stats);
+                    }
+                }
+            }
         }
-        return singleton;
     }
 
     public static void dumpStats() {
-        if (singleton != null) {
-            singleton.dump();
+        dump();
+    }
+
+    /**
+     * Return a snapshot of statistics and monitors aggregated over all
+     * renderer contexts
+     *
+     * @return aggregated statistics then monitors (copies)
+     */
+    public static StatLong[] snapshot() {
+        final RendererStats total = aggregate();
+        final StatLong[] all
+            = new StatLong[total.statistics.length + total.monitors.length];
+        System.arraycopy(total.statistics, 0, all, 0, total.statistics.length);
+        System.arraycopy(total.monitors, 0, all, total.statistics.length,
+                         total.monitors.length);
+        return all;
+    }
+
+    /**
+     * Reset statistics and monitors of all renderer contexts
+     *
+     * Counters are plain fields reset from the calling thread while their
+     * context may still update them: updates racing with the reset may be
+     * lost or survive it (approximate values, no synchronization on the
+     * rendering path).
+     */
+    public static void reset() {
+        pruneContexts();
+        synchronized (retired) {
+            retired.resetAll(true, true);
+        }
+        for (ContextRef ref : allContexts) {
+            ref.stats.resetAll(true, true);
+        }
+    }
+
+    private static RendererStats aggregate() {
+        pruneContexts();
+        final RendererStats total = new RendererStats();
+        synchronized (retired) {
+            total.mergeAll(retired);
+        }
+        for (ContextRef ref : allContexts) {
+            total.mergeAll(ref.stats);
+        }
+        return total;
+    }
+
+    private void mergeAll(final RendererStats other) {
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i].merge(other.statistics[i]);
+        }
+        for (int i = 0; i < monitors.length; i++) {
+            monitors[i].merge(other.monitors[i]);
+        }
+    }
+
+    private void resetAll(final boolean stats, final boolean monitors) {
+        if (stats) {
+            for (StatLong stat : statistics) {
+                stat.reset();
+            }
+        }
+        if (monitors) {
+            for (Monitor m : this.monitors) {
+                m.reset();
+            }
         }
     }
 
-    /* RendererContext collection as hard references
-       (only used for debugging purposes) */
-    final ConcurrentLinkedQueue<RendererContext> allContexts
-        = new ConcurrentLinkedQueue<RendererContext>();
     // stats
+    final StatLong stat_pre_culled_shapes
+        = new StatLong("engine.culled.shapes");
     final StatLong stat_cache_rowAA
         = new StatLong("cache.rowAA");
     final StatLong stat_cache_rowAAChunk
         = new StatLong("cache.rowAAChunk");
     final StatLong stat_cache_tiles
         = new StatLong("cache.tiles");
+    final StatLong stat_cache_rowAARLE
+        = new StatLong("cache.rowAARLE.runs");
+    final StatLong stat_str_arc_lookups
+        = new StatLong("stroker.arc.lookups");
     final StatLong stat_rdr_poly_stack_curves
         = new StatLong("renderer.poly.stack.curves");
     final StatLong stat_rdr_poly_stack_types
@@ -113,6 +237,8 @@ public final class RendererStats implements MarlinConst {
         = new StatLong("array.stroker.polystack.curveTypes.d_byte");
     final StatLong stat_array_marlincache_rowAAChunk
         = new StatLong("array.marlincache.rowAAChunk.d_byte");
+    final StatLong stat_array_marlincache_rowAARLE
+        = new StatLong("array.marlincache.rowAARLE.d_int");
     final StatLong stat_array_marlincache_touchedTile
         = new StatLong("array.marlincache.touchedTile.int");
     final StatLong stat_array_renderer_alphaline
@@ -142,11 +268,16 @@ public final class RendererStats implements MarlinConst {
         = new Histogram("renderer.crossings.msorts.adds");
     final Histogram hist_tile_generator_alpha
         = new Histogram("tile_generator.alpha");
+    final Histogram hist_tile_generator_runs
+        = new Histogram("tile_generator.runs");
     // all stats
     final StatLong[] statistics = new StatLong[]{
+        stat_pre_culled_shapes,
         stat_cache_rowAA,
         stat_cache_rowAAChunk,
         stat_cache_tiles,
+        stat_cache_rowAARLE,
+        stat_str_arc_lookups,
         stat_rdr_poly_stack_types,
         stat_rdr_poly_stack_curves,
         stat_rdr_addLine,
@@ -173,10 +304,12 @@ public final class RendererStats implements MarlinConst {
         hist_rdr_crossings_msorts,
         hist_rdr_crossings_msorts_adds,
         hist_tile_generator_alpha,
+        hist_tile_generator_runs,
         stat_array_dasher_firstSegmentsBuffer,
         stat_array_stroker_polystack_curves,
         stat_array_stroker_polystack_curveTypes,
         stat_array_marlincache_rowAAChunk,
+        stat_array_marlincache_rowAARLE,
         stat_array_marlincache_touchedTile,
         stat_array_renderer_alphaline,
         stat_array_renderer_crossings,
@@ -187,24 +320,27 @@ public final class RendererStats implements MarlinConst {
         stat_array_renderer_aux_edgePtrs
     };
     // monitors
+    // sampling gate (1 shape in N) shared by all monitors if enabled
+    final Monitor.Gate monitorGate = (MONITOR_SAMPLE_SHAPES)
+        ? new Monitor.Gate(MONITOR_SAMPLING) : null;
     final Monitor mon_pre_getAATileGenerator
-        = new Monitor("MarlinRenderingEngine.getAATileGenerator()");
+        = newMonitor("MarlinRenderingEngine.getAATileGenerator()");
     final Monitor mon_npi_currentSegment
-        = new Monitor("NormalizingPathIterator.currentSegment()");
+        = newMonitor("NormalizingPathIterator.currentSegment()");
     final Monitor mon_rdr_addLine
-        = new Monitor("Renderer.addLine()");
+        = newMonitor("Renderer.addLine()");
     final Monitor mon_rdr_endRendering
-        = new Monitor("Renderer.endRendering()");
+        = newMonitor("Renderer.endRendering()");
     final Monitor mon_rdr_endRendering_Y
-        = new Monitor("Renderer._endRendering(Y)");
+        = newMonitor("Renderer._endRendering(Y)");
     final Monitor mon_rdr_copyAARow
-        = new Monitor("Renderer.copyAARow()");
+        = newMonitor("Renderer.copyAARow()");
     final Monitor mon_pipe_renderTiles
-        = new Monitor("AAShapePipe.renderTiles()");
+        = newMonitor("AAShapePipe.renderTiles()");
     final Monitor mon_ptg_getAlpha
-        = new Monitor("MarlinTileGenerator.getAlpha()");
+        = newMonitor("MarlinTileGenerator.getAlpha()");
     final Monitor mon_debug
-        = new Monitor("DEBUG()");
+        = newMonitor("DEBUG()");
     // all monitors
     final Monitor[] monitors = new Monitor[]{
         mon_pre_getAATileGenerator,
@@ -220,62 +356,68 @@ public final class RendererStats implements MarlinConst {
 
     private RendererStats() {
         super();
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            @Override
-            public void run() {
-                dump();
-            }
-        });
-
-        if (USE_DUMP_THREAD) {
-            final Timer statTimer = new Timer("RendererStats");
-            statTimer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    dump();
-                }
-            }, STAT_DUMP, STAT_DUMP);
-        }
+    private Monitor newMonitor(final String name) {
+        return new Monitor(name, MONITOR_SAMPLING, monitorGate);
     }
 
-    void dump() {
+    static synchronized void dump() {
         if (DO_STATS) {
             ArrayCache.dumpStats();
+
+            if (MarlinRenderingEngine.rdrCtxPool != null) {
+                MarlinRenderingEngine.rdrCtxPool.dumpStats();
+            }
+            logInfo("MarlinLease: overflow binds: "
+                    + MarlinLease.getOverflowCount());
         }
-        final RendererContext[] all = allContexts.toArray(
-                                          new RendererContext[allContexts.size()]);
-        for (RendererContext rdrCtx : all) {
-            logInfo("RendererContext: " + rdrCtx.name);
+        final RendererStats total = aggregate();
 
-            if (DO_MONITORS) {
-                for (Monitor monitor : monitors) {
-                    if (monitor.count != 0) {
-                        logInfo(monitor.toString());
-                    }
+        if (DO_MONITORS) {
+            for (Monitor monitor : total.monitors) {
+                if (monitor.count != 0) {
+                    logInfo(monitor.toString());
                 }
-                // As getAATileGenerator percents:
-                final long total = mon_pre_getAATileGenerator.sum;
-                if (total != 0L) {
-                    for (Monitor monitor : monitors) {
-                        logInfo(monitor.name + " : "
-                                + ((100d * monitor.sum) / total) + " %");
-                    }
+            }
+            // As getAATileGenerator percents:
+            final long sum
+                = total.mon_pre_getAATileGenerator.getEstimatedSum();
+            if (sum != 0L) {
+                for (Monitor monitor : total.monitors) {
+                    logInfo(monitor.name + " : "
+                            + ((100d * monitor.getEstimatedSum()) / sum)
+                            + " %");
                 }
-                if (DO_FLUSH_MONITORS) {
-                    for (Monitor m : monitors) {
-                        m.reset();
-                    }
+            }
+        }
+        if (DO_STATS) {
+            for (StatLong stat : total.statistics) {
+                if (stat.count != 0) {
+                    logInfo(stat.toString());
                 }
             }
+        }
+
+        // reset dumped values (racy, see reset()):
+        synchronized (retired) {
+            retired.resetAll(DO_STATS, DO_FLUSH_MONITORS);
+        }
+
+        for (ContextRef ref : allContexts) {
+            // reset dumped values, even if the context was collected
+            // (merged into retired statistics on next prune):
+            ref.stats.resetAll(DO_STATS, DO_FLUSH_MONITORS);
+
+            final RendererContext rdrCtx = ref.get();
+            if (rdrCtx == null) {
+                continue;
+            }
+            logInfo("RendererContext: " + rdrCtx.name
+                    + ((rdrCtx.slim) ? " (slim)" : "")
+                    + " footprint: " + rdrCtx.getFootprint() + " bytes");
 
             if (DO_STATS) {
-                for (StatLong stat : statistics) {
-                    if (stat.count != 0) {
-                        logInfo(stat.toString());
-                        stat.reset();
-                    }
-                }
                 // IntArrayCaches stats:
                 final RendererContext.ArrayCachesHolder holder
                     = rdrCtx.getArrayCachesHolder();
@@ -300,4 +442,17 @@ public final class RendererStats implements MarlinConst {
             }
         }
     }
+
+    /**
+     * Weak reference to a renderer context keeping its statistics
+     */
+    static final class ContextRef extends WeakReference<RendererContext> {
+
+        final RendererStats stats;
+
+        ContextRef(final RendererContext rdrCtx, final RendererStats stats) {
+            super(rdrCtx, refQueue);
+            this.stats = stats;
+        }
+    }
 }
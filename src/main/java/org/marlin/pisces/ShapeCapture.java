@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.marlin.geom.Path2D;
+import static org.marlin.pisces.MarlinUtils.logException;
+import static org.marlin.pisces.MarlinUtils.logInfo;
+import sun.java2d.pipe.Region;
+
+/**
+ * This class captures the calls to the rendering engine (getAATileGenerator
+ * for shapes and parallelograms, strokeTo) with their geometry, transform,
+ * clip, stroke and winding rule into a compact binary log that ShapeReplay
+ * feeds back to the engine offline.
+ *
+ * Each renderer context encodes its records into its own buffer (no
+ * contention) flushed by blocks of complete records into the shared file.
+ * Capture stops when the file reaches CAPTURE_MAX_SIZE. Buffers are kept
+ * until flushed: when their context is discarded, once it is collected or
+ * at shutdown.
+ *
+ * Format (big-endian): header (MAGIC, VERSION) then records:
+ * kind (byte), flags (byte),
+ * clip (4 int: loX loY hiX hiY) except for STROKE_TO,
+ * transform (6 double) if FLAG_TRANSFORM,
+ * stroke if STROKE or STROKE_TO: width (float), cap (byte), join (byte),
+ *   miter limit (float), dash phase (float), dash count (int), dashes (float),
+ * PARALLELOGRAM: x y dx1 dy1 dx2 dy2 lw1 lw2 (8 double),
+ * otherwise the path (user space): winding rule (byte), segment count (int)
+ *   then segments: type (byte) followed by its coordinates (float).
+ */
+final class ShapeCapture implements MarlinConst {
+
+    static final int MAGIC = 0x4D434150; // MCAP
+    static final int VERSION = 1;
+
+    // record kinds:
+    static final int FILL = 1;
+    static final int STROKE = 2;
+    static final int PARALLELOGRAM = 3;
+    static final int STROKE_TO = 4;
+
+    // record flags:
+    static final int FLAG_THIN = 1;
+    static final int FLAG_NORMALIZE = 2;
+    static final int FLAG_ANTIALIAS = 4;
+    static final int FLAG_TRANSFORM = 8;
+    // shape was a marlin path (clip culling)
+    static final int FLAG_MARLIN_PATH = 16;
+
+    // buffered bytes flushed to the file:
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    private static final long MAX_SIZE = CAPTURE_MAX_SIZE * 1024L * 1024L;
+
+    // capture enabled (false once the file is full or on error):
+    private static volatile boolean active = DO_CAPTURE;
+    // shared output (lazily opened):
+    private static OutputStream out = null;
+    private static long written = 0L;
+    // registered instances (hard) keyed by a weak reference to their owner
+    // (renderer context): flushed once it is collected or at shutdown
+    private static final HashSet<CaptureRef> captures
+        = new HashSet<CaptureRef>();
+    private static final ReferenceQueue<Object> refQueue
+        = new ReferenceQueue<Object>();
+
+    static {
+        if (DO_CAPTURE) {
+            AccessController.doPrivileged(
+                new PrivilegedAction<Void>() {
+                    @Override
+                    public Void run() {
+                        Runtime.getRuntime().addShutdownHook(new Thread() {
+                            @Override
+                            public void run() {
+                                close();
+                            }
+                        });
+                        return null;
+                    }
+                });
+        }
+    }
+
+    private byte[] buf = new byte[FLUSH_SIZE];
+    private int pos = 0;
+    private final float[] coords = new float[6];
+
+    ShapeCapture(final Object owner) {
+        // flush instances whose owner was collected:
+        pruneCaptures();
+        synchronized (captures) {
+            captures.add(new CaptureRef(owner, this));
+        }
+    }
+
+    /**
+     * Flush and unregister the instances whose owner was collected
+     */
+    private static void pruneCaptures() {
+        CaptureRef ref;
+        while ((ref = (CaptureRef) refQueue.poll()) != null) {
+            synchronized (captures) {
+                captures.remove(ref);
+            }
+            ref.capture.flush();
+        }
+    }
+
+    /**
+     * Capture a getAATileGenerator(Shape...) call
+     */
+    synchronized void shape(final Shape s, final AffineTransform at,
+                            final Region clip, final BasicStroke bs,
+                            final boolean thin, final boolean normalize)
+    {
+        if (!active) {
+            return;
+        }
+        int flags = (thin ? FLAG_THIN : 0) | (normalize ? FLAG_NORMALIZE : 0);
+        if (at != null) {
+            flags |= FLAG_TRANSFORM;
+        }
+        if (s instanceof Path2D.Float) {
+            flags |= FLAG_MARLIN_PATH;
+        }
+        final int start = pos;
+        boolean done = false;
+        try {
+            ensure(2 + 16 + 48 + 32);
+            putByte((bs == null) ? FILL : STROKE);
+            putByte(flags);
+            putClip(clip);
+            if (at != null) {
+                putTransform(at);
+            }
+            if (bs != null) {
+                putStroke(bs);
+            }
+            putPath(s.getPathIterator(null));
+            done = true;
+        } finally {
+            if (!done) {
+                // drop the partial record (path iterator failure, OOME):
+                pos = start;
+            }
+        }
+        endRecord();
+    }
+
+    /**
+     * Capture a getAATileGenerator(parallelogram) call
+     */
+    synchronized void parallelogram(final double x, final double y,
+                                    final double dx1, final double dy1,
+                                    final double dx2, final double dy2,
+                                    final double lw1, final double lw2,
+                                    final Region clip)
+    {
+        if (!active) {
+            return;
+        }
+        ensure(2 + 16 + 64);
+        putByte(PARALLELOGRAM);
+        putByte(0);
+        putClip(clip);
+        putDouble(x);
+        putDouble(y);
+        putDouble(dx1);
+        putDouble(dy1);
+        putDouble(dx2);
+        putDouble(dy2);
+        putDouble(lw1);
+        putDouble(lw2);
+        endRecord();
+    }
+
+    /**
+     * Capture a strokeTo(PathConsumer2D) call
+     */
+    synchronized void strokeTo(final Shape s, final AffineTransform at,
+                               final BasicStroke bs, final boolean thin,
+                               final boolean normalize, final boolean antialias)
+    {
+        if (!active) {
+            return;
+        }
+        int flags = (thin ? FLAG_THIN : 0) | (normalize ? FLAG_NORMALIZE : 0)
+                    | (antialias ? FLAG_ANTIALIAS : 0);
+        if (at != null) {
+            flags |= FLAG_TRANSFORM;
+        }
+        if (s instanceof Path2D.Float) {
+            flags |= FLAG_MARLIN_PATH;
+        }
+        final int start = pos;
+        boolean done = false;
+        try {
+            ensure(2 + 48 + 32);
+            putByte(STROKE_TO);
+            putByte(flags);
+            if (at != null) {
+                putTransform(at);
+            }
+            putStroke(bs);
+            putPath(s.getPathIterator(null));
+            done = true;
+        } finally {
+            if (!done) {
+                // drop the partial record (path iterator failure, OOME):
+                pos = start;
+            }
+        }
+        endRecord();
+    }
+
+    private void putClip(final Region clip) {
+        putInt(clip.getLoX());
+        putInt(clip.getLoY());
+        putInt(clip.getHiX());
+        putInt(clip.getHiY());
+    }
+
+    private void putTransform(final AffineTransform at) {
+        putDouble(at.getScaleX());
+        putDouble(at.getShearY());
+        putDouble(at.getShearX());
+        putDouble(at.getScaleY());
+        putDouble(at.getTranslateX());
+        putDouble(at.getTranslateY());
+    }
+
+    private void putStroke(final BasicStroke bs) {
+        final float[] dashes = bs.getDashArray();
+        final int n = (dashes != null) ? dashes.length : 0;
+
+        ensure(18 + 4 * n);
+        putFloat(bs.getLineWidth());
+        putByte(bs.getEndCap());
+        putByte(bs.getLineJoin());
+        putFloat(bs.getMiterLimit());
+        putFloat(bs.getDashPhase());
+        putInt(n);
+        for (int i = 0; i < n; i++) {
+            putFloat(dashes[i]);
+        }
+    }
+
+    private void putPath(final PathIterator pi) {
+        final float[] c = coords;
+
+        ensure(5);
+        putByte(pi.getWindingRule());
+        // segment count (updated at the end):
+        final int countPos = pos;
+        putInt(0);
+
+        int count = 0;
+        for (; !pi.isDone(); pi.next()) {
+            final int type = pi.currentSegment(c);
+            final int n;
+            switch (type) {
+                case PathIterator.SEG_MOVETO:
+                case PathIterator.SEG_LINETO:
+                    n = 2;
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    n = 4;
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    n = 6;
+                    break;
+                default:
+                    n = 0;
+            }
+            ensure(1 + 4 * n);
+            putByte(type);
+            for (int i = 0; i < n; i++) {
+                putFloat(c[i]);
+            }
+            count++;
+        }
+        final int end = pos;
+        pos = countPos;
+        putInt(count);
+        pos = end;
+    }
+
+    private void endRecord() {
+        if (pos >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    private void ensure(final int len) {
+        if (pos + len > buf.length) {
+            buf = Arrays.copyOf(buf,
+                      Math.max(buf.length << 1, pos + len));
+        }
+    }
+
+    private void putByte(final int v) {
+        buf[pos++] = (byte) v;
+    }
+
+    private void putInt(final int v) {
+        final byte[] b = buf;
+        int p = pos;
+        b[p++] = (byte) (v >>> 24);
+        b[p++] = (byte) (v >>> 16);
+        b[p++] = (byte) (v >>> 8);
+        b[p++] = (byte) v;
+        pos = p;
+    }
+
+    private void putFloat(final float v) {
+        putInt(Float.floatToRawIntBits(v));
+    }
+
+    private void putDouble(final double v) {
+        final long l = Double.doubleToRawLongBits(v);
+        putInt((int) (l >>> 32));
+        putInt((int) l);
+    }
+
+    /**
+     * Write the buffered records into the capture file
+     */
+    synchronized void flush() {
+        if (pos == 0) {
+            return;
+        }
+        write(buf, pos);
+        pos = 0;
+        if (buf.length > FLUSH_SIZE) {
+            // shrink after a huge path:
+            buf = new byte[FLUSH_SIZE];
+        }
+    }
+
+    private static synchronized void write(final byte[] b, final int len) {
+        if (!active) {
+            return;
+        }
+        try {
+            if (out == null) {
+                out = open();
+            }
+            out.write(b, 0, len);
+            written += len;
+
+            if (written >= MAX_SIZE) {
+                active = false;
+                logInfo("ShapeCapture: capture stopped (" + written
+                        + " bytes written into " + CAPTURE_FILE + ")");
+            }
+        } catch (IOException ioe) {
+            active = false;
+            logException("ShapeCapture: unable to write " + CAPTURE_FILE, ioe);
+        }
+    }
+
+    private static OutputStream open() throws IOException {
+        final OutputStream os;
+        try {
+            os = AccessController.doPrivileged(
+                new PrivilegedExceptionAction<OutputStream>() {
+                    @Override
+                    public OutputStream run() throws IOException {
+                        return new FileOutputStream(CAPTURE_FILE);
+                    }
+                });
+        } catch (PrivilegedActionException pae) {
+            throw (IOException) pae.getException();
+        }
+        final byte[] header = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            header[i] = (byte) (MAGIC >>> (24 - 8 * i));
+            header[4 + i] = (byte) (VERSION >>> (24 - 8 * i));
+        }
+        os.write(header);
+        written = header.length;
+        logInfo("ShapeCapture: capturing shapes into " + CAPTURE_FILE);
+        return os;
+    }
+
+    /**
+     * Flush all live buffers and close the capture file (shutdown)
+     */
+    static void close() {
+        pruneCaptures();
+        final ArrayList<ShapeCapture> live = new ArrayList<ShapeCapture>();
+        synchronized (captures) {
+            for (CaptureRef ref : captures) {
+                live.add(ref.capture);
+            }
+        }
+        for (ShapeCapture capture : live) {
+            capture.flush();
+        }
+        synchronized (ShapeCapture.class) {
+            active = false;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ioe) {
+                    logException("ShapeCapture: unable to close " + CAPTURE_FILE,
+                                 ioe);
+                }
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Weak reference to the owner of a capture buffer (hard reference)
+     */
+    static final class CaptureRef extends WeakReference<Object> {
+
+        final ShapeCapture capture;
+
+        CaptureRef(final Object owner, final ShapeCapture capture) {
+            super(owner, refQueue);
+            this.capture = capture;
+        }
+    }
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.Toolkit;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import org.marlin.geom.Path2D;
+import sun.awt.geom.PathConsumer2D;
+import sun.java2d.pipe.AATileGenerator;
+import sun.java2d.pipe.Region;
+
+/**
+ * This tool replays a shape capture (see ShapeCapture) through a Marlin
+ * rendering engine (tiles are generated but not composited) with one or
+ * more threads, each one replaying the whole capture, and reports the
+ * throughput and latency percentiles of the engine calls.
+ *
+ * Usage: ShapeReplay capture-file [-threads N] [-passes N] [-warmup N]
+ *
+ * Renderer settings (sun.java2d.renderer.*) are given as system properties
+ * so Marlin builds and settings can be compared on the same capture.
+ */
+public final class ShapeReplay {
+
+    private final MarlinRenderingEngine engine = new MarlinRenderingEngine();
+    private final Call[] calls;
+
+    ShapeReplay(final Call[] calls) {
+        this.calls = calls;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: ShapeReplay capture-file"
+                               + " [-threads N] [-passes N] [-warmup N]");
+            return;
+        }
+        int threads = 1;
+        int passes = 5;
+        int warmup = 2;
+
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            final int value = Integer.parseInt(args[i + 1]);
+            if ("-threads".equals(args[i])) {
+                threads = Math.max(1, value);
+            } else if ("-passes".equals(args[i])) {
+                passes = Math.max(1, value);
+            } else if ("-warmup".equals(args[i])) {
+                warmup = Math.max(0, value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        // load the awt native library (Region):
+        Toolkit.getDefaultToolkit();
+
+        final Call[] calls = read(args[0]);
+        final int[] counts = new int[5];
+        for (Call call : calls) {
+            counts[call.kind]++;
+        }
+        System.out.println("ShapeReplay: " + calls.length + " calls ("
+            + counts[ShapeCapture.FILL] + " fills, "
+            + counts[ShapeCapture.STROKE] + " strokes, "
+            + counts[ShapeCapture.PARALLELOGRAM] + " parallelograms, "
+            + counts[ShapeCapture.STROKE_TO] + " strokeTo) from " + args[0]);
+        System.out.println("threads: " + threads + " passes: " + passes
+                           + " warmup: " + warmup);
+
+        new ShapeReplay(calls).run(threads, passes, warmup);
+    }
+
+    void run(final int threads, final int passes, final int warmup)
+        throws InterruptedException
+    {
+        final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        final Worker[] workers = new Worker[threads];
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(barrier, passes, warmup);
+            workers[i].setName("ShapeReplay-" + i);
+            workers[i].start();
+        }
+        // start measuring when all threads are warmed up:
+        try {
+            barrier.await();
+        } catch (BrokenBarrierException bbe) {
+            throw new IllegalStateException(bbe);
+        }
+        final long start = System.nanoTime();
+
+        final Histogram total = new Histogram();
+        long pixels = 0L;
+        for (Worker worker : workers) {
+            worker.join();
+            if (worker.error != null) {
+                throw new IllegalStateException("Replay failed", worker.error);
+            }
+            total.add(worker.histogram);
+            pixels += worker.pixels;
+        }
+        final double secs = (System.nanoTime() - start) / 1e9;
+        final long count = total.count;
+
+        System.out.println(String.format(Locale.ROOT,
+            "throughput: %.1f calls/s, %.1f Mpixels/s (%d calls in %.3f s)",
+            count / secs, pixels / secs / 1e6, count, secs));
+        System.out.println(String.format(Locale.ROOT,
+            "latency (us): avg: %.2f p50: %.2f p90: %.2f p99: %.2f p99.9: %.2f"
+            + " max: %.2f",
+            total.sum / (1e3 * Math.max(1L, count)),
+            total.percentile(0.5) / 1e3, total.percentile(0.9) / 1e3,
+            total.percentile(0.99) / 1e3, total.percentile(0.999) / 1e3,
+            total.max / 1e3));
+    }
+
+    /**
+     * Replay thread: replays all calls warmup + passes times
+     */
+    private final class Worker extends Thread {
+
+        private final CyclicBarrier barrier;
+        private final int passes, warmup;
+        final Histogram histogram = new Histogram();
+        long pixels = 0L;
+        Throwable error = null;
+
+        // tile and bounding box:
+        private byte[] alpha = new byte[0];
+        private final int[] bbox = new int[4];
+        private final Sink sink = new Sink();
+
+        Worker(final CyclicBarrier barrier, final int passes, final int warmup) {
+            this.barrier = barrier;
+            this.passes = passes;
+            this.warmup = warmup;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < warmup; i++) {
+                    replayAll(null);
+                }
+            } catch (RuntimeException re) {
+                error = re;
+            } catch (Error e) {
+                error = e;
+            }
+            try {
+                barrier.await();
+            } catch (InterruptedException ie) {
+                return;
+            } catch (BrokenBarrierException bbe) {
+                return;
+            }
+            try {
+                for (int i = 0; error == null && i < passes; i++) {
+                    replayAll(histogram);
+                }
+            } catch (RuntimeException re) {
+                error = re;
+            } catch (Error e) {
+                error = e;
+            }
+        }
+
+        private void replayAll(final Histogram h) {
+            final Call[] _calls = calls;
+            for (int i = 0; i < _calls.length; i++) {
+                final long start = System.nanoTime();
+                final long area = replay(_calls[i]);
+                if (h != null) {
+                    h.record(System.nanoTime() - start);
+                    pixels += area;
+                }
+            }
+        }
+
+        private long replay(final Call c) {
+            final AATileGenerator ptg;
+            switch (c.kind) {
+                case ShapeCapture.FILL:
+                case ShapeCapture.STROKE:
+                    ptg = engine.getAATileGenerator(c.shape, c.at, c.clip, c.bs,
+                              (c.flags & ShapeCapture.FLAG_THIN) != 0,
+                              (c.flags & ShapeCapture.FLAG_NORMALIZE) != 0, bbox);
+                    break;
+                case ShapeCapture.PARALLELOGRAM:
+                    final double[] p = c.pgram;
+                    ptg = engine.getAATileGenerator(p[0], p[1], p[2], p[3],
+                              p[4], p[5], p[6], p[7], c.clip, bbox);
+                    break;
+                case ShapeCapture.STROKE_TO:
+                    engine.strokeTo(c.shape, c.at, c.bs,
+                        (c.flags & ShapeCapture.FLAG_THIN) != 0,
+                        (c.flags & ShapeCapture.FLAG_NORMALIZE) != 0,
+                        (c.flags & ShapeCapture.FLAG_ANTIALIAS) != 0, sink);
+                    return 0L;
+                default:
+                    return 0L;
+            }
+            if (ptg == null) {
+                return 0L;
+            }
+            try {
+                return consumeTiles(ptg);
+            } finally {
+                ptg.dispose();
+            }
+        }
+
+        /**
+         * Generate all tiles (see AAShapePipe.renderTiles)
+         */
+        private long consumeTiles(final AATileGenerator ptg) {
+            final int tw = ptg.getTileWidth();
+            final int th = ptg.getTileHeight();
+            if (alpha.length < tw * th) {
+                alpha = new byte[tw * th];
+            }
+            final TileRunGenerator runs = (ptg instanceof TileRunGenerator)
+                                          ? (TileRunGenerator) ptg : null;
+
+            for (int y = bbox[1]; y < bbox[3]; y += th) {
+                for (int x = bbox[0]; x < bbox[2]; x += tw) {
+                    final int a = ptg.getTypicalAlpha();
+                    if (runs != null && (a == 0x00 || a == 0xff)) {
+                        final int n = runs.getTileRunLength();
+                        if (n > 1) {
+                            runs.nextTiles(n);
+                            x += (n - 1) * tw;
+                            continue;
+                        }
+                    }
+                    if (a == 0x00 || a == 0xff) {
+                        ptg.nextTile();
+                    } else {
+                        ptg.getAlpha(alpha, 0, tw);
+                    }
+                }
+            }
+            return ((long) (bbox[2] - bbox[0])) * (bbox[3] - bbox[1]);
+        }
+    }
+
+    /**
+     * Read all calls of the given capture file
+     */
+    static Call[] read(final String file) throws IOException {
+        final ArrayList<Call> calls = new ArrayList<Call>();
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024)))
+        {
+            if (in.readInt() != ShapeCapture.MAGIC) {
+                throw new IOException("Not a shape capture: " + file);
+            }
+            final int version = in.readInt();
+            if (version != ShapeCapture.VERSION) {
+                throw new IOException("Unsupported capture version: " + version);
+            }
+            for (;;) {
+                final int kind = in.read();
+                if (kind == -1) {
+                    break;
+                }
+                try {
+                    calls.add(readCall(in, kind));
+                } catch (EOFException eofe) {
+                    // truncated record (capture in progress):
+                    break;
+                }
+            }
+        }
+        return calls.toArray(new Call[calls.size()]);
+    }
+
+    private static Call readCall(final DataInputStream in, final int kind)
+        throws IOException
+    {
+        final Call c = new Call(kind, in.readUnsignedByte());
+
+        if (kind != ShapeCapture.STROKE_TO) {
+            final int x0 = in.readInt();
+            final int y0 = in.readInt();
+            final int x1 = in.readInt();
+            final int y1 = in.readInt();
+            c.clip = Region.getInstanceXYXY(x0, y0, x1, y1);
+        }
+        if ((c.flags & ShapeCapture.FLAG_TRANSFORM) != 0) {
+            c.at = new AffineTransform(in.readDouble(), in.readDouble(),
+                                       in.readDouble(), in.readDouble(),
+                                       in.readDouble(), in.readDouble());
+        }
+        switch (kind) {
+            case ShapeCapture.FILL:
+                break;
+            case ShapeCapture.STROKE:
+            case ShapeCapture.STROKE_TO:
+                c.bs = readStroke(in);
+                break;
+            case ShapeCapture.PARALLELOGRAM:
+                c.pgram = new double[8];
+                for (int i = 0; i < 8; i++) {
+                    c.pgram[i] = in.readDouble();
+                }
+                return c;
+            default:
+                throw new IOException("Invalid record kind: " + kind);
+        }
+        c.shape = readPath(in, (c.flags & ShapeCapture.FLAG_MARLIN_PATH) != 0);
+        return c;
+    }
+
+    private static BasicStroke readStroke(final DataInputStream in)
+        throws IOException
+    {
+        final float width = in.readFloat();
+        final int cap = in.readUnsignedByte();
+        final int join = in.readUnsignedByte();
+        final float miterLimit = in.readFloat();
+        final float dashPhase = in.readFloat();
+        final int n = in.readInt();
+        float[] dashes = null;
+        if (n != 0) {
+            dashes = new float[n];
+            for (int i = 0; i < n; i++) {
+                dashes[i] = in.readFloat();
+            }
+        }
+        return new BasicStroke(width, cap, join, miterLimit, dashes, dashPhase);
+    }
+
+    private static Shape readPath(final DataInputStream in,
+                                  final boolean marlinPath)
+        throws IOException
+    {
+        final int rule = in.readUnsignedByte();
+        final int count = in.readInt();
+
+        // marlin paths keep their clip culling:
+        final Path2D.Float mp = (marlinPath) ? new Path2D.Float(rule, count)
+                                             : null;
+        final java.awt.geom.Path2D.Float p = (marlinPath) ? null
+            : new java.awt.geom.Path2D.Float(rule, count);
+
+        for (int i = 0; i < count; i++) {
+            final int type = in.readUnsignedByte();
+            switch (type) {
+                case PathIterator.SEG_MOVETO:
+                    final float mx = in.readFloat(), my = in.readFloat();
+                    if (mp != null) { mp.moveTo(mx, my); } else { p.moveTo(mx, my); }
+                    break;
+                case PathIterator.SEG_LINETO:
+                    final float lx = in.readFloat(), ly = in.readFloat();
+                    if (mp != null) { mp.lineTo(lx, ly); } else { p.lineTo(lx, ly); }
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    final float qx1 = in.readFloat(), qy1 = in.readFloat();
+                    final float qx2 = in.readFloat(), qy2 = in.readFloat();
+                    if (mp != null) {
+                        mp.quadTo(qx1, qy1, qx2, qy2);
+                    } else {
+                        p.quadTo(qx1, qy1, qx2, qy2);
+                    }
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    final float cx1 = in.readFloat(), cy1 = in.readFloat();
+                    final float cx2 = in.readFloat(), cy2 = in.readFloat();
+                    final float cx3 = in.readFloat(), cy3 = in.readFloat();
+                    if (mp != null) {
+                        mp.curveTo(cx1, cy1, cx2, cy2, cx3, cy3);
+                    } else {
+                        p.curveTo(cx1, cy1, cx2, cy2, cx3, cy3);
+                    }
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    if (mp != null) { mp.closePath(); } else { p.closePath(); }
+                    break;
+                default:
+                    throw new IOException("Invalid segment type: " + type);
+            }
+        }
+        return (mp != null) ? mp : p;
+    }
+
+    /**
+     * Captured engine call
+     */
+    static final class Call {
+
+        final int kind;
+        final int flags;
+        Region clip = null;
+        AffineTransform at = null;
+        BasicStroke bs = null;
+        Shape shape = null;
+        double[] pgram = null;
+
+        Call(final int kind, final int flags) {
+            this.kind = kind;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * Log-linear latency histogram (64 sub-buckets per power of 2: error
+     * below 1.6%)
+     */
+    static final class Histogram {
+
+        private static final int SUB_BITS = 6;
+        private static final int SUB = 1 << SUB_BITS;
+
+        final long[] counts = new long[SUB * 60];
+        long count = 0L;
+        long sum = 0L;
+        long max = 0L;
+
+        void record(final long nanos) {
+            final long v = Math.max(0L, nanos);
+            counts[index(v)]++;
+            count++;
+            sum += v;
+            if (v > max) {
+                max = v;
+            }
+        }
+
+        void add(final Histogram h) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += h.counts[i];
+            }
+            count += h.count;
+            sum += h.sum;
+            max = Math.max(max, h.max);
+        }
+
+        /**
+         * @param q quantile in [0; 1]
+         * @return value (ns) of the given quantile (bucket middle)
+         */
+        double percentile(final double q) {
+            final long rank = (long) Math.ceil(q * count);
+            long n = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                n += counts[i];
+                if (n >= rank && n != 0L) {
+                    return Math.min(value(i), max);
+                }
+            }
+            return max;
+        }
+
+        private static int index(final long v) {
+            if (v < 2 * SUB) {
+                return (int) v;
+            }
+            final int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+            return SUB + shift * SUB + (int) ((v >>> shift) - SUB);
+        }
+
+        private static double value(final int index) {
+            if (index < 2 * SUB) {
+                return index;
+            }
+            final int shift = (index - SUB) / SUB;
+            final long sub = (index - SUB) % SUB + SUB;
+            return (sub << shift) + (1L << shift) / 2.0;
+        }
+    }
+
+    /**
+     * Path consumer discarding the strokeTo() output
+     */
+    static final class Sink implements PathConsumer2D {
+
+        @Override
+        public void moveTo(final float x0, final float y0) {
+        }
+
+        @Override
+        public void lineTo(final float x1, final float y1) {
+        }
+
+        @Override
+        public void quadTo(final float x1, final float y1,
+                           final float x2, final float y2)
+        {
+        }
+
+        @Override
+        public void curveTo(final float x1, final float y1,
+                            final float x2, final float y2,
+                            final float x3, final float y3)
+        {
+        }
+
+        @Override
+        public void closePath() {
+        }
+
+        @Override
+        public void pathDone() {
+        }
+
+        @Override
+        public long getNativeConsumer() {
+            throw new InternalError("Not using a native peer");
+        }
+    }
+}
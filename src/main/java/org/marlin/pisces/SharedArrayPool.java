@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.marlin.pisces;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import static org.marlin.pisces.MarlinUtils.logInfo;
+
+/**
+ * Lock-free array pool shared by all threads for one array cache bucket
+ * (second tier behind the per-context array caches).
+ *
+ * Arrays are stored in a small slot table: each thread starts probing at
+ * its own slot (hashed thread id) to limit contention then claims or fills
+ * slots with compare-and-set operations. When the pool is full or the
+ * shared memory budget is exhausted, returned arrays are rejected and stay
+ * in the per-context array cache.
+ */
+final class SharedArrayPool<A> implements MarlinConst {
+
+    private final String name;
+    private final int arraySize;
+    // array footprint (budget)
+    private final long arrayBytes;
+    private final AtomicReferenceArray<A> slots;
+    private final int mask;
+    // stats (shared by all threads)
+    private final AtomicInteger getOp = new AtomicInteger();
+    private final AtomicInteger hitOp = new AtomicInteger();
+    private final AtomicInteger putOp = new AtomicInteger();
+    private final AtomicInteger rejectOp = new AtomicInteger();
+
+    /**
+     * @param name pool name (debugging purposes)
+     * @param arraySize bucket array size
+     * @param elementBytes size of one array element in bytes
+     * @param capacity number of slots (power of 2)
+     */
+    SharedArrayPool(final String name, final int arraySize,
+                    final int elementBytes, final int capacity)
+    {
+        this.name = name;
+        this.arraySize = arraySize;
+        this.arrayBytes = ((long) arraySize) * elementBytes;
+        this.slots = new AtomicReferenceArray<A>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    String getName() {
+        return name + " " + arraySize;
+    }
+
+    void dumpStats() {
+        if (getOp.get() > 0 || putOp.get() > 0) {
+            logInfo("SharedArrayPool[" + name + " " + arraySize + "]: get: "
+                    + getOp.get() + " hits: " + hitOp.get()
+                    + " - put: " + putOp.get() + " rejected: " + rejectOp.get()
+                    + " :: pool size: " + size());
+        }
+    }
+
+    private int probe() {
+        // spread thread ids (fibonacci hashing):
+        return ((int) Thread.currentThread().getId() * 0x9E3779B9) >>> 16;
+    }
+
+    /**
+     * Borrow an array from this pool
+     * @return array or null if the pool is empty
+     */
+    A poll() {
+        if (DO_STATS) {
+            getOp.incrementAndGet();
+        }
+        final AtomicReferenceArray<A> _slots = slots;
+        final int start = probe();
+        for (int i = 0; i <= mask; i++) {
+            final int idx = (start + i) & mask;
+            final A array = _slots.get(idx);
+            if (array != null && _slots.compareAndSet(idx, array, null)) {
+                ArrayCache.releaseShared(arrayBytes);
+                if (DO_STATS) {
+                    hitOp.incrementAndGet();
+                }
+                return array;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return an array into this pool
+     * @param array array to store
+     * @return false if the pool is full (array rejected)
+     */
+    boolean offer(final A array) {
+        if (DO_STATS) {
+            putOp.incrementAndGet();
+        }
+        if (ArrayCache.reserveShared(arrayBytes)) {
+            final AtomicReferenceArray<A> _slots = slots;
+            final int start = probe();
+            for (int i = 0; i <= mask; i++) {
+                final int idx = (start + i) & mask;
+                if (_slots.get(idx) == null
+                        && _slots.compareAndSet(idx, null, array))
+                {
+                    return true;
+                }
+            }
+            ArrayCache.releaseShared(arrayBytes);
+        }
+        if (DO_STATS) {
+            rejectOp.incrementAndGet();
+        }
+        return false;
+    }
+
+    /**
+     * Drop all pooled arrays
+     */
+    void clear() {
+        for (int i = 0; i <= mask; i++) {
+            if (slots.getAndSet(i, null) != null) {
+                ArrayCache.releaseShared(arrayBytes);
+            }
+        }
+    }
+
+    int size() {
+        int n = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (slots.get(i) != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.marlin.pisces;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import static org.marlin.pisces.MarlinUtils.logException;
+import static org.marlin.pisces.MarlinUtils.logInfo;
+import sun.java2d.pipe.Region;
+
+/**
+ * This class records the slowest shapes rendered by getAATileGenerator()
+ * (top N by wall time including tile generation) with their cost (edges,
+ * max active crossings, bounding box) and a copy of their geometry that
+ * can be saved as text files to reproduce them offline.
+ *
+ * Each renderer context owns one recorder tracking its current shape;
+ * the top N shapes are shared (bounded min-heap).
+ */
+final class SlowShapeRecorder implements MarlinConst {
+
+    // top N slowest shapes (fastest first)
+    private static final PriorityQueue<Entry> slowest
+        = new PriorityQueue<Entry>(Math.max(1, SLOW_SHAPES),
+            new Comparator<Entry>() {
+                @Override
+                public int compare(final Entry e1, final Entry e2) {
+                    return (e1.nanos < e2.nanos) ? -1
+                           : ((e1.nanos == e2.nanos) ? 0 : 1);
+                }
+            });
+    // minimum time (ns) to enter the top N (avoid locking)
+    private static volatile long threshold = 0L;
+
+    static {
+        if (RECORD_SLOW_SHAPES && SLOW_SHAPES_DIR != null) {
+            AccessController.doPrivileged(
+                new PrivilegedAction<Void>() {
+                    @Override
+                    public Void run() {
+                        Runtime.getRuntime().addShutdownHook(new Thread() {
+                            @Override
+                            public void run() {
+                                save(SLOW_SHAPES_DIR);
+                            }
+                        });
+                        return null;
+                    }
+                });
+        }
+    }
+
+    // current shape (null if none):
+    private Shape shape = null;
+    private AffineTransform at = null;
+    private BasicStroke bs = null;
+    private int clipX0, clipY0, clipX1, clipY1;
+    private long start = 0L;
+
+    SlowShapeRecorder() {
+        super();
+    }
+
+    /**
+     * Start tracking the given shape (getAATileGenerator)
+     */
+    void start(final Shape s, final AffineTransform at,
+               final BasicStroke bs, final Region clip)
+    {
+        this.shape = s;
+        this.at = at;
+        this.bs = bs;
+        this.clipX0 = clip.getLoX();
+        this.clipY0 = clip.getLoY();
+        this.clipX1 = clip.getHiX();
+        this.clipY1 = clip.getHiY();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * End tracking the current shape (Renderer.dispose)
+     *
+     * @param edges number of edges
+     * @param maxCrossings maximum number of active crossings
+     * @param x0 bounding box (device space)
+     * @param y0 bounding box (device space)
+     * @param x1 bounding box (device space)
+     * @param y1 bounding box (device space)
+     */
+    void end(final int edges, final int maxCrossings,
+             final int x0, final int y0, final int x1, final int y1)
+    {
+        final Shape s = this.shape;
+        if (s == null) {
+            return;
+        }
+        this.shape = null;
+
+        final long nanos = System.nanoTime() - start;
+        if (nanos > threshold) {
+            record(new Entry(nanos, Thread.currentThread().getName(),
+                             s, at, bs, edges, maxCrossings,
+                             new int[]{x0, y0, x1, y1},
+                             new int[]{clipX0, clipY0, clipX1, clipY1}));
+        }
+        this.at = null;
+        this.bs = null;
+    }
+
+    private static synchronized void record(final Entry e) {
+        if (slowest.size() >= SLOW_SHAPES) {
+            if (e.nanos <= slowest.peek().nanos) {
+                return;
+            }
+            slowest.poll();
+        }
+        slowest.add(e);
+        if (slowest.size() >= SLOW_SHAPES) {
+            threshold = slowest.peek().nanos;
+        }
+    }
+
+    /**
+     * @return recorded entries (slowest first)
+     */
+    private static synchronized Entry[] entries() {
+        final Entry[] entries = slowest.toArray(new Entry[slowest.size()]);
+        Arrays.sort(entries, slowest.comparator());
+        // reverse order:
+        for (int i = 0, j = entries.length - 1; i < j; i++, j--) {
+            final Entry tmp = entries[i];
+            entries[i] = entries[j];
+            entries[j] = tmp;
+        }
+        return entries;
+    }
+
+    /**
+     * @return descriptions of the slowest shapes (slowest first)
+     */
+    static String[] getSlowShapes() {
+        final Entry[] entries = entries();
+        final String[] desc = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            desc[i] = entries[i].toString();
+        }
+        return desc;
+    }
+
+    /**
+     * Clear the recorded shapes
+     */
+    static synchronized void reset() {
+        slowest.clear();
+        threshold = 0L;
+    }
+
+    /**
+     * Save the slowest shapes as text files (marlin-shape-<rank>.txt)
+     * into the given directory
+     *
+     * @param dir directory
+     * @return number of saved shapes
+     */
+    static int save(final String dir) {
+        final Entry[] entries = entries();
+        final File d = new File(dir);
+        if (!d.isDirectory() && !d.mkdirs()) {
+            logInfo("SlowShapeRecorder: invalid directory: " + dir);
+            return 0;
+        }
+        int n = 0;
+        for (int i = 0; i < entries.length; i++) {
+            final File file = new File(d, "marlin-shape-" + i + ".txt");
+            try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
+                entries[i].write(pw);
+                n++;
+            } catch (IOException ioe) {
+                logException("SlowShapeRecorder: unable to write " + file, ioe);
+            }
+        }
+        if (n != 0) {
+            logInfo("SlowShapeRecorder: " + n + " shapes saved into " + dir);
+        }
+        return n;
+    }
+
+    /**
+     * Recorded shape (immutable)
+     */
+    static final class Entry {
+
+        final long nanos;
+        final long timestamp;
+        final String thread;
+        final java.awt.geom.Path2D.Double path;
+        final AffineTransform at;
+        final BasicStroke bs;
+        final int edges;
+        final int maxCrossings;
+        final int[] bbox;
+        final int[] clip;
+
+        Entry(final long nanos, final String thread, final Shape s,
+              final AffineTransform at, final BasicStroke bs,
+              final int edges, final int maxCrossings, final int[] bbox,
+              final int[] clip)
+        {
+            this.nanos = nanos;
+            this.timestamp = System.currentTimeMillis();
+            this.thread = thread;
+            // copy the geometry (user space):
+            this.path = new java.awt.geom.Path2D.Double(s);
+            this.at = (at != null) ? new AffineTransform(at) : null;
+            this.bs = bs;
+            this.edges = edges;
+            this.maxCrossings = maxCrossings;
+            this.bbox = bbox;
+            this.clip = clip;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder(256);
+            sb.append(nanos / 1000L).append(" us ");
+            sb.append((bs == null) ? "fill" : "stroke");
+            sb.append(" edges: ").append(edges);
+            sb.append(" crossings: ").append(maxCrossings);
+            sb.append(" bbox: ").append(Arrays.toString(bbox));
+            if (bs != null) {
+                sb.append(" width: ").append(bs.getLineWidth());
+                final float[] dashes = bs.getDashArray();
+                if (dashes != null) {
+                    sb.append(" dashes: ").append(dashes.length);
+                }
+            }
+            sb.append(" thread: ").append(thread);
+            return sb.toString();
+        }
+
+        /**
+         * Write this shape as text:
+         * comment lines (#) then clip, transform, stroke (or fill) and
+         * winding lines followed by path segments (M, L, Q, C, Z).
+         */
+        void write(final PrintWriter pw) {
+            pw.println("# " + toString());
+            pw.println("# timestamp: " + timestamp);
+            pw.println("clip " + clip[0] + ' ' + clip[1] + ' '
+                       + clip[2] + ' ' + clip[3]);
+            if (at != null) {
+                pw.println("transform " + at.getScaleX() + ' '
+                           + at.getShearY() + ' ' + at.getShearX() + ' '
+                           + at.getScaleY() + ' ' + at.getTranslateX() + ' '
+                           + at.getTranslateY());
+            }
+            if (bs != null) {
+                final StringBuilder sb = new StringBuilder(64);
+                sb.append("stroke ").append(bs.getLineWidth()).append(' ')
+                  .append(bs.getEndCap()).append(' ')
+                  .append(bs.getLineJoin()).append(' ')
+                  .append(bs.getMiterLimit()).append(' ')
+                  .append(bs.getDashPhase());
+                final float[] dashes = bs.getDashArray();
+                if (dashes != null) {
+                    for (float dash : dashes) {
+                        sb.append(' ').append(dash);
+                    }
+                }
+                pw.println(sb);
+            } else {
+                pw.println("fill");
+            }
+            pw.println("winding " + path.getWindingRule());
+
+            final double[] coords = new double[6];
+            for (PathIterator pi = path.getPathIterator(null); !pi.isDone();
+                    pi.next())
+            {
+                switch (pi.currentSegment(coords)) {
+                    case PathIterator.SEG_MOVETO:
+                        pw.println("M " + coords[0] + ' ' + coords[1]);
+                        break;
+                    case PathIterator.SEG_LINETO:
+                        pw.println("L " + coords[0] + ' ' + coords[1]);
+                        break;
+                    case PathIterator.SEG_QUADTO:
+                        pw.println("Q " + coords[0] + ' ' + coords[1] + ' '
+                                   + coords[2] + ' ' + coords[3]);
+                        break;
+                    case PathIterator.SEG_CUBICTO:
+                        pw.println("C " + coords[0] + ' ' + coords[1] + ' '
+                                   + coords[2] + ' ' + coords[3] + ' '
+                                   + coords[4] + ' ' + coords[5]);
+                        break;
+                    case PathIterator.SEG_CLOSE:
+                        pw.println("Z");
+                        break;
+                    default:
+                }
+            }
+        }
+    }
+}
@@ -79,6 +79,21 @@ final class Stroker implements PathConsumer2D, MarlinConst {
 
     private final static float C = 0.5522847498307933f;
 
+    // unit-circle arc templates: cv (control vector length / radius) of the
+    // bezier approximating an arc of angle ext sampled on t = tan(ext / 2)
+    // in [0, 1] (ext <= 90 degrees); C is the quarter circle template.
+    private static final int ARC_STEPS = 256;
+    private static final float[] ARC_CV = new float[ARC_STEPS + 2];
+
+    static {
+        for (int i = 0; i <= ARC_STEPS; i++) {
+            final double t = i / (double) ARC_STEPS;
+            // 4/3 tan(ext / 4) with tan(ext / 4) = t / (1 + sqrt(1 + t^2))
+            ARC_CV[i] = (float) ((4.0 / 3.0) * t / (1.0 + sqrt(1.0 + t * t)));
+        }
+        ARC_CV[ARC_STEPS + 1] = ARC_CV[ARC_STEPS];
+    }
+
     private static final int MAX_N_CURVES = 11;
 
     private PathConsumer2D out;
@@ -87,6 +102,10 @@ final class Stroker implements PathConsumer2D, MarlinConst {
     private int joinStyle;
 
     private float lineWidth2;
+    // squared radius of round joins (lineWidth2^2) to index ARC_CV
+    private float lineWidth2Sq;
+    // number of ARC_CV lookups (stats)
+    private int arcCount;
 
     private final float[] offset0 = new float[2];
     private final float[] offset1 = new float[2];
@@ -161,6 +180,8 @@ final class Stroker implements PathConsumer2D, MarlinConst {
         this.capStyle = capStyle;
         this.joinStyle = joinStyle;
 
+        this.lineWidth2Sq = lineWidth2 * lineWidth2;
+
         float limit = miterLimit * lineWidth2;
         this.miterLimitSq = limit * limit;
 
@@ -169,6 +190,14 @@ final class Stroker implements PathConsumer2D, MarlinConst {
         return this; // fluent API
     }
 
+    /**
+     * Return the footprint of initial arrays (in bytes)
+     * @return footprint in bytes
+     */
+    long getFootprint() {
+        return reverse.getFootprint();
+    }
+
     /**
      * Disposes this stroker:
      * clean up before reusing this instance
@@ -176,6 +205,13 @@ final class Stroker implements PathConsumer2D, MarlinConst {
     void dispose() {
         reverse.dispose();
 
+        if (DO_STATS) {
+            if (arcCount != 0) {
+                rdrCtx.stats.stat_str_arc_lookups.add(arcCount);
+                arcCount = 0;
+            }
+        }
+
         if (DO_CLEAN_DIRTY) {
             // Force zero-fill dirty arrays:
             Arrays.fill(offset0, 0f);
@@ -300,14 +336,26 @@ final class Stroker implements PathConsumer2D, MarlinConst {
                                      final float mx, final float my,
                                      boolean rev)
     {
-        float cosext2 = (omx * mx + omy * my) / (2f * lineWidth2 * lineWidth2);
         // cv is the length of P1-P0 and P2-P3 divided by the radius of the arc
         // (so, cv assumes the arc has radius 1). P0, P1, P2, P3 are the points that
         // define the bezier curve we're computing.
         // It is computed using the constraints that P1-P0 and P3-P2 are parallel
         // to the arc tangents at the endpoints, and that |P1-P0|=|P3-P2|.
-        float cv = (float) ((4.0 / 3.0) * sqrt(0.5-cosext2) /
-                            (1.0 + sqrt(cosext2+0.5)));
+        // It is interpolated from the unit-circle arc templates indexed by
+        // tan(ext/2) = sin(ext) / (1 + cos(ext)) (no sqrt needed):
+        final float sinext = Math.abs(omx * my - omy * mx);
+        final float cosext = omx * mx + omy * my;
+        float t = (sinext * ARC_STEPS) / (lineWidth2Sq + cosext);
+        if (!(t >= 0f && t < ARC_STEPS)) {
+            // ext >= 90 degrees (rounding) or NaN:
+            t = (t != t) ? 0f : ARC_STEPS;
+        }
+        final int i = (int) t;
+        float cv = ARC_CV[i] + (t - i) * (ARC_CV[i + 1] - ARC_CV[i]);
+
+        if (DO_STATS) {
+            arcCount++;
+        }
         // if clockwise, we need to negate cv.
         if (rev) { // rev is equivalent to isCW(omx, omy, mx, my)
             cv = -cv;
@@ -1205,9 +1253,10 @@ final class Stroker implements PathConsumer2D, MarlinConst {
         final RendererContext rdrCtx;
 
         // per-thread initial arrays (large enough to satisfy most usages: 8192)
+        // or 1024 (slim context)
         // +1 to avoid recycling in Helpers.widenArray()
-        private final float[] curves_initial = new float[INITIAL_LARGE_ARRAY + 1]; // 32K
-        private final byte[] curveTypes_initial = new byte[INITIAL_LARGE_ARRAY + 1]; // 8K
+        private final float[] curves_initial; // 32K
+        private final byte[] curveTypes_initial; // 8K
 
         // used marks (stats only)
         int curveTypesUseMark;
@@ -1220,6 +1269,11 @@ final class Stroker implements PathConsumer2D, MarlinConst {
         PolyStack(final RendererContext rdrCtx) {
             this.rdrCtx = rdrCtx;
 
+            final int arraySize = (rdrCtx.slim) ? INITIAL_SMALL_ARRAY
+                                  : INITIAL_LARGE_ARRAY;
+            curves_initial = new float[arraySize + 1];
+            curveTypes_initial = new byte[arraySize + 1];
+
             curves = curves_initial;
             curveTypes = curveTypes_initial;
             end = 0;
@@ -1231,6 +1285,14 @@ final class Stroker implements PathConsumer2D, MarlinConst {
             }
         }
 
+        /**
+         * Return the footprint of initial arrays (in bytes)
+         * @return footprint in bytes
+         */
+        long getFootprint() {
+            return 4L * curves_initial.length + curveTypes_initial.length;
+        }
+
         /**
          * Disposes this PolyStack:
          * clean up before reusing this instance
@@ -1240,9 +1302,9 @@ final class Stroker implements PathConsumer2D, MarlinConst {
             numCurves = 0;
 
             if (DO_STATS) {
-                RendererContext.stats.stat_rdr_poly_stack_types
+                rdrCtx.stats.stat_rdr_poly_stack_types
                     .add(curveTypesUseMark);
-                RendererContext.stats.stat_rdr_poly_stack_curves
+                rdrCtx.stats.stat_rdr_poly_stack_curves
                     .add(curvesUseMark);
                 // reset marks
                 curveTypesUseMark = 0;
@@ -1265,14 +1327,14 @@ final class Stroker implements PathConsumer2D, MarlinConst {
         private void ensureSpace(final int n) {
             if (end + n > curves.length) {
                 if (DO_STATS) {
-                    RendererContext.stats.stat_array_stroker_polystack_curves
+                    rdrCtx.stats.stat_array_stroker_polystack_curves
                         .add(end + n);
                 }
                 curves = rdrCtx.widenDirtyFloatArray(curves, end, end + n);
             }
             if (numCurves + 1 > curveTypes.length) {
                 if (DO_STATS) {
-                    RendererContext.stats.stat_array_stroker_polystack_curveTypes
+                    rdrCtx.stats.stat_array_stroker_polystack_curveTypes
                         .add(numCurves + 1);
                 }
                 curveTypes = rdrCtx.widenDirtyByteArray(curveTypes,
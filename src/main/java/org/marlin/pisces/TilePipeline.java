@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.marlin.pisces;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class pipelines the rasterization of large shapes: a helper thread
+ * renders the next tile lines (Renderer.endRendering(y)) into two
+ * alternating MarlinCache instances while the caller thread composites the
+ * tiles of the previous line (MarlinTileGenerator).
+ *
+ * Only the helper thread uses the Renderer (and the context array caches)
+ * until finish() is called; semaphores hand the caches over (happens-before).
+ * If all helper threads are busy, the shape is rendered on the caller thread.
+ */
+final class TilePipeline implements Runnable, MarlinConst {
+
+    // minimum number of tile lines to pipeline a shape
+    static final int MIN_LINES = 4;
+
+    // shared helper threads (none idle means no pipelining):
+    private static final ThreadPoolExecutor EXECUTOR
+        = (PIPELINE_THREADS != 0) ? createExecutor() : null;
+
+    private static ThreadPoolExecutor createExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+
+        return new ThreadPoolExecutor(0, PIPELINE_THREADS,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return AccessController.doPrivileged(
+                        new PrivilegedAction<Thread>() {
+                            @Override
+                            public Thread run() {
+                                final Thread t = new Thread(r,
+                                    "MarlinPipeline-" + count.incrementAndGet());
+                                t.setDaemon(true);
+                                // avoid class loader leaks:
+                                t.setContextClassLoader(null);
+                                return t;
+                            }
+                        });
+                }
+            });
+    }
+
+    private final Renderer rdr;
+    // caches[0] is the context cache, caches[1] the second one:
+    private final MarlinCache[] caches;
+    // filled caches (ready to composite)
+    private final Semaphore filled = new Semaphore(0);
+    // free caches (composited)
+    private final Semaphore free = new Semaphore(0);
+    // helper thread exited
+    private final Semaphore done = new Semaphore(0);
+    // tile lines [y0; y1[ rendered by the helper thread
+    private int y0, y1;
+    // number of tile lines consumed
+    private int line;
+    private boolean running = false;
+    private volatile boolean cancelled = false;
+    // error thrown by the helper thread
+    private Throwable error = null;
+
+    TilePipeline(final RendererContext rdrCtx) {
+        this.rdr = rdrCtx.renderer;
+        this.caches = new MarlinCache[]{rdrCtx.cache, new MarlinCache(rdrCtx)};
+    }
+
+    /**
+     * Return the footprint of the second cache (in bytes)
+     * @return footprint in bytes
+     */
+    long getFootprint() {
+        return caches[1].getFootprint();
+    }
+
+    /**
+     * Start rendering the next tile lines on a helper thread once the
+     * first tile line is rendered into the context cache
+     *
+     * @return true if pipelined; false if the shape is too small or no
+     * helper thread is available
+     */
+    boolean start() {
+        final MarlinCache cache = caches[0];
+        if (cache.bboxY1 - cache.bboxY0 < MIN_LINES * TILE_SIZE) {
+            return false;
+        }
+        caches[1].init(cache.bboxX0, cache.bboxY0, cache.bboxX1, cache.bboxY1);
+
+        y0 = cache.bboxY0 + TILE_SIZE;
+        y1 = cache.bboxY1;
+        line = 0;
+        cancelled = false;
+        error = null;
+
+        // second cache is free:
+        free.release();
+        try {
+            EXECUTOR.execute(this);
+        } catch (RejectedExecutionException ree) {
+            // all helper threads are busy:
+            free.drainPermits();
+            caches[1].dispose();
+            return false;
+        }
+        running = true;
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int k = 1, y = y0; y < y1; k++, y += TILE_SIZE) {
+                free.acquireUninterruptibly();
+                if (cancelled) {
+                    break;
+                }
+                rdr.cache = caches[k & 1];
+                rdr.endRendering(y);
+
+                filled.release();
+            }
+        } catch (Throwable th) {
+            error = th;
+            filled.release();
+        } finally {
+            done.release();
+        }
+    }
+
+    /**
+     * Release the cache of the composited tile line and wait for the next
+     * tile line (caller thread)
+     *
+     * @return cache containing the next tile line
+     */
+    MarlinCache nextLine() {
+        free.release();
+        filled.acquireUninterruptibly();
+
+        final Throwable th = error;
+        if (th != null) {
+            if (th instanceof RuntimeException) {
+                throw (RuntimeException) th;
+            }
+            if (th instanceof Error) {
+                throw (Error) th;
+            }
+            throw new RuntimeException(th);
+        }
+        return caches[++line & 1];
+    }
+
+    /**
+     * Stop and wait for the helper thread (caller thread) before
+     * disposing the renderer
+     */
+    void finish() {
+        if (running) {
+            running = false;
+            cancelled = true;
+            free.release();
+            done.acquireUninterruptibly();
+
+            filled.drainPermits();
+            free.drainPermits();
+
+            rdr.cache = caches[0];
+            caches[1].dispose();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.marlin.pisces;
+
+import sun.java2d.pipe.AATileGenerator;
+
+/**
+ * AATileGenerator reporting runs of consecutive empty (0x00) or solid
+ * (0xff) tiles so that AAShapePipe can skip or fill them at once.
+ */
+public interface TileRunGenerator extends AATileGenerator {
+
+    /**
+     * Returns the number of consecutive tiles in the current tile line,
+     * starting with the current tile, having the same typical alpha 0x00
+     * or 0xff (run), or 1 if the current tile is partially covered.
+     * Must be called after getTypicalAlpha()
+     * @return run length in tiles (1 at least)
+     */
+    int getTileRunLength();
+
+    /**
+     * Skips the given number of tiles in the current tile line (run)
+     * and moves on to the next tile.
+     * @param n number of tiles (given by getTileRunLength())
+     */
+    void nextTiles(int n);
+}
@@ -84,6 +84,17 @@ public final class Histogram extends StatLong {
         add((int) val);
     }
 
+    @Override
+    public void merge(final StatLong other) {
+        super.merge(other);
+        if (other instanceof Histogram) {
+            final StatLong[] otherStats = ((Histogram) other).stats;
+            for (int i = 0; i < MAX; i++) {
+                stats[i].merge(otherStats[i]);
+            }
+        }
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder(2048);
@@ -26,26 +26,163 @@ package org.marlin.pisces.stats;
 
 /**
  * Generic monitor ie gathers time statistics as nanos.
+ *
+ * Monitors may only time 1 call in N (sampling) to lower their overhead:
+ * count, min and max then concern sampled calls and the total time is
+ * extrapolated using the number of calls (see getEstimatedSum()).
+ * Timed calls are N calls apart on average but at random intervals, so
+ * periodic call patterns do not alias with the sampling.
  */
 public final class Monitor extends StatLong {
 
     private final static long INVALID = -1L;
 
     private long start = INVALID;
+    // sampler or null if every call is timed
+    private final Sampler sampler;
+    // optional gate shared by monitors sampling the same shapes
+    private final Gate gate;
+    // number of calls (sampled or not)
+    public long calls = 0L;
 
     public Monitor(final String name) {
+        this(name, 1, null);
+    }
+
+    /**
+     * Create a sampling monitor
+     *
+     * @param name monitor name
+     * @param period sampling period (power of 2) ie 1 call in period is timed
+     * @param gate optional gate deciding which calls are timed (per shape)
+     * instead of the sampling period
+     */
+    public Monitor(final String name, final int period, final Gate gate) {
         super(name);
+        this.sampler = (period > 1) ? new Sampler(period) : null;
+        this.gate = gate;
     }
 
     public void start() {
-        start = System.nanoTime();
+        calls++;
+        if ((gate != null) ? gate.sampled
+            : ((sampler == null) || sampler.next())) {
+            start = System.nanoTime();
+        } else {
+            start = INVALID;
+        }
     }
 
     public void stop() {
-        final long elapsed = System.nanoTime() - start;
-        if (start != INVALID && elapsed > 0l) {
-            add(elapsed);
+        if (start != INVALID) {
+            final long elapsed = System.nanoTime() - start;
+            if (elapsed > 0l) {
+                add(elapsed);
+            }
+            start = INVALID;
+        }
+    }
+
+    /**
+     * @return total time extrapolated from sampled calls (nanos)
+     */
+    public long getEstimatedSum() {
+        if (count == 0L || calls <= count) {
+            return sum;
+        }
+        return (long) (((double) sum) * calls / count);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        calls = 0L;
+    }
+
+    @Override
+    public void merge(final StatLong other) {
+        super.merge(other);
+        if (other instanceof Monitor) {
+            calls += ((Monitor) other).calls;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(160);
+        toString(sb);
+        if (calls > count) {
+            sb.append(" calls: ").append(calls);
+            sb.append(" est. sum: ").append(getEstimatedSum());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sampling gate shared by the monitors of one renderer context: all
+     * monitor calls are timed for 1 shape in N.
+     */
+    public static final class Gate {
+
+        // sampler or null if every shape is timed
+        private final Sampler sampler;
+        boolean sampled = false;
+
+        /**
+         * @param period sampling period (power of 2) ie 1 shape in period
+         */
+        public Gate(final int period) {
+            this.sampler = (period > 1) ? new Sampler(period) : null;
+        }
+
+        /**
+         * Start a new shape
+         * @return true if its monitor calls are timed
+         */
+        public boolean next() {
+            sampled = (sampler == null) || sampler.next();
+            return sampled;
+        }
+    }
+
+    /**
+     * Jittered sampling: the next sample is taken after a random number of
+     * events in [1, 2 * period - 1] (period on average), using a per
+     * instance xorshift generator (no contention).
+     */
+    static final class Sampler {
+
+        private static int seeds = 0x2545F491;
+
+        private final int range;
+        private int seed;
+        private int left;
+
+        Sampler(final int period) {
+            this.range = 2 * period - 1;
+            int s = (int) System.nanoTime() ^ (seeds += 0x9E3779B9);
+            this.seed = (s != 0) ? s : 1;
+            this.left = interval();
+        }
+
+        /**
+         * @return true if this event is sampled
+         */
+        boolean next() {
+            if (--left > 0) {
+                return false;
+            }
+            left = interval();
+            return true;
+        }
+
+        private int interval() {
+            int s = seed;
+            s ^= s << 13;
+            s ^= s >>> 17;
+            s ^= s << 5;
+            seed = s;
+            return 1 + (s >>> 1) % range;
         }
-        start = INVALID;
     }
 }
@@ -68,6 +68,23 @@ public class StatLong {
         }
     }
 
+    /**
+     * Add the values of the given statistics (aggregation)
+     * @param other statistics to add
+     */
+    public void merge(final StatLong other) {
+        if (other.count != 0L) {
+            count += other.count;
+            sum += other.sum;
+            if (other.min < min) {
+                min = other.min;
+            }
+            if (other.max > max) {
+                max = other.max;
+            }
+        }
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder(128);
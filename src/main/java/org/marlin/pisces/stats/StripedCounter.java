@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.marlin.pisces.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low-contention counter: each thread updates its own cell (chosen by
+ * hashing its thread id, one cache line per cell) and reading the value
+ * sums all cells (LongAdder-like counter for Java 7).
+ */
+public final class StripedCounter {
+
+    // cell spacing (8 longs ~ 64 bytes):
+    private static final int PAD_SHIFT = 3;
+    private static final int CELLS;
+
+    static {
+        // 2 x available processors (power of 2 <= 64):
+        final int n = Math.min(64,
+                2 * Runtime.getRuntime().availableProcessors());
+        CELLS = (Integer.bitCount(n) == 1) ? n : (Integer.highestOneBit(n) << 1);
+    }
+
+    private final AtomicLongArray cells
+        = new AtomicLongArray(CELLS << PAD_SHIFT);
+
+    private static int index() {
+        // spread thread ids (fibonacci hashing):
+        return ((((int) Thread.currentThread().getId() * 0x9E3779B9) >>> 16)
+                & (CELLS - 1)) << PAD_SHIFT;
+    }
+
+    public void increment() {
+        cells.getAndIncrement(index());
+    }
+
+    public void add(final long value) {
+        cells.getAndAdd(index(), value);
+    }
+
+    public long sum() {
+        long sum = 0L;
+        for (int i = 0; i < CELLS; i++) {
+            sum += cells.get(i << PAD_SHIFT);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < CELLS; i++) {
+            cells.set(i << PAD_SHIFT, 0L);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -28,6 +28,8 @@ import java.awt.BasicStroke;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Rectangle2D;
+import org.marlin.pisces.MarlinLease;
+import org.marlin.pisces.TileRunGenerator;
 import sun.awt.SunHints;
 import sun.java2d.SunGraphics2D;
 
@@ -52,6 +54,20 @@ public class AAShapePipe
         }
     };
 
+    // Return the TileState attached to the current lease or the per-thread one
+    static TileState getTileState() {
+        final MarlinLease lease = MarlinLease.current();
+        if (lease != null) {
+            TileState ts = (TileState) lease.getAttachment(TileState.class);
+            if (ts == null) {
+                ts = new TileState();
+                lease.setAttachment(TileState.class, ts);
+            }
+            return ts;
+        }
+        return tileStateThreadLocal.get();
+    }
+
     CompositePipe outpipe;
 
     public AAShapePipe(CompositePipe pipe) {
@@ -83,7 +99,7 @@ public class AAShapePipe
                                   double dx2, double dy2)
     {
         Region clip = sg.getCompClip();
-        final TileState ts = tileStateThreadLocal.get();
+        final TileState ts = getTileState();
         final int[] abox = ts.abox;
 
         AATileGenerator aatg =
@@ -106,7 +122,7 @@ public class AAShapePipe
                                   double lw1, double lw2)
     {
         Region clip = sg.getCompClip();
-        final TileState ts = tileStateThreadLocal.get();
+        final TileState ts = getTileState();
         final int[] abox = ts.abox;
 
         AATileGenerator aatg =
@@ -128,7 +144,7 @@ public class AAShapePipe
         boolean thin = (sg.strokeState <= SunGraphics2D.STROKE_THINDASHED);
 
         Region clip = sg.getCompClip();
-        final TileState ts = tileStateThreadLocal.get();
+        final TileState ts = getTileState();
         final int[] abox = ts.abox;
 
         AATileGenerator aatg =
@@ -158,6 +174,10 @@ public class AAShapePipe
             final byte[] alpha = ts.getAlphaTile(tw * th);
             byte[] atile;
 
+            // runs of empty or solid tiles (marlin tile generator):
+            final TileRunGenerator runs = (aatg instanceof TileRunGenerator)
+                                          ? (TileRunGenerator) aatg : null;
+
             for (int y = abox[1]; y < abox[3]; y += th) {
                 // TODO: try inline Math min/max to benefit from branch prediction ?
                 int h = Math.min(th, abox[3] - y);
@@ -166,6 +186,27 @@ public class AAShapePipe
                     int w = Math.min(tw, abox[2] - x);
 
                     int a = aatg.getTypicalAlpha();
+                    if (runs != null && (a == 0x00 || a == 0xff)) {
+                        final int n = runs.getTileRunLength();
+                        if (n > 1) {
+                            // skip or fill the whole run at once:
+                            w = Math.min(n * tw, abox[2] - x);
+                            runs.nextTiles(n);
+
+                            if (a == 0x00 ||
+                                outpipe.needTile(context, x, y, w, h) == false)
+                            {
+                                for (int i = 0; i < n; i++) {
+                                    outpipe.skipTile(context, x + i * tw, y);
+                                }
+                            } else {
+                                outpipe.renderPathTile(context, null, 0, tw,
+                                                       x, y, w, h);
+                            }
+                            x += (n - 1) * tw;
+                            continue;
+                        }
+                    }
                     if (a == 0x00 ||
                         outpipe.needTile(context, x, y, w, h) == false)
                     {
@@ -12,16 +12,21 @@ import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.util.Arrays;
+import org.marlin.pisces.MarlinLease;
+import org.marlin.pisces.MarlinProperties;
+import sun.awt.image.IntegerInterleavedRaster;
 
 public final class BlendComposite implements Composite {
 
     private final static double GAMMA = 2.2;
     private final static BlendComposite.GammaLUT gamma_LUT = new BlendComposite.GammaLUT(GAMMA);
+    private final static BlendComposite.LinearLUT linear_LUT = new BlendComposite.LinearLUT(GAMMA);
 
     private static boolean DEBUG = false;
     private static boolean TRACE = false;
-    private final static boolean USE_COLORSPACE = false;
-    private final static boolean USE_LAB = false;
+    private final static String COLORSPACE = MarlinProperties.getBlendColorSpace();
+    private final static boolean USE_COLORSPACE = !"gamma".equals(COLORSPACE);
+    private final static boolean USE_LAB = "lab".equals(COLORSPACE);
     private final static boolean USE_MIX_L = true;
 
     public static String getBlendingMode() {
@@ -54,6 +59,233 @@ public final class BlendComposite implements Composite {
         }
     }
 
+    /**
+     * 8-bit gamma corrected to 12-bit linear lookup tables (rounded) used by
+     * the Porter-Duff and separable blenders to limit the precision loss
+     */
+    static final class LinearLUT {
+
+        private final static int MAX_COLORS = 256;
+        final static int LINEAR_BITS = 12;
+        final static int LINEAR_MAX = (1 << LINEAR_BITS) - 1;
+        final int[] dir = new int[MAX_COLORS];
+        final int[] inv = new int[LINEAR_MAX + 1];
+
+        LinearLUT(final double gamma) {
+            final double max = (double) (MAX_COLORS - 1);
+            final double invGamma = 1.0 / gamma;
+
+            for (int i = 0; i < MAX_COLORS; i++) {
+                dir[i] = (int) Math.round(LINEAR_MAX * Math.pow(i / max, gamma));
+            }
+            for (int i = 0; i <= LINEAR_MAX; i++) {
+                inv[i] = (int) Math.round(max * Math.pow(i / (double) LINEAR_MAX, invGamma));
+            }
+        }
+    }
+
+    /**
+     * Lookup tables for the CIE Lab and LCH conversions, built once and
+     * shared by all threads (on first use): sRGB to XYZ contributions per
+     * 8-bit channel, Lab f(t) cube root, atan and sin tables and a Lab to
+     * linear RGB lattice using trilinear interpolation followed by the
+     * sRGB encoding table
+     */
+    static final class LabLUT {
+
+        static final LabLUT INSTANCE = new LabLUT();
+
+        private final static int MAX_COLORS = 256;
+        // f(t) table on [0, F_MAX] (XYZ / white point may slightly exceed 1):
+        private final static int F_SIZE = 4096;
+        private final static float F_MAX = 1.0625f;
+        private final static float F_SCALE = F_SIZE / F_MAX;
+        // atan table on [0, 1] (degrees):
+        private final static int ATAN_SIZE = 1024;
+        // sin table on [0, 360[ degrees (power of 2):
+        private final static int SIN_SIZE = 1024;
+        private final static float SIN_SCALE = SIN_SIZE / 360f;
+        // Lab lattice: L in [0, 100], a and b in [-AB_MAX, AB_MAX]:
+        private final static int L_NODES = 33;
+        private final static int AB_NODES = 33;
+        private final static float AB_MAX = 128f;
+        private final static float L_SCALE = (L_NODES - 1) / 100f;
+        private final static float AB_SCALE = (AB_NODES - 1) / (2f * AB_MAX);
+        // linear RGB [0, 1] to sRGB [0..255] table:
+        private final static int ENC_SIZE = 4096;
+
+        // XYZ (divided by the white point) contributions per channel:
+        final float[] xyzR = new float[MAX_COLORS * 3];
+        final float[] xyzG = new float[MAX_COLORS * 3];
+        final float[] xyzB = new float[MAX_COLORS * 3];
+        final float[] labF = new float[F_SIZE + 2];
+        final float[] atan = new float[ATAN_SIZE + 2];
+        final float[] sin = new float[SIN_SIZE + 1];
+        // linear RGB values (not clamped) at lattice nodes (interleaved R, G, B):
+        final float[] rgb = new float[L_NODES * AB_NODES * AB_NODES * 3];
+        final float[] enc = new float[ENC_SIZE + 2];
+
+        private LabLUT() {
+            final float[] v = new float[4];
+            for (int i = 0; i < MAX_COLORS; i++) {
+                final float c = sRGBi_to_RGB(i);
+                // same maths as sRGB_to_XYZ() and XYZ_to_Lab():
+                xyzR[i * 3    ] = (0.4124564f * c) * (1.0f / 0.95047f);
+                xyzR[i * 3 + 1] = (0.2126729f * c);
+                xyzR[i * 3 + 2] = (0.0193339f * c) * (1.0f / 1.08883f);
+                xyzG[i * 3    ] = (0.3575761f * c) * (1.0f / 0.95047f);
+                xyzG[i * 3 + 1] = (0.7151522f * c);
+                xyzG[i * 3 + 2] = (0.1191920f * c) * (1.0f / 1.08883f);
+                xyzB[i * 3    ] = (0.1804375f * c) * (1.0f / 0.95047f);
+                xyzB[i * 3 + 1] = (0.0721750f * c);
+                xyzB[i * 3 + 2] = (0.9503041f * c) * (1.0f / 1.08883f);
+            }
+            for (int i = 0; i < labF.length; i++) {
+                labF[i] = lab_f_to(i / F_SCALE);
+            }
+            for (int i = 0; i < atan.length; i++) {
+                atan[i] = (float) Math.toDegrees(Math.atan(i / (double) ATAN_SIZE));
+            }
+            for (int i = 0; i < sin.length; i++) {
+                sin[i] = (float) Math.sin(Math.toRadians(i / (double) SIN_SCALE));
+            }
+            int k = 0;
+            for (int l = 0; l < L_NODES; l++) {
+                for (int a = 0; a < AB_NODES; a++) {
+                    for (int b = 0; b < AB_NODES; b++) {
+                        v[0] = l / L_SCALE;
+                        v[1] = a / AB_SCALE - AB_MAX;
+                        v[2] = b / AB_SCALE - AB_MAX;
+                        XYZ_to_sRGB(Lab_to_XYZ(v));
+                        rgb[k++] = v[0];
+                        rgb[k++] = v[1];
+                        rgb[k++] = v[2];
+                    }
+                }
+            }
+            for (int i = 0; i < enc.length; i++) {
+                enc[i] = 255f * RGB_to_sRGB(i / (float) ENC_SIZE);
+            }
+        }
+
+        float[] sRGB_to_Lab(final int rgba, final float[] Lab) {
+            final int r = ((rgba >> 16) & 0xFF) * 3;
+            final int g = ((rgba >> 8) & 0xFF) * 3;
+            final int b = (rgba & 0xFF) * 3;
+
+            final float fx = f(xyzR[r    ] + xyzG[g    ] + xyzB[b    ]);
+            final float fy = f(xyzR[r + 1] + xyzG[g + 1] + xyzB[b + 1]);
+            final float fz = f(xyzR[r + 2] + xyzG[g + 2] + xyzB[b + 2]);
+
+            Lab[0] = 116.0f * fy - 16.0f;
+            Lab[1] = 500.0f * (fx - fy);
+            Lab[2] = 200.0f * (fy - fz);
+            Lab[3] = ((rgba >> 24) & 0xFF) / 255f;
+            return Lab;
+        }
+
+        float[] sRGB_to_LCH(final int rgba, final float[] LCH) {
+            sRGB_to_Lab(rgba, LCH);
+            final float a = LCH[1];
+            final float b = LCH[2];
+            LCH[1] = (float) Math.sqrt(a * a + b * b);
+            LCH[2] = atan2(b, a);
+            return LCH;
+        }
+
+        int Lab_to_sRGB(final float[] Lab) {
+            final float l = clamp(Lab[0], 0f, 100f) * L_SCALE;
+            final float a = (clamp(Lab[1], -AB_MAX, AB_MAX) + AB_MAX) * AB_SCALE;
+            final float b = (clamp(Lab[2], -AB_MAX, AB_MAX) + AB_MAX) * AB_SCALE;
+
+            final int il = Math.min((int) l, L_NODES - 2);
+            final int ia = Math.min((int) a, AB_NODES - 2);
+            final int ib = Math.min((int) b, AB_NODES - 2);
+            final float fl = l - il;
+            final float fa = a - ia;
+            final float fb = b - ib;
+
+            // lattice offsets:
+            final int sb = 3;
+            final int sa = AB_NODES * 3;
+            final int sl = AB_NODES * AB_NODES * 3;
+            final int i000 = il * sl + ia * sa + ib * sb;
+
+            final float[] t = rgb;
+            int rgba = BlendComposite.clamp(Math.round(255f * Lab[3])) << 24;
+
+            for (int c = 0, i = i000; c < 3; c++, i++) {
+                final float c00 = t[i          ] + fb * (t[i           + sb] - t[i          ]);
+                final float c01 = t[i      + sa] + fb * (t[i      + sa + sb] - t[i      + sa]);
+                final float c10 = t[i + sl     ] + fb * (t[i + sl      + sb] - t[i + sl     ]);
+                final float c11 = t[i + sl + sa] + fb * (t[i + sl + sa + sb] - t[i + sl + sa]);
+                final float c0 = c00 + fa * (c01 - c00);
+                final float c1 = c10 + fa * (c11 - c10);
+
+                rgba |= Math.round(encode(c0 + fl * (c1 - c0))) << (16 - (c << 3));
+            }
+            return rgba;
+        }
+
+        int LCH_to_sRGB(final float[] LCH) {
+            final float C = LCH[1];
+            final float H = LCH[2];
+            LCH[1] = C * sin(H + 90f);
+            LCH[2] = C * sin(H);
+            return Lab_to_sRGB(LCH);
+        }
+
+        // f(t) with linear interpolation:
+        private float f(final float t) {
+            final float x = Math.min(t, F_MAX) * F_SCALE;
+            final int i = (int) x;
+            return labF[i] + (x - i) * (labF[i + 1] - labF[i]);
+        }
+
+        // linear RGB to sRGB [0..255] with linear interpolation:
+        private float encode(final float c) {
+            final float x = clamp(c, 0f, 1f) * ENC_SIZE;
+            final int i = (int) x;
+            return enc[i] + (x - i) * (enc[i + 1] - enc[i]);
+        }
+
+        // atan2 in degrees in [0, 360[:
+        private float atan2(final float y, final float x) {
+            final float ax = Math.abs(x);
+            final float ay = Math.abs(y);
+            if (ax == 0f && ay == 0f) {
+                return 0f;
+            }
+            float deg = (ay <= ax) ? atan(ay / ax) : 90f - atan(ax / ay);
+            if (x < 0f) {
+                deg = 180f - deg;
+            }
+            if (y < 0f) {
+                deg = 360f - deg;
+            }
+            return deg;
+        }
+
+        // atan(r) in degrees for r in [0, 1]:
+        private float atan(final float r) {
+            final float x = r * ATAN_SIZE;
+            final int i = (int) x;
+            return atan[i] + (x - i) * (atan[i + 1] - atan[i]);
+        }
+
+        // sin of any angle in degrees:
+        private float sin(final float deg) {
+            final float x = deg * SIN_SCALE;
+            final int fx = (int) Math.floor(x);
+            final int i = fx & (SIN_SIZE - 1);
+            return sin[i] + (x - fx) * (sin[i + 1] - sin[i]);
+        }
+
+        private static float clamp(final float v, final float min, final float max) {
+            return (v < min) ? min : ((v > max) ? max : v);
+        }
+    }
+
     static {
         if (DEBUG) {
             TRACE = true;
@@ -132,7 +364,27 @@ public final class BlendComposite implements Composite {
 
     public enum BlendingMode {
 
-        SRC_OVER
+        // Porter-Duff rules (SRC_OVER ignores the source alpha, only coverage):
+        SRC_OVER,
+        CLEAR,
+        SRC,
+        DST,
+        DST_OVER,
+        SRC_IN,
+        DST_IN,
+        SRC_OUT,
+        DST_OUT,
+        SRC_ATOP,
+        DST_ATOP,
+        XOR,
+        // separable blend modes (composited with source over):
+        MULTIPLY,
+        SCREEN,
+        OVERLAY,
+        HARD_LIGHT,
+        DARKEN,
+        LIGHTEN,
+        DIFFERENCE
     }
     public static final BlendComposite SrcOver = new BlendComposite(BlendComposite.BlendingMode.SRC_OVER);
     private BlendComposite.BlendingMode mode;
@@ -168,9 +420,9 @@ public final class BlendComposite implements Composite {
     public CompositeContext createContext(ColorModel srcColorModel,
                                           ColorModel dstColorModel, RenderingHints hints) {
 
-        // use ThreadLocal (to reduce memory footprint):
-        final BlendingContext bc = blendContextThreadLocal.get();
-        bc.init(this);
+        // use lease or ThreadLocal (to reduce memory footprint):
+        final BlendingContext bc = getBlendingContext();
+        bc.init(this, srcColorModel, dstColorModel);
         return bc;
 
     }
@@ -184,13 +436,31 @@ public final class BlendComposite implements Composite {
         }
     };
 
-    private static final class BlendingContext implements CompositeContext {
+    // Return the BlendingContext attached to the current lease or the per-thread one
+    private static BlendingContext getBlendingContext() {
+        final MarlinLease lease = MarlinLease.current();
+        if (lease != null) {
+            BlendingContext bc = (BlendingContext) lease.getAttachment(BlendingContext.class);
+            if (bc == null) {
+                bc = new BlendingContext();
+                lease.setAttachment(BlendingContext.class, bc);
+            }
+            return bc;
+        }
+        return blendContextThreadLocal.get();
+    }
+
+    static final class BlendingContext implements CompositeContext {
 
         private BlendComposite.Blender _blender;
+        // raster alpha flags (Blender.SRC_OPAQUE ...)
+        private int _flags;
+        // true to mix colors in the CIE color space (SRC_OVER only)
+        private boolean _useColorSpace;
         // recycled arrays into context (shared):
-        final int[] _srcPixel = new int[4];
-        final int[] _dstPixel = new int[4];
-        final int[] _result = new int[4];
+        final float[] _src = new float[4];
+        final float[] _dst = new float[4];
+        final float[] _mix = new float[4];
         int[] _srcPixels = new int[32];
         int[] _dstPixels = new int[32];
         int[] _maskPixels = new int[32];
@@ -199,14 +469,29 @@ public final class BlendComposite implements Composite {
             // ThreadLocal constructor
         }
 
-        void init(BlendComposite composite) {
+        void init(BlendComposite composite, ColorModel srcColorModel, ColorModel dstColorModel) {
+            // select the blender once per sequence:
             this._blender = BlendComposite.Blender.getBlenderFor(composite);
+
+            int flags = 0;
+            if (!srcColorModel.hasAlpha()) {
+                flags |= BlendComposite.Blender.SRC_OPAQUE;
+            } else if (srcColorModel.isAlphaPremultiplied()) {
+                flags |= BlendComposite.Blender.SRC_PRE;
+            }
+            if (!dstColorModel.hasAlpha()) {
+                flags |= BlendComposite.Blender.DST_OPAQUE;
+            } else if (dstColorModel.isAlphaPremultiplied()) {
+                flags |= BlendComposite.Blender.DST_PRE;
+            }
+            this._flags = flags;
+            this._useColorSpace = USE_COLORSPACE
+                                  && (composite.getMode() == BlendComposite.BlendingMode.SRC_OVER);
         }
 
         int[] getSrcPixels(final int len) {
             int[] t = _srcPixels;
             if (t.length < len) {
-                System.out.println("_srcPixels = new int[" + len + "]");
                 // create a larger stride and may free current maskStride (too small)
                 _srcPixels = t = new int[len];
             }
@@ -216,7 +501,6 @@ public final class BlendComposite implements Composite {
         int[] getDstPixels(final int len) {
             int[] t = _dstPixels;
             if (t.length < len) {
-                System.out.println("_dstPixels = new int[" + len + "]");
                 // create a larger stride and may free current maskStride (too small)
                 _dstPixels = t = new int[len];
             }
@@ -226,7 +510,6 @@ public final class BlendComposite implements Composite {
         int[] getMaskPixels(final int len) {
             int[] t = _maskPixels;
             if (t.length < len) {
-                System.out.println("_maskPixels = new int[" + len + "]");
                 // create a larger stride and may free current maskStride (too small)
                 _maskPixels = t = new int[len];
             }
@@ -251,167 +534,509 @@ public final class BlendComposite implements Composite {
             final int width = Math.min(srcIn.getWidth(), dstIn.getWidth());
             final int height = Math.min(srcIn.getHeight(), dstIn.getHeight());
 
-            final int[] gamma_dir = gamma_LUT.dir;
-            final int[] gamma_inv = gamma_LUT.inv;
+            final BlendComposite.Blender blender = _blender;
+            final int flags = _flags;
+
+            // packed INT rasters: use directly their int[] storage (no copy):
+            final int[] srcData = getIntData(srcIn);
+            final int[] dstData = getIntData(dstIn);
+            final int[] outData = getIntData(dstOut);
+
+            final int srcStride = (srcData != null) ? ((IntegerInterleavedRaster) srcIn).getScanlineStride() : 0;
+            final int dstStride = (dstData != null) ? ((IntegerInterleavedRaster) dstIn).getScanlineStride() : 0;
+            final int outStride = (outData != null) ? ((IntegerInterleavedRaster) dstOut).getScanlineStride() : 0;
+
+            int srcPos = (srcData != null) ? ((IntegerInterleavedRaster) srcIn).getDataOffset(0) : 0;
+            int dstPos = (dstData != null) ? ((IntegerInterleavedRaster) dstIn).getDataOffset(0) : 0;
+            int outPos = (outData != null) ? ((IntegerInterleavedRaster) dstOut).getDataOffset(0) : 0;
+
+            // otherwise copy rows into shared arrays:
+            final int[] srcPixels = (srcData != null) ? srcData : getSrcPixels(width);
+            final int[] dstPixels = (dstData != null) ? dstData : getDstPixels(width);
+            final int[] maskPixels = (outData != null) ? outData : getMaskPixels(width);
+            // the output row is the destination row when dstOut is not directly accessible:
+            final int[] outPixels = (outData != null) ? outData : getDstPixels(width);
+
+            for (int y = 0; y < height; y++) {
+                if (srcData == null) {
+                    srcIn.getDataElements(0, y, width, 1, srcPixels);
+                }
+                if (dstData == null) {
+                    dstIn.getDataElements(0, y, width, 1, dstPixels);
+                }
+                if (outData == null) {
+                    // mask alpha is stored into dstOut:
+                    dstOut.getDataElements(0, y, width, 1, maskPixels);
+                }
+
+                if (_useColorSpace) {
+                    blendRowColorSpace(srcPixels, srcPos, dstPixels, dstPos, maskPixels, outPos, outPixels, outPos, width);
+                } else {
+                    blender.blend(srcPixels, srcPos, dstPixels, dstPos, maskPixels, outPos, outPixels, outPos, width, flags);
+                }
+
+                if (outData == null) {
+                    dstOut.setDataElements(0, y, width, 1, outPixels);
+                }
+                srcPos += srcStride;
+                dstPos += dstStride;
+                outPos += outStride;
+            }
+            if (outData != null) {
+                // pixels modified directly: invalidate any cached (accelerated) copy:
+                ((IntegerInterleavedRaster) dstOut).markDirty();
+            }
+        }
+
+        /**
+         * Blend the given solid color (non-premultiplied ARGB) into dstOut
+         * using the coverage mask directly (no source raster)
+         *
+         * @param srcRGB solid color (non-premultiplied ARGB)
+         * @param atile coverage mask or null means full coverage
+         * @param offset first mask value
+         * @param tilesize mask scanline stride
+         * @param dstIn destination
+         * @param dstOut result (may be dstIn)
+         */
+        void compose(final int srcRGB, final byte[] atile, final int offset, final int tilesize,
+                     final Raster dstIn, final WritableRaster dstOut) {
+            if (dstIn.getSampleModel().getDataType() != DataBuffer.TYPE_INT
+                    || dstOut.getSampleModel().getDataType() != DataBuffer.TYPE_INT) {
+                throw new IllegalStateException(
+                        "Source and destination must store pixels as INT.");
+            }
+            final int width = dstIn.getWidth();
+            final int height = dstIn.getHeight();
 
             final BlendComposite.Blender blender = _blender;
+            final int flags = _flags;
+
+            final int[] dstData = getIntData(dstIn);
+            final int[] outData = getIntData(dstOut);
+
+            final int dstStride = (dstData != null) ? ((IntegerInterleavedRaster) dstIn).getScanlineStride() : 0;
+            final int outStride = (outData != null) ? ((IntegerInterleavedRaster) dstOut).getScanlineStride() : 0;
 
-            // use shared arrays:
-            final int[] srcPixel = _srcPixel;
-            final int[] dstPixel = _dstPixel;
-            final int[] result = _result;
+            int dstPos = (dstData != null) ? ((IntegerInterleavedRaster) dstIn).getDataOffset(0) : 0;
+            int outPos = (outData != null) ? ((IntegerInterleavedRaster) dstOut).getDataOffset(0) : 0;
 
             final int[] srcPixels = getSrcPixels(width);
-            final int[] dstPixels = getDstPixels(width);
+            final int[] dstPixels = (dstData != null) ? dstData : getDstPixels(width);
+            final int[] outPixels = (outData != null) ? outData : getDstPixels(width);
             final int[] maskPixels = getMaskPixels(width);
 
-            float[] src = new float[4];
-            float[] dst = new float[4];
-            float[] mix = new float[4];
+            Arrays.fill(srcPixels, 0, width, srcRGB);
+            if (atile == null) {
+                Arrays.fill(maskPixels, 0, width, 0xFF);
+            }
+
+            for (int y = 0, maskPos = offset; y < height; y++, maskPos += tilesize) {
+                if (atile != null) {
+                    for (int i = 0; i < width; i++) {
+                        maskPixels[i] = atile[maskPos + i] & 0xFF;
+                    }
+                }
+                if (dstData == null) {
+                    dstIn.getDataElements(0, y, width, 1, dstPixels);
+                }
 
-            int alpha, pixel;
+                if (_useColorSpace) {
+                    blendRowColorSpace(srcPixels, 0, dstPixels, dstPos, maskPixels, 0, outPixels, outPos, width);
+                } else {
+                    blender.blend(srcPixels, 0, dstPixels, dstPos, maskPixels, 0, outPixels, outPos, width, flags);
+                }
+
+                if (outData == null) {
+                    dstOut.setDataElements(0, y, width, 1, outPixels);
+                }
+                dstPos += dstStride;
+                outPos += outStride;
+            }
+            if (outData != null) {
+                ((IntegerInterleavedRaster) dstOut).markDirty();
+            }
+        }
+
+        private void blendRowColorSpace(final int[] srcPixels, final int srcOff,
+                                        final int[] dstPixels, final int dstOff,
+                                        final int[] maskPixels, final int maskOff,
+                                        final int[] outPixels, final int outOff,
+                                        final int len) {
+            final BlendComposite.LabLUT lut = BlendComposite.LabLUT.INSTANCE;
+            float[] src = _src;
+            float[] dst = _dst;
+            final float[] mix = _mix;
+
+            int alpha;
             float src_alpha;
 
-            for (int y = 0; y < height; y++) {
-                // TODO: use directly BufferInt
-                srcIn.getDataElements(0, y, width, 1, srcPixels);
-                dstIn.getDataElements(0, y, width, 1, dstPixels);
-                dstOut.getDataElements(0, y, width, 1, maskPixels);
-
-                for (int x = 0; x < width; x++) {
-                    // pixels are stored as INT_ARGB
-                    // our arrays are [R, G, B, A]
-                    pixel = maskPixels[x];
-                    alpha = /* ( */ pixel /* >> 24) & 0xFF */;
-
-                    if (alpha == 255) {
-                        dstPixels[x] = srcPixels[x];
-                    } else if (alpha != 0) {
-//                        System.out.println("alpha = " + alpha);
-
-                        if (USE_COLORSPACE) {
-                            src = (USE_LAB) ? sRGB_to_Lab(srcPixels[x], src) : sRGB_to_LCH(srcPixels[x], src);
-                            dst = (USE_LAB) ? sRGB_to_Lab(dstPixels[x], dst) : sRGB_to_LCH(dstPixels[x], dst);
-
-                            if (TRACE) {
-                                System.out.println("src: " + Arrays.toString(src));
-                                System.out.println("dst: " + Arrays.toString(dst));
-                            }
-
-                            src_alpha = (alpha / 255f);
-
-                            // src & dst are Lab or LCH:
-                            if (USE_MIX_L) {
-                                mix[0] = (dst[0] + src_alpha * (src[0] - dst[0]));
-                            } else {
-                                // L is luminance, use Y (brightness) instead:
-                                float Ysrc = L_to_Y(src[0]);
-                                float Ydst = L_to_Y(dst[0]);
-                                mix[0] = Y_to_L(Ydst + src_alpha * (Ysrc - Ydst));
-                            }
-
-                            // a(Lab) or C(LCH):
-                            mix[1] = (dst[1] + src_alpha * (src[1] - dst[1]));
-
-                            if (USE_LAB) {
-                                // b(Lab)
-                                mix[2] = (dst[2] + src_alpha * (src[2] - dst[2]));
-                            } else {
-                                // H(Lch) angle combination:
-                                float d = src[2] - dst[2];
-                                if (d > 180f) {
-                                    d -= 360f;
-                                } else if (d < -180f) {
-                                    d += 360d;
-                                }
-                                mix[2] = (dst[2] + src_alpha * d);
-                            }
-                            mix[3] = 1f;
-
-                            if (TRACE) {
-                                System.out.println("mixLCH: " + Arrays.toString(mix));
-                            }
-
-                            dstPixels[x] = (USE_LAB) ? Lab_to_sRGB(mix) : LCH_to_sRGB(mix);
-
-                        } else {
-
-                            // blend
-                            pixel = srcPixels[x];
-                            srcPixel[0] = gamma_dir[(pixel >> 16) & 0xFF];
-                            srcPixel[1] = gamma_dir[(pixel >> 8) & 0xFF];
-                            srcPixel[2] = gamma_dir[(pixel) & 0xFF];
-                            srcPixel[3] = (pixel >> 24) & 0xFF;
-
-                            pixel = dstPixels[x];
-                            dstPixel[0] = gamma_dir[(pixel >> 16) & 0xFF];
-                            dstPixel[1] = gamma_dir[(pixel >> 8) & 0xFF];
-                            dstPixel[2] = gamma_dir[(pixel) & 0xFF];
-                            dstPixel[3] = (pixel >> 24) & 0xFF;
-
-                            // recycle int[] instances:
-                            blender.blend(srcPixel, dstPixel, alpha, result);
-
-                            // mixes the result with the opacity
-                            dstPixels[x] = (/*result[3] & */0xFF) << 24
-                                    | gamma_inv[result[0] & 0xFF] << 16
-                                    | gamma_inv[result[1] & 0xFF] << 8
-                                    | gamma_inv[result[2] & 0xFF];
+            for (int x = 0; x < len; x++) {
+                alpha = maskPixels[maskOff + x];
+
+                if (alpha == 255) {
+                    outPixels[outOff + x] = srcPixels[srcOff + x];
+                } else if (alpha != 0) {
+                    src = (USE_LAB) ? lut.sRGB_to_Lab(srcPixels[srcOff + x], src) : lut.sRGB_to_LCH(srcPixels[srcOff + x], src);
+                    dst = (USE_LAB) ? lut.sRGB_to_Lab(dstPixels[dstOff + x], dst) : lut.sRGB_to_LCH(dstPixels[dstOff + x], dst);
+
+                    if (TRACE) {
+                        System.out.println("src: " + Arrays.toString(src));
+                        System.out.println("dst: " + Arrays.toString(dst));
+                    }
+
+                    src_alpha = (alpha / 255f);
+
+                    // src & dst are Lab or LCH:
+                    if (USE_MIX_L) {
+                        mix[0] = (dst[0] + src_alpha * (src[0] - dst[0]));
+                    } else {
+                        // L is luminance, use Y (brightness) instead:
+                        float Ysrc = L_to_Y(src[0]);
+                        float Ydst = L_to_Y(dst[0]);
+                        mix[0] = Y_to_L(Ydst + src_alpha * (Ysrc - Ydst));
+                    }
+
+                    // a(Lab) or C(LCH):
+                    mix[1] = (dst[1] + src_alpha * (src[1] - dst[1]));
+
+                    if (USE_LAB) {
+                        // b(Lab)
+                        mix[2] = (dst[2] + src_alpha * (src[2] - dst[2]));
+                    } else {
+                        // H(Lch) angle combination:
+                        float d = src[2] - dst[2];
+                        if (d > 180f) {
+                            d -= 360f;
+                        } else if (d < -180f) {
+                            d += 360d;
                         }
+                        mix[2] = (dst[2] + src_alpha * d);
+                    }
+                    mix[3] = 1f;
+
+                    if (TRACE) {
+                        System.out.println("mixLCH: " + Arrays.toString(mix));
                     }
+
+                    outPixels[outOff + x] = (USE_LAB) ? lut.Lab_to_sRGB(mix) : lut.LCH_to_sRGB(mix);
+                } else {
+                    outPixels[outOff + x] = dstPixels[dstOff + x];
                 }
-                dstOut.setDataElements(0, y, width, 1, dstPixels);
             }
         }
     }
 
+    // Return the int[] storage of a packed INT raster or null if not directly accessible
+    static int[] getIntData(final Raster r) {
+        if (r instanceof IntegerInterleavedRaster) {
+            return ((IntegerInterleavedRaster) r).getDataStorage();
+        }
+        return null;
+    }
+
     private static abstract class Blender {
 
-        private final static BlenderSrcOver srcOverBlender = new BlenderSrcOver();
+        // raster alpha flags:
+        final static int SRC_OPAQUE = 1;
+        final static int SRC_PRE = 2;
+        final static int DST_OPAQUE = 4;
+        final static int DST_PRE = 8;
 
-        public abstract void blend(int[] src, int[] dst, int alpha, int[] result);
+        private final static BlenderSrcOver srcOverBlender = new BlenderSrcOver();
+        // Porter-Duff rules: Fs = fsConst + fsDst * alpha_dst, Fd = fdConst + fdSrc * alpha_src
+        private final static BlenderRule clearBlender = new BlenderRule(0, 0, 0, 0);
+        private final static BlenderRule srcBlender = new BlenderRule(255, 0, 0, 0);
+        private final static BlenderRule dstBlender = new BlenderRule(0, 0, 255, 0);
+        private final static BlenderRule dstOverBlender = new BlenderRule(255, -1, 255, 0);
+        private final static BlenderRule srcInBlender = new BlenderRule(0, 1, 0, 0);
+        private final static BlenderRule dstInBlender = new BlenderRule(0, 0, 0, 1);
+        private final static BlenderRule srcOutBlender = new BlenderRule(255, -1, 0, 0);
+        private final static BlenderRule dstOutBlender = new BlenderRule(0, 0, 255, -1);
+        private final static BlenderRule srcAtopBlender = new BlenderRule(0, 1, 255, -1);
+        private final static BlenderRule dstAtopBlender = new BlenderRule(255, -1, 0, 1);
+        private final static BlenderRule xorBlender = new BlenderRule(255, -1, 255, -1);
+        // separable blend modes:
+        private final static BlenderRule multiplyBlender = new BlenderRule(BlenderRule.B_MULTIPLY);
+        private final static BlenderRule screenBlender = new BlenderRule(BlenderRule.B_SCREEN);
+        private final static BlenderRule overlayBlender = new BlenderRule(BlenderRule.B_OVERLAY);
+        private final static BlenderRule hardLightBlender = new BlenderRule(BlenderRule.B_HARD_LIGHT);
+        private final static BlenderRule darkenBlender = new BlenderRule(BlenderRule.B_DARKEN);
+        private final static BlenderRule lightenBlender = new BlenderRule(BlenderRule.B_LIGHTEN);
+        private final static BlenderRule differenceBlender = new BlenderRule(BlenderRule.B_DIFFERENCE);
+
+        /**
+         * Blend a row of len packed ARGB pixels: out = blend(src, dst, mask)
+         * where mask gives the source coverage [0..255] of each pixel.
+         * out may be the same array as dst or mask (at the same offset)
+         */
+        public abstract void blend(int[] src, int srcOff, int[] dst, int dstOff,
+                                   int[] mask, int maskOff, int[] out, int outOff,
+                                   int len, int flags);
 
         public static BlendComposite.Blender getBlenderFor(BlendComposite composite) {
             switch (composite.getMode()) {
                 case SRC_OVER:
                     return srcOverBlender;
+                case CLEAR:
+                    return clearBlender;
+                case SRC:
+                    return srcBlender;
+                case DST:
+                    return dstBlender;
+                case DST_OVER:
+                    return dstOverBlender;
+                case SRC_IN:
+                    return srcInBlender;
+                case DST_IN:
+                    return dstInBlender;
+                case SRC_OUT:
+                    return srcOutBlender;
+                case DST_OUT:
+                    return dstOutBlender;
+                case SRC_ATOP:
+                    return srcAtopBlender;
+                case DST_ATOP:
+                    return dstAtopBlender;
+                case XOR:
+                    return xorBlender;
+                case MULTIPLY:
+                    return multiplyBlender;
+                case SCREEN:
+                    return screenBlender;
+                case OVERLAY:
+                    return overlayBlender;
+                case HARD_LIGHT:
+                    return hardLightBlender;
+                case DARKEN:
+                    return darkenBlender;
+                case LIGHTEN:
+                    return lightenBlender;
+                case DIFFERENCE:
+                    return differenceBlender;
                 default:
                     throw new IllegalArgumentException("Blender not implement for " + composite.getMode().name());
             }
         }
     }
 
-    private final static class BlenderSrcOver extends BlendComposite.Blender {
+    /**
+     * Porter-Duff or separable blend mode blender using integer maths on
+     * 12-bit linear (gamma corrected) components and non-premultiplied alpha:
+     * the coverage mixes the result with the destination
+     */
+    private final static class BlenderRule extends BlendComposite.Blender {
+
+        // separable blend functions:
+        final static int B_NONE = 0;
+        final static int B_MULTIPLY = 1;
+        final static int B_SCREEN = 2;
+        final static int B_OVERLAY = 3;
+        final static int B_HARD_LIGHT = 4;
+        final static int B_DARKEN = 5;
+        final static int B_LIGHTEN = 6;
+        final static int B_DIFFERENCE = 7;
+
+        private final static int FULL = 255 * 255;
+
+        // Porter-Duff factors:
+        private final int fsConst;
+        private final int fsDst;
+        private final int fdConst;
+        private final int fdSrc;
+        // separable blend function or B_NONE (Porter-Duff)
+        private final int op;
+
+        BlenderRule(final int fsConst, final int fsDst, final int fdConst, final int fdSrc) {
+            this.fsConst = fsConst;
+            this.fsDst = fsDst;
+            this.fdConst = fdConst;
+            this.fdSrc = fdSrc;
+            this.op = B_NONE;
+        }
 
-        private static final boolean USE_FLOATS = false;
+        BlenderRule(final int op) {
+            this.fsConst = 0;
+            this.fsDst = 0;
+            this.fdConst = 0;
+            this.fdSrc = 0;
+            this.op = op;
+        }
 
         @Override
-        public void blend(final int[] src, final int[] dst, final int alpha, final int[] result) {
-            if (USE_FLOATS) {
-                final float src_alpha = alpha / 255f;
-                final float comp_src_alpha = 1f - src_alpha;
-                // src & dst are gamma corrected
-
-                // TODO: use integer maths:
-                result[0] = Math.min(255, (int) (src[0] * src_alpha + dst[0] * comp_src_alpha));
-                result[1] = Math.min(255, (int) (src[1] * src_alpha + dst[1] * comp_src_alpha));
-                result[2] = Math.min(255, (int) (src[2] * src_alpha + dst[2] * comp_src_alpha));
-                //                            result[3] = 255; /* Math.max(0, Math.min(255, (int) (255f * (src_alpha + comp_src_alpha)))) */
-            } else {
-                final int src_alpha = alpha;
-                final int comp_src_alpha = 255 - src_alpha;
-                // src & dst are gamma corrected
-
-                // TODO: use integer maths:
-/*
-                 result[0] = (src[0] * src_alpha + dst[0] * comp_src_alpha) / 255;
-                 result[1] = (src[1] * src_alpha + dst[1] * comp_src_alpha) / 255;
-                 result[2] = (src[2] * src_alpha + dst[2] * comp_src_alpha) / 255;
-                 */
-                result[0] = (src[0] * src_alpha + dst[0] * comp_src_alpha) >> 8;
-                result[1] = (src[1] * src_alpha + dst[1] * comp_src_alpha) >> 8;
-                result[2] = (src[2] * src_alpha + dst[2] * comp_src_alpha) >> 8;
-                //                            result[3] = 255; /* Math.max(0, Math.min(255, (int) (255f * (src_alpha + comp_src_alpha)))) */
+        public void blend(final int[] src, final int srcOff, final int[] dst, final int dstOff,
+                          final int[] mask, final int maskOff, final int[] out, final int outOff,
+                          final int len, final int flags) {
+            final int[] lin_dir = linear_LUT.dir;
+            final int[] lin_inv = linear_LUT.inv;
+
+            final boolean srcOpaque = (flags & SRC_OPAQUE) != 0;
+            final boolean srcPre = (flags & SRC_PRE) != 0;
+            final boolean dstOpaque = (flags & DST_OPAQUE) != 0;
+            final boolean dstPre = (flags & DST_PRE) != 0;
+
+            int m, sp, dp, as, ad, ws, wd, wb, ar, sh, cs, cd, cr, c, pixel;
+
+            for (int i = 0; i < len; i++) {
+                m = mask[maskOff + i];
+                dp = dst[dstOff + i];
+
+                if (m == 0) {
+                    out[outOff + i] = dp;
+                    continue;
+                }
+                sp = src[srcOff + i];
+                as = (srcOpaque) ? 0xFF : (sp >>> 24);
+                ad = (dstOpaque) ? 0xFF : (dp >>> 24);
+
+                // weights of src, dst and blend function (alpha^2 units):
+                if (op == B_NONE) {
+                    ws = as * (fsConst + fsDst * ad);
+                    wd = ad * (fdConst + fdSrc * as);
+                    wb = 0;
+
+                    if (m == 0xFF && !srcPre && !dstPre) {
+                        // exact copies (no gamma round trip):
+                        if (ws == FULL && wd == 0) {
+                            out[outOff + i] = (srcOpaque || dstOpaque) ? (sp | 0xFF000000) : sp;
+                            continue;
+                        }
+                        if (wd == FULL && ws == 0) {
+                            out[outOff + i] = dp;
+                            continue;
+                        }
+                    }
+                } else {
+                    ws = as * (0xFF - ad);
+                    wd = ad * (0xFF - as);
+                    wb = as * ad;
+                }
+                ar = div255(ws + wd + wb);
+
+                if (m != 0xFF) {
+                    // coverage: mix with the destination
+                    ar = div255(ar * m + ad * (0xFF - m));
+                }
+                pixel = (dstOpaque) ? 0xFF000000 : (ar << 24);
+
+                for (sh = 16; sh >= 0; sh -= 8) {
+                    cs = (sp >> sh) & 0xFF;
+                    if (srcPre) {
+                        cs = unpremultiply(cs, as);
+                    }
+                    cs = lin_dir[cs];
+
+                    cd = (dp >> sh) & 0xFF;
+                    if (dstPre) {
+                        cd = unpremultiply(cd, ad);
+                    }
+                    cd = lin_dir[cd];
+
+                    // premultiplied result (value * alpha units):
+                    cr = (wb != 0) ? blend(op, cs, cd) * wb : 0;
+                    cr = div255(cs * ws + cd * wd + cr);
+
+                    if (m != 0xFF) {
+                        cr = div255(cr * m + cd * ad * (0xFF - m));
+                    }
+
+                    if (dstOpaque) {
+                        // opaque destination: store premultiplied values
+                        c = div255(cr);
+                    } else if (ar != 0) {
+                        c = Math.min(LinearLUT.LINEAR_MAX, (cr + (ar >> 1)) / ar);
+                    } else {
+                        c = 0;
+                    }
+                    c = lin_inv[c];
+
+                    if (dstPre) {
+                        c = div255(c * ar);
+                    }
+                    pixel |= c << sh;
+                }
+                out[outOff + i] = pixel;
+            }
+        }
+
+        // separable blend function on linear components: B(src, dst)
+        private static int blend(final int op, final int cs, final int cd) {
+            final int max = LinearLUT.LINEAR_MAX;
+            switch (op) {
+                case B_MULTIPLY:
+                    return (cs * cd + (max >> 1)) / max;
+                case B_SCREEN:
+                    return cs + cd - (cs * cd + (max >> 1)) / max;
+                case B_OVERLAY:
+                    // hard light with src and dst swapped:
+                    return hardLight(cd, cs);
+                case B_HARD_LIGHT:
+                    return hardLight(cs, cd);
+                case B_DARKEN:
+                    return Math.min(cs, cd);
+                case B_LIGHTEN:
+                    return Math.max(cs, cd);
+                case B_DIFFERENCE:
+                    return Math.abs(cs - cd);
+                default:
+                    return cs;
+            }
+        }
+
+        private static int hardLight(final int cs, final int cd) {
+            final int max = LinearLUT.LINEAR_MAX;
+            final int cs2 = cs << 1;
+            if (cs2 <= max) {
+                // multiply(dst, 2 src):
+                return (cd * cs2 + (max >> 1)) / max;
+            }
+            // screen(dst, 2 src - 1):
+            final int s = cs2 - max;
+            return s + cd - (s * cd + (max >> 1)) / max;
+        }
+
+        private static int unpremultiply(final int c, final int a) {
+            if (a == 0) {
+                return 0;
+            }
+            return Math.min(0xFF, (c * 0xFF + (a >> 1)) / a);
+        }
+
+        // rounded division by 255 (positive values)
+        private static int div255(final int v) {
+            return (v + 127) / 255;
+        }
+    }
+
+    private final static class BlenderSrcOver extends BlendComposite.Blender {
+
+        @Override
+        public void blend(final int[] src, final int srcOff, final int[] dst, final int dstOff,
+                          final int[] mask, final int maskOff, final int[] out, final int outOff,
+                          final int len, final int flags) {
+            final int[] gamma_dir = gamma_LUT.dir;
+            final int[] gamma_inv = gamma_LUT.inv;
+
+            int alpha, comp_alpha, sp, dp;
+
+            for (int i = 0; i < len; i++) {
+                alpha = mask[maskOff + i];
+
+                if (alpha == 255) {
+                    out[outOff + i] = src[srcOff + i];
+                } else if (alpha != 0) {
+                    comp_alpha = 255 - alpha;
+                    sp = src[srcOff + i];
+                    dp = dst[dstOff + i];
+
+                    // src & dst are gamma corrected, mixed and packed with full opacity:
+                    out[outOff + i] = (0xFF << 24)
+                            | gamma_inv[((gamma_dir[(sp >> 16) & 0xFF] * alpha + gamma_dir[(dp >> 16) & 0xFF] * comp_alpha) >> 8) & 0xFF] << 16
+                            | gamma_inv[((gamma_dir[(sp >> 8) & 0xFF] * alpha + gamma_dir[(dp >> 8) & 0xFF] * comp_alpha) >> 8) & 0xFF] << 8
+                            | gamma_inv[((gamma_dir[sp & 0xFF] * alpha + gamma_dir[dp & 0xFF] * comp_alpha) >> 8) & 0xFF];
+                } else {
+                    out[outOff + i] = dst[dstOff + i];
+                }
             }
         }
     }
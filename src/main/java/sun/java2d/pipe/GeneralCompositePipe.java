@@ -25,6 +25,7 @@
 package sun.java2d.pipe;
 
 import java.awt.AlphaComposite;
+import java.awt.Color;
 import java.awt.CompositeContext;
 import java.awt.PaintContext;
 import java.awt.Rectangle;
@@ -32,20 +33,42 @@ import java.awt.Shape;
 import java.awt.RenderingHints;
 import java.awt.image.ColorModel;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import org.marlin.pisces.MarlinLease;
 import sun.awt.image.BufImgSurfaceData;
 import sun.awt.image.IntegerInterleavedRaster;
 import sun.java2d.SunGraphics2D;
 import sun.java2d.SurfaceData;
 import sun.java2d.loops.Blit;
 import sun.java2d.loops.MaskBlit;
+import sun.java2d.loops.MaskFill;
 import sun.java2d.loops.CompositeType;
+import sun.java2d.loops.SurfaceType;
 
 public class GeneralCompositePipe implements CompositePipe {
 
+    // number of tile rasters kept per TileContext
+    static final int RASTER_POOL_SIZE = 8;
+    // max width of pooled tile rasters (band tiles): wider runs are split
+    static final int MAX_POOLED_WIDTH = 4096;
+    // max height of pooled tile rasters (tile size)
+    static final int MAX_POOLED_HEIGHT = 256;
+    // max bytes of tile rasters kept per TileContext
+    // (2 band rasters of 4096 x 64 ints): larger rasters are not kept
+    static final long MAX_POOLED_BYTES = 2L * 1024L * 1024L;
+    // sample model of the source tiles filled by the gradient span generator
+    static final SampleModel ARGB_SAMPLE_MODEL
+        = ColorModel.getRGBdefault().createCompatibleSampleModel(1, 1);
+
     /**
-     * Per-thread TileContext (very small so do not use any Soft or Weak Reference)
+     * Per-thread TileContext (pooled tile rasters are bounded by MAX_POOLED_BYTES so do not use any Soft or Weak Reference)
      */
     private static final ThreadLocal<TileContext> tileContextThreadLocal = new ThreadLocal<TileContext>() {
         @Override
@@ -54,6 +77,20 @@ public class GeneralCompositePipe implements CompositePipe {
         }
     };
 
+    // Return the TileContext attached to the current lease or the per-thread one
+    static TileContext getTileContext() {
+        final MarlinLease lease = MarlinLease.current();
+        if (lease != null) {
+            TileContext tc = (TileContext) lease.getAttachment(TileContext.class);
+            if (tc == null) {
+                tc = new TileContext();
+                lease.setAttachment(TileContext.class, tc);
+            }
+            return tc;
+        }
+        return tileContextThreadLocal.get();
+    }
+
     final static class TileContext {
 
         SunGraphics2D sunG2D;
@@ -63,8 +100,26 @@ public class GeneralCompositePipe implements CompositePipe {
         Object pipeState;
         // LBO: cached values
         boolean isBlendComposite;
+        // solid color paint: no paint context
+        boolean isSolidColor;
+        // solid color (non-premultiplied ARGB) for BlendComposite
+        int solidRGB;
+        // solid color mask fill for AlphaComposite
+        MaskFill solidFill;
+        // gradient span generator (kept) and the active one or null
+        GradientSpanGenerator gradientGen = null;
+        GradientSpanGenerator gradient;
         int[] maskStride = new int[32];
-        WritableRaster raster = null;
+        // pool of tile rasters reused across tiles and sequences
+        // (keyed by the raster class and the sample model layout of the
+        // destination, sized in powers of 2 so one raster serves smaller
+        // tiles through a child raster), bounded by MAX_POOLED_BYTES:
+        final WritableRaster[] rasters = new WritableRaster[RASTER_POOL_SIZE];
+        final SampleModel[] rasterModels = new SampleModel[RASTER_POOL_SIZE];
+        final Class<?>[] rasterClasses = new Class<?>[RASTER_POOL_SIZE];
+        final long[] rasterBytes = new long[RASTER_POOL_SIZE];
+        long pooledBytes = 0L;
+        int rasterNext = 0;
 
         TileContext() {
             // ThreadLocal constructor
@@ -78,45 +133,208 @@ public class GeneralCompositePipe implements CompositePipe {
             compCtxt = cCtx;
             compModel = cModel;
             isBlendComposite = blendComposite;
+            isSolidColor = false;
+            solidFill = null;
+            gradient = null;
+        }
+
+        void initSolid(int rgb, MaskFill fill) {
+            isSolidColor = true;
+            solidRGB = rgb;
+            solidFill = fill;
+        }
+
+        GradientSpanGenerator getGradientGenerator() {
+            GradientSpanGenerator gen = gradientGen;
+            if (gen == null) {
+                gradientGen = gen = new GradientSpanGenerator();
+            }
+            return gen;
         }
 
         int[] getMaskStride(final int len) {
             int[] t = maskStride;
             if (t.length < len) {
-                System.out.println("maskPixels = new int[" + len + "]");
-
                 // create a larger stride and may free current maskStride (too small)
                 maskStride = t = new int[len];
             }
             return t;
         }
 
-        WritableRaster getDirtyWritableRaster(Raster in) {
-            // buggy !!
-            WritableRaster r = raster;
-            if ((r == null)
-                    || (raster.getClass() != in.getClass())
-                    || (raster.getWidth() == in.getWidth())
-                    || (raster.getHeight() == in.getHeight())) {
-                raster = r = in.createCompatibleWritableRaster(
-                        /*
-                        Math.max(in.getWidth(), 32),
-                        Math.max(in.getHeight(), 32)
-                        */
-                        );
+        /**
+         * Return a (dirty) writable raster compatible with the given one
+         * and of the same size: its pixels must be fully overwritten
+         */
+        WritableRaster getTileRaster(final Raster in) {
+            return getTileRaster(in.getSampleModel(), in, in.getWidth(), in.getHeight());
+        }
+
+        /**
+         * Return a (dirty) writable raster of the given size using the given
+         * sample model (or compatible with the given raster if not null)
+         */
+        WritableRaster getTileRaster(final SampleModel sm, final Raster in,
+                                     final int w, final int h) {
+            if (w > MAX_POOLED_WIDTH || h > MAX_POOLED_HEIGHT) {
+                // too large to be kept:
+                return newTileRaster(sm, in, w, h);
+            }
+            final Class<?> rc = (in != null) ? in.getClass() : null;
+            WritableRaster r;
+
+            for (int i = 0; i < RASTER_POOL_SIZE; i++) {
+                r = rasters[i];
+                if (r == null || r.getWidth() < w || r.getHeight() < h) {
+                    continue;
+                }
+                // child rasters share the sample model of their parent:
+                if (rasterModels[i] == sm) {
+                    return getChild(r, w, h);
+                }
+                // same layout (surfaces returning new sample models):
+                if (rasterClasses[i] == rc && isSameLayout(rasterModels[i], sm)) {
+                    rasterModels[i] = sm;
+                    return getChild(r, w, h);
+                }
+            }
+            final int pw = roundUp(w, MAX_POOLED_WIDTH);
+            final int ph = roundUp(h, MAX_POOLED_HEIGHT);
+            final long bytes = (long) pw * ph * getPixelBytes(sm);
+            if (bytes > MAX_POOLED_BYTES) {
+                // too large to be kept:
+                return newTileRaster(sm, in, w, h);
+            }
+            // replace the oldest entries until it fits:
+            final int slot = rasterNext;
+            release(slot);
+            for (int i = 1; i < RASTER_POOL_SIZE
+                    && pooledBytes + bytes > MAX_POOLED_BYTES; i++) {
+                release((slot + i) % RASTER_POOL_SIZE);
+            }
+            r = newTileRaster(sm, in, pw, ph);
+            rasters[slot] = r;
+            rasterModels[slot] = sm;
+            rasterClasses[slot] = rc;
+            rasterBytes[slot] = bytes;
+            pooledBytes += bytes;
+            rasterNext = (slot + 1) % RASTER_POOL_SIZE;
+            return getChild(r, w, h);
+        }
+
+        private void release(final int slot) {
+            if (rasters[slot] != null) {
+                pooledBytes -= rasterBytes[slot];
+                rasters[slot] = null;
+                rasterModels[slot] = null;
+                rasterClasses[slot] = null;
+            }
+        }
+
+        // bytes per pixel (upper bound for packed pixels)
+        private static int getPixelBytes(final SampleModel sm) {
+            return sm.getNumDataElements()
+                    * ((DataBuffer.getDataTypeSize(sm.getDataType()) + 7) >> 3);
+        }
 
-                System.out.println("raster = " + raster);
+        // true if both sample models have the same pixel layout (any size)
+        private static boolean isSameLayout(final SampleModel a, final SampleModel b) {
+            if (a.getClass() != b.getClass()
+                    || a.getDataType() != b.getDataType()
+                    || a.getNumBands() != b.getNumBands()) {
+                return false;
+            }
+            if (a instanceof SinglePixelPackedSampleModel) {
+                return Arrays.equals(((SinglePixelPackedSampleModel) a).getBitMasks(),
+                        ((SinglePixelPackedSampleModel) b).getBitMasks());
             }
-            return r;
+            if (a instanceof ComponentSampleModel) {
+                final ComponentSampleModel ca = (ComponentSampleModel) a;
+                final ComponentSampleModel cb = (ComponentSampleModel) b;
+                return ca.getPixelStride() == cb.getPixelStride()
+                        && Arrays.equals(ca.getBandOffsets(), cb.getBandOffsets())
+                        && Arrays.equals(ca.getBankIndices(), cb.getBankIndices());
+            }
+            if (a instanceof MultiPixelPackedSampleModel) {
+                return ((MultiPixelPackedSampleModel) a).getPixelBitStride()
+                        == ((MultiPixelPackedSampleModel) b).getPixelBitStride();
+            }
+            return false;
+        }
+
+        private static WritableRaster getChild(final WritableRaster r, final int w, final int h) {
+            if (r.getWidth() == w && r.getHeight() == h) {
+                return r;
+            }
+            return r.createWritableChild(0, 0, w, h, 0, 0, null);
+        }
+
+        // next power of 2 (at least 32) bounded by max
+        private static int roundUp(final int v, final int max) {
+            final int p = (v <= 32) ? 32 : Integer.highestOneBit(v - 1) << 1;
+            return Math.min(p, max);
+        }
+
+        private static WritableRaster newTileRaster(final SampleModel sm, final Raster in,
+                                                    final int w, final int h) {
+            if (in != null) {
+                return in.createCompatibleWritableRaster(w, h);
+            }
+            return Raster.createWritableRaster(sm.createCompatibleSampleModel(w, h), null);
         }
     }
 
     @Override
     public Object startSequence(SunGraphics2D sg, Shape s, Rectangle devR,
             int[] abox) {
+        // BlendComposite matcher: classpath independent so use String.equals()
+        boolean blendComposite = "sun.java2d.pipe.BlendComposite".equals(sg.composite.getClass().getName());
+
+        // use lease or ThreadLocal (to reduce memory footprint):
+        final TileContext tc = getTileContext();
+
+        // solid color: composite the mask directly against the destination
+        // (no paint context nor source raster):
+        if (sg.paintState <= SunGraphics2D.PAINT_ALPHACOLOR) {
+            if (sg.composite instanceof AlphaComposite) {
+                final MaskFill fill = MaskFill.getFromCache(
+                        (sg.paintState == SunGraphics2D.PAINT_OPAQUECOLOR)
+                        ? SurfaceType.OpaqueColor : SurfaceType.AnyColor,
+                        sg.imageComp, sg.getSurfaceData().getSurfaceType());
+                if (fill != null) {
+                    tc.init(sg, null, null, null, false);
+                    tc.initSolid(0, fill);
+                    return tc;
+                }
+            } else if (blendComposite) {
+                ColorModel model = sg.getDeviceColorModel();
+                CompositeContext compositeContext =
+                        sg.composite.createContext(ColorModel.getRGBdefault(), model,
+                        sg.getRenderingHints());
+
+                tc.init(sg, null, compositeContext, model, true);
+                tc.initSolid(((Color) sg.paint).getRGB(), null);
+                return tc;
+            }
+        }
+
         // warning: clone map:
         RenderingHints hints = sg.getRenderingHints();
         ColorModel model = sg.getDeviceColorModel();
+
+        // gradients: fill source tiles with the span generator (no paint context):
+        if (GradientSpanGenerator.isSupported(sg.paint)) {
+            final GradientSpanGenerator gen = tc.getGradientGenerator();
+            gen.init(sg.paint, sg.transform);
+
+            CompositeContext compositeContext =
+                    sg.composite.createContext(ColorModel.getRGBdefault(), model,
+                    hints);
+
+            tc.init(sg, null, compositeContext, model, blendComposite);
+            tc.gradient = gen;
+            return tc;
+        }
+
         PaintContext paintContext =
                 sg.paint.createContext(model, devR, s.getBounds2D(),
                 sg.cloneTransform(),
@@ -125,11 +343,6 @@ public class GeneralCompositePipe implements CompositePipe {
                 sg.composite.createContext(paintContext.getColorModel(), model,
                 hints);
 
-        // BlendComposite matcher: classpath independent so use String.equals()
-        boolean blendComposite = "sun.java2d.pipe.BlendComposite".equals(sg.composite.getClass().getName());
-
-        // use ThreadLocal (to reduce memory footprint):
-        final TileContext tc = tileContextThreadLocal.get();
         tc.init(sg, paintContext, compositeContext, model, blendComposite);
         return tc;
     }
@@ -147,12 +360,39 @@ public class GeneralCompositePipe implements CompositePipe {
             byte[] atile, int offset, int tilesize,
             int x, int y, int w, int h) {
         TileContext context = (TileContext) ctx;
+
+        if (w > MAX_POOLED_WIDTH && context.solidFill == null) {
+            // wide runs of solid tiles: composite chunks of pooled rasters
+            for (int dx = 0; dx < w; dx += MAX_POOLED_WIDTH) {
+                renderPathTile(ctx, atile, (atile != null) ? offset + dx : offset,
+                        tilesize, x + dx, y, Math.min(MAX_POOLED_WIDTH, w - dx), h);
+            }
+            return;
+        }
         PaintContext paintCtxt = context.paintCtxt;
         CompositeContext compCtxt = context.compCtxt;
         SunGraphics2D sg = context.sunG2D;
         boolean blendComposite = context.isBlendComposite;
+        boolean solidColor = context.isSolidColor;
 
-        Raster srcRaster = paintCtxt.getRaster(x, y, w, h);
+        if (context.solidFill != null) {
+            // AlphaComposite: fill the mask as AlphaColorPipe does
+            context.solidFill.MaskFill(sg, sg.getSurfaceData(), sg.composite,
+                    x, y, w, h, atile, offset, tilesize);
+            return;
+        }
+
+        Raster srcRaster;
+        if (context.gradient != null) {
+            // only covered pixels are filled (pooled raster):
+            final IntegerInterleavedRaster r = (IntegerInterleavedRaster)
+                    context.getTileRaster(ARGB_SAMPLE_MODEL, null, w, h);
+            context.gradient.fill(r.getDataStorage(), r.getDataOffset(0), r.getScanlineStride(),
+                    atile, offset, tilesize, x, y, w, h);
+            srcRaster = r;
+        } else {
+            srcRaster = (solidColor) ? null : paintCtxt.getRaster(x, y, w, h);
+        }
 
         Raster dstRaster;
         Raster dstIn;
@@ -160,19 +400,24 @@ public class GeneralCompositePipe implements CompositePipe {
 
         SurfaceData sd = sg.getSurfaceData();
         dstRaster = sd.getRaster(x, y, w, h);
-        if (dstRaster instanceof WritableRaster && atile == null) {
+        // blend composites store the mask into dstOut so it can not be the destination
+        // (except the solid color path that reads the mask directly):
+        if (dstRaster instanceof WritableRaster
+                && (solidColor || (atile == null && !blendComposite))) {
             dstOut = (WritableRaster) dstRaster;
             dstOut = dstOut.createWritableChild(x, y, w, h, 0, 0, null);
             dstIn = dstOut;
         } else {
             dstIn = dstRaster.createChild(x, y, w, h, 0, 0, null);
 
-            // TODO: cache such raster as it is very costly (int[])
-            dstOut = dstIn.createCompatibleWritableRaster();
-//            dstOut = context.getDirtyWritableRaster(dstIn);
+            // reuse a pooled raster (fully overwritten by compose):
+            dstOut = context.getTileRaster(dstIn);
         }
 
-        if (blendComposite) {
+        if (solidColor) {
+            ((BlendComposite.BlendingContext) compCtxt).compose(context.solidRGB,
+                    atile, offset, tilesize, dstIn, dstOut);
+        } else if (blendComposite) {
             // define mask alpha into dstOut:
 
             // INT_RGBA only: TODO: check raster format !
@@ -197,7 +442,9 @@ public class GeneralCompositePipe implements CompositePipe {
                 }
             }
         }
-        compCtxt.compose(srcRaster, dstIn, dstOut);
+        if (!solidColor) {
+            compCtxt.compose(srcRaster, dstIn, dstOut);
+        }
 
         if (dstRaster != dstOut && dstOut.getParent() != dstRaster) {
             if (dstRaster instanceof WritableRaster
@@ -211,7 +458,8 @@ public class GeneralCompositePipe implements CompositePipe {
                         cm.isAlphaPremultiplied(),
                         null);
                 SurfaceData resData = BufImgSurfaceData.createData(resImg);
-                if (atile == null) {
+                // blend composites already applied the mask:
+                if (atile == null || blendComposite) {
                     Blit blit = Blit.getFromCache(resData.getSurfaceType(),
                             CompositeType.SrcNoEa,
                             sd.getSurfaceType());
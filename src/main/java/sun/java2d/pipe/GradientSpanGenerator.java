@@ -0,0 +1,715 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.java2d.pipe;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint;
+import java.awt.MultipleGradientPaint.ColorSpaceType;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.Paint;
+import java.awt.RadialGradientPaint;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+
+/**
+ * Gradient span generator used by GeneralCompositePipe instead of the
+ * gradient PaintContext: it fills tile rows with non-premultiplied ARGB
+ * colors computed incrementally and skips pixels without coverage.
+ *
+ * It follows the maths of GradientPaintContext and Linear / Radial
+ * GradientPaintContext so colors are the same; lookup tables are kept
+ * while the same paint is used and no memory is allocated per tile.
+ */
+final class GradientSpanGenerator {
+
+    // gradient kinds:
+    private static final int TWO_COLOR = 0;
+    private static final int LINEAR = 1;
+    private static final int RADIAL = 2;
+
+    // cycle methods:
+    private static final int NO_CYCLE = 0;
+    private static final int REFLECT = 1;
+    private static final int REPEAT = 2;
+
+    // MultipleGradientPaintContext constants:
+    private static final int GRADIENT_SIZE = 256;
+    private static final int GRADIENT_SIZE_INDEX = GRADIENT_SIZE - 1;
+    private static final int MAX_GRADIENT_ARRAY_SIZE = 5000;
+    // RadialGradientPaintContext constants:
+    private static final float SCALEBACK = .99f;
+    private static final int SQRT_LUT_SIZE = (1 << 11);
+    private static final float[] sqrtLut = new float[SQRT_LUT_SIZE + 1];
+
+    private static final int[] SRGBtoLinearRGB = new int[256];
+    private static final int[] LinearRGBtoSRGB = new int[256];
+
+    static {
+        for (int i = 0; i < sqrtLut.length; i++) {
+            sqrtLut[i] = (float) Math.sqrt(i / ((float) SQRT_LUT_SIZE));
+        }
+        for (int k = 0; k < 256; k++) {
+            SRGBtoLinearRGB[k] = convertSRGBtoLinearRGB(k);
+            LinearRGBtoSRGB[k] = convertLinearRGBtoSRGB(k);
+        }
+    }
+
+    private int kind;
+    // reused transforms and point:
+    private final AffineTransform tx = new AffineTransform();
+    private final AffineTransform inv = new AffineTransform();
+    private final Point2D.Double pt = new Point2D.Double();
+
+    // two color gradient (GradientPaint or simple LinearGradientPaint):
+    private final int[] interp = new int[513];
+    private boolean cyclic;
+    private double x1, y1, dx, dy;
+
+    // multiple gradient lookup tables (kept for the last paint):
+    private MultipleGradientPaint lastPaint = null;
+    private int cycleMethod;
+    private float[] fractions;
+    private float[] normalizedIntervals;
+    private boolean isSimpleLookup;
+    private int fastGradientArraySize;
+    private int[] gradient;
+    private int[][] gradients;
+    // device to gradient space:
+    private float a00, a01, a02, a10, a11, a12;
+
+    // linear gradient:
+    private float dgdX, dgdY, gc;
+
+    // radial gradient:
+    private boolean isSimpleFocus, isNonCyclic;
+    private float centerX, centerY, focusX, focusY, radiusSq;
+    private float trivial, constA, constB, gDeltaDelta;
+
+    GradientSpanGenerator() {
+        // TileContext constructor
+    }
+
+    static boolean isSupported(final Paint paint) {
+        // GradientPaint is not final: subclasses may override createContext()
+        // (Linear/RadialGradientPaint are final):
+        return (paint.getClass() == GradientPaint.class)
+                || (paint instanceof LinearGradientPaint)
+                || (paint instanceof RadialGradientPaint);
+    }
+
+    /**
+     * Prepare the generator for the given paint and device transform
+     *
+     * @param paint gradient paint (see isSupported)
+     * @param at user to device transform
+     */
+    void init(final Paint paint, final AffineTransform at) {
+        if (paint instanceof GradientPaint) {
+            final GradientPaint gp = (GradientPaint) paint;
+            initTwoColor(gp.getPoint1(), gp.getPoint2(), at,
+                         gp.getColor1(), gp.getColor2(), gp.isCyclic());
+            return;
+        }
+        final MultipleGradientPaint mgp = (MultipleGradientPaint) paint;
+
+        // incorporate the gradient transform:
+        tx.setTransform(at);
+        tx.concatenate(mgp.getTransform());
+
+        if (mgp instanceof LinearGradientPaint) {
+            final LinearGradientPaint lgp = (LinearGradientPaint) mgp;
+            final Color[] colors = lgp.getColors();
+
+            if ((colors.length == 2)
+                    && (lgp.getCycleMethod() != CycleMethod.REPEAT)
+                    && (lgp.getColorSpace() == ColorSpaceType.SRGB)) {
+                // as LinearGradientPaint.createContext():
+                initTwoColor(lgp.getStartPoint(), lgp.getEndPoint(), tx,
+                             colors[0], colors[1],
+                             lgp.getCycleMethod() != CycleMethod.NO_CYCLE);
+                return;
+            }
+            initMultiple(mgp);
+            initLinear(lgp.getStartPoint(), lgp.getEndPoint());
+        } else {
+            final RadialGradientPaint rgp = (RadialGradientPaint) mgp;
+            initMultiple(mgp);
+            initRadial((float) rgp.getCenterPoint().getX(),
+                       (float) rgp.getCenterPoint().getY(),
+                       rgp.getRadius(),
+                       (float) rgp.getFocusPoint().getX(),
+                       (float) rgp.getFocusPoint().getY());
+        }
+    }
+
+    private void initTwoColor(Point2D p1, Point2D p2, final AffineTransform xform,
+                              Color c1, Color c2, final boolean cyclic)
+    {
+        kind = TWO_COLOR;
+
+        // distance moved in user space for a unit move along device X & Y:
+        double xvx, xvy, yvx, yvy;
+        try {
+            inv.setTransform(xform);
+            inv.invert();
+            xvx = inv.getScaleX();
+            xvy = inv.getShearY();
+            yvx = inv.getShearX();
+            yvy = inv.getScaleY();
+        } catch (NoninvertibleTransformException e) {
+            xvx = xvy = yvx = yvy = 0.0;
+        }
+
+        final double udx = p2.getX() - p1.getX();
+        final double udy = p2.getY() - p1.getY();
+        final double ulenSq = udx * udx + udy * udy;
+
+        if (ulenSq <= Double.MIN_VALUE) {
+            dx = 0;
+            dy = 0;
+        } else {
+            dx = (xvx * udx + xvy * udy) / ulenSq;
+            dy = (yvx * udx + yvy * udy) / ulenSq;
+
+            if (cyclic) {
+                dx = dx % 1.0;
+                dy = dy % 1.0;
+            } else if (dx < 0) {
+                // dx must be positive: swap points and colors
+                Point2D p = p1; p1 = p2; p2 = p;
+                Color c = c1; c1 = c2; c2 = c;
+                dx = -dx;
+                dy = -dy;
+            }
+        }
+
+        xform.transform(p1, pt);
+        this.x1 = pt.x;
+        this.y1 = pt.y;
+        this.cyclic = cyclic;
+
+        final int rgb1 = c1.getRGB();
+        final int rgb2 = c2.getRGB();
+        final int a1 = (rgb1 >> 24) & 0xff;
+        final int r1 = (rgb1 >> 16) & 0xff;
+        final int g1 = (rgb1 >>  8) & 0xff;
+        final int b1 = (rgb1      ) & 0xff;
+        final int da = ((rgb2 >> 24) & 0xff) - a1;
+        final int dr = ((rgb2 >> 16) & 0xff) - r1;
+        final int dg = ((rgb2 >>  8) & 0xff) - g1;
+        final int db = ((rgb2      ) & 0xff) - b1;
+
+        final int[] _interp = interp;
+        for (int i = 0; i <= 256; i++) {
+            final float rel = i / 256.0f;
+            final int rgb = (((int) (a1 + da * rel)) << 24)
+                          | (((int) (r1 + dr * rel)) << 16)
+                          | (((int) (g1 + dg * rel)) <<  8)
+                          | (((int) (b1 + db * rel))      );
+            _interp[i] = rgb;
+            if (cyclic) {
+                _interp[512 - i] = rgb;
+            }
+        }
+    }
+
+    private void initMultiple(final MultipleGradientPaint mgp) {
+        try {
+            tx.invert();
+        } catch (NoninvertibleTransformException e) {
+            tx.setToIdentity();
+        }
+        a00 = (float) tx.getScaleX();
+        a10 = (float) tx.getShearY();
+        a01 = (float) tx.getShearX();
+        a11 = (float) tx.getScaleY();
+        a02 = (float) tx.getTranslateX();
+        a12 = (float) tx.getTranslateY();
+
+        switch (mgp.getCycleMethod()) {
+            case REFLECT:
+                cycleMethod = REFLECT;
+                break;
+            case REPEAT:
+                cycleMethod = REPEAT;
+                break;
+            default:
+                cycleMethod = NO_CYCLE;
+        }
+
+        if (mgp != lastPaint) {
+            // paints are immutable: lookup tables only depend on the paint
+            fractions = mgp.getFractions();
+            calculateLookupData(mgp.getColors(),
+                    mgp.getColorSpace() == ColorSpaceType.LINEAR_RGB);
+            lastPaint = mgp;
+        }
+    }
+
+    private void initLinear(final Point2D start, final Point2D end) {
+        kind = LINEAR;
+
+        final float startx = (float) start.getX();
+        final float starty = (float) start.getY();
+        final float endx = (float) end.getX();
+        final float endy = (float) end.getY();
+
+        final float ldx = endx - startx;
+        final float ldy = endy - starty;
+        final float dSq = ldx * ldx + ldy * ldy;
+
+        final float constX = ldx / dSq;
+        final float constY = ldy / dSq;
+
+        dgdX = a00 * constX + a10 * constY;
+        dgdY = a01 * constX + a11 * constY;
+        gc = (a02 - startx) * constX + (a12 - starty) * constY;
+    }
+
+    private void initRadial(final float cx, final float cy, final float r,
+                            final float fx, final float fy)
+    {
+        kind = RADIAL;
+
+        centerX = cx;
+        centerY = cy;
+        focusX = fx;
+        focusY = fy;
+
+        isSimpleFocus = (focusX == centerX) && (focusY == centerY);
+        isNonCyclic = (cycleMethod == NO_CYCLE);
+
+        radiusSq = r * r;
+
+        float dX = focusX - centerX;
+        float dY = focusY - centerY;
+        final double distSq = (dX * dX) + (dY * dY);
+
+        // move the focus inside the circle:
+        if (distSq > radiusSq * SCALEBACK) {
+            final float scalefactor = (float) Math.sqrt(radiusSq * SCALEBACK / distSq);
+            dX = dX * scalefactor;
+            dY = dY * scalefactor;
+            focusX = centerX + dX;
+            focusY = centerY + dY;
+        }
+
+        trivial = (float) Math.sqrt(radiusSq - (dX * dX));
+        constA = a02 - centerX;
+        constB = a12 - centerY;
+        gDeltaDelta = 2 * (a00 * a00 + a10 * a10) / radiusSq;
+    }
+
+    /**
+     * Fill the given tile with gradient colors (non-premultiplied ARGB):
+     * pixels without coverage are left unchanged
+     *
+     * @param pixels destination array
+     * @param off first pixel
+     * @param stride scanline stride
+     * @param atile coverage mask or null means full coverage
+     * @param maskOff first mask value
+     * @param tilesize mask scanline stride
+     * @param x tile x
+     * @param y tile y
+     * @param w tile width
+     * @param h tile height
+     */
+    void fill(final int[] pixels, final int off, final int stride,
+              final byte[] atile, final int maskOff, final int tilesize,
+              final int x, final int y, final int w, final int h)
+    {
+        switch (kind) {
+            case TWO_COLOR:
+                if (cyclic) {
+                    cycleFill(pixels, off, stride, atile, maskOff, tilesize, x, y, w, h);
+                } else {
+                    clipFill(pixels, off, stride, atile, maskOff, tilesize, x, y, w, h);
+                }
+                break;
+            case LINEAR:
+                linearFill(pixels, off, stride, atile, maskOff, tilesize, x, y, w, h);
+                break;
+            default:
+                if (isSimpleFocus && isNonCyclic && isSimpleLookup) {
+                    simpleRadialFill(pixels, off, stride, atile, maskOff, tilesize, x, y, w, h);
+                } else {
+                    radialFill(pixels, off, stride, atile, maskOff, tilesize, x, y, w, h);
+                }
+        }
+    }
+
+    private void cycleFill(final int[] pixels, int off, final int stride,
+                           final byte[] atile, int maskOff, final int tilesize,
+                           final int x, final int y, final int w, final int h)
+    {
+        final int[] _interp = interp;
+        final double rowrel = ((x - x1) * dx + (y - y1) * dy) % 2.0;
+
+        // fixed point maths (GradientPaintContext):
+        int irowrel = ((int) (rowrel * (1 << 30))) << 1;
+        final int idx = (int) (-dx * (1 << 31));
+        final int idy = (int) (-dy * (1 << 31));
+
+        for (int j = 0; j < h; j++) {
+            int icolrel = irowrel;
+            for (int i = 0; i < w; i++) {
+                if (atile == null || atile[maskOff + i] != 0) {
+                    pixels[off + i] = _interp[icolrel >>> 23];
+                }
+                icolrel += idx;
+            }
+            off += stride;
+            maskOff += tilesize;
+            irowrel += idy;
+        }
+    }
+
+    private void clipFill(final int[] pixels, int off, final int stride,
+                          final byte[] atile, int maskOff, final int tilesize,
+                          final int x, final int y, final int w, final int h)
+    {
+        final int[] _interp = interp;
+        final int rgb0 = _interp[0];
+        final int rgb1 = _interp[256];
+        final double _dx = dx;
+        double rowrel = (x - x1) * dx + (y - y1) * dy;
+
+        for (int j = 0; j < h; j++) {
+            double colrel = rowrel;
+            for (int i = 0; i < w; i++) {
+                if (atile == null || atile[maskOff + i] != 0) {
+                    pixels[off + i] = (colrel <= 0.0) ? rgb0
+                            : (colrel < 1.0) ? _interp[(int) (colrel * 256)] : rgb1;
+                }
+                colrel += _dx;
+            }
+            off += stride;
+            maskOff += tilesize;
+            rowrel += dy;
+        }
+    }
+
+    private void linearFill(final int[] pixels, int off, final int stride,
+                            final byte[] atile, int maskOff, final int tilesize,
+                            final int x, final int y, final int w, final int h)
+    {
+        final float _dgdX = dgdX;
+        final float initConst = (_dgdX * x) + gc;
+
+        for (int j = 0; j < h; j++) {
+            float g = initConst + dgdY * (y + j);
+            for (int i = 0; i < w; i++) {
+                if (atile == null || atile[maskOff + i] != 0) {
+                    pixels[off + i] = indexIntoGradientsArrays(g);
+                }
+                g += _dgdX;
+            }
+            off += stride;
+            maskOff += tilesize;
+        }
+    }
+
+    private void simpleRadialFill(final int[] pixels, int off, final int stride,
+                                  final byte[] atile, int maskOff, final int tilesize,
+                                  final int x, final int y, final int w, final int h)
+    {
+        // sqrt(X^2 + Y^2) relative to the radius (incremental):
+        float rowX = (a00 * x) + (a01 * y) + constA;
+        float rowY = (a10 * x) + (a11 * y) + constB;
+
+        final float _gDeltaDelta = gDeltaDelta;
+        final int[] _gradient = gradient;
+        final int size = fastGradientArraySize;
+        final int rgbclip = _gradient[size];
+
+        for (int j = 0; j < h; j++) {
+            float gRel = (rowX * rowX + rowY * rowY) / radiusSq;
+            float gDelta = (2 * (a00 * rowX + a10 * rowY) / radiusSq
+                            + _gDeltaDelta / 2);
+
+            for (int i = 0; i < w; i++) {
+                if (atile == null || atile[maskOff + i] != 0) {
+                    if (gRel >= 1.0f) {
+                        pixels[off + i] = rgbclip;
+                    } else {
+                        int gIndex;
+                        if (gRel <= 0) {
+                            gIndex = 0;
+                        } else {
+                            float fIndex = gRel * SQRT_LUT_SIZE;
+                            final int iIndex = (int) (fIndex);
+                            final float s0 = sqrtLut[iIndex];
+                            final float s1 = sqrtLut[iIndex + 1] - s0;
+                            fIndex = s0 + (fIndex - iIndex) * s1;
+                            gIndex = (int) (fIndex * size);
+                        }
+                        pixels[off + i] = _gradient[gIndex];
+                    }
+                }
+                gRel += gDelta;
+                gDelta += _gDeltaDelta;
+            }
+            off += stride;
+            maskOff += tilesize;
+            rowX += a01;
+            rowY += a11;
+        }
+    }
+
+    private void radialFill(final int[] pixels, int off, final int stride,
+                            final byte[] atile, int maskOff, final int tilesize,
+                            final int x, final int y, final int w, final int h)
+    {
+        final double constC = -radiusSq + (centerX * centerX) + (centerY * centerY);
+        double A, B, C;
+        double slope, yintcpt;
+        double solutionX, solutionY;
+        final float constX = (a00 * x) + (a01 * y) + a02;
+        final float constY = (a10 * x) + (a11 * y) + a12;
+        final float precalc2 = 2 * centerY;
+        final float precalc3 = -2 * centerX;
+        float g, det;
+        float currentToFocusSq, intersectToFocusSq;
+        float deltaXSq, deltaYSq;
+
+        for (int j = 0; j < h; j++) {
+            float X = (a01 * j) + constX;
+            float Y = (a11 * j) + constY;
+
+            for (int i = 0; i < w; i++) {
+                if (atile == null || atile[maskOff + i] != 0) {
+                    // intersection of the focus to (X, Y) line with the circle:
+                    if (X == focusX) {
+                        solutionX = focusX;
+                        solutionY = centerY;
+                        solutionY += (Y > focusY) ? trivial : -trivial;
+                    } else {
+                        slope = (Y - focusY) / (X - focusX);
+                        yintcpt = Y - (slope * X);
+
+                        A = (slope * slope) + 1;
+                        B = precalc3 + (-2 * slope * (centerY - yintcpt));
+                        C = constC + (yintcpt * (yintcpt - precalc2));
+
+                        det = (float) Math.sqrt((B * B) - (4 * A * C));
+
+                        solutionX = -B;
+                        solutionX += (X < focusX) ? -det : det;
+                        solutionX = solutionX / (2 * A);
+                        solutionY = (slope * solutionX) + yintcpt;
+                    }
+
+                    deltaXSq = X - focusX;
+                    deltaXSq = deltaXSq * deltaXSq;
+                    deltaYSq = Y - focusY;
+                    deltaYSq = deltaYSq * deltaYSq;
+                    currentToFocusSq = deltaXSq + deltaYSq;
+
+                    deltaXSq = (float) solutionX - focusX;
+                    deltaXSq = deltaXSq * deltaXSq;
+                    deltaYSq = (float) solutionY - focusY;
+                    deltaYSq = deltaYSq * deltaYSq;
+                    intersectToFocusSq = deltaXSq + deltaYSq;
+
+                    g = (float) Math.sqrt(currentToFocusSq / intersectToFocusSq);
+
+                    pixels[off + i] = indexIntoGradientsArrays(g);
+                }
+                X += a00;
+                Y += a10;
+            }
+            off += stride;
+            maskOff += tilesize;
+        }
+    }
+
+    private int indexIntoGradientsArrays(float position) {
+        if (cycleMethod == NO_CYCLE) {
+            if (position > 1) {
+                position = 1;
+            } else if (position < 0) {
+                position = 0;
+            }
+        } else if (cycleMethod == REPEAT) {
+            position = position - (int) position;
+            if (position < 0) {
+                position = position + 1;
+            }
+        } else {
+            // REFLECT
+            if (position < 0) {
+                position = -position;
+            }
+            final int part = (int) position;
+            position = position - part;
+            if ((part & 1) == 1) {
+                position = 1 - position;
+            }
+        }
+
+        if (isSimpleLookup) {
+            return gradient[(int) (position * fastGradientArraySize)];
+        }
+        for (int i = 0; i < gradients.length; i++) {
+            if (position < fractions[i + 1]) {
+                final float delta = position - fractions[i];
+                final int index = (int) ((delta / normalizedIntervals[i])
+                                         * (GRADIENT_SIZE_INDEX));
+                return gradients[i][index];
+            }
+        }
+        return gradients[gradients.length - 1][GRADIENT_SIZE_INDEX];
+    }
+
+    // MultipleGradientPaintContext lookup tables:
+    private void calculateLookupData(final Color[] colors, final boolean linearRGB) {
+        final int[] rgbs = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            final int argb = colors[i].getRGB();
+            if (linearRGB) {
+                rgbs[i] = (argb & 0xff000000)
+                        | (SRGBtoLinearRGB[(argb >> 16) & 0xff] << 16)
+                        | (SRGBtoLinearRGB[(argb >>  8) & 0xff] <<  8)
+                        | (SRGBtoLinearRGB[(argb      ) & 0xff]      );
+            } else {
+                rgbs[i] = argb;
+            }
+        }
+
+        normalizedIntervals = new float[fractions.length - 1];
+        for (int i = 0; i < normalizedIntervals.length; i++) {
+            normalizedIntervals[i] = fractions[i + 1] - fractions[i];
+        }
+
+        gradients = new int[normalizedIntervals.length][];
+
+        float Imin = 1;
+        for (int i = 0; i < normalizedIntervals.length; i++) {
+            Imin = (Imin > normalizedIntervals[i]) ? normalizedIntervals[i] : Imin;
+        }
+
+        int estimatedSize = 0;
+        for (int i = 0; i < normalizedIntervals.length; i++) {
+            estimatedSize += (normalizedIntervals[i] / Imin) * GRADIENT_SIZE;
+        }
+
+        if (estimatedSize > MAX_GRADIENT_ARRAY_SIZE) {
+            // multiple arrays:
+            isSimpleLookup = false;
+            gradient = null;
+
+            for (int i = 0; i < gradients.length; i++) {
+                gradients[i] = new int[GRADIENT_SIZE];
+                interpolate(rgbs[i], rgbs[i + 1], gradients[i]);
+                if (linearRGB) {
+                    for (int k = 0; k < GRADIENT_SIZE; k++) {
+                        gradients[i][k] = convertEntireColorLinearRGBtoSRGB(gradients[i][k]);
+                    }
+                }
+            }
+        } else {
+            // single array:
+            isSimpleLookup = true;
+
+            int gradientsTot = 1;
+            for (int i = 0; i < gradients.length; i++) {
+                final int nGradients = (int) ((normalizedIntervals[i] / Imin) * 255f);
+                gradientsTot += nGradients;
+                gradients[i] = new int[nGradients];
+                interpolate(rgbs[i], rgbs[i + 1], gradients[i]);
+            }
+
+            gradient = new int[gradientsTot];
+            int curOffset = 0;
+            for (int i = 0; i < gradients.length; i++) {
+                System.arraycopy(gradients[i], 0, gradient, curOffset, gradients[i].length);
+                curOffset += gradients[i].length;
+            }
+            gradient[gradient.length - 1] = rgbs[rgbs.length - 1];
+
+            if (linearRGB) {
+                for (int i = 0; i < gradient.length; i++) {
+                    gradient[i] = convertEntireColorLinearRGBtoSRGB(gradient[i]);
+                }
+            }
+            fastGradientArraySize = gradient.length - 1;
+        }
+    }
+
+    private static void interpolate(final int rgb1, final int rgb2, final int[] output) {
+        final float stepSize = 1.0f / output.length;
+
+        final int a1 = (rgb1 >> 24) & 0xff;
+        final int r1 = (rgb1 >> 16) & 0xff;
+        final int g1 = (rgb1 >>  8) & 0xff;
+        final int b1 = (rgb1      ) & 0xff;
+
+        final int da = ((rgb2 >> 24) & 0xff) - a1;
+        final int dr = ((rgb2 >> 16) & 0xff) - r1;
+        final int dg = ((rgb2 >>  8) & 0xff) - g1;
+        final int db = ((rgb2      ) & 0xff) - b1;
+
+        for (int i = 0; i < output.length; i++) {
+            output[i] = (((int) ((a1 + i * da * stepSize) + 0.5) << 24))
+                      | (((int) ((r1 + i * dr * stepSize) + 0.5) << 16))
+                      | (((int) ((g1 + i * dg * stepSize) + 0.5) <<  8))
+                      | (((int) ((b1 + i * db * stepSize) + 0.5)      ));
+        }
+    }
+
+    private static int convertEntireColorLinearRGBtoSRGB(final int rgb) {
+        return (rgb & 0xff000000)
+                | (LinearRGBtoSRGB[(rgb >> 16) & 0xff] << 16)
+                | (LinearRGBtoSRGB[(rgb >>  8) & 0xff] <<  8)
+                | (LinearRGBtoSRGB[(rgb      ) & 0xff]      );
+    }
+
+    private static int convertSRGBtoLinearRGB(final int color) {
+        final float input = color / 255.0f;
+        final float output;
+        if (input <= 0.04045f) {
+            output = input / 12.92f;
+        } else {
+            output = (float) Math.pow((input + 0.055) / 1.055, 2.4);
+        }
+        return Math.round(output * 255.0f);
+    }
+
+    private static int convertLinearRGBtoSRGB(final int color) {
+        final float input = color / 255.0f;
+        final float output;
+        if (input <= 0.0031308) {
+            output = input * 12.92f;
+        } else {
+            output = (1.055f * ((float) Math.pow(input, (1.0 / 2.4)))) - 0.055f;
+        }
+        return Math.round(output * 255.0f);
+    }
+}
@@ -0,0 +1,392 @@
+package marlin;
+
+import java.awt.AlphaComposite;
+import java.awt.CompositeContext;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import sun.java2d.pipe.BlendComposite;
+import sun.java2d.pipe.BlendComposite.BlendingMode;
+
+/**
+ * Checks the Porter-Duff and separable blend modes of BlendComposite on
+ * random pixels and coverage values, for non-premultiplied, premultiplied
+ * and opaque source / destination rasters:
+ * - the result alpha is compared with AlphaComposite (mixed with the
+ *   destination alpha by the coverage);
+ * - the result colors are compared with a floating-point reference
+ *   (Porter-Duff factors or W3C separable blend functions) on linear
+ *   components (gamma 2.2) as BlendComposite blends linear colors.
+ *
+ * Run it with the Marlin classes first in the bootclasspath:
+ * java -Xbootclasspath/p:target/classes -cp target/test-classes
+ *      marlin.BlendCompositeTest
+ */
+public class BlendCompositeTest {
+
+    private static final double GAMMA = 2.2;
+
+    private static final int W = 64;
+    private static final int H = 64;
+
+    // max error on 8-bit alpha
+    private static final int ALPHA_TOLERANCE = 1;
+    // max error on 8-bit colors
+    private static final int COLOR_TOLERANCE = 3;
+    // or max error on linear colors (12-bit linear rounding: dark colors)
+    private static final double LINEAR_TOLERANCE = 2.0 / 4095.0;
+
+    private static final int[] IMAGE_TYPES = new int[]{
+        BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_INT_ARGB_PRE,
+        BufferedImage.TYPE_INT_RGB
+    };
+
+    public static void main(String[] args) {
+        final Random r = new Random(43L);
+        int failures = 0;
+
+        for (BlendingMode mode : BlendingMode.values()) {
+            if (mode == BlendingMode.SRC_OVER) {
+                // coverage only blender (source alpha ignored)
+                continue;
+            }
+            for (int srcType : IMAGE_TYPES) {
+                for (int dstType : IMAGE_TYPES) {
+                    failures += test(r, mode, srcType, dstType);
+                }
+            }
+        }
+        if (failures != 0) {
+            throw new RuntimeException(failures + " blend tests failed");
+        }
+        System.out.println("BlendCompositeTest: OK");
+    }
+
+    private static int test(final Random r, final BlendingMode mode,
+                            final int srcType, final int dstType)
+    {
+        final BufferedImage src = new BufferedImage(W, H, srcType);
+        final BufferedImage dst = new BufferedImage(W, H, dstType);
+        final int[] mask = new int[W * H];
+
+        for (int y = 0, i = 0; y < H; y++) {
+            for (int x = 0; x < W; x++, i++) {
+                src.setRGB(x, y, randomColor(r));
+                dst.setRGB(x, y, randomColor(r));
+                mask[i] = randomValue(r);
+            }
+        }
+        final WritableRaster srcRaster = src.getRaster();
+        final WritableRaster dstRaster = dst.getRaster();
+        final ColorModel srcCM = src.getColorModel();
+        final ColorModel dstCM = dst.getColorModel();
+
+        // blend: the output raster gives the coverage mask
+        final WritableRaster out = dstRaster.createCompatibleWritableRaster();
+        out.setDataElements(0, 0, W, H, mask);
+
+        final CompositeContext bc = BlendComposite.getInstance(mode)
+                                        .createContext(srcCM, dstCM, null);
+        bc.compose(srcRaster, dstRaster, out);
+        bc.dispose();
+
+        // AlphaComposite result (full coverage):
+        WritableRaster ref = null;
+        final int rule = getAlphaCompositeRule(mode);
+        if (rule != 0) {
+            ref = dstRaster.createCompatibleWritableRaster();
+            final CompositeContext ac = AlphaComposite.getInstance(rule)
+                                            .createContext(srcCM, dstCM, null);
+            ac.compose(srcRaster, dstRaster, ref);
+            ac.dispose();
+        }
+
+        final boolean srcOpaque = !srcCM.hasAlpha();
+        final boolean srcPre = srcCM.isAlphaPremultiplied();
+        final boolean dstOpaque = !dstCM.hasAlpha();
+        final boolean dstPre = dstCM.isAlphaPremultiplied();
+
+        final int[] sp = new int[1];
+        final int[] dp = new int[1];
+        final int[] op = new int[1];
+        final int[] rp = new int[1];
+        final double[] expected = new double[4];
+
+        int errors = 0;
+        int maxAlphaErr = 0;
+        int maxColorErr = 0;
+
+        for (int y = 0, i = 0; y < H; y++) {
+            for (int x = 0; x < W; x++, i++) {
+                srcRaster.getDataElements(x, y, sp);
+                dstRaster.getDataElements(x, y, dp);
+                out.getDataElements(x, y, op);
+
+                final double as = (srcOpaque) ? 1.0 : (sp[0] >>> 24) / 255.0;
+                final double ad = (dstOpaque) ? 1.0 : (dp[0] >>> 24) / 255.0;
+                final double m = mask[i] / 255.0;
+
+                reference(mode, sp[0], as, srcPre, dp[0], ad, dstPre,
+                          dstOpaque, m, expected);
+
+                final int res = op[0];
+                int alphaErr = 0;
+                if (!dstOpaque) {
+                    alphaErr = Math.abs((res >>> 24)
+                                        - (int) Math.round(255.0 * expected[3]));
+                    if (ref != null) {
+                        // AlphaComposite alpha mixed by the coverage:
+                        ref.getDataElements(x, y, rp);
+                        final double ac = (rp[0] >>> 24) / 255.0;
+                        final int expAlpha
+                            = (int) Math.round(255.0 * (ac * m + ad * (1.0 - m)));
+                        alphaErr = Math.max(alphaErr,
+                                            Math.abs((res >>> 24) - expAlpha));
+                    }
+                }
+                // color errors weighted by the result alpha (premultiplied)
+                // as colors of (almost) transparent pixels are meaningless:
+                final double weight = (dstOpaque || dstPre) ? 1.0 : expected[3];
+                int colorErr = 0;
+                for (int c = 0, sh = 16; c < 3; c++, sh -= 8) {
+                    final double v = ((res >> sh) & 0xFF) / 255.0;
+                    final int err = (int) Math.floor(255.0 * weight
+                                        * Math.abs(v - expected[c]));
+                    if (err > COLOR_TOLERANCE && weight * Math.abs(
+                            linear(v) - linear(expected[c])) <= LINEAR_TOLERANCE)
+                    {
+                        // accurate in linear space
+                        continue;
+                    }
+                    colorErr = Math.max(colorErr, err);
+                }
+                maxAlphaErr = Math.max(maxAlphaErr, alphaErr);
+                maxColorErr = Math.max(maxColorErr, colorErr);
+
+                if (alphaErr > ALPHA_TOLERANCE || colorErr > COLOR_TOLERANCE) {
+                    if (errors == 0) {
+                        System.out.println(mode + " " + typeName(srcType)
+                            + " -> " + typeName(dstType) + ": src = "
+                            + Integer.toHexString(sp[0]) + " dst = "
+                            + Integer.toHexString(dp[0]) + " mask = " + mask[i]
+                            + " result = " + Integer.toHexString(res)
+                            + " expected = [" + expected[3] + ", "
+                            + expected[0] + ", " + expected[1] + ", "
+                            + expected[2] + "]");
+                    }
+                    errors++;
+                }
+            }
+        }
+        System.out.println(mode + " " + typeName(srcType) + " -> "
+                           + typeName(dstType) + ": max error alpha: "
+                           + maxAlphaErr + " color: " + maxColorErr
+                           + ((errors != 0) ? " FAILED (" + errors + " pixels)"
+                              : ""));
+        return (errors != 0) ? 1 : 0;
+    }
+
+    /**
+     * Floating-point reference: expected color (0..2) and alpha (3) in [0, 1]
+     * stored as the destination does (premultiplied or not)
+     */
+    private static void reference(final BlendingMode mode,
+                                  final int sp, final double as,
+                                  final boolean srcPre,
+                                  final int dp, final double ad,
+                                  final boolean dstPre,
+                                  final boolean dstOpaque,
+                                  final double m, final double[] expected)
+    {
+        // weights of src, dst and the blend function:
+        final double ws, wd, wb;
+        if (isSeparable(mode)) {
+            ws = as * (1.0 - ad);
+            wd = ad * (1.0 - as);
+            wb = as * ad;
+        } else {
+            final double[] f = getFactors(mode, as, ad);
+            ws = as * f[0];
+            wd = ad * f[1];
+            wb = 0.0;
+        }
+        double ar = ws + wd + wb;
+        // coverage: mix with the destination
+        ar = ar * m + ad * (1.0 - m);
+
+        for (int c = 0, sh = 16; c < 3; c++, sh -= 8) {
+            final double cs = linear(component(sp, sh, as, srcPre));
+            final double cd = linear(component(dp, sh, ad, dstPre));
+
+            double cr = cs * ws + cd * wd
+                        + ((wb != 0.0) ? blend(mode, cs, cd) * wb : 0.0);
+            cr = cr * m + cd * ad * (1.0 - m);
+
+            double v;
+            if (dstOpaque) {
+                // opaque destination: premultiplied value
+                v = gamma(cr);
+            } else if (ar != 0.0) {
+                v = gamma(Math.min(1.0, cr / ar));
+                if (dstPre) {
+                    v *= ar;
+                }
+            } else {
+                v = 0.0;
+            }
+            expected[c] = v;
+        }
+        expected[3] = (dstOpaque) ? 1.0 : ar;
+    }
+
+    private static double component(final int pixel, final int shift,
+                                    final double alpha, final boolean pre)
+    {
+        final double c = ((pixel >> shift) & 0xFF) / 255.0;
+        if (pre) {
+            return (alpha != 0.0) ? Math.min(1.0, c / alpha) : 0.0;
+        }
+        return c;
+    }
+
+    private static double linear(final double c) {
+        return Math.pow(c, GAMMA);
+    }
+
+    private static double gamma(final double c) {
+        return Math.pow(c, 1.0 / GAMMA);
+    }
+
+    private static boolean isSeparable(final BlendingMode mode) {
+        return mode.ordinal() >= BlendingMode.MULTIPLY.ordinal();
+    }
+
+    /**
+     * Porter-Duff factors (Fs, Fd) as defined by AlphaComposite
+     */
+    private static double[] getFactors(final BlendingMode mode,
+                                       final double as, final double ad)
+    {
+        switch (mode) {
+            case CLEAR:
+                return new double[]{0.0, 0.0};
+            case SRC:
+                return new double[]{1.0, 0.0};
+            case DST:
+                return new double[]{0.0, 1.0};
+            case DST_OVER:
+                return new double[]{1.0 - ad, 1.0};
+            case SRC_IN:
+                return new double[]{ad, 0.0};
+            case DST_IN:
+                return new double[]{0.0, as};
+            case SRC_OUT:
+                return new double[]{1.0 - ad, 0.0};
+            case DST_OUT:
+                return new double[]{0.0, 1.0 - as};
+            case SRC_ATOP:
+                return new double[]{ad, 1.0 - as};
+            case DST_ATOP:
+                return new double[]{1.0 - ad, as};
+            case XOR:
+                return new double[]{1.0 - ad, 1.0 - as};
+            default:
+                throw new IllegalArgumentException("Not a Porter-Duff rule: "
+                                                   + mode);
+        }
+    }
+
+    private static int getAlphaCompositeRule(final BlendingMode mode) {
+        switch (mode) {
+            case CLEAR:
+                return AlphaComposite.CLEAR;
+            case SRC:
+                return AlphaComposite.SRC;
+            case DST:
+                return AlphaComposite.DST;
+            case DST_OVER:
+                return AlphaComposite.DST_OVER;
+            case SRC_IN:
+                return AlphaComposite.SRC_IN;
+            case DST_IN:
+                return AlphaComposite.DST_IN;
+            case SRC_OUT:
+                return AlphaComposite.SRC_OUT;
+            case DST_OUT:
+                return AlphaComposite.DST_OUT;
+            case SRC_ATOP:
+                return AlphaComposite.SRC_ATOP;
+            case DST_ATOP:
+                return AlphaComposite.DST_ATOP;
+            case XOR:
+                return AlphaComposite.XOR;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * W3C separable blend functions B(cs, cd)
+     */
+    private static double blend(final BlendingMode mode,
+                                final double cs, final double cd)
+    {
+        switch (mode) {
+            case MULTIPLY:
+                return cs * cd;
+            case SCREEN:
+                return cs + cd - cs * cd;
+            case OVERLAY:
+                return hardLight(cd, cs);
+            case HARD_LIGHT:
+                return hardLight(cs, cd);
+            case DARKEN:
+                return Math.min(cs, cd);
+            case LIGHTEN:
+                return Math.max(cs, cd);
+            case DIFFERENCE:
+                return Math.abs(cs - cd);
+            default:
+                throw new IllegalArgumentException("Not a blend mode: " + mode);
+        }
+    }
+
+    private static double hardLight(final double cs, final double cd) {
+        if (cs <= 0.5) {
+            return cd * 2.0 * cs;
+        }
+        final double s = 2.0 * cs - 1.0;
+        return s + cd - s * cd;
+    }
+
+    private static int randomColor(final Random r) {
+        return (randomValue(r) << 24) | (r.nextInt() & 0xFFFFFF);
+    }
+
+    // random value in [0, 255] with extra weight on 0 and 255
+    private static int randomValue(final Random r) {
+        final int v = r.nextInt(320);
+        if (v >= 288) {
+            return 0xFF;
+        }
+        if (v >= 256) {
+            return 0;
+        }
+        return v;
+    }
+
+    private static String typeName(final int type) {
+        switch (type) {
+            case BufferedImage.TYPE_INT_ARGB:
+                return "ARGB";
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+                return "ARGB_PRE";
+            case BufferedImage.TYPE_INT_RGB:
+                return "RGB";
+            default:
+                return "type " + type;
+        }
+    }
+}
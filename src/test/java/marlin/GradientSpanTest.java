@@ -0,0 +1,273 @@
+package marlin;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.CompositeContext;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint.ColorSpaceType;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.Paint;
+import java.awt.PaintContext;
+import java.awt.RadialGradientPaint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import sun.java2d.pipe.BlendComposite;
+import sun.java2d.pipe.BlendComposite.BlendingMode;
+import sun.java2d.pipe.RenderingEngine;
+
+/**
+ * Renders gradients through GeneralCompositePipe with its gradient span
+ * generator and with the gradient PaintContext (same paint wrapped so it is
+ * not recognized) and checks that both images are pixel-identical, for
+ * every gradient kind (two-color, linear, centered and focal radial), cycle
+ * method, color space and transform, with BlendComposite and AlphaComposite.
+ *
+ * Run it with the Marlin classes first in the bootclasspath and the Marlin
+ * renderer:
+ * java -Xbootclasspath/p:target/classes
+ *      -Dsun.java2d.renderer=org.marlin.pisces.PiscesRenderingEngine
+ *      -cp target/test-classes marlin.GradientSpanTest
+ */
+public class GradientSpanTest {
+
+    private static final int W = 400;
+    private static final int H = 300;
+
+    private static final int[] IMAGE_TYPES = new int[]{
+        BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_INT_RGB
+    };
+
+    private static final CycleMethod[] CYCLES = CycleMethod.values();
+    private static final ColorSpaceType[] COLOR_SPACES = ColorSpaceType.values();
+
+    private static final Color[] COLORS2 = new Color[]{
+        Color.RED, new Color(0, 0, 255, 120)
+    };
+    private static final Color[] COLORS3 = new Color[]{
+        new Color(255, 200, 0), new Color(20, 160, 40, 200),
+        new Color(90, 0, 140, 60)
+    };
+
+    public static void main(String[] args) {
+        final String engine = RenderingEngine.getInstance().getClass().getName();
+        if (!engine.startsWith("org.marlin.")) {
+            throw new IllegalStateException("Marlin renderer not enabled: "
+                                            + engine);
+        }
+        final List<String> names = new ArrayList<String>();
+        final List<Paint> paints = new ArrayList<Paint>();
+        getPaints(names, paints);
+
+        final AffineTransform[] transforms = new AffineTransform[]{
+            new AffineTransform(),
+            AffineTransform.getScaleInstance(1.5, 0.75),
+            rotation()
+        };
+        final Composite[] composites = new Composite[]{
+            BlendComposite.getInstance(BlendingMode.SRC_OVER),
+            BlendComposite.getInstance(BlendingMode.MULTIPLY),
+            new CustomComposite(AlphaComposite.SrcOver),
+            new CustomComposite(AlphaComposite.getInstance(
+                                AlphaComposite.SRC_ATOP, 0.7f))
+        };
+        final String[] compositeNames = new String[]{
+            "Blend SRC_OVER", "Blend MULTIPLY", "SrcOver", "SrcAtop 0.7"
+        };
+
+        int tests = 0;
+        int failures = 0;
+
+        for (int type : IMAGE_TYPES) {
+            for (int c = 0; c < composites.length; c++) {
+                for (int t = 0; t < transforms.length; t++) {
+                    for (int p = 0; p < paints.size(); p++) {
+                        final Paint paint = paints.get(p);
+                        final int[] span = render(type, composites[c],
+                                                  transforms[t], paint);
+                        final int[] ref = render(type, composites[c],
+                                                 transforms[t],
+                                                 new CustomPaint(paint));
+                        tests++;
+                        final int diff = countDiffs(ref, span);
+                        if (diff != 0) {
+                            System.out.println("type " + type + " "
+                                + compositeNames[c] + " transform " + t
+                                + " " + names.get(p) + ": "
+                                + diff + " different pixels");
+                            failures++;
+                        }
+                    }
+                }
+            }
+        }
+        if (failures != 0) {
+            throw new RuntimeException(failures + " / " + tests
+                + " gradient tests are not pixel-identical");
+        }
+        System.out.println("GradientSpanTest: " + tests + " tests OK");
+    }
+
+    private static AffineTransform rotation() {
+        final AffineTransform at
+            = AffineTransform.getRotateInstance(Math.toRadians(23.0),
+                                                W / 2.0, H / 2.0);
+        at.shear(0.2, 0.0);
+        return at;
+    }
+
+    private static void getPaints(final List<String> names,
+                                  final List<Paint> paints)
+    {
+        names.add("GradientPaint acyclic");
+        paints.add(new GradientPaint(50f, 40f, COLORS2[0],
+                                     250f, 160f, COLORS2[1], false));
+        names.add("GradientPaint cyclic");
+        paints.add(new GradientPaint(50f, 40f, COLORS2[0],
+                                     110f, 90f, COLORS2[1], true));
+
+        for (CycleMethod cycle : CYCLES) {
+            for (ColorSpaceType cs : COLOR_SPACES) {
+                final String suffix = " " + cycle + " " + cs;
+
+                names.add("Linear 2 stops" + suffix);
+                paints.add(new LinearGradientPaint(
+                    new Point2D.Float(60f, 30f), new Point2D.Float(160f, 110f),
+                    new float[]{0f, 1f}, COLORS2, cycle, cs,
+                    new AffineTransform()));
+
+                names.add("Linear 3 stops" + suffix);
+                paints.add(new LinearGradientPaint(
+                    new Point2D.Float(60f, 30f), new Point2D.Float(160f, 110f),
+                    new float[]{0f, 0.3f, 1f}, COLORS3, cycle, cs,
+                    AffineTransform.getRotateInstance(0.3)));
+
+                names.add("Radial centered" + suffix);
+                paints.add(new RadialGradientPaint(
+                    new Point2D.Float(200f, 150f), 90f,
+                    new Point2D.Float(200f, 150f),
+                    new float[]{0f, 0.5f, 1f}, COLORS3, cycle, cs,
+                    new AffineTransform()));
+
+                names.add("Radial focal" + suffix);
+                paints.add(new RadialGradientPaint(
+                    new Point2D.Float(200f, 150f), 70f,
+                    new Point2D.Float(240f, 120f),
+                    new float[]{0f, 1f}, COLORS2, cycle, cs,
+                    AffineTransform.getScaleInstance(1.3, 0.9)));
+
+                // focus outside the circle (moved back inside):
+                names.add("Radial focal outside" + suffix);
+                paints.add(new RadialGradientPaint(
+                    new Point2D.Float(180f, 160f), 60f,
+                    new Point2D.Float(260f, 160f),
+                    new float[]{0f, 0.4f, 1f}, COLORS3, cycle, cs,
+                    new AffineTransform()));
+            }
+        }
+    }
+
+    private static int[] render(final int type, final Composite composite,
+                                final AffineTransform at, final Paint paint)
+    {
+        final BufferedImage image = new BufferedImage(W, H, type);
+        final Graphics2D g2d = image.createGraphics();
+        // opaque background with a pattern (destination colors):
+        for (int y = 0; y < H; y += 20) {
+            g2d.setColor(new Color(255 - y * 2 / 3, 128, y * 2 / 3));
+            g2d.fillRect(0, y, W, 10);
+        }
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setComposite(composite);
+        g2d.setPaint(paint);
+        g2d.transform(at);
+
+        g2d.fill(new Ellipse2D.Double(20.3, 15.7, 340.5, 260.2));
+        g2d.fill(new Rectangle2D.Double(-50.0, 120.4, W + 100.0, 30.5));
+        g2d.setStroke(new BasicStroke(7.5f));
+        g2d.draw(new Ellipse2D.Double(150.0, 20.0, 200.0, 120.0));
+        g2d.dispose();
+
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static int countDiffs(final int[] ref, final int[] pixels) {
+        int diff = 0;
+        for (int i = 0; i < ref.length; i++) {
+            if (ref[i] != pixels[i]) {
+                if (diff == 0) {
+                    System.out.println("first difference at (" + (i % W)
+                        + ", " + (i / W) + "): "
+                        + Integer.toHexString(ref[i]) + " <> "
+                        + Integer.toHexString(pixels[i]));
+                }
+                diff++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Paint delegating to a gradient: not handled by the span generator
+     * so GeneralCompositePipe uses its PaintContext
+     */
+    static final class CustomPaint implements Paint {
+
+        private final Paint paint;
+
+        CustomPaint(final Paint paint) {
+            this.paint = paint;
+        }
+
+        @Override
+        public PaintContext createContext(ColorModel cm, Rectangle deviceBounds,
+                                          Rectangle2D userBounds,
+                                          AffineTransform xform,
+                                          RenderingHints hints)
+        {
+            return paint.createContext(cm, deviceBounds, userBounds, xform,
+                                       hints);
+        }
+
+        @Override
+        public int getTransparency() {
+            return paint.getTransparency();
+        }
+    }
+
+    /**
+     * Composite delegating to an AlphaComposite: custom composites are
+     * rendered by GeneralCompositePipe
+     */
+    static final class CustomComposite implements Composite {
+
+        private final Composite composite;
+
+        CustomComposite(final Composite composite) {
+            this.composite = composite;
+        }
+
+        @Override
+        public CompositeContext createContext(ColorModel srcColorModel,
+                                              ColorModel dstColorModel,
+                                              RenderingHints hints)
+        {
+            return composite.createContext(srcColorModel, dstColorModel,
+                                           hints);
+        }
+    }
+}
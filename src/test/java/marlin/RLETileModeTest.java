@@ -0,0 +1,275 @@
+package marlin;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import sun.java2d.pipe.RenderingEngine;
+
+/**
+ * Renders the same shapes with RLE coverage rows enabled or disabled, in
+ * every tile width mode (fixed, band, adaptive) with and without pipelined
+ * rasterization and checks that all images are pixel-identical.
+ *
+ * Marlin settings are static so each mode is rendered by a child JVM
+ * started with the same JVM arguments (bootclasspath, renderer):
+ * java -Xbootclasspath/p:target/classes
+ *      -Dsun.java2d.renderer=org.marlin.pisces.PiscesRenderingEngine
+ *      -cp target/test-classes marlin.RLETileModeTest
+ */
+public class RLETileModeTest {
+
+    private static final int W = 1000;
+    private static final int H = 700;
+
+    private static final String PREFIX = "-Dsun.java2d.renderer.";
+
+    // reference mode first:
+    private static final String[][] MODES = new String[][]{
+        {"useRLE=false", "tileWidthMode=fixed", "pipelineThreads=0"},
+        {"useRLE=true", "tileWidthMode=fixed", "pipelineThreads=0"},
+        {"useRLE=false", "tileWidthMode=band", "pipelineThreads=0"},
+        {"useRLE=true", "tileWidthMode=band", "pipelineThreads=0"},
+        {"useRLE=false", "tileWidthMode=adaptive", "pipelineThreads=0"},
+        {"useRLE=true", "tileWidthMode=adaptive", "pipelineThreads=0"},
+        {"useRLE=false", "tileWidthMode=fixed", "pipelineThreads=2"},
+        {"useRLE=true", "tileWidthMode=fixed", "pipelineThreads=2"},
+        {"useRLE=true", "tileWidthMode=band", "pipelineThreads=2"},
+        {"useRLE=true", "tileWidthMode=adaptive", "pipelineThreads=2"}
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && "-render".equals(args[0])) {
+            render(new File(args[1]));
+            return;
+        }
+        int[] ref = null;
+        String refMode = null;
+        int failures = 0;
+
+        for (String[] mode : MODES) {
+            final String name = toString(mode);
+            final int[] pixels = renderInChildJVM(mode);
+
+            if (ref == null) {
+                ref = pixels;
+                refMode = name;
+                System.out.println("reference: " + name);
+                continue;
+            }
+            final int diff = countDiffs(ref, pixels);
+            System.out.println(name + ": " + ((diff == 0) ? "OK"
+                               : diff + " different pixels"));
+            if (diff != 0) {
+                failures++;
+            }
+        }
+        if (failures != 0) {
+            throw new RuntimeException(failures
+                + " modes are not pixel-identical to [" + refMode + "]");
+        }
+    }
+
+    private static String toString(final String[] mode) {
+        final StringBuilder sb = new StringBuilder();
+        for (String setting : mode) {
+            if (sb.length() != 0) {
+                sb.append(' ');
+            }
+            sb.append(setting);
+        }
+        return sb.toString();
+    }
+
+    private static int countDiffs(final int[] ref, final int[] pixels) {
+        int diff = 0;
+        for (int i = 0; i < ref.length; i++) {
+            if (ref[i] != pixels[i]) {
+                if (diff == 0) {
+                    System.out.println("first difference at (" + (i % W)
+                        + ", " + (i / W) + "): "
+                        + Integer.toHexString(ref[i]) + " <> "
+                        + Integer.toHexString(pixels[i]));
+                }
+                diff++;
+            }
+        }
+        return diff;
+    }
+
+    private static int[] renderInChildJVM(final String[] mode)
+        throws IOException, InterruptedException
+    {
+        final File out = File.createTempFile("RLETileModeTest", ".raw");
+        try {
+            final List<String> cmd = new ArrayList<String>();
+            cmd.add(System.getProperty("java.home") + File.separator + "bin"
+                    + File.separator + "java");
+            // same JVM arguments except the tested settings:
+            for (String arg : ManagementFactory.getRuntimeMXBean()
+                                               .getInputArguments())
+            {
+                if (!isModeArgument(arg)) {
+                    cmd.add(arg);
+                }
+            }
+            for (String setting : mode) {
+                cmd.add(PREFIX + setting);
+            }
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(RLETileModeTest.class.getName());
+            cmd.add("-render");
+            cmd.add(out.getAbsolutePath());
+
+            final Process p = new ProcessBuilder(cmd).inheritIO().start();
+            if (p.waitFor() != 0) {
+                throw new RuntimeException("Rendering failed: " + cmd);
+            }
+            return read(out);
+        } finally {
+            out.delete();
+        }
+    }
+
+    private static boolean isModeArgument(final String arg) {
+        for (String setting : MODES[0]) {
+            final String key = setting.substring(0, setting.indexOf('=') + 1);
+            if (arg.startsWith(PREFIX + key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void render(final File out) throws IOException {
+        final String engine = RenderingEngine.getInstance().getClass().getName();
+        if (!engine.startsWith("org.marlin.")) {
+            throw new IllegalStateException("Marlin renderer not enabled: "
+                                            + engine);
+        }
+        final BufferedImage image = new BufferedImage(W, H,
+                                        BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        paint(g2d);
+        g2d.dispose();
+
+        final int[] pixels
+            = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        final DataOutputStream dos = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(out)));
+        try {
+            for (int v : pixels) {
+                dos.writeInt(v);
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    private static int[] read(final File in) throws IOException {
+        final int[] pixels = new int[W * H];
+        final DataInputStream dis = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(in)));
+        try {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = dis.readInt();
+            }
+        } finally {
+            dis.close();
+        }
+        return pixels;
+    }
+
+    private static void paint(final Graphics2D g2d) {
+        final Random r = new Random(41L);
+
+        // large shapes: long solid runs (RLE rows, merged tile runs)
+        g2d.setColor(new Color(20, 60, 200, 200));
+        g2d.fill(new Ellipse2D.Double(-100.3, -50.7, 900.5, 700.2));
+        g2d.setColor(new Color(200, 40, 20, 160));
+        g2d.fill(new RoundRectangle2D.Double(50.25, 300.5, 900.0, 350.0,
+                                             120.0, 80.0));
+        // full width rectangle with fractional edges:
+        g2d.setColor(new Color(0, 160, 0, 120));
+        g2d.fill(new Rectangle2D.Double(-10.0, 100.3, W + 20.0, 37.4));
+
+        // rotated shape (oblique edges):
+        final AffineTransform at = g2d.getTransform();
+        g2d.rotate(Math.toRadians(17.0), W / 2.0, H / 2.0);
+        g2d.setColor(new Color(240, 200, 0, 180));
+        g2d.fill(new Rectangle2D.Double(200.4, 250.6, 600.0, 120.0));
+        g2d.setTransform(at);
+
+        // even-odd star polygon (holes within rows):
+        final GeneralPath star = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+        for (int i = 0; i < 11; i++) {
+            final double a = i * (4.0 * Math.PI / 11.0);
+            final double x = 700.0 + 280.0 * Math.cos(a);
+            final double y = 350.0 + 280.0 * Math.sin(a);
+            if (i == 0) {
+                star.moveTo(x, y);
+            } else {
+                star.lineTo(x, y);
+            }
+        }
+        star.closePath();
+        g2d.setColor(new Color(120, 0, 160, 140));
+        g2d.fill(star);
+
+        // wide and thin strokes, dashes:
+        g2d.setColor(Color.BLACK);
+        g2d.setStroke(new BasicStroke(40f, BasicStroke.CAP_ROUND,
+                                      BasicStroke.JOIN_ROUND));
+        g2d.drawLine(30, 650, 970, 80);
+        g2d.setStroke(new BasicStroke(1.3f, BasicStroke.CAP_BUTT,
+                                      BasicStroke.JOIN_MITER, 10f,
+                                      new float[]{7f, 3f}, 0f));
+        for (int i = 0; i < 60; i++) {
+            g2d.setColor(new Color(r.nextInt(), true));
+            g2d.draw(new Ellipse2D.Double(r.nextDouble() * W,
+                                          r.nextDouble() * H,
+                                          r.nextDouble() * 300.0,
+                                          r.nextDouble() * 300.0));
+        }
+
+        // random small polygons (partial tiles):
+        for (int i = 0; i < 200; i++) {
+            final GeneralPath p = new GeneralPath();
+            p.moveTo(r.nextDouble() * W, r.nextDouble() * H);
+            for (int j = 0; j < 4; j++) {
+                p.lineTo(r.nextDouble() * W, r.nextDouble() * H);
+            }
+            p.closePath();
+            g2d.setColor(new Color(r.nextInt(), true));
+            g2d.fill(p);
+        }
+
+        // clipped large shape:
+        g2d.setClip(new Rectangle2D.Double(123.0, 77.0, 611.0, 433.0));
+        g2d.setColor(new Color(255, 255, 255, 200));
+        g2d.fill(new Ellipse2D.Double(-500.0, -300.0, 2000.0, 1300.0));
+    }
+}